@@ -0,0 +1,49 @@
+package benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import lrt.Question;
+
+/**
+ * Benchmarks of grading an answer, which needs no database.
+ * @author Evan Gunn
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Dlrt.log.level=WARN")
+public class AnswerBenchmark {
+    private final Question meaningQuestion = new Question("What is the meaning of the japanese romanized word: taberu", "To eat");
+    private final Question symbolsQuestion = new Question("What is the reading of the symbol(s): 食べる", "たべる", true);
+    
+    @Benchmark
+    public boolean meaningCorrect() {
+        meaningQuestion.setuserAnswer("  to  EAT ");
+        return meaningQuestion.correctAnswer();
+    }
+    
+    @Benchmark
+    public boolean meaningIncorrect() {
+        meaningQuestion.setuserAnswer("to drink");
+        return meaningQuestion.correctAnswer();
+    }
+    
+    @Benchmark
+    public boolean symbolsKatakana() {
+        symbolsQuestion.setuserAnswer("タベル");
+        return symbolsQuestion.correctAnswer();
+    }
+}
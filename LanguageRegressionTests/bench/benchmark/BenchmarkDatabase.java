@@ -0,0 +1,147 @@
+package benchmark;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Random;
+
+import database.ConnectionPool;
+import database.EmbeddedVocabularyStore;
+import database.MyConnection;
+import database.PooledConnection;
+
+/**
+ * Opens an in memory EmbeddedVocabularyStore and seeds it with a generated vocabulary,
+ * so that benchmarks can be reproduced offline. The vocabulary is generated from a fixed seed, so every run of the
+ * same size holds the same words, and the romanization and meaning of any word can be computed from its wid.
+ * Each size is a separate in memory database that lives until the benchmark's JVM exits.
+ * @author Evan Gunn
+ *
+ */
+public class BenchmarkDatabase {
+    public static final String LANGUAGE = "japanese";
+    public static final String[] WTYPES = {"noun", "verb", "adjective", "adverb"};
+    public static final int SOURCE_COUNT = 20;
+    
+    private static final String[] SYLLABLES = {"a", "i", "u", "e", "o", "ka", "ki", "ku", "ke", "ko", "sa", "shi", "su", "se", "so",
+            "ta", "chi", "tsu", "te", "to", "na", "ni", "nu", "ne", "no", "ha", "hi", "fu", "he", "ho", "ma", "mi", "mu", "me", "mo",
+            "ya", "yu", "yo", "ra", "ri", "ru", "re", "ro", "wa", "n"};
+    private static final String[] KANA = {"あ", "い", "う", "え", "お", "か", "き", "く", "け", "こ", "さ", "し", "す", "せ", "そ",
+            "た", "ち", "つ", "て", "と", "な", "に", "ぬ", "ね", "の", "は", "ひ", "ふ", "へ", "ほ", "ま", "み", "む", "め", "も",
+            "や", "ゆ", "よ", "ら", "り", "る", "れ", "ろ", "わ", "ん"};
+    private static final int BATCH_SIZE = 1000;
+    
+    /**
+     * Create and seed the database of a size if it does not exist yet, then connect MyConnection to it.
+     * @param words The amount of words in the vocabulary, 1000, 10000 and 100000 are the usual sizes.
+     * @return True if the database is ready and connected.
+     */
+    public static boolean setUp(int words) {
+        if (!EmbeddedVocabularyStore.openUrl("jdbc:h2:mem:lrt" + words + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1")) {
+            return false;
+        }
+        ConnectionPool pool = MyConnection.getInstance().getPool();
+        PooledConnection pooled = null;
+        try {
+            pooled = pool.acquire();
+            if (countWords(pooled.getConnection()) == 0) {
+                seed(pooled.getConnection(), words);
+            }
+            return true;
+        } catch (SQLException e) {
+            System.err.println("Failed to seed the benchmark database: " + e.getMessage());
+            return false;
+        } finally {
+            if (pooled != null) pool.release(pooled);
+        }
+    }
+    
+    /**
+     * @return The romanization of the word with a wid, built from syllables drawn with the wid as the seed.
+     */
+    public static String romanization(int wid) {
+        Random random = new Random(wid);
+        StringBuilder builder = new StringBuilder();
+        int length = 2 + random.nextInt(3);
+        for (int i = 0; i < length; i++) {
+            builder.append(SYLLABLES[random.nextInt(SYLLABLES.length)]);
+        }
+        return builder.toString();
+    }
+    
+    /**
+     * @return The meaning of the word with a wid, unique to the word.
+     */
+    public static String meaning(int wid) {
+        return "meaning " + wid;
+    }
+    
+    /**
+     * @return The ancillary symbols, the kana reading, of the word with a wid.
+     */
+    public static String reading(int wid) {
+        Random random = new Random(wid);
+        StringBuilder builder = new StringBuilder();
+        int length = 2 + random.nextInt(3);
+        for (int i = 0; i < length; i++) {
+            builder.append(KANA[random.nextInt(KANA.length)]);
+        }
+        return builder.toString();
+    }
+    
+    private static int countWords(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet results = statement.executeQuery("SELECT COUNT(*) FROM word")) {
+            results.next();
+            return results.getInt(1);
+        }
+    }
+    
+    /**
+     * Insert the words with wids 1 to words. Two of every three words have a row of symbols, a main of one or two
+     * kanji and a kana reading, and every word has one of SOURCE_COUNT sources.
+     */
+    private static void seed(Connection connection, int words) throws SQLException {
+        Random random = new Random(42);
+        connection.setAutoCommit(false);
+        try (PreparedStatement wordInsert = connection.prepareStatement(
+                    "INSERT INTO word (wid, wlanguage, meaning, romanization, wtype) VALUES (?, ?, ?, ?, ?)");
+             PreparedStatement symbolInsert = connection.prepareStatement(
+                    "INSERT INTO symbols (wid, main, ancillary) VALUES (?, ?, ?)");
+             PreparedStatement sourceInsert = connection.prepareStatement(
+                    "INSERT INTO wordsource (wid, sname) VALUES (?, ?)")) {
+            for (int wid = 1; wid <= words; wid++) {
+                wordInsert.setInt(1, wid);
+                wordInsert.setString(2, LANGUAGE);
+                wordInsert.setString(3, meaning(wid));
+                wordInsert.setString(4, romanization(wid));
+                wordInsert.setString(5, WTYPES[random.nextInt(WTYPES.length)]);
+                wordInsert.addBatch();
+                if (wid % 3 != 0) {
+                    StringBuilder main = new StringBuilder();
+                    int kanji = 1 + random.nextInt(2);
+                    for (int i = 0; i < kanji; i++) {
+                        main.appendCodePoint(0x4E00 + random.nextInt(0x5000));
+                    }
+                    symbolInsert.setInt(1, wid);
+                    symbolInsert.setString(2, main.toString());
+                    symbolInsert.setString(3, reading(wid));
+                    symbolInsert.addBatch();
+                }
+                sourceInsert.setInt(1, wid);
+                sourceInsert.setString(2, "Source " + random.nextInt(SOURCE_COUNT));
+                sourceInsert.addBatch();
+                if (wid % BATCH_SIZE == 0 || wid == words) {
+                    wordInsert.executeBatch();
+                    symbolInsert.executeBatch();
+                    sourceInsert.executeBatch();
+                    connection.commit();
+                }
+            }
+        } finally {
+            connection.setAutoCommit(true);
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import database.LocalWord;
+import database.MyConnection;
+import database.WordCache;
+
+/**
+ * Benchmarks of reading words from the database, against the embedded benchmark database.
+ * The cold benchmarks clear the word cache first, so every call reaches the database.
+ * @author Evan Gunn
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlrt.log.level=WARN")
+public class DataAccessBenchmark {
+    private static final String WORDS_QUERY = "SELECT W.romanization, W.wlanguage, W.meaning, W.wtype, S.main, S.ancillary, N.sname "
+                                            + "FROM word W LEFT JOIN symbols S ON S.wid = W.wid LEFT JOIN wordsource N ON N.wid = W.wid "
+                                            + "WHERE W.wid BETWEEN ? AND ?";
+    private static final int AMOUNT = 10;
+    
+    @Param({"1000", "10000", "100000"})
+    public int words;
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        if (!BenchmarkDatabase.setUp(words)) {
+            throw new IllegalStateException("The benchmark database could not be set up.");
+        }
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        MyConnection.closeConnection();
+    }
+    
+    private int randomWID() {
+        return 1 + ThreadLocalRandom.current().nextInt(words);
+    }
+    
+    @Benchmark
+    public ArrayList<LocalWord> getWords() {
+        int first = 1 + ThreadLocalRandom.current().nextInt(words - AMOUNT + 1);
+        return MyConnection.getInstance().getWords(WORDS_QUERY, AMOUNT, first, first + AMOUNT - 1);
+    }
+    
+    @Benchmark
+    public LocalWord pull() {
+        int wid = randomWID();
+        LocalWord word = new LocalWord(BenchmarkDatabase.romanization(wid), BenchmarkDatabase.LANGUAGE, BenchmarkDatabase.meaning(wid));
+        word.pull();
+        return word;
+    }
+    
+    @Benchmark
+    public LocalWord pullCold() {
+        WordCache.getInstance().clear();
+        return pull();
+    }
+    
+    @Benchmark
+    public List<LocalWord> pullAll() {
+        List<LocalWord> batch = new ArrayList<LocalWord>(AMOUNT);
+        for (int i = 0; i < AMOUNT; i++) {
+            int wid = randomWID();
+            batch.add(new LocalWord(BenchmarkDatabase.romanization(wid), BenchmarkDatabase.LANGUAGE, BenchmarkDatabase.meaning(wid)));
+        }
+        LocalWord.pullAll(batch);
+        return batch;
+    }
+}
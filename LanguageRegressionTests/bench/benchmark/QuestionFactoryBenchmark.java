@@ -0,0 +1,71 @@
+package benchmark;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import database.MyConnection;
+import lrt.MeaningQuestionFactory;
+import lrt.Question;
+import lrt.SymbolsMainQuestionFactory;
+import lrt.TestCriteria;
+
+/**
+ * Benchmarks of generating a test's worth of questions, against the embedded benchmark database.
+ * The candidate wids are loaded by the first call and then reused, as they are during a session.
+ * @author Evan Gunn
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Dlrt.log.level=WARN")
+public class QuestionFactoryBenchmark {
+    @Param({"1000", "10000", "100000"})
+    public int words;
+    
+    @Param({"10"})
+    public int questions;
+    
+    private MeaningQuestionFactory meaningFactory;
+    private SymbolsMainQuestionFactory symbolsFactory;
+    
+    @Setup(Level.Trial)
+    public void setUp() {
+        if (!BenchmarkDatabase.setUp(words)) {
+            throw new IllegalStateException("The benchmark database could not be set up.");
+        }
+        meaningFactory = new MeaningQuestionFactory(new TestCriteria(BenchmarkDatabase.LANGUAGE));
+        symbolsFactory = new SymbolsMainQuestionFactory(new TestCriteria(BenchmarkDatabase.LANGUAGE));
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        MyConnection.closeConnection();
+    }
+    
+    @Benchmark
+    public ArrayList<Question> meaningQuestions() {
+        return meaningFactory.generateQuestions(questions);
+    }
+    
+    @Benchmark
+    public ArrayList<Question> symbolsQuestions() {
+        return symbolsFactory.generateQuestions(questions);
+    }
+}
@@ -0,0 +1,36 @@
+package application;
+
+import java.io.PrintStream;
+
+/**
+ * Writes log records to standard out. Informational messages are printed as they are, as they are
+ * meant for the user, other levels are prefixed with their level.
+ * @author Evan Gunn
+ *
+ */
+public class ConsoleLogSink implements LogSink {
+    private final PrintStream out;
+    
+    public ConsoleLogSink(PrintStream out) {
+        this.out = out;
+    }
+    
+    @Override
+    public void write(LogRecord record) {
+        if (record.getLevel() == Logger.Level.INFO) {
+            out.println(record.getMessage());
+        } else {
+            out.println("[" + record.getLevel() + "] " + record.getMessage());
+        }
+    }
+    
+    @Override
+    public void flush() {
+        out.flush();
+    }
+    
+    @Override
+    public void close() {
+        out.flush();
+    }
+}
@@ -1,13 +1,35 @@
 package application;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Scanner;
 
+import database.BulkDeleter;
+import database.ColumnarVocabularyStore;
+import database.EmbeddedVocabularyStore;
+import database.InsertSession;
 import database.LocalWord;
 import database.MyConnection;
+import database.QueryStats;
+import database.SearchIndex;
+import database.SymbolIndex;
+import database.VocabularyExporter;
+import database.VocabularyFormat;
+import database.VocabularyImporter;
+import database.VocabularySnapshot;
+import database.VocabularyStores;
+import database.WordCache;
+import lrt.CompositeQuestionFactory;
 import lrt.MeaningQuestionFactory;
 import lrt.QuestionFactory;
+import lrt.SpacedRepetitionQuestionFactory;
 import lrt.SymbolsMainQuestionFactory;
 import lrt.Test;
+import lrt.TestCriteria;
 
 /**
  * The Driver class contains the main loop for execution.
@@ -18,6 +40,16 @@ public class Driver {
     private static Scanner scanner;
     // The boolean that controls the input loop for program options.
     private static boolean continueLoop = true;
+    // The database file used when the user does not name one.
+    private static final String DEFAULT_EMBEDDED_PATH = "vocabulary";
+    // The most words listed by a search.
+    private static final int SEARCH_RESULTS = 10;
+    // The most words listed by a lookup.
+    private static final int LOOKUP_RESULTS = 50;
+    // The mix of a mixed test when the user does not choose one.
+    private static final String DEFAULT_MIX = "meaning=1,symbol=1";
+    // The words staged by insert since the stage command, written together by commit. Null when not staging.
+    private static InsertSession insertSession;
     
     /**
      * The execute method contains the stages of logic of the program.
@@ -29,8 +61,11 @@ public class Driver {
         // Set up the scanner that will be used.
         scanner = new Scanner(System.in);
         
-        // Connect to the server.
-        while (!acquiredConnection());
+        // Publish the query stats, connection pool and word cache over JMX.
+        QueryStats.registerMBeans();
+        
+        // Connect to a server, open an embedded database, or study offline from a snapshot.
+        while (!openedStore());
         
         // Serve options to the user.
         optionsLoop();
@@ -39,6 +74,85 @@ public class Driver {
         cleanUp();
     }
     
+    /**
+     * Ask the user where their vocabulary is stored, and open that vocabulary store.
+     * @return Return true if a store was opened, false if the user should be asked again.
+     */
+    private static boolean openedStore() {
+        Logger.getInstance().log("Where is your vocabulary stored? Select your answer from the list below:");
+        Logger.getInstance().log("mysql: A MySQL server, such as one on AWS RDS.");
+        Logger.getInstance().log("embedded: A database file on this computer, created if it does not exist.");
+        Logger.getInstance().log("snapshot: A vocabulary snapshot, to study offline.");
+        String storeType = scanner.nextLine();
+        switch (storeType) {
+            case "mysql":
+                return acquiredConnection() && loadedIntoMemory();
+            case "embedded":
+                return openedEmbedded() && loadedIntoMemory();
+            case "snapshot":
+                return openedSnapshot();
+            default:
+                Logger.getInstance().log("Unknown vocabulary store: " + storeType);
+                return false;
+        }
+    }
+    
+    /**
+     * Offer to keep the whole vocabulary in memory, so tests are generated without querying the database.
+     * Writes still go to the database.
+     * @return Return true unless loading was chosen and failed.
+     */
+    private static boolean loadedIntoMemory() {
+        String answer = "";
+        while (!(answer.matches("y") || answer.matches("n"))) {
+            Logger.getInstance().log("Would you like to keep the whole vocabulary in memory? y/n");
+            answer = scanner.nextLine();
+        }
+        if (answer.matches("n")) return true;
+        ColumnarVocabularyStore columnar = ColumnarVocabularyStore.load(MyConnection.getInstance());
+        if (columnar == null) {
+            Logger.getInstance().log("Could not load the vocabulary into memory.");
+            return false;
+        }
+        VocabularyStores.setActive(columnar);
+        Logger.getInstance().log("Holding " + columnar.size() + " words in memory.");
+        return true;
+    }
+    
+    /**
+     * Open the embedded database, which then takes the place of a MySQL server.
+     * @return Return true if the database was opened.
+     */
+    private static boolean openedEmbedded() {
+        Logger.getInstance().log("Please enter the path of the database file, or leave blank for " + DEFAULT_EMBEDDED_PATH + ":");
+        String embeddedPath = scanner.nextLine();
+        if (embeddedPath.isEmpty()) embeddedPath = DEFAULT_EMBEDDED_PATH;
+        if (!EmbeddedVocabularyStore.open(Paths.get(embeddedPath))) {
+            Logger.getInstance().log("Could not open the embedded database.");
+            return false;
+        }
+        Logger.getInstance().log("Opened the embedded database.");
+        return true;
+    }
+    
+    /**
+     * Study offline from a vocabulary snapshot, in which case no connection is made.
+     * @return Return true if a snapshot was opened.
+     */
+    private static boolean openedSnapshot() {
+        Logger.getInstance().log("Please enter the path of the vocabulary snapshot:");
+        String snapshotPath = scanner.nextLine();
+        try {
+            VocabularySnapshot snapshot = VocabularySnapshot.open(Paths.get(snapshotPath));
+            VocabularyStores.setActive(snapshot);
+            Logger.getInstance().log("Studying offline with " + snapshot.size() + " words.");
+            return true;
+        } catch (IOException e) {
+            Logger.getInstance().log("Could not open snapshot: " + e.getMessage());
+            return false;
+        }
+    }
+    
     /**
      * This function will get userinput, and then attempt to connect to a MySQL server.
      * @return Return true if the connection succeeds, false upon failure to connect.
@@ -84,8 +198,12 @@ public class Driver {
         while (continueLoop) {
             logCommands();
             String input = scanner.nextLine();
+            long commandStart = System.nanoTime();
+            long commandRoundTrips = QueryStats.getInstance().getThreadRoundTrips();
             boolean parsed = parseOptions(input);
-            if (!parsed) {
+            if (parsed) {
+                QueryStats.getInstance().recordCommand(input, commandStart, commandRoundTrips);
+            } else {
                 Logger.getInstance().log("Failed to parse input: "+input);
             }
         }
@@ -99,11 +217,22 @@ public class Driver {
                 + "Please select from the list of commands, and type below:\n"
                 + "quit: Exit the program.\n"
                 + "insert: Begin a word insertion.\n"
+                + "stage: Stage the words of later insertions locally, to be written together by commit.\n"
+                + "commit: Write every staged word in one transaction, skipping words already stored.\n"
+                + "discard: Drop every staged word.\n"
+                + "import: Import a word list from a CSV, TSV or JSON-lines file.\n"
+                + "snapshot: Write or refresh a vocabulary snapshot file, for studying offline.\n"
+                + "export: Export a language, or every word, to a CSV, TSV or JSON-lines file, gzipped if the name ends in .gz.\n"
                 + "delete: Begin a word deletion, must know the wid (word id).\n"
+                + "bulkdelete: Delete a list of wids, every word of a source, or every word of a language.\n"
                 + "create: Begin creation of a test, currently creates symbols test.\n"
                 + "listall: List all the words by a language.\n"
                 + "listhomonyms: List all homonyms for a word's spelling in the database.\n"
                 + "checkfor: Check for a vocabulary word's existence in the database, does not account for homonyms.\n"
+                + "search: Search romanizations, meanings and symbols by prefix, forgiving typos.\n"
+                + "lookup: Find the words using a kanji, or written or read with given symbols.\n"
+                + "serve: Serve tests over HTTP, so a study group can take tests at once.\n"
+                + "stats: Show query latencies, round trips per command, and connection pool and word cache counters.\n"
                 + "********************");
     }
     
@@ -166,8 +295,18 @@ public class Driver {
                     sourceName = scanner.nextLine();
                 }
                 
-                // The MyConnection singleton manages all sql queries/updates
-                boolean success = MyConnection.getInstance().insertWord(word, language, meaning, wtype, main, ancillary, sourceName);
+                if (insertSession != null) {
+                    LocalWord staged = new LocalWord(word, language, meaning, wtype, main, ancillary, sourceName);
+                    if (insertSession.stage(staged)) {
+                        Logger.getInstance().log("Word staged, " + insertSession.size() + " words waiting for commit.");
+                    } else {
+                        Logger.getInstance().log("A word with that meaning and romanization is already staged.");
+                    }
+                    break;
+                }
+                
+                // The active vocabulary store manages all sql queries/updates
+                boolean success = VocabularyStores.getActive().insertWord(word, language, meaning, wtype, main, ancillary, sourceName);
                 
                 if (success) {
                     Logger.getInstance().log("Word successfully inserted into table(s).");
@@ -175,12 +314,83 @@ public class Driver {
                     Logger.getInstance().log("Failed to insert word, all changes rolled back.");
                 }
                 break;
+            case "stage":
+                if (VocabularyStores.getActive().isReadOnly()) {
+                    Logger.getInstance().log("The vocabulary is read only, words cannot be inserted.");
+                } else if (insertSession == null) {
+                    insertSession = new InsertSession(MyConnection.getInstance());
+                    Logger.getInstance().log("Inserted words will be staged until commit.");
+                } else {
+                    Logger.getInstance().log("Already staging, " + insertSession.size() + " words waiting for commit.");
+                }
+                break;
+            case "commit":
+                if (insertSession == null) {
+                    Logger.getInstance().log("No words are staged, use stage first.");
+                    break;
+                }
+                commitStaged();
+                break;
+            case "discard":
+                if (insertSession != null) {
+                    Logger.getInstance().log("Discarded " + insertSession.size() + " staged words.");
+                    insertSession = null;
+                } else {
+                    Logger.getInstance().log("No words are staged.");
+                }
+                break;
+            case "import":
+                Logger.getInstance().log("Please enter the path of the file to import:");
+                String importPath = scanner.nextLine();
+                VocabularyFormat importFormat = VocabularyFormat.fromFileName(importPath);
+                while (importFormat == null) {
+                    Logger.getInstance().log("Please enter the format of the file, csv, tsv or jsonl:");
+                    importFormat = VocabularyFormat.fromName(scanner.nextLine());
+                }
+                new VocabularyImporter(VocabularyImporter.DEFAULT_CHUNK_SIZE).importFile(Paths.get(importPath), importFormat);
+                // Imported words go straight to the database, so a vocabulary held in memory is loaded again.
+                if (VocabularyStores.getActive() instanceof ColumnarVocabularyStore) {
+                    ColumnarVocabularyStore reloaded = ColumnarVocabularyStore.load(MyConnection.getInstance());
+                    if (reloaded != null) VocabularyStores.setActive(reloaded);
+                }
+                break;
+            case "export":
+                Logger.getInstance().log("Please enter the path of the file to export to:");
+                String exportPath = scanner.nextLine();
+                VocabularyFormat exportFormat = VocabularyFormat.fromFileName(exportPath);
+                while (exportFormat == null) {
+                    Logger.getInstance().log("Please enter the format of the file, csv, tsv or jsonl:");
+                    exportFormat = VocabularyFormat.fromName(scanner.nextLine());
+                }
+                Logger.getInstance().log("Please enter the language to export, or leave blank to export every language:");
+                String exportLanguage = scanner.nextLine();
+                new VocabularyExporter().exportFile(Paths.get(exportPath), exportFormat,
+                        exportLanguage.isEmpty() ? null : exportLanguage);
+                break;
+            case "snapshot":
+                Logger.getInstance().log("Please enter the path of the snapshot file, an existing snapshot will be refreshed:");
+                Path snapshotPath = Paths.get(scanner.nextLine());
+                VocabularySnapshot snapshot;
+                if (Files.exists(snapshotPath)) {
+                    try {
+                        snapshot = VocabularySnapshot.open(snapshotPath).refresh();
+                    } catch (IOException e) {
+                        Logger.getInstance().log("Could not open snapshot: " + e.getMessage());
+                        break;
+                    }
+                } else {
+                    snapshot = VocabularySnapshot.write(snapshotPath);
+                }
+                if (snapshot != null) {
+                    Logger.getInstance().log("Snapshot holds " + snapshot.size() + " words, up to wid " + snapshot.getHighWaterMark() + ".");
+                }
+                break;
             case "delete":
                 Logger.getInstance().log("Please enter the language of the word you would like to delete:");
                 String deletionLanguage = scanner.nextLine();
                 Logger.getInstance().log("Please enter the wid of the word you would like to delete:");
                 int deletionWID = scanner.nextInt();
-                boolean deleted = MyConnection.getInstance().removeWord(deletionWID, deletionLanguage);
+                boolean deleted = VocabularyStores.getActive().removeWord(deletionWID, deletionLanguage);
                 if (deleted) {
                     Logger.getInstance().log("Word successfully deleted!");
                 } else {
@@ -189,6 +399,40 @@ public class Driver {
                 // Progress the line, as scanner.nextInt() leaves a blank line behind.
                 scanner.nextLine();
                 break;
+            case "bulkdelete":
+                if (VocabularyStores.getActive().isReadOnly()) {
+                    Logger.getInstance().log("The vocabulary is read only, words cannot be deleted.");
+                    break;
+                }
+                String deleteBy = "";
+                while (!(deleteBy.equals("wids") || deleteBy.equals("source") || deleteBy.equals("language"))) {
+                    Logger.getInstance().log("Would you like to delete by wids, source or language?");
+                    deleteBy = scanner.nextLine().trim();
+                }
+                BulkDeleter deleter = new BulkDeleter(MyConnection.getInstance(), BulkDeleter.DEFAULT_CHUNK_SIZE);
+                BulkDeleter.DeleteReport deleteReport;
+                if (deleteBy.equals("wids")) {
+                    Logger.getInstance().log("Please enter the wids to delete, separated by commas or spaces:");
+                    int[] wids;
+                    try {
+                        wids = Arrays.stream(scanner.nextLine().trim().split("[,\\s]+"))
+                                .filter(wid -> !wid.isEmpty()).mapToInt(Integer::parseInt).toArray();
+                    } catch (NumberFormatException e) {
+                        Logger.getInstance().log("Not a wid: " + e.getMessage());
+                        break;
+                    }
+                    Logger.getInstance().log("Please enter the language of the words, or leave blank for any language:");
+                    String widLanguage = scanner.nextLine();
+                    deleteReport = deleter.deleteWIDs(wids, widLanguage.isEmpty() ? null : widLanguage);
+                } else if (deleteBy.equals("source")) {
+                    Logger.getInstance().log("Please enter the source whose words you would like to delete:");
+                    deleteReport = deleter.deleteSource(scanner.nextLine());
+                } else {
+                    Logger.getInstance().log("Please enter the language whose words you would like to delete:");
+                    deleteReport = deleter.deleteLanguage(scanner.nextLine());
+                }
+                Logger.getInstance().log(deleteReport == null ? "Deletion failed." : deleteReport.toString());
+                break;
             case "create":
                 Logger.getInstance().log("Please enter the language of the test you would like to create:");
                 String testLanguage = scanner.nextLine();
@@ -196,11 +440,13 @@ public class Driver {
                 Logger.getInstance().log("What type of test would you like to create? Select your answer from the list below:");
                 Logger.getInstance().log("meaning: Type in the meaning of a romanized word.");
                 Logger.getInstance().log("symbol: Type in the reading of a word's symbol(s).");
+                Logger.getInstance().log("review: Review the words that are due, with spaced repetition.");
+                Logger.getInstance().log("mixed: Mix meaning and symbol questions in chosen shares.");
                 Logger.getInstance().log("********************");
                 String testType = scanner.nextLine();
                 
-                // Create a query modification based on user input
-                String myModification = "";
+                // Create the test criteria based on user input
+                TestCriteria criteria = new TestCriteria(testLanguage);
                 answer = "";
                 while (!(answer.matches("y") || answer.matches("n"))) {
                     Logger.getInstance().log("Would you like to specify a source from which questions will be generated? y/n");
@@ -208,7 +454,7 @@ public class Driver {
                 }
                 if (answer.matches("y")) {
                     Logger.getInstance().log("Please specify the source:");
-                    myModification = " AND W.wid = N.wid AND N.sname = '" + scanner.nextLine() + "' ";
+                    criteria.setSource(scanner.nextLine());
                 }
                 
                 answer = "";
@@ -218,35 +464,76 @@ public class Driver {
                 }
                 if (answer.matches("y")) {
                     Logger.getInstance().log("Please specify the word type (noun, adjective, etc...):");
-                    myModification = myModification + " AND W.wtype = '" + scanner.nextLine() + "' ";
+                    criteria.setWType(scanner.nextLine());
                 }
                 
                 // Create the base question factory, depending on user input
                 QuestionFactory myFactory;
                 if (testType.matches("meaning")) {
-                    myFactory = new MeaningQuestionFactory(myModification);
+                    myFactory = new MeaningQuestionFactory(criteria);
                 } else if (testType.matches("symbol")) {
-                    myFactory = new SymbolsMainQuestionFactory(myModification);
+                    myFactory = new SymbolsMainQuestionFactory(criteria);
+                } else if (testType.matches("review")) {
+                    answer = "";
+                    while (!(answer.matches("meaning") || answer.matches("symbol"))) {
+                        Logger.getInstance().log("Would you like to review meanings or symbols? meaning/symbol");
+                        answer = scanner.nextLine();
+                    }
+                    QuestionFactory style = answer.matches("meaning") ? new MeaningQuestionFactory(criteria) : new SymbolsMainQuestionFactory(criteria);
+                    SpacedRepetitionQuestionFactory reviewFactory = new SpacedRepetitionQuestionFactory(style);
+                    Logger.getInstance().log(reviewFactory.countDue() + " words are due for review.");
+                    myFactory = reviewFactory;
+                } else if (testType.matches("mixed")) {
+                    Logger.getInstance().log("Please enter the mix of question types, such as meaning=2,symbol=1, or leave blank for an even mix:");
+                    String mix = scanner.nextLine().trim();
+                    try {
+                        myFactory = CompositeQuestionFactory.parse(mix.isEmpty() ? DEFAULT_MIX : mix, criteria);
+                    } catch (IllegalArgumentException e) {
+                        Logger.getInstance().log("Failed to create test, " + e.getMessage());
+                        break;
+                    }
                 } else {
                     Logger.getInstance().log("Failed to create test, type of test not valid: " + testType);
                     break;
                 }
                 
+                // Ask how long the test should be, an endless drill runs until the user quits.
+                Logger.getInstance().log("How many questions would you like? Enter 0 for an endless drill, or leave blank for 10:");
+                int questionCount = 10;
+                String countAnswer = scanner.nextLine().trim();
+                if (!countAnswer.isEmpty()) {
+                    try {
+                        questionCount = Integer.parseInt(countAnswer);
+                    } catch (NumberFormatException e) {
+                        Logger.getInstance().log("Not a number, using 10 questions.");
+                    }
+                }
+                
                 // Create the test using the question factory.
-                Test myTest = new Test(10, testLanguage, myFactory);
+                Test myTest = new Test(questionCount, myFactory);
                 myTest.administer(scanner);
                 break;
             case "listall":
                 Logger.getInstance().log("Please enter the language you would like to list:");
                 String listLang = scanner.nextLine();
-                MyConnection.getInstance().listLanguageWords(listLang);
+                int[] languageWIDs = VocabularyStores.getActive().findByLanguage(listLang);
+                if (languageWIDs == null) {
+                    Logger.getInstance().log("Failed to list the language.");
+                    break;
+                }
+                listWords(VocabularyStores.getActive().hydrateWords(languageWIDs));
                 break;
             case "listhomonyms":
                 Logger.getInstance().log("Please enter the language of the word:");
                 String homonymLang = scanner.nextLine();
                 Logger.getInstance().log("Please enter the word:");
                 String homonym = scanner.nextLine();
-                MyConnection.getInstance().listHomonyms(homonym, homonymLang);
+                int[] homonymWIDs = VocabularyStores.getActive().findByRomanization(homonym, homonymLang);
+                if (homonymWIDs == null) {
+                    Logger.getInstance().log("Failed to look up the word.");
+                    break;
+                }
+                listWords(VocabularyStores.getActive().hydrateWords(homonymWIDs));
                 break;
             case "checkfor":
                 Logger.getInstance().log("Please enter the romanization of the word you would like to check for:");
@@ -272,16 +559,143 @@ public class Driver {
                     Logger.getInstance().log(myWord.toString());
                 }
                 break;
+            case "search":
+                Logger.getInstance().log("Please enter the text to search for:");
+                String searchText = scanner.nextLine();
+                Logger.getInstance().log("Please enter the language to search, or leave blank to search every language:");
+                String searchLanguage = scanner.nextLine();
+                long searchStart = System.nanoTime();
+                List<SearchIndex.Match> found = SearchIndex.getInstance().search(searchText,
+                        searchLanguage.isEmpty() ? null : searchLanguage, SEARCH_RESULTS);
+                long searchMicros = (System.nanoTime() - searchStart) / 1000;
+                if (found == null) {
+                    Logger.getInstance().log("Could not build the search index.");
+                } else if (found.isEmpty()) {
+                    Logger.getInstance().log("No words found.");
+                } else {
+                    for (SearchIndex.Match match : found) {
+                        Logger.getInstance().log(match.toString());
+                    }
+                    Logger.getInstance().log("Found " + found.size() + " words in " + searchMicros + " microseconds.");
+                }
+                break;
+            case "lookup":
+                Logger.getInstance().log("Look up by character, symbols or reading?");
+                String lookupType = scanner.nextLine();
+                int[] lookupWIDs;
+                switch (lookupType) {
+                    case "character":
+                        Logger.getInstance().log("Please enter one or more characters, words using all of them are found:");
+                        lookupWIDs = SymbolIndex.getInstance().withCharacters(scanner.nextLine());
+                        break;
+                    case "symbols":
+                        Logger.getInstance().log("Please enter the main symbols:");
+                        lookupWIDs = VocabularyStores.getActive().findBySymbols(scanner.nextLine(), null);
+                        break;
+                    case "reading":
+                        Logger.getInstance().log("Please enter the ancillary symbols:");
+                        lookupWIDs = VocabularyStores.getActive().findBySymbols(null, scanner.nextLine());
+                        break;
+                    default:
+                        Logger.getInstance().log("Unknown lookup: " + lookupType);
+                        return true;
+                }
+                if (lookupWIDs == null) {
+                    Logger.getInstance().log("Lookup failed.");
+                    break;
+                }
+                Logger.getInstance().log("Found " + lookupWIDs.length + " words.");
+                int[] shownWIDs = Arrays.copyOf(lookupWIDs, Math.min(lookupWIDs.length, LOOKUP_RESULTS));
+                for (LocalWord lookupWord : VocabularyStores.getActive().hydrateWords(shownWIDs)) {
+                    Logger.getInstance().log(lookupWord.toString());
+                }
+                if (lookupWIDs.length > shownWIDs.length) {
+                    Logger.getInstance().log("Showing the first " + shownWIDs.length + ".");
+                }
+                break;
+            case "serve":
+                Logger.getInstance().log("Please enter the port to serve tests on, or leave blank for " + TestServer.DEFAULT_PORT + ":");
+                int port = TestServer.DEFAULT_PORT;
+                String portAnswer = scanner.nextLine().trim();
+                if (!portAnswer.isEmpty()) {
+                    try {
+                        port = Integer.parseInt(portAnswer);
+                    } catch (NumberFormatException e) {
+                        Logger.getInstance().log("Not a number, using port " + port + ".");
+                    }
+                }
+                TestServer server = TestServer.start(port);
+                if (server == null) {
+                    Logger.getInstance().log("Could not start the server.");
+                    break;
+                }
+                Logger.getInstance().log("Serving tests on port " + port + ". Press enter to stop.");
+                scanner.nextLine();
+                Logger.getInstance().log("Stopping the server, ending " + server.getSessionCount() + " sessions.");
+                server.stop();
+                break;
+            case "stats":
+                QueryStats stats = QueryStats.getInstance();
+                Logger.getInstance().log(stats.toString());
+                Logger.getInstance().log("Commands:");
+                for (QueryStats.Timer timer : stats.getCommandTimers()) {
+                    Logger.getInstance().log("  " + timer);
+                }
+                Logger.getInstance().log("Methods:");
+                for (QueryStats.Timer timer : stats.getOperationTimers()) {
+                    Logger.getInstance().log("  " + timer);
+                }
+                Logger.getInstance().log("Queries:");
+                for (QueryStats.Timer timer : stats.getQueryTimers()) {
+                    Logger.getInstance().log("  " + timer);
+                }
+                if (MyConnection.getInstance().getPool() != null) {
+                    Logger.getInstance().log("Connection Pool: " + MyConnection.getInstance().getPool());
+                }
+                Logger.getInstance().log("Word Cache: " + WordCache.getInstance());
+                break;
             default:
                 return false;
         }
         return true;
     }
     
+    /**
+     * Log every word of a listing.
+     */
+    private static void listWords(List<LocalWord> words) {
+        Logger.getInstance().log("Listing:");
+        for (LocalWord word : words) {
+            Logger.getInstance().log(word.toString());
+        }
+    }
+    
+    /**
+     * Write the staged words, and stop staging if they were committed.
+     */
+    private static void commitStaged() {
+        InsertSession.CommitReport report = insertSession.commit();
+        Logger.getInstance().log(report.toString());
+        for (LocalWord duplicate : report.getAlreadyStored()) {
+            Logger.getInstance().log("Already stored: " + duplicate.getRomanization() + " (" + duplicate.getMeaning() + ")");
+        }
+        for (String failure : report.getFailures()) {
+            Logger.getInstance().log("Failed: " + failure);
+        }
+        if (report.isCommitted()) {
+            insertSession = null;
+        } else {
+            Logger.getInstance().log(insertSession.size() + " words are still staged.");
+        }
+    }
+    
     /**
      * The clean up function.
      */
     private static void cleanUp() {
+        // Write any staged words before the connection is closed.
+        if (insertSession != null && insertSession.size() > 0) commitStaged();
+        
         // End the connection to the database.
         MyConnection.closeConnection();
         
@@ -290,5 +704,8 @@ public class Driver {
         
         // Say goodbye to the user.
         Logger.getInstance().log("Good Bye!");
+        
+        // Write any queued messages and close the log file.
+        Logger.getInstance().shutdown();
     }
 }
@@ -0,0 +1,36 @@
+package application;
+
+/**
+ * A single message passed from a logging thread to the logger's sinks.
+ * @author Evan Gunn
+ *
+ */
+public class LogRecord {
+    private final Logger.Level level;
+    private final long timeMillis;
+    private final String threadName;
+    private final String message;
+    
+    public LogRecord(Logger.Level level, long timeMillis, String threadName, String message) {
+        this.level = level;
+        this.timeMillis = timeMillis;
+        this.threadName = threadName;
+        this.message = message;
+    }
+    
+    public Logger.Level getLevel() {
+        return level;
+    }
+    
+    public long getTimeMillis() {
+        return timeMillis;
+    }
+    
+    public String getThreadName() {
+        return threadName;
+    }
+    
+    public String getMessage() {
+        return message;
+    }
+}
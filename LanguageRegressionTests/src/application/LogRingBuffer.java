@@ -0,0 +1,75 @@
+package application;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A bounded, lock-free ring buffer of log records. Any number of threads may offer records at once,
+ * claiming slots with a compare-and-set, while a single consumer at a time polls them.
+ * Each slot carries a sequence number telling producers and the consumer whose turn the slot is.
+ * @author Evan Gunn
+ *
+ */
+class LogRingBuffer {
+    private final LogRecord[] records;
+    private final AtomicLongArray sequences;
+    private final int mask;
+    private final AtomicLong head = new AtomicLong();
+    // Only touched by the consumer, which the Logger serializes.
+    private long tail = 0;
+    
+    /**
+     * @param capacity The amount of slots, rounded up to a power of two.
+     */
+    LogRingBuffer(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity - 1)) << 1;
+        records = new LogRecord[size];
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        mask = size - 1;
+    }
+    
+    /**
+     * Add a record, without blocking.
+     * @return False if the buffer is full.
+     */
+    boolean offer(LogRecord record) {
+        long position = head.get();
+        while (true) {
+            int index = (int) position & mask;
+            long difference = sequences.get(index) - position;
+            if (difference == 0) {
+                if (head.compareAndSet(position, position + 1)) {
+                    records[index] = record;
+                    // Publishes the record to the consumer.
+                    sequences.lazySet(index, position + 1);
+                    return true;
+                }
+                position = head.get();
+            } else if (difference < 0) {
+                return false;
+            } else {
+                position = head.get();
+            }
+        }
+    }
+    
+    /**
+     * Take the oldest record. Must only be called by one thread at a time.
+     * @return The record, or null if the buffer is empty.
+     */
+    LogRecord poll() {
+        int index = (int) tail & mask;
+        if (sequences.get(index) != tail + 1) {
+            return null;
+        }
+        LogRecord record = records[index];
+        records[index] = null;
+        // Hands the slot back to producers for its next lap.
+        sequences.lazySet(index, tail + records.length);
+        tail++;
+        return record;
+    }
+}
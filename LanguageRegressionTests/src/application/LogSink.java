@@ -0,0 +1,24 @@
+package application;
+
+/**
+ * A destination for log records. Sinks are only ever called by one thread at a time.
+ * @author Evan Gunn
+ *
+ */
+public interface LogSink {
+    /**
+     * Write a record, the write may be buffered until flush() is called.
+     * @param record The record to write.
+     */
+    void write(LogRecord record);
+    
+    /**
+     * Make every record written so far visible.
+     */
+    void flush();
+    
+    /**
+     * Flush and release the sink.
+     */
+    void close();
+}
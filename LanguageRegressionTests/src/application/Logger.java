@@ -1,28 +1,244 @@
 package application;
 
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
 /**
  * The logger singleton class.
+ * Leveled messages are placed on a lock-free ring buffer and written to the sinks by a background
+ * thread, so logging never waits on the console or a file. Messages may be passed as suppliers,
+ * which are only called when their level is enabled, so disabled debug tracing costs next to nothing.
+ * log() is for messages the user must see right away, such as prompts: it writes any queued messages
+ * first, then writes the message and flushes before returning.
+ * 
+ * The level is read from the lrt.log.level system property, INFO by default, and messages are also
+ * written to a rolling file if the lrt.log.file property names one.
  * @author Evan Gunn
  *
  */
 public class Logger {
-    private static Logger logger = null;
+    /**
+     * The levels of messages, from least to most severe.
+     */
+    public enum Level { DEBUG, INFO, WARN, ERROR }
+    
+    private static final int RING_CAPACITY = 8192;
+    private static final long MAX_LOG_FILE_BYTES = 10 * 1024 * 1024;
+    private static final int MAX_LOG_FILES = 5;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(50);
+    
+    private static volatile Logger logger = null;
+    
+    private volatile Level level = Level.INFO;
+    private final LogRingBuffer ring = new LogRingBuffer(RING_CAPACITY);
+    private final List<LogSink> sinks = new CopyOnWriteArrayList<LogSink>();
+    // Serializes draining the ring, which has a single consumer, and writing to the sinks.
+    private final Object drainLock = new Object();
+    private final Thread writer;
+    private volatile boolean running = true;
     
     /**
      * @return The single instance of logger.
      */
     public static Logger getInstance() {
-        if (logger == null) {
-            logger = new Logger();
+        Logger instance = logger;
+        if (instance == null) {
+            synchronized (Logger.class) {
+                if (logger == null) {
+                    logger = new Logger();
+                }
+                instance = logger;
+            }
+        }
+        return instance;
+    }
+    
+    private Logger() {
+        sinks.add(new ConsoleLogSink(System.out));
+        String configuredLevel = System.getProperty("lrt.log.level");
+        if (configuredLevel != null) {
+            try {
+                level = Level.valueOf(configuredLevel.trim().toUpperCase());
+            } catch (IllegalArgumentException e) {
+                System.err.println("Unknown log level " + configuredLevel + ", using " + level + ".");
+            }
         }
-        return logger;
+        String logFile = System.getProperty("lrt.log.file");
+        if (logFile != null && !logFile.isEmpty()) {
+            try {
+                sinks.add(new RollingFileLogSink(Paths.get(logFile), MAX_LOG_FILE_BYTES, MAX_LOG_FILES));
+            } catch (IOException e) {
+                System.err.println("Could not open log file " + logFile + ": " + e.getMessage());
+            }
+        }
+        
+        writer = new Thread(this::writeLoop, "log-writer");
+        writer.setDaemon(true);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::flush, "log-flush"));
     }
     
     /**
      * This method decouples the message from the method of logging.
+     * The message is meant for the user, it is written after any queued messages, and flushed before returning.
      * @param message The message to be logged.
      */
     public void log(String message) {
-        System.out.println(message);
+        LogRecord record = new LogRecord(Level.INFO, System.currentTimeMillis(), Thread.currentThread().getName(), message);
+        synchronized (drainLock) {
+            drain();
+            for (LogSink sink : sinks) {
+                sink.write(record);
+                sink.flush();
+            }
+        }
+    }
+    
+    /**
+     * @return True if messages of a level are written.
+     */
+    public boolean isEnabled(Level messageLevel) {
+        return messageLevel.compareTo(level) >= 0;
+    }
+    
+    /**
+     * @return True if debug messages are written. Checked first where building even the supplier of a message costs.
+     */
+    public boolean isDebugEnabled() {
+        return isEnabled(Level.DEBUG);
+    }
+    
+    /**
+     * Set the lowest level of messages that are written.
+     */
+    public void setLevel(Level level) {
+        this.level = level;
+    }
+    
+    /**
+     * Add a destination for messages, such as a RollingFileLogSink.
+     */
+    public void addSink(LogSink sink) {
+        sinks.add(sink);
+    }
+    
+    /**
+     * Queue a message for the background writer, if its level is enabled.
+     * @param messageLevel The level of the message.
+     * @param message Supplies the message, only called if the level is enabled.
+     */
+    public void log(Level messageLevel, Supplier<String> message) {
+        if (!isEnabled(messageLevel)) return;
+        enqueue(messageLevel, message.get());
+    }
+    
+    /**
+     * Queue a message for the background writer, if its level is enabled.
+     */
+    public void log(Level messageLevel, String message) {
+        if (!isEnabled(messageLevel)) return;
+        enqueue(messageLevel, message);
+    }
+    
+    public void debug(Supplier<String> message) {
+        log(Level.DEBUG, message);
+    }
+    
+    public void info(Supplier<String> message) {
+        log(Level.INFO, message);
+    }
+    
+    public void info(String message) {
+        log(Level.INFO, message);
+    }
+    
+    public void warn(Supplier<String> message) {
+        log(Level.WARN, message);
+    }
+    
+    public void warn(String message) {
+        log(Level.WARN, message);
+    }
+    
+    public void error(Supplier<String> message) {
+        log(Level.ERROR, message);
+    }
+    
+    public void error(String message) {
+        log(Level.ERROR, message);
+    }
+    
+    private void enqueue(Level messageLevel, String message) {
+        LogRecord record = new LogRecord(messageLevel, System.currentTimeMillis(), Thread.currentThread().getName(), message);
+        while (!ring.offer(record)) {
+            // The buffer is full, so the logging thread helps drain it rather than dropping the message.
+            synchronized (drainLock) {
+                drain();
+            }
+        }
+        LockSupport.unpark(writer);
+    }
+    
+    /**
+     * Write every queued message to the sinks. Callers must hold drainLock.
+     * @return True if any message was written.
+     */
+    private boolean drain() {
+        boolean wrote = false;
+        LogRecord record;
+        while ((record = ring.poll()) != null) {
+            for (LogSink sink : sinks) {
+                sink.write(record);
+            }
+            wrote = true;
+        }
+        return wrote;
+    }
+    
+    /**
+     * The background writer's loop: drain, flush, and park until more messages arrive.
+     */
+    private void writeLoop() {
+        while (running) {
+            synchronized (drainLock) {
+                if (drain()) {
+                    for (LogSink sink : sinks) {
+                        sink.flush();
+                    }
+                }
+            }
+            LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+        }
+    }
+    
+    /**
+     * Write and flush every queued message before returning.
+     */
+    public void flush() {
+        synchronized (drainLock) {
+            drain();
+            for (LogSink sink : sinks) {
+                sink.flush();
+            }
+        }
+    }
+    
+    /**
+     * Flush every queued message, stop the background writer, and close the sinks.
+     */
+    public void shutdown() {
+        running = false;
+        LockSupport.unpark(writer);
+        synchronized (drainLock) {
+            drain();
+            for (LogSink sink : sinks) {
+                sink.close();
+            }
+        }
     }
 }
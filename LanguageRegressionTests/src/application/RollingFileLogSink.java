@@ -0,0 +1,124 @@
+package application;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * Writes log records to a file, with a timestamp, level and thread name on every line.
+ * When the file grows past its size limit it is rolled over: log becomes log.1, log.1 becomes log.2,
+ * and so on, with the oldest file deleted once there are maxFiles of them.
+ * @author Evan Gunn
+ *
+ */
+public class RollingFileLogSink implements LogSink {
+    private final Path path;
+    private final long maxBytes;
+    private final int maxFiles;
+    private final SimpleDateFormat timeFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS");
+    private final int separatorBytes = System.lineSeparator().length();
+    private BufferedWriter writer;
+    private long written;
+    
+    /**
+     * @param path The file to log to, appended to if it exists.
+     * @param maxBytes The size at which the file is rolled over.
+     * @param maxFiles The amount of files kept, including the current one.
+     * @throws IOException If the file cannot be opened.
+     */
+    public RollingFileLogSink(Path path, long maxBytes, int maxFiles) throws IOException {
+        this.path = path;
+        this.maxBytes = maxBytes;
+        this.maxFiles = Math.max(1, maxFiles);
+        open();
+    }
+    
+    private void open() throws IOException {
+        writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        written = Files.size(path);
+    }
+    
+    @Override
+    public void write(LogRecord record) {
+        if (writer == null) return;
+        String line = timeFormat.format(new Date(record.getTimeMillis())) + " " + record.getLevel()
+                    + " [" + record.getThreadName() + "] " + record.getMessage();
+        try {
+            writer.write(line);
+            writer.newLine();
+            written += utf8Length(line) + separatorBytes;
+            if (written >= maxBytes) {
+                roll();
+            }
+        } catch (IOException e) {
+            System.err.println("Failed to write log file " + path + ": " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Close the current file, shift the older files up by one, and start a new file.
+     */
+    private void roll() throws IOException {
+        writer.close();
+        writer = null;
+        Files.deleteIfExists(rolled(maxFiles - 1));
+        for (int i = maxFiles - 2; i >= 1; i--) {
+            if (Files.exists(rolled(i))) {
+                Files.move(rolled(i), rolled(i + 1), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        if (maxFiles > 1) {
+            Files.move(path, rolled(1), StandardCopyOption.REPLACE_EXISTING);
+        } else {
+            Files.delete(path);
+        }
+        open();
+    }
+    
+    /**
+     * Count the bytes a string takes in UTF-8 without encoding it. A surrogate pair is 4 bytes, 2 per char.
+     */
+    private static long utf8Length(String line) {
+        long bytes = 0;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c < 0x80) bytes += 1;
+            else if (c < 0x800) bytes += 2;
+            else if (Character.isSurrogate(c)) bytes += 2;
+            else bytes += 3;
+        }
+        return bytes;
+    }
+    
+    private Path rolled(int index) {
+        return Paths.get(path.toString() + "." + index);
+    }
+    
+    @Override
+    public void flush() {
+        if (writer == null) return;
+        try {
+            writer.flush();
+        } catch (IOException e) {
+            System.err.println("Failed to flush log file " + path + ": " + e.getMessage());
+        }
+    }
+    
+    @Override
+    public void close() {
+        if (writer == null) return;
+        try {
+            writer.close();
+        } catch (IOException e) {
+            System.err.println("Failed to close log file " + path + ": " + e.getMessage());
+        }
+        writer = null;
+    }
+}
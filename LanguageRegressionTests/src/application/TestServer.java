@@ -0,0 +1,316 @@
+package application;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import database.QueryStats;
+import database.VocabularyFormat;
+import lrt.CompositeQuestionFactory;
+import lrt.MeaningQuestionFactory;
+import lrt.Question;
+import lrt.QuestionFactory;
+import lrt.SpacedRepetitionQuestionFactory;
+import lrt.SymbolsMainQuestionFactory;
+import lrt.TestCriteria;
+import lrt.TestSession;
+
+/**
+ * The test server lets a whole study group take tests from one process, through a small HTTP API that reads
+ * and writes flat JSON objects:
+ *
+ * POST /tests with language, type (meaning, symbol, review or mixed), and optionally source, wtype, count,
+ * for a review, style (meaning or symbol), and for a mixed test, mix (such as meaning=2,symbol=1),
+ * creates a session and returns its id.
+ * GET /tests/{id} returns the question waiting for an answer, or the score once the test has ended.
+ * POST /tests/{id}/answer with answer grades the waiting question.
+ * DELETE /tests/{id} ends the session and returns the score.
+ * GET /stats returns the query stats and the amount of sessions.
+ *
+ * Every request is handled on its own virtual thread, and every session generates its questions on one more,
+ * where the runtime has virtual threads. Sessions share the active vocabulary store, its connection pool and
+ * caches, and keep their own state in a TestSession. Sessions that go unused are ended after a timeout.
+ * Only QuestionStream.MAX_GENERATING queries fetch questions at once, so many sessions opened together
+ * queue for their first question rather than time out waiting on the connection pool.
+ * @author Evan Gunn
+ *
+ */
+public class TestServer {
+    public static final int DEFAULT_PORT = 8080;
+    public static final int MAX_SESSIONS = 1000;
+    public static final long SESSION_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(30);
+    // Connections the operating system queues while every handler is busy.
+    private static final int BACKLOG = 1024;
+    // The largest request body read, every request is a small object.
+    private static final int MAX_BODY_BYTES = 64 * 1024;
+    private static final int DEFAULT_QUESTION_COUNT = 10;
+    private static final String DEFAULT_MIX = "meaning=1,symbol=1";
+    private static final String NO_DELAY_PROPERTY = "sun.net.httpserver.nodelay";
+    
+    private final HttpServer server;
+    private final ExecutorService handlers;
+    private final ScheduledExecutorService sweeper;
+    private final ConcurrentHashMap<String, TestSession> sessions = new ConcurrentHashMap<String, TestSession>();
+    
+    private TestServer(HttpServer server) {
+        this.server = server;
+        this.handlers = VirtualThreads.newPerTaskExecutor("test-server");
+        this.sweeper = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "test-session-sweeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.createContext("/tests", this::handle);
+        server.createContext("/stats", this::handle);
+        server.setExecutor(handlers);
+    }
+    
+    /**
+     * Start serving tests.
+     * @param port The port to listen on, on every interface.
+     * @return The running server, or null if it could not listen on the port.
+     */
+    public static TestServer start(int port) {
+        // The server writes a response's headers and body separately, so with Nagle's algorithm on, every response
+        // waits for the client's delayed acknowledgement, tens of milliseconds. Read once, when the first server starts.
+        if (System.getProperty(NO_DELAY_PROPERTY) == null) System.setProperty(NO_DELAY_PROPERTY, "true");
+        HttpServer httpServer;
+        try {
+            httpServer = HttpServer.create(new InetSocketAddress(port), BACKLOG);
+        } catch (IOException e) {
+            Logger.getInstance().error("Could not listen on port " + port + ": " + e.getMessage());
+            return null;
+        }
+        TestServer testServer = new TestServer(httpServer);
+        testServer.sweeper.scheduleWithFixedDelay(testServer::endIdleSessions, 1, 1, TimeUnit.MINUTES);
+        httpServer.start();
+        Logger.getInstance().info("Serving tests on port " + port + ", with "
+                + (VirtualThreads.isAvailable() ? "virtual" : "platform") + " threads.");
+        return testServer;
+    }
+    
+    /**
+     * Stop serving, waiting up to a second for requests in progress, then end every session.
+     */
+    public void stop() {
+        server.stop(1);
+        sweeper.shutdownNow();
+        handlers.shutdown();
+        for (TestSession session : sessions.values()) {
+            session.close();
+        }
+        sessions.clear();
+    }
+    
+    /**
+     * @return The amount of sessions open.
+     */
+    public int getSessionCount() {
+        return sessions.size();
+    }
+    
+    /**
+     * Route a request by its method and path.
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            String method = exchange.getRequestMethod();
+            String[] path = exchange.getRequestURI().getPath().split("/");
+            // The path /tests/{id}/answer splits into "", "tests", id and "answer".
+            if (path.length == 2 && path[1].equals("stats") && method.equals("GET")) {
+                respond(exchange, 200, json("statements", QueryStats.getInstance().getStatementCount(),
+                        "roundTrips", QueryStats.getInstance().getRoundTripCount(),
+                        "commits", QueryStats.getInstance().getCommitCount(),
+                        "rollbacks", QueryStats.getInstance().getRollbackCount(),
+                        "sessions", sessions.size()));
+            } else if (path.length == 2 && path[1].equals("tests") && method.equals("POST")) {
+                createSession(exchange);
+            } else if (path.length == 3 && path[1].equals("tests") && method.equals("GET")) {
+                TestSession session = findSession(exchange, path[2]);
+                if (session != null) showQuestion(exchange, session);
+            } else if (path.length == 4 && path[1].equals("tests") && path[3].equals("answer") && method.equals("POST")) {
+                TestSession session = findSession(exchange, path[2]);
+                if (session != null) answerQuestion(exchange, session);
+            } else if (path.length == 3 && path[1].equals("tests") && method.equals("DELETE")) {
+                TestSession session = sessions.remove(path[2]);
+                if (session == null) {
+                    respond(exchange, 404, error("No session " + path[2] + "."));
+                } else {
+                    session.close();
+                    respond(exchange, 200, score(session));
+                }
+            } else {
+                respond(exchange, 404, error("No such resource: " + method + " " + exchange.getRequestURI().getPath()));
+            }
+        } catch (IllegalArgumentException e) {
+            respond(exchange, 400, error(e.getMessage()));
+        } catch (RuntimeException e) {
+            Logger.getInstance().error("Failed to serve " + exchange.getRequestURI() + ": " + e);
+            respond(exchange, 500, error("Internal error."));
+        } finally {
+            exchange.close();
+        }
+    }
+    
+    private void createSession(HttpExchange exchange) throws IOException {
+        if (sessions.size() >= MAX_SESSIONS) {
+            respond(exchange, 503, error("The server is holding its most sessions, " + MAX_SESSIONS + "."));
+            return;
+        }
+        Map<String, String> request = VocabularyFormat.parseJSONObject(readBody(exchange));
+        String language = request.get("language");
+        if (language == null || language.isEmpty()) throw new IllegalArgumentException("A language is required.");
+        TestCriteria criteria = new TestCriteria(language)
+                .setSource(request.get("source"))
+                .setWType(request.get("wtype"));
+        QuestionFactory factory = createFactory(request, criteria);
+        int questionCount = DEFAULT_QUESTION_COUNT;
+        if (request.get("count") != null) {
+            try {
+                questionCount = Integer.parseInt(request.get("count"));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("The count is not a number: " + request.get("count"));
+            }
+        }
+        String id = UUID.randomUUID().toString();
+        TestSession session = new TestSession(id, questionCount, factory);
+        sessions.put(id, session);
+        Logger.getInstance().debug(() -> "Created session " + id + ", " + criteria + ".");
+        respond(exchange, 201, json("session", id, "endless", session.isEndless()));
+    }
+    
+    /**
+     * Create the question factory of a test type, as the create command does.
+     * @throws IllegalArgumentException If the type or review style is not known.
+     */
+    private static QuestionFactory createFactory(Map<String, String> request, TestCriteria criteria) {
+        String type = request.get("type"), style = request.get("style");
+        if ("meaning".equals(type)) return new MeaningQuestionFactory(criteria);
+        if ("symbol".equals(type)) return new SymbolsMainQuestionFactory(criteria);
+        if ("review".equals(type)) {
+            if (style == null || "meaning".equals(style)) {
+                return new SpacedRepetitionQuestionFactory(new MeaningQuestionFactory(criteria));
+            }
+            if ("symbol".equals(style)) {
+                return new SpacedRepetitionQuestionFactory(new SymbolsMainQuestionFactory(criteria));
+            }
+            throw new IllegalArgumentException("Unknown review style: " + style);
+        }
+        if ("mixed".equals(type)) {
+            String mix = request.get("mix");
+            return CompositeQuestionFactory.parse(mix == null ? DEFAULT_MIX : mix, criteria);
+        }
+        throw new IllegalArgumentException("Unknown test type: " + type);
+    }
+    
+    private void showQuestion(HttpExchange exchange, TestSession session) throws IOException {
+        Question question = session.currentQuestion();
+        if (question == null) {
+            respond(exchange, 200, score(session));
+        } else {
+            respond(exchange, 200, json("question", question.getQuestion(), "number", session.getShown()));
+        }
+    }
+    
+    private void answerQuestion(HttpExchange exchange, TestSession session) throws IOException {
+        String answer = VocabularyFormat.parseJSONObject(readBody(exchange)).get("answer");
+        if (answer == null) throw new IllegalArgumentException("An answer is required.");
+        Question question = session.answer(answer);
+        if (question == null) {
+            respond(exchange, 409, error("No question is waiting for an answer, get the next question first."));
+            return;
+        }
+        respond(exchange, 200, json("correct", question.correctAnswer(), "answer", question.getAnswer(),
+                "asked", session.getAsked(), "score", session.getCorrect()));
+    }
+    
+    /**
+     * @return The open session, or null after responding with a 404 if there is none.
+     */
+    private TestSession findSession(HttpExchange exchange, String id) throws IOException {
+        TestSession session = sessions.get(id);
+        if (session == null) respond(exchange, 404, error("No session " + id + "."));
+        return session;
+    }
+    
+    /**
+     * End the sessions that have not been used for longer than the timeout.
+     */
+    private void endIdleSessions() {
+        long cutoff = System.currentTimeMillis() - SESSION_TIMEOUT_MILLIS;
+        Iterator<TestSession> open = sessions.values().iterator();
+        while (open.hasNext()) {
+            TestSession session = open.next();
+            if (session.getLastUsedMillis() < cutoff) {
+                open.remove();
+                session.close();
+                Logger.getInstance().debug(() -> "Ended idle session " + session.getId() + ".");
+            }
+        }
+    }
+    
+    private static String score(TestSession session) {
+        return json("finished", true, "asked", session.getAsked(), "score", session.getCorrect());
+    }
+    
+    private static String error(String message) {
+        return json("error", message);
+    }
+    
+    /**
+     * Write a flat JSON object from alternating names and values. Strings are quoted, numbers and booleans are not.
+     */
+    private static String json(Object... namesAndValues) {
+        StringBuilder json = new StringBuilder("{");
+        for (int i = 0; i < namesAndValues.length; i += 2) {
+            if (i > 0) json.append(',');
+            VocabularyFormat.appendJSONString((String) namesAndValues[i], json);
+            json.append(':');
+            Object value = namesAndValues[i + 1];
+            if (value == null) {
+                json.append("null");
+            } else if (value instanceof String) {
+                VocabularyFormat.appendJSONString((String) value, json);
+            } else {
+                json.append(value);
+            }
+        }
+        return json.append('}').toString();
+    }
+    
+    private static String readBody(HttpExchange exchange) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        try (InputStream in = exchange.getRequestBody()) {
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                if (body.size() + read > MAX_BODY_BYTES) throw new IllegalArgumentException("The request body is too large.");
+                body.write(buffer, 0, read);
+            }
+        }
+        return new String(body.toByteArray(), StandardCharsets.UTF_8);
+    }
+    
+    private static void respond(HttpExchange exchange, int status, String json) throws IOException {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package application;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Virtual threads make a thread per session, or per question stream, cheap enough for hundreds of learners at once.
+ * They exist from Java 21, while the project builds for Java 8, so they are found by reflection. On an older
+ * runtime the platform threads used before are made instead, which behave the same but cost more each.
+ * @author Evan Gunn
+ *
+ */
+public class VirtualThreads {
+    // Makes unstarted virtual threads, or null if the runtime has none.
+    private static final ThreadFactory VIRTUAL_FACTORY = findVirtualFactory();
+    
+    private VirtualThreads() {
+    }
+    
+    /**
+     * @return True if threads made here are virtual.
+     */
+    public static boolean isAvailable() {
+        return VIRTUAL_FACTORY != null;
+    }
+    
+    /**
+     * Make an unstarted thread, virtual if the runtime has virtual threads, otherwise a daemon platform thread.
+     * @param task The thread's work.
+     * @param name The thread's name.
+     */
+    public static Thread newThread(Runnable task, String name) {
+        Thread thread;
+        if (VIRTUAL_FACTORY != null) {
+            thread = VIRTUAL_FACTORY.newThread(task);
+        } else {
+            thread = new Thread(task);
+            thread.setDaemon(true);
+        }
+        thread.setName(name);
+        return thread;
+    }
+    
+    /**
+     * @return An executor that runs each task on a new thread made by newThread().
+     * On a runtime without virtual threads, idle platform threads are reused instead.
+     */
+    public static ExecutorService newPerTaskExecutor(String name) {
+        ThreadFactory factory = task -> newThread(task, name);
+        if (VIRTUAL_FACTORY != null) {
+            try {
+                return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class).invoke(null, factory);
+            } catch (ReflectiveOperationException e) {
+                // Fall back to a pool, whose threads are still virtual.
+            }
+        }
+        return Executors.newCachedThreadPool(factory);
+    }
+    
+    private static ThreadFactory findVirtualFactory() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            return (ThreadFactory) Class.forName("java.lang.Thread$Builder").getMethod("factory").invoke(builder);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,400 @@
+package database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.function.Consumer;
+
+import application.Logger;
+
+/**
+ * The bulk deleter removes many words at once: a list of wids, every word of a source, or every word of a
+ * language. The wids are found with one query, then deleted a chunk at a time, each chunk in its own
+ * transaction, so a large delete does not hold its locks for long and a failed chunk leaves the others deleted.
+ *
+ * Once the schema is migrated, the foreign keys on word cascade deletes, and a chunk takes two statements:
+ * one counting the rows of each table that belong to the chunk's words, and one deleting the words. A database
+ * whose keys do not cascade has the rows of every table deleted first, a statement per table. Whether the keys
+ * cascade is checked once for the connection pool, by the SchemaMigrator or the first delete.
+ * @author Evan Gunn
+ *
+ */
+public class BulkDeleter {
+    // The most wids deleted by one transaction.
+    public static final int DEFAULT_CHUNK_SIZE = 500;
+    // The tables whose rows are counted, in the order they are reported.
+    private static final String[] TABLES = {"word", "symbols", "wordsource", "review", "result"};
+    // Told the wids of deleted words. Held weakly, so a listener is dropped along with its owner.
+    private static final Map<Consumer<int[]>, Boolean> deletionListeners =
+            Collections.synchronizedMap(new WeakHashMap<Consumer<int[]>, Boolean>());
+    
+    private final MyConnection connection;
+    private final int chunkSize;
+    
+    /**
+     * @param connection The connection the words are deleted through.
+     * @param chunkSize The most wids deleted by one transaction.
+     */
+    public BulkDeleter(MyConnection connection, int chunkSize) {
+        this.connection = connection;
+        this.chunkSize = Math.max(1, chunkSize);
+    }
+    
+    /**
+     * The result of a bulk delete.
+     */
+    public static class DeleteReport {
+        private final Map<String, Integer> rows = new LinkedHashMap<String, Integer>();
+        private int chunks = 0;
+        private int failedChunks = 0;
+        private int unlinked = 0;
+        
+        private DeleteReport() {
+            for (String table : TABLES) {
+                rows.put(table, 0);
+            }
+        }
+        
+        /**
+         * @param table The name of a table.
+         * @return The rows deleted from the table.
+         */
+        public int getRows(String table) {
+            Integer count = rows.get(table);
+            return count == null ? 0 : count;
+        }
+        
+        /**
+         * @return The rows deleted from each table, words first.
+         */
+        public Map<String, Integer> getRows() {
+            return rows;
+        }
+        
+        public int getChunks() {
+            return chunks;
+        }
+        
+        /**
+         * @return The chunks rolled back, whose words were not deleted.
+         */
+        public int getFailedChunks() {
+            return failedChunks;
+        }
+        
+        /**
+         * @return The words kept for their other sources, whose rows linking them to a deleted source were deleted.
+         */
+        public int getUnlinked() {
+            return unlinked;
+        }
+        
+        /**
+         * @return A one line summary of the rows deleted from each table.
+         */
+        public String toString() {
+            StringBuilder summary = new StringBuilder("Deleted");
+            for (Map.Entry<String, Integer> table : rows.entrySet()) {
+                summary.append(' ').append(table.getKey()).append('=').append(table.getValue());
+            }
+            summary.append(" in ").append(chunks).append(chunks == 1 ? " chunk" : " chunks");
+            if (unlinked > 0) summary.append(", unlinked ").append(unlinked).append(" words kept for other sources");
+            if (failedChunks > 0) summary.append(", ").append(failedChunks).append(" rolled back");
+            return summary.append('.').toString();
+        }
+    }
+    
+    /**
+     * Delete words by wid.
+     * @param wids The wids of the words, wids of no word are ignored.
+     * @param language The language the words must be of, or null to delete the words of any language.
+     * @return The report, or null if the wids could not be checked.
+     */
+    public DeleteReport deleteWIDs(int[] wids, String language) {
+        if (language == null) return delete(wids);
+        IntList matching = new IntList(wids.length);
+        PooledConnection pooled = acquire();
+        if (pooled == null) return null;
+        try {
+            for (int start = 0; start < wids.length; start += chunkSize) {
+                int count = Math.min(chunkSize, wids.length - start);
+                int padded = MyConnection.paddedParameters(count).length;
+                Object[] parameters = new Object[padded + 1];
+                parameters[0] = language;
+                for (int i = 0; i < padded; i++) {
+                    parameters[i + 1] = wids[start + Math.min(i, count - 1)];
+                }
+                findWIDs(pooled, "SELECT W.wid FROM word W WHERE W.wlanguage = ? AND W.wid IN ("
+                        + MyConnection.parameterList(padded) + ")", matching, parameters);
+            }
+        } catch (SQLException e) {
+            Logger.getInstance().error("Failed to find the words to delete: " + e.getMessage());
+            return null;
+        } finally {
+            connection.getPool().release(pooled);
+        }
+        return delete(matching.toArray());
+    }
+    
+    /**
+     * Delete every word of a source that has no other source. A word that has other sources is kept,
+     * only its rows linking it to this source are deleted, and it is reported as unlinked.
+     * @param sourceName The name of the source.
+     * @return The report, or null if the words could not be found.
+     */
+    public DeleteReport deleteSource(String sourceName) {
+        int[] owned = findWIDs("SELECT DISTINCT S.wid FROM wordsource S WHERE S.sname = ? AND NOT EXISTS "
+                + "(SELECT 1 FROM wordsource O WHERE O.wid = S.wid AND O.sname <> ?)", sourceName, sourceName);
+        if (owned == null) return null;
+        int[] shared = findWIDs("SELECT DISTINCT S.wid FROM wordsource S WHERE S.sname = ? AND EXISTS "
+                + "(SELECT 1 FROM wordsource O WHERE O.wid = S.wid AND O.sname <> ?)", sourceName, sourceName);
+        if (shared == null) return null;
+        DeleteReport report = delete(owned);
+        if (report != null) unlink(shared, sourceName, report);
+        return report;
+    }
+    
+    /**
+     * Delete every word of a language.
+     * @param language The language.
+     * @return The report, or null if the words could not be found.
+     */
+    public DeleteReport deleteLanguage(String language) {
+        int[] wids = findWIDs("SELECT W.wid FROM word W WHERE W.wlanguage = ?", language);
+        return wids == null ? null : delete(wids);
+    }
+    
+    /**
+     * Delete the words, a chunk per transaction, then drop them from the caches, indexes and the store in memory.
+     */
+    private DeleteReport delete(int[] wids) {
+        DeleteReport report = new DeleteReport();
+        if (wids.length == 0) return report;
+        // Queued results and reviews of the words must be written before their rows are deleted.
+        WriteBehindQueue.getInstance().flush();
+        PooledConnection pooled = acquire();
+        if (pooled == null) return null;
+        IntList deleted = new IntList(wids.length);
+        Connection jdbc = pooled.getConnection();
+        try {
+            boolean cascades = connection.cascadesDeletes(pooled);
+            if (!cascades) Logger.getInstance().warn("The foreign keys on word do not cascade deletes, deleting from each table in turn.");
+            jdbc.setAutoCommit(false);
+            for (int start = 0; start < wids.length; start += chunkSize) {
+                int count = Math.min(chunkSize, wids.length - start);
+                report.chunks++;
+                try {
+                    int[] rows = deleteChunk(pooled, wids, start, count, cascades);
+                    jdbc.commit();
+                    QueryStats.getInstance().recordTransaction(true);
+                    for (int i = 0; i < TABLES.length; i++) {
+                        report.rows.put(TABLES[i], report.rows.get(TABLES[i]) + rows[i]);
+                    }
+                    deleted.addAll(wids, start, count);
+                } catch (SQLException e) {
+                    pooled.recordError(e);
+                    report.failedChunks++;
+                    Logger.getInstance().error("Failed to delete " + count + " words, the chunk was rolled back: " + e.getMessage());
+                    jdbc.rollback();
+                    QueryStats.getInstance().recordTransaction(false);
+                }
+            }
+        } catch (SQLException e) {
+            pooled.recordError(e);
+            Logger.getInstance().error(e.getMessage());
+        } finally {
+            try {
+                jdbc.setAutoCommit(true);
+            } catch (SQLException e) {
+                Logger.getInstance().error(e.getMessage());
+            }
+            connection.getPool().release(pooled);
+        }
+        wordsDeleted(deleted.toArray());
+        return report;
+    }
+    
+    /**
+     * Delete the rows linking words to a source, a chunk per statement, then drop the source from the words
+     * in the caches and the store in memory.
+     */
+    private void unlink(int[] wids, String sourceName, DeleteReport report) {
+        if (wids.length == 0) return;
+        PooledConnection pooled = acquire();
+        if (pooled == null) {
+            report.failedChunks += (wids.length + chunkSize - 1) / chunkSize;
+            return;
+        }
+        IntList unlinked = new IntList(wids.length);
+        try {
+            for (int start = 0; start < wids.length; start += chunkSize) {
+                int count = Math.min(chunkSize, wids.length - start);
+                int padded = MyConnection.paddedParameters(count).length;
+                Object[] parameters = new Object[padded + 1];
+                parameters[0] = sourceName;
+                for (int i = 0; i < padded; i++) {
+                    parameters[i + 1] = wids[start + Math.min(i, count - 1)];
+                }
+                report.chunks++;
+                try {
+                    MyConnection.runStatement(pooled, "DELETE FROM wordsource WHERE sname = ? AND wid IN ("
+                            + MyConnection.parameterList(padded) + ")", PreparedStatement::executeUpdate, parameters);
+                    unlinked.addAll(wids, start, count);
+                } catch (SQLException e) {
+                    report.failedChunks++;
+                    Logger.getInstance().error("Failed to unlink " + count + " words from the source: " + e.getMessage());
+                }
+            }
+        } finally {
+            connection.getPool().release(pooled);
+        }
+        report.unlinked += unlinked.size();
+        sourceUnlinked(unlinked.toArray(), sourceName);
+    }
+    
+    /**
+     * Delete a chunk of wids in the open transaction.
+     * @return The rows deleted from each table, in the order of TABLES.
+     */
+    private int[] deleteChunk(PooledConnection pooled, int[] wids, int start, int count, boolean cascades) throws SQLException {
+        // Padded to a power of two by repeating the last wid, so few statements are prepared and cached.
+        int padded = MyConnection.paddedParameters(count).length;
+        String in = " WHERE wid IN (" + MyConnection.parameterList(padded) + ")";
+        Object[] chunk = new Object[padded];
+        for (int i = 0; i < padded; i++) {
+            chunk[i] = wids[start + Math.min(i, count - 1)];
+        }
+        int[] rows = new int[TABLES.length];
+        if (cascades) {
+            // The rows the cascade will delete are counted first, as a delete reports only the rows of its own table.
+            StringBuilder countQuery = new StringBuilder();
+            Object[] parameters = new Object[(TABLES.length - 1) * padded];
+            for (int table = 1; table < TABLES.length; table++) {
+                if (table > 1) countQuery.append(" UNION ALL ");
+                countQuery.append("SELECT ").append(table).append(", COUNT(*) FROM ").append(TABLES[table]).append(in);
+                System.arraycopy(chunk, 0, parameters, (table - 1) * padded, padded);
+            }
+            MyConnection.runStatement(pooled, countQuery.toString(), statement -> {
+                try (ResultSet results = statement.executeQuery()) {
+                    while (results.next()) {
+                        rows[results.getInt(1)] = results.getInt(2);
+                    }
+                }
+                return TABLES.length - 1;
+            }, parameters);
+        } else {
+            for (int table = TABLES.length - 1; table > 0; table--) {
+                rows[table] = MyConnection.runStatement(pooled, "DELETE FROM " + TABLES[table] + in, PreparedStatement::executeUpdate, chunk);
+            }
+        }
+        rows[0] = MyConnection.runStatement(pooled, "DELETE FROM word" + in, PreparedStatement::executeUpdate, chunk);
+        return rows;
+    }
+    
+    /**
+     * Run a query of wids on its own connection.
+     * @return The wids, or null upon error.
+     */
+    private int[] findWIDs(String query, Object... parameters) {
+        PooledConnection pooled = acquire();
+        if (pooled == null) return null;
+        try {
+            IntList wids = new IntList();
+            findWIDs(pooled, query, wids, parameters);
+            return wids.toArray();
+        } catch (SQLException e) {
+            Logger.getInstance().error("Failed to find the words to delete: " + e.getMessage());
+            return null;
+        } finally {
+            connection.getPool().release(pooled);
+        }
+    }
+    
+    private static void findWIDs(PooledConnection pooled, String query, IntList wids, Object... parameters) throws SQLException {
+        MyConnection.runStatement(pooled, query, statement -> {
+            int rows = 0;
+            try (ResultSet results = statement.executeQuery()) {
+                while (results.next()) {
+                    wids.add(results.getInt(1));
+                    rows++;
+                }
+            }
+            return rows;
+        }, parameters);
+    }
+    
+    private PooledConnection acquire() {
+        ConnectionPool pool = connection.getPool();
+        if (pool == null) {
+            Logger.getInstance().warn("Not connected to a database.");
+            return null;
+        }
+        try {
+            return pool.acquire();
+        } catch (SQLException e) {
+            Logger.getInstance().error(e.getMessage());
+            return null;
+        }
+    }
+    
+    /**
+     * Tell a listener the wids of the words deleted from now on, such as the due queue of a review session.
+     * The listener is held weakly, its owner must keep a reference to it for as long as it should be told.
+     */
+    public static void addDeletionListener(Consumer<int[]> listener) {
+        deletionListeners.put(listener, Boolean.TRUE);
+    }
+    
+    /**
+     * Drop deleted words from the caches, the indexes, the store in memory, and the deletion listeners.
+     */
+    static void wordsDeleted(int[] wids) {
+        if (wids.length == 0) return;
+        // Dropping the candidate arrays is cheaper than searching each of them for every wid.
+        WordSampler.getInstance().invalidate();
+        uncache(wids);
+        for (int wid : wids) {
+            SearchIndex.getInstance().removeWord(wid);
+            SymbolIndex.getInstance().removeWord(wid);
+        }
+        VocabularyStore active = VocabularyStores.getActive();
+        if (active instanceof ColumnarVocabularyStore) {
+            ((ColumnarVocabularyStore) active).removeDeleted(wids);
+        }
+        ArrayList<Consumer<int[]>> listeners;
+        synchronized (deletionListeners) {
+            listeners = new ArrayList<Consumer<int[]>>(deletionListeners.keySet());
+        }
+        for (Consumer<int[]> listener : listeners) {
+            listener.accept(wids);
+        }
+    }
+    
+    /**
+     * Drop a source from words kept for their other sources, in the caches and the store in memory.
+     */
+    static void sourceUnlinked(int[] wids, String sourceName) {
+        if (wids.length == 0) return;
+        WordSampler.getInstance().invalidate();
+        uncache(wids);
+        VocabularyStore active = VocabularyStores.getActive();
+        if (active instanceof ColumnarVocabularyStore) {
+            ((ColumnarVocabularyStore) active).removeSource(wids, sourceName);
+        }
+    }
+    
+    private static void uncache(int[] wids) {
+        // Removing a word searches every cached lookup, so the cache is cleared at once for more than one.
+        if (wids.length == 1) {
+            WordCache.getInstance().remove(wids[0]);
+        } else {
+            WordCache.getInstance().clear();
+        }
+    }
+}
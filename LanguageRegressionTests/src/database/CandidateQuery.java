@@ -0,0 +1,68 @@
+package database;
+
+import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Candidate queries select the wids of the words a test may draw from: always of a language,
+ * and optionally of a word type and a source. A query only joins the tables a filter actually needs,
+ * for example wordsource is joined only when a source is set. Compiled SQL is cached by shape, so
+ * drawing the same kind of words again reuses both the SQL text and the server's prepared statement.
+ * @author Evan Gunn
+ *
+ */
+public class CandidateQuery {
+    // Compiled candidate queries, keyed by which filters are set.
+    private static final ConcurrentHashMap<Integer, String> compiledShapes = new ConcurrentHashMap<Integer, String>();
+    private static final int HAS_WTYPE = 1, HAS_SOURCE = 2, REQUIRES_SYMBOLS = 4;
+    
+    /**
+     * Get the candidate query for a set of filters. Its only column is W.wid, and its parameters are
+     * given by getParameters(), in order.
+     * @param wtype The word type, or null for any type.
+     * @param source The source name, or null for any source.
+     * @param requireSymbols Only match words that have at least one row in the symbols table with a reading.
+     * @return The compiled, cached SQL.
+     */
+    public static String getQuery(String wtype, String source, boolean requireSymbols) {
+        int shape = (wtype != null ? HAS_WTYPE : 0) | (source != null ? HAS_SOURCE : 0) | (requireSymbols ? REQUIRES_SYMBOLS : 0);
+        String sql = compiledShapes.get(shape);
+        if (sql == null) {
+            sql = compile(shape);
+            compiledShapes.put(shape, sql);
+        }
+        return sql;
+    }
+    
+    /**
+     * @return The values bound to the candidate query of the same filters, in order.
+     */
+    public static Object[] getParameters(String language, String wtype, String source) {
+        ArrayList<Object> parameters = new ArrayList<Object>(3);
+        parameters.add(language);
+        if (wtype != null) parameters.add(wtype);
+        if (source != null) parameters.add(source);
+        return parameters.toArray();
+    }
+    
+    /**
+     * Compile a candidate query shape. Joined child tables use EXISTS, so a word with several
+     * symbols or sources still appears once, and no DISTINCT is needed.
+     * @param shape The bit set of filters that are present.
+     * @return The SQL for the shape.
+     */
+    private static String compile(int shape) {
+        StringBuilder sql = new StringBuilder("SELECT W.wid FROM word W WHERE W.wlanguage = ?");
+        if ((shape & HAS_WTYPE) != 0) {
+            sql.append(" AND W.wtype = ?");
+        }
+        if ((shape & HAS_SOURCE) != 0) {
+            sql.append(" AND EXISTS (SELECT 1 FROM wordsource N WHERE N.wid = W.wid AND N.sname = ?)");
+        }
+        if ((shape & REQUIRES_SYMBOLS) != 0) {
+            // A symbol without a reading cannot be asked about, so it does not count.
+            sql.append(" AND EXISTS (SELECT 1 FROM symbols S WHERE S.wid = W.wid AND S.ancillary IS NOT NULL)");
+        }
+        return sql.toString();
+    }
+}
@@ -0,0 +1,531 @@
+package database;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+
+import application.Logger;
+
+/**
+ * The columnar vocabulary store keeps the whole vocabulary in memory, so tests are generated with no database queries.
+ * Words are not kept as LocalWords, which cost several objects per word, but as columns: one array per field,
+ * indexed by row. Languages, word types and source names repeat thousands of times, so they are stored once in
+ * a StringDictionary and the columns hold their int codes. Symbol and source rows are kept in their own columns,
+ * and each word row links to its first and last, so a word needs no list objects of its own.
+ *
+ * Rows are found by wid through an IntIntMap, and by romanization through a hash chain, neither of which boxes.
+ * For filtering, the rows of every (language, word type) pair, and of every language, are kept in IntLists,
+ * found through a LongIntMap keyed by both codes, so sampling only looks at the rows that can match and
+ * allocates nothing but its result.
+ *
+ * Writes go to the backing store first, then to the columns. A removed word's row is unlinked, its symbol and
+ * source rows are left unused until the store is loaded again.
+ * @author Evan Gunn
+ *
+ */
+public class ColumnarVocabularyStore implements VocabularyStore {
+    // The word type code of the group holding every word type of a language.
+    private static final int ANY_WTYPE = -2;
+    
+    private final MyConnection backing;
+    private final StringDictionary dictionary = new StringDictionary();
+    private final IntIntMap rowsByWID = new IntIntMap(1024, -1);
+    private final IntIntMap romanizationHeads = new IntIntMap(1024, -1);
+    private final LongIntMap groupIndexes = new LongIntMap(64, -1);
+    private final ArrayList<IntList> groups = new ArrayList<IntList>();
+    
+    // Word rows.
+    private int rowCount = 0;
+    private int[] wids = new int[1024];
+    private String[] romanizations = new String[1024];
+    private String[] meanings = new String[1024];
+    private int[] languages = new int[1024];
+    private int[] wtypes = new int[1024];
+    private int[] romanizationNext = new int[1024];
+    private int[] symbolHeads = new int[1024], symbolTails = new int[1024];
+    private int[] sourceHeads = new int[1024], sourceTails = new int[1024];
+    
+    // Symbol rows.
+    private int symbolCount = 0;
+    private String[] symbolMains = new String[1024];
+    private String[] symbolAncillaries = new String[1024];
+    private int[] symbolNext = new int[1024];
+    
+    // Source rows.
+    private int sourceCount = 0;
+    private int[] sourceCodes = new int[1024];
+    private int[] sourceNext = new int[1024];
+    
+    /**
+     * An empty store. Words are added by load, or directly through addInserted.
+     */
+    ColumnarVocabularyStore(MyConnection backing) {
+        this.backing = backing;
+    }
+    
+    /**
+     * Load every word of a database into memory.
+     * @param backing The database that is read, and written through.
+     * @return The store, or null upon error.
+     */
+    public static ColumnarVocabularyStore load(MyConnection backing) {
+        long start = System.nanoTime();
+        ColumnarVocabularyStore store = new ColumnarVocabularyStore(backing);
+        boolean loaded = backing.forEachWord(word -> {
+            synchronized (store) {
+                store.addRow(word);
+            }
+        });
+        if (!loaded) return null;
+        double seconds = (System.nanoTime() - start) / 1e9;
+        Logger.getInstance().info(() -> "Loaded " + store.size() + " words into memory in " + String.format("%.2f", seconds)
+                + " seconds, using about " + (store.estimateBytes() / 1024) + " KB.");
+        return store;
+    }
+    
+    /**
+     * @return The amount of words in the store.
+     */
+    public synchronized int size() {
+        return rowsByWID.size();
+    }
+    
+    @Override
+    public boolean insertWord(String word, String language, String meaning, String wtype, String main, String ancillary, String sourceName) {
+        if (!backing.insertWord(word, language, meaning, wtype, main, ancillary, sourceName)) return false;
+        int wid = backing.checkForWord(word, language, meaning);
+        if (wid < 0) return true;
+        ArrayList<LocalWord> inserted = backing.hydrateWords(new int[] {wid});
+        synchronized (this) {
+            for (LocalWord insertedWord : inserted) {
+                if (!rowsByWID.containsKey(insertedWord.getWID())) addRow(insertedWord);
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Add words already committed to the backing database, such as those of an insert session.
+     * @param inserted The new words, with their wids.
+     */
+    public synchronized void addInserted(List<LocalWord> inserted) {
+        for (LocalWord word : inserted) {
+            if (!rowsByWID.containsKey(word.getWID())) addRow(word);
+        }
+    }
+    
+    /**
+     * Remove words already deleted from the backing database, such as those of a bulk delete.
+     * @param wids The wids of the deleted words.
+     */
+    public synchronized void removeDeleted(int[] wids) {
+        for (int wid : wids) {
+            removeRow(wid);
+        }
+    }
+    
+    /**
+     * Drop a source from words kept in the backing database for their other sources. The source rows are
+     * left unused until the store is loaded again.
+     * @param wids The wids of the words.
+     * @param source The name of the source.
+     */
+    public synchronized void removeSource(int[] wids, String source) {
+        int sourceCode = dictionary.find(source);
+        if (sourceCode < 0) return;
+        for (int wid : wids) {
+            int row = rowsByWID.get(wid);
+            if (row < 0) continue;
+            int previous = -1;
+            for (int sourceRow = sourceHeads[row]; sourceRow >= 0; sourceRow = sourceNext[sourceRow]) {
+                if (sourceCodes[sourceRow] != sourceCode) {
+                    previous = sourceRow;
+                    continue;
+                }
+                if (previous < 0) sourceHeads[row] = sourceNext[sourceRow];
+                else sourceNext[previous] = sourceNext[sourceRow];
+                if (sourceTails[row] == sourceRow) sourceTails[row] = previous;
+            }
+        }
+    }
+    
+    @Override
+    public boolean removeWord(int wid, String language) {
+        if (!backing.removeWord(wid, language)) return false;
+        synchronized (this) {
+            removeRow(wid);
+        }
+        return true;
+    }
+    
+    /**
+     * Look up a word through the romanization hash chain. With no meaning, the word with the lowest wid is returned.
+     */
+    @Override
+    public synchronized int checkForWord(String word, String language, String meaning) {
+        int languageCode = dictionary.find(language);
+        if (word == null || languageCode < 0) return -1;
+        int found = -1;
+        for (int row = romanizationHeads.get(word.hashCode()); row >= 0; row = romanizationNext[row]) {
+            if (languages[row] != languageCode || !word.equals(romanizations[row])) continue;
+            if (meaning != null && !meaning.equals(meanings[row])) continue;
+            if (found < 0 || wids[row] < found) found = wids[row];
+        }
+        return found;
+    }
+    
+    /**
+     * Find the words spelled the same way, following the chain of rows whose romanizations share a hash.
+     */
+    @Override
+    public synchronized int[] findByRomanization(String word, String language) {
+        IntList found = new IntList();
+        int languageCode = dictionary.find(language);
+        if (word == null || languageCode < 0) return found.toArray();
+        for (int row = romanizationHeads.get(word.hashCode()); row >= 0; row = romanizationNext[row]) {
+            if (languages[row] == languageCode && word.equals(romanizations[row])) found.add(wids[row]);
+        }
+        int[] wids = found.toArray();
+        Arrays.sort(wids);
+        return wids;
+    }
+    
+    /**
+     * Find every word of a language, from the language's group of rows of any word type.
+     */
+    @Override
+    public synchronized int[] findByLanguage(String language) {
+        int languageCode = dictionary.find(language);
+        int groupIndex = languageCode < 0 ? -1 : groupIndexes.get(groupKey(languageCode, ANY_WTYPE));
+        if (groupIndex < 0) return new int[0];
+        IntList group = groups.get(groupIndex);
+        int[] found = new int[group.size()];
+        for (int i = 0; i < found.length; i++) {
+            found[i] = wids[group.get(i)];
+        }
+        Arrays.sort(found);
+        return found;
+    }
+    
+    /**
+     * Find the words by their symbols, scanning the symbol rows of every word.
+     */
+    @Override
+    public synchronized int[] findBySymbols(String main, String ancillary) {
+        IntList found = new IntList();
+        if (main == null && ancillary == null) return found.toArray();
+        for (int row = 0; row < rowCount; row++) {
+            if (wids[row] < 0) continue;
+            for (int symbol = symbolHeads[row]; symbol >= 0; symbol = symbolNext[symbol]) {
+                if ((main == null || main.equals(symbolMains[symbol]))
+                        && (ancillary == null || ancillary.equals(symbolAncillaries[symbol]))) {
+                    found.add(wids[row]);
+                    break;
+                }
+            }
+        }
+        int[] sorted = found.toArray();
+        Arrays.sort(sorted);
+        return sorted;
+    }
+    
+    @Override
+    public synchronized boolean forEachWord(Consumer<LocalWord> action) {
+        for (int row = 0; row < rowCount; row++) {
+            if (wids[row] >= 0) action.accept(readWord(row));
+        }
+        return true;
+    }
+    
+    @Override
+    public synchronized boolean pullWords(List<LocalWord> words) {
+        boolean allFound = true;
+        for (LocalWord word : words) {
+            int wid = checkForWord(word.getRomanization(), word.getLanguage(), word.getMeaning());
+            int row = wid < 0 ? -1 : rowsByWID.get(wid);
+            if (row < 0) {
+                allFound = false;
+            } else {
+                word.copyFrom(readWord(row));
+            }
+        }
+        return allFound;
+    }
+    
+    @Override
+    public synchronized ArrayList<LocalWord> hydrateWords(int[] requested) {
+        ArrayList<LocalWord> words = new ArrayList<LocalWord>(requested.length);
+        for (int wid : requested) {
+            int row = rowsByWID.get(wid);
+            if (row >= 0) words.add(readWord(row));
+        }
+        return words;
+    }
+    
+    /**
+     * Draw random distinct words from the group of rows of the language and word type. When a source or symbols
+     * are required, the group is counted in one pass and sampled in a second, so no list of matches is built.
+     */
+    @Override
+    public synchronized int[] sample(String language, String wtype, String source, boolean requireSymbols, int amount) {
+        int languageCode = dictionary.find(language);
+        int wtypeCode = wtype == null ? ANY_WTYPE : dictionary.find(wtype);
+        int sourceCode = dictionary.find(source);
+        if (languageCode < 0 || (wtype != null && wtypeCode < 0) || (source != null && sourceCode < 0)) return new int[0];
+        int groupIndex = groupIndexes.get(groupKey(languageCode, wtypeCode));
+        if (groupIndex < 0) return new int[0];
+        IntList group = groups.get(groupIndex);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        
+        if (source == null && !requireSymbols) {
+            int[] indexes = WordSampler.sampleIndexes(group.size(), amount, random);
+            for (int i = 0; i < indexes.length; i++) {
+                indexes[i] = wids[group.get(indexes[i])];
+            }
+            return indexes;
+        }
+        
+        int matches = 0;
+        for (int i = 0; i < group.size(); i++) {
+            if (matches(group.get(i), sourceCode, requireSymbols)) matches++;
+        }
+        // Selection sampling: each match is taken with the chance of still needing it, so exactly k are taken.
+        int k = Math.max(0, Math.min(amount, matches));
+        int[] sampled = new int[k];
+        int taken = 0, seen = 0;
+        for (int i = 0; i < group.size() && taken < k; i++) {
+            int row = group.get(i);
+            if (!matches(row, sourceCode, requireSymbols)) continue;
+            if (random.nextInt(matches - seen) < k - taken) {
+                sampled[taken++] = wids[row];
+            }
+            seen++;
+        }
+        for (int i = k - 1; i > 0; i--) {
+            int swap = random.nextInt(i + 1);
+            int temp = sampled[i];
+            sampled[i] = sampled[swap];
+            sampled[swap] = temp;
+        }
+        return sampled;
+    }
+    
+    @Override
+    public ArrayList<ReviewState> loadReviews(String language, String wtype, String source, boolean requireSymbols) {
+        return backing.loadReviews(language, wtype, source, requireSymbols);
+    }
+    
+    @Override
+    public void saveReviewLater(ReviewState state) {
+        backing.saveReviewLater(state);
+    }
+    
+    @Override
+    public void saveResultLater(int wid, String qtype, boolean correct, long latencyMillis, long answeredAt) {
+        backing.saveResultLater(wid, qtype, correct, latencyMillis, answeredAt);
+    }
+    
+    @Override
+    public boolean isReadOnly() {
+        return backing.isReadOnly();
+    }
+    
+    /**
+     * Release the columns and close the backing database.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            rowsByWID.clear();
+            romanizationHeads.clear();
+            groupIndexes.clear();
+            groups.clear();
+            rowCount = symbolCount = sourceCount = 0;
+            Arrays.fill(romanizations, null);
+            Arrays.fill(meanings, null);
+            Arrays.fill(symbolMains, null);
+            Arrays.fill(symbolAncillaries, null);
+        }
+        backing.close();
+    }
+    
+    /**
+     * @return The approximate amount of memory held by the store, in bytes, counting each string's characters.
+     */
+    public synchronized long estimateBytes() {
+        long bytes = rowsByWID.estimateBytes() + romanizationHeads.estimateBytes() + groupIndexes.estimateBytes();
+        // Eight int columns and two references per word row, two references and an int per symbol row, two ints per source row.
+        bytes += wids.length * (8L * 4 + 2 * 4) + symbolMains.length * (2L * 4 + 4) + sourceCodes.length * 8L;
+        for (IntList group : groups) {
+            bytes += 16 + group.capacity() * 4L;
+        }
+        for (int row = 0; row < rowCount; row++) {
+            bytes += stringBytes(romanizations[row]) + stringBytes(meanings[row]);
+        }
+        for (int symbol = 0; symbol < symbolCount; symbol++) {
+            bytes += stringBytes(symbolMains[symbol]) + stringBytes(symbolAncillaries[symbol]);
+        }
+        return bytes;
+    }
+    
+    private static long stringBytes(String value) {
+        return value == null ? 0 : 40 + 2L * value.length();
+    }
+    
+    private boolean matches(int row, int sourceCode, boolean requireSymbols) {
+        if (requireSymbols && !hasReading(row)) return false;
+        if (sourceCode < 0) return true;
+        for (int source = sourceHeads[row]; source >= 0; source = sourceNext[source]) {
+            if (sourceCodes[source] == sourceCode) return true;
+        }
+        return false;
+    }
+    
+    private boolean hasReading(int row) {
+        for (int symbol = symbolHeads[row]; symbol >= 0; symbol = symbolNext[symbol]) {
+            if (symbolAncillaries[symbol] != null) return true;
+        }
+        return false;
+    }
+    
+    private static long groupKey(int languageCode, int wtypeCode) {
+        // Each code has 32 bits of its own, so no two pairs share a key however many strings the dictionary holds.
+        return (long) languageCode << 32 | (wtypeCode & 0xFFFFFFFFL);
+    }
+    
+    private IntList group(int languageCode, int wtypeCode) {
+        long key = groupKey(languageCode, wtypeCode);
+        int index = groupIndexes.get(key);
+        if (index < 0) {
+            index = groups.size();
+            groups.add(new IntList());
+            groupIndexes.put(key, index);
+        }
+        return groups.get(index);
+    }
+    
+    /**
+     * Build a LocalWord from a row's columns.
+     */
+    private LocalWord readWord(int row) {
+        LocalWord word = new LocalWord(romanizations[row], dictionary.decode(languages[row]), meanings[row],
+                dictionary.decode(wtypes[row]), null, null, null);
+        word.setWID(wids[row]);
+        for (int symbol = symbolHeads[row]; symbol >= 0; symbol = symbolNext[symbol]) {
+            word.addSymbolValues(symbolMains[symbol], symbolAncillaries[symbol]);
+        }
+        for (int source = sourceHeads[row]; source >= 0; source = sourceNext[source]) {
+            word.addSourceValue(dictionary.decode(sourceCodes[source]));
+        }
+        return word;
+    }
+    
+    /**
+     * Append a word to the columns. Callers must hold the store's lock.
+     */
+    private void addRow(LocalWord word) {
+        if (rowCount == wids.length) growRows();
+        int row = rowCount++;
+        wids[row] = word.getWID();
+        romanizations[row] = word.getRomanization();
+        meanings[row] = word.getMeaning();
+        languages[row] = dictionary.encode(word.getLanguage());
+        wtypes[row] = dictionary.encode(word.getWType());
+        symbolHeads[row] = symbolTails[row] = -1;
+        sourceHeads[row] = sourceTails[row] = -1;
+        
+        List<String> mains = word.getAllMainSymbols();
+        List<String> ancillaries = word.getAllAncillarySymbols();
+        for (int i = 0; i < mains.size(); i++) {
+            if (symbolCount == symbolMains.length) growSymbols();
+            int symbol = symbolCount++;
+            symbolMains[symbol] = mains.get(i);
+            symbolAncillaries[symbol] = ancillaries.get(i);
+            symbolNext[symbol] = -1;
+            if (symbolTails[row] < 0) symbolHeads[row] = symbol;
+            else symbolNext[symbolTails[row]] = symbol;
+            symbolTails[row] = symbol;
+        }
+        for (String source : word.getAllSources()) {
+            if (sourceCount == sourceCodes.length) growSources();
+            int sourceRow = sourceCount++;
+            sourceCodes[sourceRow] = dictionary.encode(source);
+            sourceNext[sourceRow] = -1;
+            if (sourceTails[row] < 0) sourceHeads[row] = sourceRow;
+            else sourceNext[sourceTails[row]] = sourceRow;
+            sourceTails[row] = sourceRow;
+        }
+        
+        rowsByWID.put(wids[row], row);
+        if (romanizations[row] != null) {
+            int hash = romanizations[row].hashCode();
+            romanizationNext[row] = romanizationHeads.put(hash, row);
+        } else {
+            romanizationNext[row] = -1;
+        }
+        if (languages[row] >= 0) {
+            group(languages[row], wtypes[row]).add(row);
+            group(languages[row], ANY_WTYPE).add(row);
+        }
+    }
+    
+    /**
+     * Unlink a word's row from every index. Callers must hold the store's lock.
+     */
+    private void removeRow(int wid) {
+        int row = rowsByWID.remove(wid);
+        if (row < 0) return;
+        if (romanizations[row] != null) {
+            int hash = romanizations[row].hashCode();
+            int head = romanizationHeads.get(hash);
+            if (head == row) {
+                if (romanizationNext[row] >= 0) romanizationHeads.put(hash, romanizationNext[row]);
+                else romanizationHeads.remove(hash);
+            } else {
+                for (int previous = head; previous >= 0; previous = romanizationNext[previous]) {
+                    if (romanizationNext[previous] == row) {
+                        romanizationNext[previous] = romanizationNext[row];
+                        break;
+                    }
+                }
+            }
+        }
+        if (languages[row] >= 0) {
+            group(languages[row], wtypes[row]).removeUnordered(row);
+            group(languages[row], ANY_WTYPE).removeUnordered(row);
+        }
+        romanizations[row] = null;
+        meanings[row] = null;
+        languages[row] = -1;
+        wids[row] = -1;
+    }
+    
+    private void growRows() {
+        int capacity = wids.length * 2;
+        wids = Arrays.copyOf(wids, capacity);
+        romanizations = Arrays.copyOf(romanizations, capacity);
+        meanings = Arrays.copyOf(meanings, capacity);
+        languages = Arrays.copyOf(languages, capacity);
+        wtypes = Arrays.copyOf(wtypes, capacity);
+        romanizationNext = Arrays.copyOf(romanizationNext, capacity);
+        symbolHeads = Arrays.copyOf(symbolHeads, capacity);
+        symbolTails = Arrays.copyOf(symbolTails, capacity);
+        sourceHeads = Arrays.copyOf(sourceHeads, capacity);
+        sourceTails = Arrays.copyOf(sourceTails, capacity);
+    }
+    
+    private void growSymbols() {
+        int capacity = symbolMains.length * 2;
+        symbolMains = Arrays.copyOf(symbolMains, capacity);
+        symbolAncillaries = Arrays.copyOf(symbolAncillaries, capacity);
+        symbolNext = Arrays.copyOf(symbolNext, capacity);
+    }
+    
+    private void growSources() {
+        int capacity = sourceCodes.length * 2;
+        sourceCodes = Arrays.copyOf(sourceCodes, capacity);
+        sourceNext = Arrays.copyOf(sourceNext, capacity);
+    }
+}
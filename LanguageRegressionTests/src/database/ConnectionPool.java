@@ -0,0 +1,268 @@
+package database;
+
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded pool of database connections. At most maxSize connections are ever open,
+ * callers wait up to the acquisition timeout for one to be returned, and connections idle
+ * for longer than the idle timeout are closed down to minSize by a background thread.
+ * Connections that have sat idle are validated before they are handed out again. A released connection is only
+ * checked locally, for being closed or having raised an error that means it was lost, so release takes no round trip.
+ * @author Evan Gunn
+ *
+ */
+public class ConnectionPool implements ConnectionPoolMBean {
+    // Connections idle for less than this are handed out without a validation round trip.
+    private static final long VALIDATION_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(30);
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
+    
+    private final String url, user, password;
+    private final int minSize, maxSize;
+    private final long acquireTimeoutMillis, idleTimeoutMillis;
+    
+    // Idle connections, most recently used first.
+    private final LinkedBlockingDeque<PooledConnection> idle = new LinkedBlockingDeque<PooledConnection>();
+    // One permit per connection that may still be checked out.
+    private final Semaphore permits;
+    private final AtomicInteger openCount = new AtomicInteger();
+    private final ScheduledExecutorService evictor;
+    private volatile boolean closed = false;
+    
+    // Pool-wait metrics.
+    private final AtomicLong acquisitions = new AtomicLong();
+    private final AtomicLong waits = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicLong timeouts = new AtomicLong();
+    
+    /**
+     * Create the pool and open its first minSize connections.
+     * @param url The JDBC url of the database.
+     * @param user The username used to access the database.
+     * @param password The password for the user.
+     * @param minSize The amount of connections kept open while idle.
+     * @param maxSize The most connections that may be open at once.
+     * @param acquireTimeoutMillis How long acquire() waits for a free connection.
+     * @param idleTimeoutMillis How long a connection above minSize may sit idle before it is closed.
+     * @throws SQLException If the first connections cannot be opened.
+     */
+    public ConnectionPool(String url, String user, String password, int minSize, int maxSize,
+            long acquireTimeoutMillis, long idleTimeoutMillis) throws SQLException {
+        if (minSize < 0 || maxSize < 1 || minSize > maxSize) {
+            throw new IllegalArgumentException("Invalid pool size, min: " + minSize + ", max: " + maxSize);
+        }
+        this.url = url;
+        this.user = user;
+        this.password = password;
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+        this.acquireTimeoutMillis = acquireTimeoutMillis;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.permits = new Semaphore(maxSize, true);
+        
+        for (int i = 0; i < minSize; i++) {
+            idle.addLast(open());
+        }
+        
+        evictor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "connection-pool-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long period = Math.max(1000, idleTimeoutMillis / 2);
+        evictor.scheduleWithFixedDelay(this::evictIdle, period, period, TimeUnit.MILLISECONDS);
+    }
+    
+    /**
+     * Check a connection out of the pool, waiting up to the acquisition timeout if all are in use.
+     * Every acquired connection must be handed back through release().
+     * @return A valid connection.
+     * @throws SQLException If no connection frees up in time, or a new connection cannot be opened.
+     */
+    public PooledConnection acquire() throws SQLException {
+        if (closed) {
+            throw new SQLException("The connection pool is closed.");
+        }
+        long start = System.nanoTime();
+        boolean permitted;
+        try {
+            permitted = permits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection.", e);
+        }
+        recordWait(System.nanoTime() - start);
+        if (!permitted) {
+            timeouts.incrementAndGet();
+            throw new SQLTimeoutException("Timed out after " + acquireTimeoutMillis + "ms waiting for a connection.");
+        }
+        
+        try {
+            PooledConnection pooled;
+            while ((pooled = idle.pollFirst()) != null) {
+                if (System.nanoTime() - pooled.getLastUsed() < VALIDATION_INTERVAL_NANOS
+                        || pooled.isValid(VALIDATION_TIMEOUT_SECONDS)) {
+                    return pooled;
+                }
+                discard(pooled);
+            }
+            return open();
+        } catch (SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+    
+    /**
+     * Hand a connection back to the pool. Closed and broken connections are closed rather than reused.
+     * @param pooled The connection returned by acquire().
+     */
+    public void release(PooledConnection pooled) {
+        if (pooled == null) return;
+        if (closed || !pooled.isUsable()) {
+            discard(pooled);
+        } else {
+            pooled.touch();
+            idle.addFirst(pooled);
+        }
+        permits.release();
+    }
+    
+    /**
+     * Open a new connection, counted against the pool.
+     */
+    private PooledConnection open() throws SQLException {
+        PooledConnection pooled = new PooledConnection(DriverManager.getConnection(url, user, password));
+        openCount.incrementAndGet();
+        return pooled;
+    }
+    
+    /**
+     * Close a connection and stop counting it against the pool.
+     */
+    private void discard(PooledConnection pooled) {
+        openCount.decrementAndGet();
+        pooled.close();
+    }
+    
+    /**
+     * Close connections that have been idle past the idle timeout, keeping at least minSize open.
+     * Runs on the evictor thread.
+     */
+    private void evictIdle() {
+        long now = System.nanoTime();
+        long timeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeoutMillis);
+        // The least recently used connections are at the back of the deque.
+        PooledConnection pooled;
+        while (openCount.get() > minSize && (pooled = idle.pollLast()) != null) {
+            if (now - pooled.getLastUsed() < timeoutNanos) {
+                idle.addLast(pooled);
+                break;
+            }
+            discard(pooled);
+        }
+    }
+    
+    /**
+     * Add a wait to the pool-wait metrics.
+     */
+    private void recordWait(long waitNanos) {
+        acquisitions.incrementAndGet();
+        if (waitNanos > TimeUnit.MILLISECONDS.toNanos(1)) {
+            waits.incrementAndGet();
+        }
+        totalWaitNanos.addAndGet(waitNanos);
+        long max;
+        while (waitNanos > (max = maxWaitNanos.get()) && !maxWaitNanos.compareAndSet(max, waitNanos));
+    }
+    
+    /**
+     * Close every idle connection and stop the evictor. Connections still checked out are closed when released.
+     */
+    public void close() {
+        closed = true;
+        evictor.shutdownNow();
+        PooledConnection pooled;
+        while ((pooled = idle.pollFirst()) != null) {
+            discard(pooled);
+        }
+    }
+    
+    /**
+     * @return The most connections the pool will open.
+     */
+    public int getMaxSize() {
+        return maxSize;
+    }
+    
+    /**
+     * @return The amount of connections currently open, checked out or idle.
+     */
+    public int getOpenCount() {
+        return openCount.get();
+    }
+    
+    /**
+     * @return The amount of open connections waiting in the pool.
+     */
+    public int getIdleCount() {
+        return idle.size();
+    }
+    
+    /**
+     * @return The total amount of acquire() calls.
+     */
+    public long getAcquisitionCount() {
+        return acquisitions.get();
+    }
+    
+    /**
+     * @return The amount of acquire() calls that waited more than a millisecond for a connection.
+     */
+    public long getWaitCount() {
+        return waits.get();
+    }
+    
+    /**
+     * @return The amount of acquire() calls that timed out.
+     */
+    public long getTimeoutCount() {
+        return timeouts.get();
+    }
+    
+    /**
+     * @return The mean time spent waiting in acquire(), in milliseconds.
+     */
+    public double getAverageWaitMillis() {
+        long count = acquisitions.get();
+        if (count == 0) return 0;
+        return totalWaitNanos.get() / (count * 1000000.0);
+    }
+    
+    /**
+     * @return The longest time spent waiting in acquire(), in milliseconds.
+     */
+    public double getMaxWaitMillis() {
+        return maxWaitNanos.get() / 1000000.0;
+    }
+    
+    /**
+     * @return A one line summary of the pool's size and wait metrics.
+     */
+    public String toString() {
+        return "Open: " + getOpenCount() + "/" + maxSize + ", Idle: " + getIdleCount()
+             + ", Acquisitions: " + getAcquisitionCount() + ", Waited: " + getWaitCount()
+             + ", Timeouts: " + getTimeoutCount()
+             + ", Average Wait: " + String.format("%.3f", getAverageWaitMillis()) + "ms"
+             + ", Max Wait: " + String.format("%.3f", getMaxWaitMillis()) + "ms";
+    }
+}
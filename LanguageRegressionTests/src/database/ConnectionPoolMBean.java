@@ -0,0 +1,24 @@
+package database;
+
+/**
+ * The management interface of the ConnectionPool, published over JMX.
+ * @author Evan Gunn
+ *
+ */
+public interface ConnectionPoolMBean {
+    int getMaxSize();
+    
+    int getOpenCount();
+    
+    int getIdleCount();
+    
+    long getAcquisitionCount();
+    
+    long getWaitCount();
+    
+    long getTimeoutCount();
+    
+    double getAverageWaitMillis();
+    
+    double getMaxWaitMillis();
+}
@@ -0,0 +1,181 @@
+package database;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * An indexed binary min-heap of review states, ordered by due time.
+ * Each state remembers its own position in the heap, and states are found by wid through a map,
+ * so a word's schedule can be changed in O(log n) without searching the heap.
+ * Taking the k earliest due words is O(k log n), the rest of the heap is never looked at.
+ * The queue is not thread safe, callers that share it must synchronize.
+ * @author Evan Gunn
+ *
+ */
+public class DueQueue {
+    private ReviewState[] heap = new ReviewState[16];
+    private int size = 0;
+    private final HashMap<Integer, ReviewState> states = new HashMap<Integer, ReviewState>();
+
+    /**
+     * Add a state, or replace the state already queued for its wid.
+     */
+    public void add(ReviewState state) {
+        ReviewState old = states.put(state.getWID(), state);
+        if (old != null) {
+            int index = old.getHeapIndex();
+            old.setHeapIndex(-1);
+            heap[index] = state;
+            state.setHeapIndex(index);
+            restore(index);
+            return;
+        }
+        if (size == heap.length) heap = Arrays.copyOf(heap, size * 2);
+        heap[size] = state;
+        state.setHeapIndex(size);
+        size++;
+        siftUp(size - 1);
+    }
+
+    /**
+     * @return The state of a word, or null if the word is not queued.
+     */
+    public ReviewState get(int wid) {
+        return states.get(wid);
+    }
+
+    /**
+     * @return The state that is due first, or null if the queue is empty.
+     */
+    public ReviewState peek() {
+        return size == 0 ? null : heap[0];
+    }
+
+    /**
+     * Take up to amount words that are due, earliest first, and hold each back until a later time,
+     * so that a word being asked is not taken again before it has been answered.
+     * @param amount The most words to take.
+     * @param now Words due at or before this time are taken.
+     * @param holdUntil The time the taken words are due again, if they are never answered.
+     * @return The wids of the taken words.
+     */
+    public int[] takeDue(int amount, long now, long holdUntil) {
+        IntList taken = new IntList();
+        while (taken.size() < amount && size > 0 && heap[0].getDue() <= now) {
+            ReviewState state = heap[0];
+            taken.add(state.getWID());
+            state.setDue(holdUntil);
+            siftDown(0);
+        }
+        return taken.toArray();
+    }
+
+    /**
+     * Schedule the next review of a word after an answer.
+     * @return The updated state, or null if the word is not queued.
+     */
+    public ReviewState record(int wid, boolean correct, long now) {
+        ReviewState state = states.get(wid);
+        if (state == null) return null;
+        state.record(correct, now);
+        restore(state.getHeapIndex());
+        return state;
+    }
+
+    /**
+     * Remove a word from the queue, used when the word is deleted.
+     * @return True if the word was queued.
+     */
+    public boolean remove(int wid) {
+        ReviewState state = states.remove(wid);
+        if (state == null) return false;
+        int index = state.getHeapIndex();
+        state.setHeapIndex(-1);
+        size--;
+        if (index != size) {
+            heap[index] = heap[size];
+            heap[index].setHeapIndex(index);
+            heap[size] = null;
+            restore(index);
+        } else {
+            heap[size] = null;
+        }
+        return true;
+    }
+
+    /**
+     * @return The amount of words due at or before a time. Counts by walking only the due part of the heap.
+     */
+    public int countDue(long now) {
+        if (size == 0) return 0;
+        int count = 0;
+        // Every index is pushed at most once, so the stack never holds more than size entries.
+        int[] pending = new int[size];
+        int top = 0;
+        pending[top++] = 0;
+        while (top > 0) {
+            int index = pending[--top];
+            if (heap[index].getDue() > now) continue;
+            count++;
+            int child = 2 * index + 1;
+            if (child < size) pending[top++] = child;
+            if (child + 1 < size) pending[top++] = child + 1;
+        }
+        return count;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return Every queued state, in no particular order.
+     */
+    public ArrayList<ReviewState> getAll() {
+        ArrayList<ReviewState> all = new ArrayList<ReviewState>(size);
+        for (int i = 0; i < size; i++) {
+            all.add(heap[i]);
+        }
+        return all;
+    }
+
+    /**
+     * Move the state at an index up or down, after its due time has changed.
+     */
+    private void restore(int index) {
+        if (index > 0 && heap[index].getDue() < heap[(index - 1) / 2].getDue()) {
+            siftUp(index);
+        } else {
+            siftDown(index);
+        }
+    }
+
+    private void siftUp(int index) {
+        ReviewState state = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) / 2;
+            if (heap[parent].getDue() <= state.getDue()) break;
+            heap[index] = heap[parent];
+            heap[index].setHeapIndex(index);
+            index = parent;
+        }
+        heap[index] = state;
+        state.setHeapIndex(index);
+    }
+
+    private void siftDown(int index) {
+        ReviewState state = heap[index];
+        int half = size / 2;
+        while (index < half) {
+            int child = 2 * index + 1;
+            if (child + 1 < size && heap[child + 1].getDue() < heap[child].getDue()) child++;
+            if (state.getDue() <= heap[child].getDue()) break;
+            heap[index] = heap[child];
+            heap[index].setHeapIndex(index);
+            index = child;
+        }
+        heap[index] = state;
+        state.setHeapIndex(index);
+    }
+}
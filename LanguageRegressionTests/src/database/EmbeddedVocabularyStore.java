@@ -0,0 +1,68 @@
+package database;
+
+import java.nio.file.Path;
+
+import application.Logger;
+
+/**
+ * The embedded vocabulary store keeps the vocabulary in an H2 database file on this computer, for users who study alone.
+ * Queries need no network hop, and no server has to be set up. H2 runs in MySQL mode, so every command of
+ * MyConnection works unchanged, and opening the store replaces MyConnection's instance, so the rest of the
+ * program, importing and exporting included, uses the embedded database without knowing it.
+ * The tables are created by the SchemaMigrator when a store is opened for the first time.
+ * @author Evan Gunn
+ *
+ */
+public class EmbeddedVocabularyStore extends MyConnection {
+    // Rows a streaming query reads at a time, H2 does not accept the Integer.MIN_VALUE that Connector/J uses.
+    private static final int STREAMING_FETCH_SIZE = 1000;
+    private static final String USER = "sa";
+
+    private EmbeddedVocabularyStore() {
+    }
+
+    /**
+     * Open the store in a database file, creating it if it does not exist, and make it MyConnection's instance.
+     * @param file The database file, H2 adds the .mv.db extension.
+     * @return True if the store is open.
+     */
+    public static boolean open(Path file) {
+        String name = file.toAbsolutePath().toString();
+        if (name.endsWith(".mv.db")) {
+            name = name.substring(0, name.length() - ".mv.db".length());
+        }
+        // H2 must not close the database from its own shutdown hook, which would race the hook flushing queued results.
+        // The database is closed with the connection pool.
+        return openUrl("jdbc:h2:file:" + name + ";MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_ON_EXIT=FALSE");
+    }
+
+    /**
+     * Open the store at an H2 JDBC URL, such as an in memory database, and make it MyConnection's instance.
+     * The URL should set MODE=MySQL and DATABASE_TO_LOWER=TRUE.
+     * @param jdbcUrl The JDBC URL of the H2 database.
+     * @return True if the store is open.
+     */
+    public static boolean openUrl(String jdbcUrl) {
+        try {
+            Class.forName("org.h2.Driver");
+        } catch (ClassNotFoundException e) {
+            Logger.getInstance().error("The H2 driver is not on the classpath: " + e.getMessage());
+            return false;
+        }
+        EmbeddedVocabularyStore store = new EmbeddedVocabularyStore();
+        if (!install(store, jdbcUrl, USER, "", DEFAULT_MIN_POOL_SIZE, DEFAULT_MAX_POOL_SIZE, DEFAULT_ACQUIRE_TIMEOUT_MILLIS)) {
+            return false;
+        }
+        if (!SchemaMigrator.migrate(store)) {
+            store.close();
+            return false;
+        }
+        SchemaMigrator.verifyIndexes(store);
+        return true;
+    }
+
+    @Override
+    int getStreamingFetchSize() {
+        return STREAMING_FETCH_SIZE;
+    }
+}
@@ -0,0 +1,301 @@
+package database;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLTransientException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import application.Logger;
+
+/**
+ * An insert session is a unit of work for inserting words. Words are staged locally, with no round trip, and
+ * written together by commit() in one transaction: one query finds the staged words that are already stored,
+ * and the rest are written as the three batches of the WordBatchWriter. A word is told apart from another by
+ * its meaning and romanization, as the word table's unique key does, so a word staged twice, or already stored,
+ * is only written once.
+ *
+ * If the batch is refused, such as when another client stored one of the words since it was checked, the words
+ * are written again one at a time behind savepoints, so only the words that fail are left out. If the transaction
+ * fails for a reason that may pass, a deadlock, a serialization failure or a lost connection, it is tried again
+ * from the start, up to MAX_ATTEMPTS times.
+ * @author Evan Gunn
+ *
+ */
+public class InsertSession {
+    public static final int MAX_ATTEMPTS = 3;
+    // The wait before the second attempt, doubled before each attempt after it.
+    private static final long RETRY_DELAY_MILLIS = 100;
+    // The most (meaning, romanization) pairs checked by one query.
+    private static final int CHECK_CHUNK_SIZE = 256;
+    
+    private final MyConnection connection;
+    private final List<LocalWord> staged = new ArrayList<LocalWord>();
+    private final Set<String> stagedKeys = new HashSet<String>();
+    
+    /**
+     * @param connection The connection the words are written through.
+     */
+    public InsertSession(MyConnection connection) {
+        this.connection = connection;
+    }
+    
+    /**
+     * The result of a commit.
+     */
+    public static class CommitReport {
+        private final List<LocalWord> inserted = new ArrayList<LocalWord>();
+        private final List<LocalWord> alreadyStored = new ArrayList<LocalWord>();
+        private final List<String> failures = new ArrayList<String>();
+        private int attempts = 0;
+        private boolean committed = false;
+        
+        /**
+         * @return The words written, with their new wids.
+         */
+        public List<LocalWord> getInserted() {
+            return inserted;
+        }
+        
+        /**
+         * @return The staged words that were already stored, and were not written.
+         */
+        public List<LocalWord> getAlreadyStored() {
+            return alreadyStored;
+        }
+        
+        /**
+         * @return A message for each word the database refused.
+         */
+        public List<String> getFailures() {
+            return failures;
+        }
+        
+        public int getAttempts() {
+            return attempts;
+        }
+        
+        /**
+         * @return True if the transaction was committed, false if nothing was written.
+         */
+        public boolean isCommitted() {
+            return committed;
+        }
+        
+        private void clear() {
+            inserted.clear();
+            alreadyStored.clear();
+            failures.clear();
+        }
+        
+        /**
+         * @return A one line summary of the commit.
+         */
+        public String toString() {
+            if (!committed) return "Nothing was written, after " + attempts + " attempts.";
+            return "Inserted " + inserted.size() + " words, skipped " + alreadyStored.size() + " already stored, "
+                 + failures.size() + " failed, in " + attempts + (attempts == 1 ? " attempt." : " attempts.");
+        }
+    }
+    
+    /**
+     * Stage a word to be written by the next commit.
+     * @param word The word, with its symbols and sources.
+     * @return True if the word was staged, false if a word with the same meaning and romanization is already staged.
+     */
+    public boolean stage(LocalWord word) {
+        if (!stagedKeys.add(key(word.getMeaning(), word.getRomanization()))) return false;
+        staged.add(word);
+        return true;
+    }
+    
+    /**
+     * @return The staged words, in the order they were staged.
+     */
+    public List<LocalWord> getStaged() {
+        return Collections.unmodifiableList(staged);
+    }
+    
+    public int size() {
+        return staged.size();
+    }
+    
+    /**
+     * Drop every staged word.
+     */
+    public void discard() {
+        staged.clear();
+        stagedKeys.clear();
+    }
+    
+    /**
+     * Write every staged word in one transaction, trying again if it fails for a reason that may pass.
+     * The staged words are dropped once they are committed, and kept if nothing could be written.
+     * @return The report of what was written.
+     */
+    public CommitReport commit() {
+        CommitReport report = new CommitReport();
+        if (staged.isEmpty()) {
+            report.committed = true;
+            return report;
+        }
+        ConnectionPool pool = connection.getPool();
+        if (pool == null) {
+            Logger.getInstance().error("Cannot commit staged words, there is no connection.");
+            return report;
+        }
+        // Words are checked for in a round trip per chunk, written in three, then committed, after the queued writes.
+        WriteBehindQueue.getInstance().flush();
+        long delay = RETRY_DELAY_MILLIS;
+        while (report.attempts < MAX_ATTEMPTS) {
+            report.attempts++;
+            report.clear();
+            try {
+                write(pool, report);
+                report.committed = true;
+                break;
+            } catch (SQLException e) {
+                if (!isTransient(e) || report.attempts == MAX_ATTEMPTS) {
+                    Logger.getInstance().error("Failed to commit " + staged.size() + " staged words: " + e.getMessage());
+                    report.clear();
+                    return report;
+                }
+                Logger.getInstance().warn("Attempt " + report.attempts + " to commit staged words failed, trying again: " + e.getMessage());
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    report.clear();
+                    return report;
+                }
+                delay *= 2;
+            }
+        }
+        if (!report.inserted.isEmpty()) WordSampler.getInstance().invalidate();
+        for (LocalWord word : report.inserted) {
+            MyConnection.wordInserted(word);
+        }
+        VocabularyStore active = VocabularyStores.getActive();
+        if (active instanceof ColumnarVocabularyStore) {
+            ((ColumnarVocabularyStore) active).addInserted(report.inserted);
+        }
+        discard();
+        return report;
+    }
+    
+    /**
+     * Run one attempt of the transaction.
+     * @throws SQLException If the transaction was rolled back, or the connection could not be had.
+     */
+    private void write(ConnectionPool pool, CommitReport report) throws SQLException {
+        PooledConnection pooled = pool.acquire();
+        Connection jdbc = pooled.getConnection();
+        try {
+            jdbc.setAutoCommit(false);
+            Set<String> stored = findStored(pooled);
+            List<LocalWord> fresh = new ArrayList<LocalWord>(staged.size());
+            for (LocalWord word : staged) {
+                word.setWID(-1);
+                if (stored.contains(key(word.getMeaning(), word.getRomanization()))) {
+                    report.alreadyStored.add(word);
+                } else {
+                    fresh.add(word);
+                }
+            }
+            
+            Savepoint beforeBatch = jdbc.setSavepoint();
+            try {
+                WordBatchWriter.writeBatch(pooled, fresh);
+                report.inserted.addAll(fresh);
+            } catch (SQLException e) {
+                if (isTransient(e)) throw e;
+                jdbc.rollback(beforeBatch);
+                Logger.getInstance().debug(() -> "The batch was refused, writing the words one at a time: " + e.getMessage());
+                for (LocalWord word : fresh) {
+                    Savepoint beforeWord = jdbc.setSavepoint();
+                    try {
+                        WordBatchWriter.writeOne(pooled, word);
+                        jdbc.releaseSavepoint(beforeWord);
+                        report.inserted.add(word);
+                    } catch (SQLException wordError) {
+                        if (isTransient(wordError)) throw wordError;
+                        jdbc.rollback(beforeWord);
+                        word.setWID(-1);
+                        report.failures.add(word.getRomanization() + " (" + word.getMeaning() + "): " + wordError.getMessage());
+                    }
+                }
+            }
+            jdbc.commit();
+            QueryStats.getInstance().recordTransaction(true);
+        } catch (SQLException e) {
+            pooled.recordError(e);
+            try {
+                jdbc.rollback();
+                QueryStats.getInstance().recordTransaction(false);
+            } catch (SQLException rollbackError) {
+                Logger.getInstance().error(rollbackError.getMessage());
+            }
+            throw e;
+        } finally {
+            try {
+                jdbc.setAutoCommit(true);
+            } catch (SQLException e) {
+                Logger.getInstance().error(e.getMessage());
+            }
+            pool.release(pooled);
+        }
+    }
+    
+    /**
+     * Find which staged words are already stored, a chunk of (meaning, romanization) pairs per query.
+     * @return The keys of the stored pairs.
+     */
+    private Set<String> findStored(PooledConnection pooled) throws SQLException {
+        Set<String> stored = new HashSet<String>();
+        for (int start = 0; start < staged.size(); start += CHECK_CHUNK_SIZE) {
+            int count = Math.min(CHECK_CHUNK_SIZE, staged.size() - start);
+            // Padded to a power of two by repeating the last pair, so few statements are prepared and cached.
+            int padded = MyConnection.paddedParameters(count).length;
+            StringBuilder query = new StringBuilder("SELECT W.meaning, W.romanization FROM word W WHERE (W.meaning, W.romanization) IN (");
+            for (int i = 0; i < padded; i++) {
+                query.append(i == 0 ? "(?, ?)" : ", (?, ?)");
+            }
+            Object[] parameters = new Object[2 * padded];
+            for (int i = 0; i < padded; i++) {
+                LocalWord word = staged.get(start + Math.min(i, count - 1));
+                parameters[2 * i] = word.getMeaning();
+                parameters[2 * i + 1] = word.getRomanization();
+            }
+            MyConnection.runStatement(pooled, query.append(')').toString(), statement -> {
+                int rows = 0;
+                try (ResultSet results = statement.executeQuery()) {
+                    while (results.next()) {
+                        stored.add(key(results.getString(1), results.getString(2)));
+                        rows++;
+                    }
+                }
+                return rows;
+            }, parameters);
+        }
+        return stored;
+    }
+    
+    /**
+     * @return True if an error may pass when the transaction is tried again: a serialization failure or deadlock,
+     * SQLState class 40, or a lost connection, SQLState class 08.
+     */
+    static boolean isTransient(SQLException e) {
+        if (e instanceof SQLTransientException) return true;
+        String state = e.getSQLState();
+        return state != null && (state.startsWith("40") || state.startsWith("08"));
+    }
+    
+    private static String key(String meaning, String romanization) {
+        return meaning + '\u0000' + romanization;
+    }
+}
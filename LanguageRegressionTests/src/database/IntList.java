@@ -0,0 +1,125 @@
+package database;
+
+import java.util.Arrays;
+
+/**
+ * A growable list of primitive ints, used where a list of Integer would box every value.
+ * @author Evan Gunn
+ *
+ */
+public class IntList {
+    private int[] values;
+    private int size = 0;
+    
+    public IntList() {
+        this(16);
+    }
+    
+    /**
+     * @param capacity The amount of values the list holds before it first grows.
+     */
+    public IntList(int capacity) {
+        values = new int[Math.max(1, capacity)];
+    }
+    
+    /**
+     * Add a value to the end of the list.
+     */
+    public void add(int value) {
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        values[size++] = value;
+    }
+    
+    /**
+     * Add every value of an array to the end of the list.
+     */
+    public void addAll(int[] array, int offset, int length) {
+        if (size + length > values.length) {
+            values = Arrays.copyOf(values, Math.max(size * 2, size + length));
+        }
+        System.arraycopy(array, offset, values, size, length);
+        size += length;
+    }
+    
+    public int get(int index) {
+        if (index >= size) throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        return values[index];
+    }
+    
+    public void set(int index, int value) {
+        if (index >= size) throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        values[index] = value;
+    }
+    
+    /**
+     * Insert a value at an index, moving every later value back by one.
+     */
+    public void insert(int index, int value) {
+        if (index > size) throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        if (size == values.length) {
+            values = Arrays.copyOf(values, size * 2);
+        }
+        System.arraycopy(values, index, values, index + 1, size - index);
+        values[index] = value;
+        size++;
+    }
+    
+    /**
+     * Remove the value at an index, moving every later value forward by one, so the order is kept.
+     */
+    public void removeAt(int index) {
+        if (index >= size) throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + size);
+        System.arraycopy(values, index + 1, values, index, size - index - 1);
+        size--;
+    }
+    
+    /**
+     * Search a list sorted in ascending order.
+     * @return The index of the value, or (-(insertion point) - 1) if it is not in the list, as Arrays.binarySearch.
+     */
+    public int binarySearch(int value) {
+        return Arrays.binarySearch(values, 0, size, value);
+    }
+    
+    /**
+     * Remove the first occurrence of a value by moving the last value into its place, so the order is not kept.
+     * @return True if the value was found.
+     */
+    public boolean removeUnordered(int value) {
+        for (int i = 0; i < size; i++) {
+            if (values[i] == value) {
+                values[i] = values[--size];
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    public int size() {
+        return size;
+    }
+    
+    /**
+     * @return The length of the backing array, for estimating memory use.
+     */
+    public int capacity() {
+        return values.length;
+    }
+    
+    public boolean isEmpty() {
+        return size == 0;
+    }
+    
+    public void clear() {
+        size = 0;
+    }
+    
+    /**
+     * @return A copy of the values, sized to the list.
+     */
+    public int[] toArray() {
+        return Arrays.copyOf(values, size);
+    }
+}
@@ -1,5 +1,9 @@
 package database;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
 /**
  * Local Word represents data for a word that is stored locally on the client side.
  * This can include a word that will be inserted, a word that will be updated with new information,
@@ -11,6 +15,10 @@ package database;
 public class LocalWord {
     private String romanization, language, meaning, wtype, main, ancillary, sname;
     private int wid = -1;
+    // Every symbols and source row of the word, main/ancillary/sname hold the first of each.
+    private final ArrayList<String> mains = new ArrayList<String>(1);
+    private final ArrayList<String> ancillaries = new ArrayList<String>(1);
+    private final ArrayList<String> sources = new ArrayList<String>(1);
     
     /**
      * This constructor should be used when attempting to pull unknown data for a word.
@@ -64,6 +72,13 @@ public class LocalWord {
         this.main = main;
         this.ancillary = ancillary;
         this.sname = source;
+        if (main != null) {
+            mains.add(main);
+            ancillaries.add(ancillary);
+        }
+        if (source != null) {
+            sources.add(source);
+        }
     }
     
     /**
@@ -73,6 +88,13 @@ public class LocalWord {
         return wid;
     }
     
+    /**
+     * Set the word ID, used when the word has been found in the database.
+     */
+    void setWID(int wid) {
+        this.wid = wid;
+    }
+    
     /**
      * Set the values that the word table would contain in the database.
      * Useful when finishing a partial LocalWord with data from the database.
@@ -91,6 +113,25 @@ public class LocalWord {
     public void setSymbolValues(String main, String ancillary) {
         this.main = main;
         this.ancillary = ancillary;
+        mains.clear();
+        ancillaries.clear();
+        if (main != null) {
+            mains.add(main);
+            ancillaries.add(ancillary);
+        }
+    }
+    
+    /**
+     * Add one more row of the symbol table, a word may have several sets of main symbols.
+     * The first row added is also available through getMainSymbols() and getAncillarySymbol().
+     */
+    public void addSymbolValues(String main, String ancillary) {
+        if (mains.isEmpty()) {
+            this.main = main;
+            this.ancillary = ancillary;
+        }
+        mains.add(main);
+        ancillaries.add(ancillary);
     }
     
     /**
@@ -99,6 +140,48 @@ public class LocalWord {
      */
     public void setSourceValue(String source) {
         this.sname = source;
+        sources.clear();
+        if (source != null) {
+            sources.add(source);
+        }
+    }
+    
+    /**
+     * Add one more row of the source table, a word may come from several sources.
+     * The first source added is also available through getSource().
+     */
+    public void addSourceValue(String source) {
+        if (sources.isEmpty()) {
+            this.sname = source;
+        }
+        sources.add(source);
+    }
+    
+    /**
+     * Forget every symbols and source row, before the rows are pulled again.
+     */
+    void clearSymbolsAndSources() {
+        main = null;
+        ancillary = null;
+        sname = null;
+        mains.clear();
+        ancillaries.clear();
+        sources.clear();
+    }
+    
+    /**
+     * Copy every value of another word, used when a word has been hydrated in a batch.
+     */
+    void copyFrom(LocalWord other) {
+        wid = other.wid;
+        setWordValues(other.romanization, other.language, other.meaning, other.wtype);
+        clearSymbolsAndSources();
+        for (int i = 0; i < other.mains.size(); i++) {
+            addSymbolValues(other.mains.get(i), other.ancillaries.get(i));
+        }
+        for (String source : other.sources) {
+            addSourceValue(source);
+        }
     }
     
     /**
@@ -129,6 +212,48 @@ public class LocalWord {
         return ancillary;
     }
     
+    /**
+     * Get the main symbols of every symbols row, in the same order as getAllAncillarySymbols().
+     */
+    public List<String> getAllMainSymbols() {
+        return Collections.unmodifiableList(mains);
+    }
+    
+    /**
+     * Get the ancillary symbols of every symbols row, in the same order as getAllMainSymbols().
+     */
+    public List<String> getAllAncillarySymbols() {
+        return Collections.unmodifiableList(ancillaries);
+    }
+    
+    /**
+     * Get the language of the word.
+     */
+    public String getLanguage() {
+        return language;
+    }
+    
+    /**
+     * Get the type of the word, noun, verb, etc...
+     */
+    public String getWType() {
+        return wtype;
+    }
+    
+    /**
+     * Get the first source of the word.
+     */
+    public String getSource() {
+        return sname;
+    }
+    
+    /**
+     * Get every source of the word.
+     */
+    public List<String> getAllSources() {
+        return Collections.unmodifiableList(sources);
+    }
+    
     /**
      * The wid is initially -1, which means it has not been set.
      * When printing, this value should be displayed as 'Not Set'.
@@ -147,31 +272,29 @@ public class LocalWord {
      * @return The string version of the local word.
      */
     public String toString() {
+        if (mains.size() > 1 || sources.size() > 1) {
+            return "Word ID: " + widToString() + ", Romanized Word: " + romanization + ", Language: " + language + ", Meaning: " + meaning
+                 + ", Type: " + wtype + ", Main Symbols: " + mains + ", Ancillary: " + ancillaries + ", Source: " + sources;
+        }
         return "Word ID: " + widToString() + ", Romanized Word: " + romanization + ", Language: " + language + ", Meaning: " + meaning
              + ", Type: " + wtype + ", Main Symbols: " + main + ", Ancillary: " + ancillary + ", Source: " + sname;
     }
     
     /**
-     * Pull data from the database to complete the LocalWord, may overwrite come of current data.
-     * @return True if the pull was successful, false if the pull failed. Pull can succeed partially and return true.
+     * Pull data from the active vocabulary store to complete the LocalWord, may overwrite come of current data.
+     * @return True if the pull was successful, false if the word was not found or the pull failed.
      */
     public boolean pull() {
-        // Pull the word ID
-        int remoteWID = -1;
-        remoteWID = MyConnection.getInstance().checkForWord(romanization, language, meaning);
-        if (remoteWID < 0) {
-            return false;
-        }
-        wid = remoteWID;
-        
-        // Pull from the word table.
-        if (!MyConnection.getInstance().setLocalWordTable(this)) return false;
-        
-        // Attempt to pull from the symbols table.
-        MyConnection.getInstance().setLocalSymbolsTable(this);
-        
-        // Attempt to pull from the source table.
-        MyConnection.getInstance().setLocalSourceTable(this);
-        return true;
+        return VocabularyStores.getActive().pullWords(Collections.singletonList(this));
+    }
+    
+    /**
+     * The batched counterpart of pull(). Pull data for every word in a few queries, rather than four queries per word.
+     * @param words The words to complete, each needs at least a romanization and language.
+     * @return True if every word was found, false if any word was not found or the pull failed.
+     * Words that were found are completed even when false is returned.
+     */
+    public static boolean pullAll(List<LocalWord> words) {
+        return VocabularyStores.getActive().pullWords(words);
     }
 }
@@ -0,0 +1,134 @@
+package database;
+
+import java.util.Arrays;
+
+/**
+ * A map from long keys to int values, laid out like IntIntMap, for keys built from two int codes.
+ * The entries are stored in parallel arrays with open addressing and linear probing, so no key or value is boxed.
+ * Removal shifts the following entries back rather than leaving tombstones. The table is kept at most half full.
+ * @author Evan Gunn
+ *
+ */
+public class LongIntMap {
+    private long[] keys;
+    private int[] values;
+    private boolean[] used;
+    private int size = 0;
+    private int mask;
+    private final int missing;
+    
+    /**
+     * @param expectedSize The amount of keys expected, the map grows past it if needed.
+     * @param missing The value returned for a key that is not in the map.
+     */
+    public LongIntMap(int expectedSize, int missing) {
+        int capacity = Integer.highestOneBit(Math.max(4, expectedSize * 2 - 1)) << 1;
+        keys = new long[capacity];
+        values = new int[capacity];
+        used = new boolean[capacity];
+        mask = capacity - 1;
+        this.missing = missing;
+    }
+    
+    /**
+     * @return The value of a key, or the missing value given to the constructor.
+     */
+    public int get(long key) {
+        for (int slot = slot(key); used[slot]; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) return values[slot];
+        }
+        return missing;
+    }
+    
+    public boolean containsKey(long key) {
+        for (int slot = slot(key); used[slot]; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) return true;
+        }
+        return false;
+    }
+    
+    /**
+     * Map a key to a value, replacing its old value.
+     * @return The old value, or the missing value if the key was not in the map.
+     */
+    public int put(long key, int value) {
+        int slot = slot(key);
+        for (; used[slot]; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) {
+                int old = values[slot];
+                values[slot] = value;
+                return old;
+            }
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        used[slot] = true;
+        if (++size * 2 > keys.length) grow();
+        return missing;
+    }
+    
+    /**
+     * Remove a key.
+     * @return The value it had, or the missing value if the key was not in the map.
+     */
+    public int remove(long key) {
+        int slot = slot(key);
+        for (; used[slot]; slot = (slot + 1) & mask) {
+            if (keys[slot] == key) break;
+        }
+        if (!used[slot]) return missing;
+        int old = values[slot];
+        // Shift back every following entry of the run that would no longer be reachable from its home slot.
+        int gap = slot;
+        for (int next = (gap + 1) & mask; used[next]; next = (next + 1) & mask) {
+            int home = slot(keys[next]);
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                keys[gap] = keys[next];
+                values[gap] = values[next];
+                gap = next;
+            }
+        }
+        used[gap] = false;
+        size--;
+        return old;
+    }
+    
+    public int size() {
+        return size;
+    }
+    
+    public void clear() {
+        Arrays.fill(used, false);
+        size = 0;
+    }
+    
+    /**
+     * @return The approximate amount of memory held by the map's arrays, in bytes.
+     */
+    public long estimateBytes() {
+        return keys.length * 13L;
+    }
+    
+    private int slot(long key) {
+        // Fibonacci hashing, taking the high bits of the product, which every bit of the key has a part in.
+        return (int) (key * 0x9E3779B97F4A7C15L >>> 32) & mask;
+    }
+    
+    private void grow() {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        boolean[] oldUsed = used;
+        keys = new long[oldKeys.length * 2];
+        values = new int[oldKeys.length * 2];
+        used = new boolean[oldKeys.length * 2];
+        mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (!oldUsed[i]) continue;
+            int slot = slot(oldKeys[i]);
+            while (used[slot]) slot = (slot + 1) & mask;
+            keys[slot] = oldKeys[i];
+            values[slot] = oldValues[i];
+            used[slot] = true;
+        }
+    }
+}
@@ -2,31 +2,68 @@ package database;
 
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
 
 import application.Logger;
 
 /**
- * MyConnection manages both the MySQL server connection, and all SQL commands issued to that server.
+ * MyConnection manages both the pool of MySQL server connections, and all SQL commands issued to that server.
  * This class is a singleton, as the program will only connect to one server at a time.
+ * It is the default VocabularyStore, EmbeddedVocabularyStore replaces the instance to use an embedded database instead.
+ * Each command checks a connection out of the pool for as long as it runs, so commands may be issued
+ * from several threads at once.
  * @author Evan Gunn
  */
-public class MyConnection {
+public class MyConnection implements VocabularyStore {
     private static String WORD_TABLE = "word";
     private static String SOURCE_TABLE = "wordsource";
     private static String SYMBOL_TABLE = "symbols";
-    private Connection connection = null;
+    private static String REVIEW_TABLE = "review";
+    private static String RESULT_TABLE = "result";
+    private static final String REVIEW_UPSERT = "INSERT INTO " + REVIEW_TABLE + " (wid, rinterval, ease, due, reps) "
+                                              + "VALUES (?, ?, ?, ?, ?) "
+                                              + "ON DUPLICATE KEY UPDATE rinterval = VALUES(rinterval), ease = VALUES(ease), due = VALUES(due), reps = VALUES(reps)";
+    private static final String RESULT_INSERT = "INSERT INTO " + RESULT_TABLE + " (wid, qtype, correct, latency, answered) "
+                                               + "VALUES (?, ?, ?, ?, ?)";
+    // The most values put in one IN (...) list when hydrating words in a batch.
+    private static final int BATCH_CHUNK_SIZE = 512;
+    // Words hydrated per range of wids when every word is read.
+    private static final int LOAD_CHUNK = 8192;
+    // Pool defaults, used when the caller does not size the pool.
+    public static final int DEFAULT_MIN_POOL_SIZE = 1;
+    public static final int DEFAULT_MAX_POOL_SIZE = 8;
+    public static final long DEFAULT_ACQUIRE_TIMEOUT_MILLIS = 10000;
+    public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 300000;
+    private volatile ConnectionPool pool = null;
+    // Whether the foreign keys on word cascade deletes, checked once for the pool, null until checked.
+    private volatile Boolean cascadesDeletes = null;
     
     // The singleton's instance
-    private static MyConnection myConnection = null;
+    private static volatile MyConnection myConnection = null;
+    
+    protected MyConnection() {
+    }
     
     /**
      * @return The single instance of the MyConnection class.
      */
     public static MyConnection getInstance() {
-        if (myConnection == null) {
-            myConnection = new MyConnection();
+        MyConnection instance = myConnection;
+        if (instance == null) {
+            synchronized (MyConnection.class) {
+                if (myConnection == null) {
+                    myConnection = new MyConnection();
+                }
+                instance = myConnection;
+            }
         }
-        return myConnection;
+        return instance;
     }
     
     /**
@@ -38,75 +75,473 @@ public class MyConnection {
      * @param password The password for the user.
      */
     public static boolean initializeConnection(String awsEndpoint, String port, String schema, String user, String password) {
-        myConnection = new MyConnection();
+        return initializeConnection(awsEndpoint, port, schema, user, password,
+                DEFAULT_MIN_POOL_SIZE, DEFAULT_MAX_POOL_SIZE, DEFAULT_ACQUIRE_TIMEOUT_MILLIS);
+    }
+    
+    /**
+     * Initialize the connection pool with a chosen size.
+     * @param awsEndpoint The AWS RDS MySQL endpoint.
+     * @param port The port the MySQL server is on.
+     * @param schema The name of the MySQL schema being accessed.
+     * @param user The username used to access the MySQL database.
+     * @param password The password for the user.
+     * @param minPoolSize The amount of connections kept open while idle.
+     * @param maxPoolSize The most connections that may be open at once.
+     * @param acquireTimeoutMillis How long a command waits for a free connection before failing.
+     */
+    public static synchronized boolean initializeConnection(String awsEndpoint, String port, String schema, String user, String password,
+            int minPoolSize, int maxPoolSize, long acquireTimeoutMillis) {
         try {
             Class.forName("com.mysql.cj.jdbc.Driver");
-            myConnection.connection = DriverManager.getConnection("jdbc:mysql://"+awsEndpoint+":"+port+"/"+schema, user, password);
+        } catch (ClassNotFoundException e) {
+            Logger.getInstance().error("The MySQL driver is not on the classpath: " + e.getMessage());
+            return false;
+        }
+        if (!install(new MyConnection(), "jdbc:mysql://"+awsEndpoint+":"+port+"/"+schema+"?rewriteBatchedStatements=true", user, password,
+                minPoolSize, maxPoolSize, acquireTimeoutMillis)) {
+            return false;
+        }
+        // Bring the schema up to date. A user without the rights to alter it may still use it as it is.
+        if (SchemaMigrator.migrate(myConnection)) {
+            SchemaMigrator.verifyIndexes(myConnection);
+        }
+        return true;
+    }
+    
+    /**
+     * Initialize the connection pool from a JDBC URL, for databases other than a MySQL server such as an
+     * embedded database. The driver must be on the classpath, it is found by the DriverManager.
+     * @param jdbcUrl The JDBC URL of the database.
+     * @param user The username used to access the database.
+     * @param password The password for the user.
+     */
+    public static boolean initializeConnection(String jdbcUrl, String user, String password) {
+        return install(new MyConnection(), jdbcUrl, user, password,
+                DEFAULT_MIN_POOL_SIZE, DEFAULT_MAX_POOL_SIZE, DEFAULT_ACQUIRE_TIMEOUT_MILLIS);
+    }
+    
+    /**
+     * Close the current connection, then open a pool for a new instance and make it the singleton's instance.
+     * Subclasses use this to replace the instance with one for another kind of database.
+     * @param connection The new, unconnected instance.
+     * @param jdbcUrl The JDBC URL of the database.
+     * @param user The username used to access the database.
+     * @param password The password for the user.
+     * @return True if the pool was opened.
+     */
+    protected static synchronized boolean install(MyConnection connection, String jdbcUrl, String user, String password,
+            int minPoolSize, int maxPoolSize, long acquireTimeoutMillis) {
+        closeConnection();
+        try {
+            connection.pool = new ConnectionPool(jdbcUrl, user, password, minPoolSize, maxPoolSize,
+                    acquireTimeoutMillis, DEFAULT_IDLE_TIMEOUT_MILLIS);
         } catch (Exception e) {
-            Logger.getInstance().log(e.getMessage());
+            Logger.getInstance().error(e.getMessage());
             return false;
         }
+        myConnection = connection;
+        QueryStats.registerPool(connection.pool);
         return true;
     }
     
     /**
-     * Run an SQL query on the database. All queries are passed as strings, results should be checked for query failure and null returns.
-     * @param query A string in the format of an SQL query.
-     * @return Returns a ResultSet type, the contents of which depend on the query, or a null value if the query fails.
+     * @return The connection pool, or null if the connection has not been initialized. Useful for reading pool-wait metrics.
+     */
+    public ConnectionPool getPool() {
+        return pool;
+    }
+    
+    /**
+     * Check a connection out of the pool.
+     * @return The connection, or null if none could be acquired.
      */
-    private ResultSet runQuery(String query) {
-        ResultSet set = null;
+    private PooledConnection acquire() {
+        ConnectionPool currentPool = pool;
+        if (currentPool == null) {
+            Logger.getInstance().warn("Not connected to a database.");
+            return null;
+        }
         try {
-            Statement statement = connection.createStatement();
-            set = statement.executeQuery(query);
+            return currentPool.acquire();
         } catch (SQLException e) {
-            Logger.getInstance().log(e.getMessage());
+            Logger.getInstance().error(e.getMessage());
+            return null;
         }
-        return set;
     }
     
     /**
-     * Run a SQL update.
-     * @param update The SQL update, or insertion.
+     * Hand a connection back to the pool, or close it if the pool has since been closed.
+     * @param pooled The connection returned by acquire().
+     */
+    private void release(PooledConnection pooled) {
+        ConnectionPool currentPool = pool;
+        if (currentPool != null) {
+            currentPool.release(pooled);
+        } else {
+            pooled.close();
+        }
+    }
+    
+    /**
+     * Run a parameterized SQL query on the database. The statement is taken from the statement cache,
+     * and the ResultSet is closed as soon as the handler has read it.
+     * @param query A string in the format of an SQL query, with ? in place of every value.
+     * @param handler Reads the results of the query.
+     * @param parameters The values bound to the query, in order.
+     * @return Returns the value built by the handler, or a null value if the query fails.
+     */
+    private <T> T runQuery(String query, ResultHandler<T> handler, Object... parameters) {
+        PooledConnection pooled = acquire();
+        if (pooled == null) return null;
+        try {
+            return runQuery(pooled, query, handler, parameters);
+        } finally {
+            release(pooled);
+        }
+    }
+    
+    /**
+     * Run a parameterized SQL query on a connection that the caller has already checked out,
+     * so that it can take part in the caller's transaction.
+     * @param pooled The checked out connection.
+     * @param query A string in the format of an SQL query, with ? in place of every value.
+     * @param handler Reads the results of the query.
+     * @param parameters The values bound to the query, in order.
+     * @return Returns the value built by the handler, or a null value if the query fails.
+     */
+    private <T> T runQuery(PooledConnection pooled, String query, ResultHandler<T> handler, Object... parameters) {
+        long start = System.nanoTime();
+        ResultRows rows = null;
+        boolean failed = true;
+        try {
+            PreparedStatement statement = pooled.getStatements().prepare(query);
+            bindParameters(statement, parameters);
+            // The message captures locals, so check the level before a lambda is made for every query.
+            if (Logger.getInstance().isDebugEnabled()) {
+                Logger.getInstance().debug(() -> "Query: " + query + " " + Arrays.toString(parameters));
+            }
+            try (ResultSet set = statement.executeQuery()) {
+                rows = new ResultRows(set);
+                T result = handler.handle(rows);
+                failed = false;
+                return result;
+            }
+        } catch (SQLException e) {
+            pooled.recordError(e);
+            Logger.getInstance().error(e.getMessage());
+            return null;
+        } finally {
+            QueryStats.getInstance().recordStatement(query, start, rows == null ? 0 : rows.getRows(), failed);
+        }
+    }
+    
+    /**
+     * Run a parameterized SQL update on a connection that the caller has already checked out.
+     * @param pooled The checked out connection.
+     * @param update The SQL update, or insertion, with ? in place of every value.
+     * @param parameters The values bound to the update, in order.
      * @return Return the number of rows affected
      */
-    private int runUpdate(String update) {
+    private int runUpdate(PooledConnection pooled, String update, Object... parameters) {
         int rowsUpdated = 0;
+        long start = System.nanoTime();
+        boolean failed = true;
         try {
-            Statement statement = connection.createStatement();
-            rowsUpdated = statement.executeUpdate(update);
+            PreparedStatement statement = pooled.getStatements().prepare(update);
+            bindParameters(statement, parameters);
+            if (Logger.getInstance().isDebugEnabled()) {
+                Logger.getInstance().debug(() -> "Update: " + update + " " + Arrays.toString(parameters));
+            }
+            rowsUpdated = statement.executeUpdate();
+            failed = false;
         } catch (SQLException e) {
-            Logger.getInstance().log(e.getMessage());
+            pooled.recordError(e);
+            Logger.getInstance().error(e.getMessage());
             return 0;
+        } finally {
+            QueryStats.getInstance().recordStatement(update, start, rowsUpdated, failed);
         }
         return rowsUpdated;
     }
     
+    /**
+     * Begin a transaction on a checked out connection, it must be ended by commit() or rollback().
+     * @return True if the transaction began.
+     */
+    private static boolean begin(PooledConnection pooled) {
+        try {
+            pooled.getConnection().setAutoCommit(false);
+            QueryStats.getInstance().roundTrip();
+            return true;
+        } catch (SQLException e) {
+            pooled.recordError(e);
+            Logger.getInstance().error(e.getMessage());
+            return false;
+        }
+    }
+    
+    /**
+     * Commit the transaction begun by begin(), rolling it back if the commit fails.
+     * @return True if the transaction was committed.
+     */
+    private static boolean commit(PooledConnection pooled) {
+        try {
+            pooled.getConnection().commit();
+            QueryStats.getInstance().recordTransaction(true);
+            endTransaction(pooled);
+            return true;
+        } catch (SQLException e) {
+            pooled.recordError(e);
+            Logger.getInstance().error(e.getMessage());
+            QueryStats.getInstance().roundTrip();
+            rollback(pooled);
+            return false;
+        }
+    }
+    
+    /**
+     * Roll back the transaction begun by begin().
+     */
+    private static void rollback(PooledConnection pooled) {
+        try {
+            pooled.getConnection().rollback();
+            QueryStats.getInstance().recordTransaction(false);
+        } catch (SQLException e) {
+            pooled.recordError(e);
+            Logger.getInstance().error(e.getMessage());
+        } finally {
+            endTransaction(pooled);
+        }
+    }
+    
+    /**
+     * Return the connection to auto-commit, as the pool expects.
+     */
+    private static void endTransaction(PooledConnection pooled) {
+        try {
+            pooled.getConnection().setAutoCommit(true);
+            QueryStats.getInstance().roundTrip();
+        } catch (SQLException e) {
+            pooled.recordError(e);
+            Logger.getInstance().error(e.getMessage());
+        }
+    }
+    
+    /**
+     * Bind values to the parameters of a prepared statement. Null values are bound as SQL NULL.
+     * @param statement The statement to bind to.
+     * @param parameters The values, in the order of the statement's parameters.
+     * @throws SQLException If a value cannot be bound.
+     */
+    static void bindParameters(PreparedStatement statement, Object[] parameters) throws SQLException {
+        for (int i = 0; i < parameters.length; i++) {
+            if (parameters[i] == null) {
+                statement.setNull(i + 1, Types.VARCHAR);
+            } else {
+                statement.setObject(i + 1, parameters[i]);
+            }
+        }
+    }
+    
+    /**
+     * Run a statement on a connection that the caller has already checked out, as part of the caller's transaction.
+     * The statement is taken from the statement cache and its values are bound, then the execution runs it and reads
+     * its results. The statement is recorded in the query stats, and a failure is noted on the connection.
+     * @param pooled The checked out connection.
+     * @param sql The SQL statement, with ? in place of every value.
+     * @param execution Runs the bound statement. A batch binds and adds its own values, and is given none here.
+     * @param parameters The values bound to the statement, in order.
+     * @return The rows the statement read or changed.
+     * @throws SQLException If the statement failed, so the caller can roll back its transaction.
+     */
+    static int runStatement(PooledConnection pooled, String sql, StatementExecution execution, Object... parameters) throws SQLException {
+        long start = System.nanoTime();
+        int rows = 0;
+        boolean failed = true;
+        try {
+            PreparedStatement statement = pooled.getStatements().prepare(sql);
+            bindParameters(statement, parameters);
+            rows = execution.execute(statement);
+            failed = false;
+            return rows;
+        } catch (SQLException e) {
+            pooled.recordError(e);
+            throw e;
+        } finally {
+            QueryStats.getInstance().recordStatement(sql, start, rows, failed);
+        }
+    }
+    
     /**
      * getWords is a function meant to assist question factories in creating complete or partial LocalWord instances
      * from the database. An sql query is passed that MUST retrieve all of these fields in the following order:
      * romanization, wlanguage, meaning, wtype, main, ancillary, sname.
      * If any of these fields are not necessary, they should be put as null, i.e. SELECT NULL; This is because
      * A ResultSet's getString() method will return null if it parses NULL.
-     * @param sqlQuery The compliant query.
+     * @param sqlQuery The compliant query, with ? in place of every value.
      * @param amount The amount of words that are requested, not necessarily the amount returned.
+     * @param parameters The values bound to the query, in order.
      * @return Returns either a filled arraylist of localwords, a partial arraylist, or an empty arraylist, depending on success of the query.
      */
-    public ArrayList<LocalWord> getWords(String sqlQuery, int amount) {
-        ArrayList<LocalWord> myWords = new ArrayList<LocalWord>();
-        ResultSet results = runQuery(sqlQuery);
+    public ArrayList<LocalWord> getWords(String sqlQuery, int amount, Object... parameters) {
+        QueryStats.Operation operation = QueryStats.getInstance().startOperation("getWords");
         try {
-            while (results.next()) {
-                LocalWord newWord = new LocalWord(results.getString(1),results.getString(2),results.getString(3),
-                        results.getString(4),results.getString(5),results.getString(6),results.getString(7));
-                myWords.add(newWord);
+            ArrayList<LocalWord> myWords = runQuery(sqlQuery, results -> {
+                ArrayList<LocalWord> words = new ArrayList<LocalWord>(amount);
+                while (results.next()) {
+                    LocalWord newWord = new LocalWord(results.getString(1),results.getString(2),results.getString(3),
+                            results.getString(4),results.getString(5),results.getString(6),results.getString(7));
+                    words.add(newWord);
+                }
+                return words;
+            }, parameters);
+            if (myWords == null) {
+                return new ArrayList<LocalWord>();
             }
-        } catch (SQLException e) {
-            Logger.getInstance().log(e.getMessage());
+            return myWords;
+        } finally {
+            operation.end();
         }
-        return myWords;
     }
 
+    /**
+     * Get the wids returned by a query, used to build candidate lists for sampling.
+     * @param sqlQuery A query whose first column is a wid, with ? in place of every value.
+     * @param parameters The values bound to the query, in order.
+     * @return The wids in result order, or null if the query fails.
+     */
+    public int[] getWIDs(String sqlQuery, Object... parameters) {
+        QueryStats.Operation operation = QueryStats.getInstance().startOperation("getWIDs");
+        try {
+            return runQuery(sqlQuery, results -> {
+                int[] wids = new int[64];
+                int count = 0;
+                while (results.next()) {
+                    if (count == wids.length) wids = Arrays.copyOf(wids, count * 2);
+                    wids[count++] = results.getInt(1);
+                }
+                return Arrays.copyOf(wids, count);
+            }, parameters);
+        } finally {
+            operation.end();
+        }
+    }
+
+    /**
+     * Draw random distinct words matching a filter, through the WordSampler.
+     */
+    @Override
+    public int[] sample(String language, String wtype, String source, boolean requireSymbols, int amount) {
+        return WordSampler.getInstance().sample(CandidateQuery.getQuery(wtype, source, requireSymbols), amount,
+                CandidateQuery.getParameters(language, wtype, source));
+    }
+    
+    /**
+     * Find the words by their symbols, through the indexes on symbols(main) and symbols(ancillary).
+     */
+    @Override
+    public int[] findBySymbols(String main, String ancillary) {
+        QueryStats.Operation operation = QueryStats.getInstance().startOperation("findBySymbols");
+        try {
+            if (main == null && ancillary == null) return new int[0];
+            String sqlQuery = "SELECT DISTINCT S.wid "
+                            + "FROM " + SYMBOL_TABLE + " S "
+                            + "WHERE " + (main != null ? "S.main = ?" : "")
+                            + (main != null && ancillary != null ? " AND " : "")
+                            + (ancillary != null ? "S.ancillary = ?" : "") + " "
+                            + "ORDER BY S.wid";
+            if (main != null && ancillary != null) return getWIDs(sqlQuery, main, ancillary);
+            return getWIDs(sqlQuery, main != null ? main : ancillary);
+        } finally {
+            operation.end();
+        }
+    }
+    
+    /**
+     * Find the words spelled the same way, through the index on word(wlanguage, romanization, meaning).
+     */
+    @Override
+    public int[] findByRomanization(String word, String language) {
+        return getWIDs("SELECT W.wid FROM " + WORD_TABLE + " W WHERE W.wlanguage = ? AND W.romanization = ? ORDER BY W.wid",
+                language, word);
+    }
+    
+    /**
+     * Find every word of a language, through the index on word(wlanguage, romanization, meaning).
+     */
+    @Override
+    public int[] findByLanguage(String language) {
+        return getWIDs("SELECT W.wid FROM " + WORD_TABLE + " W WHERE W.wlanguage = ? ORDER BY W.wid", language);
+    }
+    
+    /**
+     * Load the review states of the words matching a filter, in one query nesting the candidate query.
+     * Words that have never been reviewed have no row, and are not returned.
+     * @return The review states, or null if the query fails.
+     */
+    @Override
+    public ArrayList<ReviewState> loadReviews(String language, String wtype, String source, boolean requireSymbols) {
+        QueryStats.Operation operation = QueryStats.getInstance().startOperation("loadReviews");
+        try {
+            String candidateQuery = CandidateQuery.getQuery(wtype, source, requireSymbols);
+            Object[] parameters = CandidateQuery.getParameters(language, wtype, source);
+            String sqlQuery = "SELECT R.wid, R.rinterval, R.ease, R.due, R.reps "
+                            + "FROM " + REVIEW_TABLE + " R "
+                            + "WHERE R.wid IN (" + candidateQuery + ")";
+            return runQuery(sqlQuery, results -> {
+                ArrayList<ReviewState> states = new ArrayList<ReviewState>();
+                while (results.next()) {
+                    states.add(new ReviewState(results.getInt(1), results.getInt(2), results.getDouble(3), results.getLong(4), results.getInt(5)));
+                }
+                return states;
+            }, parameters);
+        } finally {
+            operation.end();
+        }
+    }
+    
+    /**
+     * Save the review state of a word, inserting its row on the first review.
+     * @return True if the state was saved.
+     */
+    public boolean saveReview(ReviewState state) {
+        QueryStats.Operation operation = QueryStats.getInstance().startOperation("saveReview");
+        try {
+            PooledConnection pooled = acquire();
+            if (pooled == null) return false;
+            try {
+                return runUpdate(pooled, REVIEW_UPSERT, state.getWID(), state.getInterval(), state.getEase(), state.getDue(), state.getReps()) > 0;
+            } finally {
+                release(pooled);
+            }
+        } finally {
+            operation.end();
+        }
+    }
+    
+    /**
+     * Save the review state of a word on the write behind queue's thread, without waiting for the database.
+     * The values are read immediately, later changes to the state are not saved.
+     */
+    @Override
+    public void saveReviewLater(ReviewState state) {
+        WriteBehindQueue.getInstance().enqueue(REVIEW_UPSERT, state.getWID(), state.getInterval(), state.getEase(), state.getDue(), state.getReps());
+    }
+    
+    /**
+     * Record the result of an answered question on the write behind queue's thread, without waiting for the database.
+     * @param wid The word ID of the word the question was about.
+     * @param qtype The type of question, meaning or symbol.
+     * @param correct True if the answer was correct.
+     * @param latencyMillis How long the user took to answer.
+     * @param answeredAt The time of the answer, in milliseconds since the epoch.
+     */
+    @Override
+    public void saveResultLater(int wid, String qtype, boolean correct, long latencyMillis, long answeredAt) {
+        WriteBehindQueue.getInstance().enqueue(RESULT_INSERT, wid, qtype, correct, (int) Math.min(Integer.MAX_VALUE, latencyMillis), answeredAt);
+    }
+    
     /**
      * Insert a word, its symbols, and its source into the associated tables.
      * @param word The romanized word.
@@ -118,143 +553,436 @@ public class MyConnection {
      * @param sourceName The name of the source of the word, may be null.
      * @return Return true for a successful commit, false if the transaction was rolled back,
      */
+    @Override
     public boolean insertWord(String word, String language, String meaning,
             String wtype, String main, String ancillary, String sourceName) {
+        QueryStats.Operation operation = QueryStats.getInstance().startOperation("insertWord");
+        try {
+            // The whole transaction runs on one connection.
+            PooledConnection pooled = acquire();
+            if (pooled == null) return false;
+            try {
+                int newWID = insertWord(pooled, word, language, meaning, wtype, main, ancillary, sourceName);
+                if (newWID < 0) return false;
+                // The new word may belong in any list of sampling candidates.
+                WordSampler.getInstance().invalidate();
+                LocalWord inserted = new LocalWord(word, language, meaning, wtype, main, ancillary, sourceName);
+                inserted.setWID(newWID);
+                wordInserted(inserted);
+                return true;
+            } finally {
+                release(pooled);
+            }
+        } finally {
+            operation.end();
+        }
+    }
+    
+    /**
+     * Bring the in-memory caches and indexes up to date with a committed word.
+     * The caller invalidates the word sampler, once for all of its words.
+     * @param inserted The new word, with its wid.
+     */
+    static void wordInserted(LocalWord inserted) {
+        WordCache.getInstance().invalidate(inserted.getRomanization(), inserted.getLanguage(), inserted.getMeaning());
+        SearchIndex.getInstance().addWord(inserted);
+        SymbolIndex.getInstance().addWord(inserted);
+    }
+    
+    /**
+     * Insert a word, its symbols, and its source in a transaction on a checked out connection.
+     * @return The wid of the new word, or -1 if the transaction was rolled back.
+     */
+    private int insertWord(PooledConnection pooled, String word, String language, String meaning,
+            String wtype, String main, String ancillary, String sourceName) {
         
         // Begin the transaction
-        runQuery("START TRANSACTION;");
+        if (!begin(pooled)) return -1;
         
-        // Generate the proper SQL query for insertion into the word table.
+        // Insert into the word table.
         String wordUpdate = "INSERT INTO " + WORD_TABLE + " (wlanguage, meaning, romanization, wtype) "
-                          + "VALUES ('" + language + "','" + meaning + "','" + word + "','" + wtype + "');";
-        int success = runUpdate(wordUpdate);
+                          + "VALUES (?, ?, ?, ?)";
+        int success = runUpdate(pooled, wordUpdate, language, meaning, word, wtype);
         
-        int newWID = checkForWord(word, language, meaning);
+        int newWID = checkForWord(pooled, word, language, meaning);
         
         // Check for insertion success.
         if (success < 1 || newWID < 0) {
             // Rollback the transaction
-            runQuery("ROLLBACK;");
-            Logger.getInstance().log("Insertion of " + word + " has failed.");
-            return false;
+            rollback(pooled);
+            Logger.getInstance().warn("Insertion of " + word + " has failed.");
+            return -1;
         }
-        Logger.getInstance().log("Insertion into word table has succeeded.");
+        Logger.getInstance().debug(() -> "Insertion into word table has succeeded.");
         
         // Handle symbols update if necessary.
         if (main != null) {
-            if (ancillary == null) ancillary = "NULL";
             String symbolUpdate = "INSERT INTO " + SYMBOL_TABLE + " (wid, main, ancillary) "
-                                + "VALUES (" + newWID + ",'" + main + "','" + ancillary +"');";
-            success = runUpdate(symbolUpdate);
+                                + "VALUES (?, ?, ?)";
+            success = runUpdate(pooled, symbolUpdate, newWID, main, ancillary);
             
             if (success < 1) {
-                runQuery("ROLLBACK;");
-                Logger.getInstance().log("Insertion into symbols table of " + main + " has failed.");
-                return false;
+                rollback(pooled);
+                Logger.getInstance().warn("Insertion into symbols table of " + main + " has failed.");
+                return -1;
             }
-            Logger.getInstance().log("Insertion into symbols table has succeeded.");
+            Logger.getInstance().debug(() -> "Insertion into symbols table has succeeded.");
         }
         
         // Handle source update if necessary.
         if (sourceName != null) {
             String sourceUpdate = "INSERT INTO " + SOURCE_TABLE + " (wid, sname) "
-                                + "VALUES (" + newWID + ",'" + sourceName + "');";
-            success = runUpdate(sourceUpdate);
+                                + "VALUES (?, ?)";
+            success = runUpdate(pooled, sourceUpdate, newWID, sourceName);
             
             if (success < 1) {
-                runQuery("ROLLBACK;");
-                Logger.getInstance().log("Insertion into source table with " + sourceName + " has failed.");
-                return false;
+                rollback(pooled);
+                Logger.getInstance().warn("Insertion into source table with " + sourceName + " has failed.");
+                return -1;
             }
-            Logger.getInstance().log("Insertion into source table has succeeded.");
+            Logger.getInstance().debug(() -> "Insertion into source table has succeeded.");
         }
         
-        runQuery("COMMIT;");
-        return true;
+        return commit(pooled) ? newWID : -1;
     }
     
     /**
-     * Remove a word of a language and wid from the database.
-     * First attempt to remove symbols data and source data, which have foreign key constraints on word.
-     * Then delete word.
-     * @param wid
-     * @return
+     * Remove a word of a language and wid from the database. The word's symbols, sources, review and results
+     * are deleted with it, by the cascading foreign keys on word, so the word takes a single delete.
+     * A database whose keys do not cascade has the word deleted by the BulkDeleter, a table at a time.
+     * @param wid The wid of the word.
+     * @param language The language of the word, a word of another language is not removed.
+     * @return Return true if the word was removed, false if there is no such word or the delete was rolled back.
      */
+    @Override
     public boolean removeWord(int wid, String language) {
-        String newSourceUpdate = "DELETE "
-                               + "FROM " + SOURCE_TABLE + " S "
-                               + "WHERE S.wid = " + wid + ";";
-        String newSymbolsUpdate = "DELETE "
-                                + "FROM " + SYMBOL_TABLE + " S "
-                                + "WHERE S.wid = " + wid + ";";
-        String newWordUpdate = "DELETE "
-                             + "FROM " + WORD_TABLE + " W "
-                             + "WHERE W.wid = " + wid + ";";
+        QueryStats.Operation operation = QueryStats.getInstance().startOperation("removeWord");
+        try {
+            // Queued results and reviews of the word must be written before its rows are deleted.
+            WriteBehindQueue.getInstance().flush();
+            PooledConnection pooled = acquire();
+            if (pooled == null) return false;
+            boolean cascades;
+            boolean removed = false;
+            try {
+                cascades = cascadesDeletes(pooled);
+                if (cascades && language == null) {
+                    removed = runUpdate(pooled, "DELETE FROM " + WORD_TABLE + " WHERE wid = ?", wid) > 0;
+                } else if (cascades) {
+                    removed = runUpdate(pooled, "DELETE FROM " + WORD_TABLE + " WHERE wid = ? AND wlanguage = ?", wid, language) > 0;
+                }
+            } catch (SQLException e) {
+                pooled.recordError(e);
+                Logger.getInstance().error(e.getMessage());
+                return false;
+            } finally {
+                release(pooled);
+            }
+            if (!cascades) {
+                BulkDeleter.DeleteReport report = new BulkDeleter(this, 1).deleteWIDs(new int[] {wid}, language);
+                return report != null && report.getRows("word") > 0;
+            }
+            if (removed) BulkDeleter.wordsDeleted(new int[] {wid});
+            return removed;
+        } finally {
+            operation.end();
+        }
+    }
+    
+    /**
+     * Check whether the foreign keys on word cascade deletes. The keys are read the first time, unless the
+     * SchemaMigrator has already checked them, and the answer is kept for as long as the pool is open.
+     * @param pooled A checked out connection, used if the keys must be read.
+     * @return True if deleting a word deletes its rows in the other tables.
+     */
+    boolean cascadesDeletes(PooledConnection pooled) throws SQLException {
+        Boolean cascades = cascadesDeletes;
+        if (cascades == null) {
+            cascades = SchemaMigrator.cascadesDeletes(pooled.getConnection());
+            cascadesDeletes = cascades;
+        }
+        return cascades;
+    }
+    
+    /**
+     * Record whether the foreign keys on word cascade deletes, as checked by the SchemaMigrator once migrated.
+     */
+    void setCascadesDeletes(boolean cascades) {
+        cascadesDeletes = cascades;
+    }
+    
+    /**
+     * Hydrate a set of words in bulk, with every row of the word, symbols and wordsource tables.
+     * Words in the WordCache are taken from it, the rest are loaded in chunks, each chunk costing
+     * three queries no matter how many words it holds.
+     * @param wids The word IDs to load.
+     * @return The words that were found, in the order of the wids given. Empty upon error.
+     */
+    @Override
+    public ArrayList<LocalWord> hydrateWords(int[] wids) {
+        QueryStats.Operation operation = QueryStats.getInstance().startOperation("hydrateWords");
+        try {
+            ArrayList<LocalWord> hydrated = new ArrayList<LocalWord>(wids.length);
+            if (wids.length == 0) return hydrated;
         
-        // Run each update in a transaction, and rollback ONLY IF
-        // the word update/deletion fails. This is because
-        // there may be no entries in the symbols or source table.
-        // But if a source/symbols update fails and there were entries,
-        // the word table update will also fail, still causing the
-        // transaction to be rolled back.
-        runQuery("START TRANSACTION;");
-        runUpdate(newSourceUpdate);
-        runUpdate(newSymbolsUpdate);
-        int success = runUpdate(newWordUpdate);
-        if (success == 0) {
-            runQuery("ROLLBACK;");
-            return false;
+            Map<Integer, LocalWord> found = new HashMap<Integer, LocalWord>();
+            int[] missing = new int[wids.length];
+            int missingCount = 0;
+            for (int wid : wids) {
+                LocalWord cached = WordCache.getInstance().get(wid);
+                if (cached != null) {
+                    found.put(wid, cached);
+                } else {
+                    missing[missingCount++] = wid;
+                }
+            }
+            
+            PooledConnection pooled = missingCount > 0 ? acquire() : null;
+            if (missingCount > 0 && pooled == null) return hydrated;
+            try {
+                for (int start = 0; start < missingCount; start += BATCH_CHUNK_SIZE) {
+                    int count = Math.min(BATCH_CHUNK_SIZE, missingCount - start);
+                    Object[] parameters = paddedParameters(count);
+                    for (int i = 0; i < parameters.length; i++) {
+                        parameters[i] = missing[start + Math.min(i, count - 1)];
+                    }
+                    Map<Integer, LocalWord> chunk = hydrateMatching(pooled,
+                            "W.wid IN (" + parameterList(parameters.length) + ")", parameters);
+                    if (chunk == null) return hydrated;
+                    found.putAll(chunk);
+                }
+            } finally {
+                if (pooled != null) release(pooled);
+            }
+            
+            for (int wid : wids) {
+                LocalWord word = found.get(wid);
+                if (word != null) hydrated.add(word);
+            }
+            return hydrated;
+        } finally {
+            operation.end();
         }
-        runQuery("COMMIT;");
-        return true;
     }
     
     /**
-     * List all the words entered for a language, along with any data in the symbols and wordsource tables.
-     * This command is currently for debug, obviously listing 
-     * @param language Lists words based on language
+     * Hydrate every word with a wid above a given wid, in three queries.
+     * @param wid The wid above which words are loaded, 0 loads every word.
+     * @return The words ordered by wid, or null upon error.
+     */
+    public ArrayList<LocalWord> hydrateWordsAbove(int wid) {
+        Map<Integer, LocalWord> words = hydrateMatching("W.wid > ?", wid);
+        if (words == null) return null;
+        return new ArrayList<LocalWord>(words.values());
+    }
+    
+    /**
+     * Hydrate every word in a range of wids, in three queries. Used to load a large vocabulary a piece at a time.
+     * @param afterWID The wid above which words are loaded.
+     * @param throughWID The highest wid loaded.
+     * @return The words ordered by wid, or null upon error.
      */
-    public void listLanguageWords(String language) {
-        String newQuery = "SELECT W.romanization, W.wlanguage, W.meaning "
-                        + "FROM " + WORD_TABLE + " W "
-                        + "WHERE W.wlanguage = '" + language + "';";
-        ResultSet result = runQuery(newQuery);
-        if (result == null) {
-            Logger.getInstance().log("Failed to get query result.");
-            return;
+    public ArrayList<LocalWord> hydrateWordsBetween(int afterWID, int throughWID) {
+        Map<Integer, LocalWord> words = hydrateMatching("W.wid > ? AND W.wid <= ?", afterWID, throughWID);
+        if (words == null) return null;
+        return new ArrayList<LocalWord>(words.values());
+    }
+    
+    /**
+     * Hydrate every word, a range of wids at a time.
+     */
+    @Override
+    public boolean forEachWord(Consumer<LocalWord> action) {
+        QueryStats.Operation operation = QueryStats.getInstance().startOperation("forEachWord");
+        try {
+            int[] maxWID = getWIDs("SELECT MAX(W.wid) FROM " + WORD_TABLE + " W");
+            if (maxWID == null) return false;
+            int highest = maxWID.length == 0 ? 0 : maxWID[0];
+            for (int after = 0; after < highest; after += LOAD_CHUNK) {
+                ArrayList<LocalWord> words = hydrateWordsBetween(after, after + LOAD_CHUNK);
+                if (words == null) return false;
+                for (LocalWord word : words) {
+                    action.accept(word);
+                }
+            }
+            return true;
+        } finally {
+            operation.end();
         }
-        Logger.getInstance().log("Listing:");
+    }
+    
+    /**
+     * The batched counterpart of LocalWord.pull(). Each word is matched by language and romanization,
+     * and by meaning when the meaning is set, otherwise the word with the lowest wid is used.
+     * Words are looked up in chunks, each chunk costing three queries.
+     * @param words The words to complete.
+     * @return True if every word was found, false if any word was not found or a query failed.
+     */
+    @Override
+    public boolean pullWords(List<LocalWord> words) {
+        QueryStats.Operation operation = QueryStats.getInstance().startOperation("pullWords");
         try {
-            while (result.next()) {
-                LocalWord newWord = new LocalWord(result.getString(1),result.getString(2),result.getString(3));
-                newWord.pull();
-                Logger.getInstance().log(newWord.toString());
+            // Group the romanizations to look up by language.
+            Map<String, LinkedHashSet<String>> romanizations = new LinkedHashMap<String, LinkedHashSet<String>>();
+            for (LocalWord word : words) {
+                LinkedHashSet<String> spellings = romanizations.get(word.getLanguage());
+                if (spellings == null) {
+                    spellings = new LinkedHashSet<String>();
+                    romanizations.put(word.getLanguage(), spellings);
+                }
+                spellings.add(word.getRomanization());
             }
-        } catch (SQLException e) {
-            Logger.getInstance().log(e.getMessage());
+        
+            PooledConnection pooled = acquire();
+            if (pooled == null) return false;
+            // Found words, keyed by language and romanization, lowest wid first.
+            Map<String, ArrayList<LocalWord>> found = new HashMap<String, ArrayList<LocalWord>>();
+            try {
+                for (Map.Entry<String, LinkedHashSet<String>> entry : romanizations.entrySet()) {
+                    String[] spellings = entry.getValue().toArray(new String[0]);
+                    for (int start = 0; start < spellings.length; start += BATCH_CHUNK_SIZE) {
+                        int count = Math.min(BATCH_CHUNK_SIZE, spellings.length - start);
+                        Object[] parameters = paddedParameters(count);
+                        Object[] bound = new Object[parameters.length + 1];
+                        bound[0] = entry.getKey();
+                        for (int i = 0; i < parameters.length; i++) {
+                            bound[i + 1] = spellings[start + Math.min(i, count - 1)];
+                        }
+                        Map<Integer, LocalWord> chunk = hydrateMatching(pooled,
+                                "W.wlanguage = ? AND W.romanization IN (" + parameterList(parameters.length) + ")", bound);
+                        if (chunk == null) return false;
+                        for (LocalWord word : chunk.values()) {
+                            String key = word.getLanguage() + '\u0000' + word.getRomanization();
+                            ArrayList<LocalWord> homonyms = found.get(key);
+                            if (homonyms == null) {
+                                homonyms = new ArrayList<LocalWord>(1);
+                                found.put(key, homonyms);
+                            }
+                            homonyms.add(word);
+                        }
+                    }
+                }
+            } finally {
+                release(pooled);
+            }
+        
+            // Complete each word from its match.
+            boolean allFound = true;
+            for (LocalWord word : words) {
+                LocalWord match = null;
+                ArrayList<LocalWord> homonyms = found.get(word.getLanguage() + '\u0000' + word.getRomanization());
+                if (homonyms != null) {
+                    for (LocalWord homonym : homonyms) {
+                        if (word.getMeaning() == null || word.getMeaning().equals(homonym.getMeaning())) {
+                            match = homonym;
+                            break;
+                        }
+                    }
+                }
+                if (match == null) {
+                    allFound = false;
+                } else {
+                    word.copyFrom(match);
+                }
+            }
+            return allFound;
+        } finally {
+            operation.end();
         }
     }
     
     /**
-     * Many languages contain homonyms, this function allows the user to check if a word has multiple meanings stored in the database.
-     * @param word The romanized spelling of the word.
-     * @param language The language of the word.
+     * Hydrate every word matching a condition, on a connection checked out for the purpose.
+     * @see #hydrateMatching(PooledConnection, String, Object...)
      */
-    public void listHomonyms(String word, String language) {
-        String newQuery = "SELECT W.romanization, W.wlanguage, W.meaning "
-                        + "FROM " + WORD_TABLE + " W "
-                        + "WHERE W.wlanguage = '" + language + "' AND W.romanization = '" + word + "';";
+    private Map<Integer, LocalWord> hydrateMatching(String condition, Object... parameters) {
+        PooledConnection pooled = acquire();
+        if (pooled == null) return null;
         try {
-            ResultSet result = runQuery(newQuery);
-            Logger.getInstance().log("Listing:");
-            while (result.next()) {
-                LocalWord newWord = new LocalWord(result.getString(1),result.getString(2),result.getString(3));
-                newWord.pull();
-                Logger.getInstance().log(newWord.toString());
+            return hydrateMatching(pooled, condition, parameters);
+        } finally {
+            release(pooled);
+        }
+    }
+    
+    /**
+     * Hydrate every word matching a condition in three queries, one per table.
+     * The symbols and wordsource queries join back to the word table, so they take the same condition.
+     * Every word loaded is put in the WordCache.
+     * @param pooled The checked out connection.
+     * @param condition A condition on the word table, known as W, with ? in place of every value.
+     * @param parameters The values bound to the condition, in order.
+     * @return The matching words keyed by wid, ordered by wid, or null upon error.
+     */
+    private Map<Integer, LocalWord> hydrateMatching(PooledConnection pooled, String condition, Object... parameters) {
+        String wordQuery = "SELECT W.wid, W.romanization, W.wlanguage, W.meaning, W.wtype "
+                         + "FROM " + WORD_TABLE + " W "
+                         + "WHERE " + condition + " "
+                         + "ORDER BY W.wid";
+        Map<Integer, LocalWord> words = runQuery(pooled, wordQuery, results -> {
+            Map<Integer, LocalWord> rows = new LinkedHashMap<Integer, LocalWord>();
+            while (results.next()) {
+                LocalWord word = new LocalWord(results.getString(2), results.getString(3), results.getString(4),
+                        results.getString(5), null, null, null);
+                word.setWID(results.getInt(1));
+                rows.put(word.getWID(), word);
             }
-        } catch (SQLException e) {
-            Logger.getInstance().log(e.getMessage());
+            return rows;
+        }, parameters);
+        if (words == null || words.isEmpty()) return words;
+        
+        String symbolsQuery = "SELECT S.wid, S.main, S.ancillary "
+                            + "FROM " + SYMBOL_TABLE + " S JOIN " + WORD_TABLE + " W ON S.wid = W.wid "
+                            + "WHERE " + condition;
+        Boolean symbolsRead = runQuery(pooled, symbolsQuery, results -> {
+            while (results.next()) {
+                LocalWord word = words.get(results.getInt(1));
+                if (word != null) word.addSymbolValues(results.getString(2), results.getString(3));
+            }
+            return true;
+        }, parameters);
+        
+        String sourceQuery = "SELECT N.wid, N.sname "
+                           + "FROM " + SOURCE_TABLE + " N JOIN " + WORD_TABLE + " W ON N.wid = W.wid "
+                           + "WHERE " + condition;
+        Boolean sourcesRead = runQuery(pooled, sourceQuery, results -> {
+            while (results.next()) {
+                LocalWord word = words.get(results.getInt(1));
+                if (word != null) word.addSourceValue(results.getString(2));
+            }
+            return true;
+        }, parameters);
+        
+        if (symbolsRead == null || sourcesRead == null) return null;
+        for (LocalWord word : words.values()) {
+            WordCache.getInstance().put(word);
         }
+        return words;
+    }
+    
+    /**
+     * IN lists are padded up to the next power of two, repeating the last value,
+     * so that only a handful of SQL shapes are ever prepared for batched lookups.
+     * @param count The amount of values to bind.
+     * @return An array sized to the padded amount.
+     */
+    static Object[] paddedParameters(int count) {
+        int padded = Integer.highestOneBit(count);
+        if (padded < count) padded <<= 1;
+        return new Object[padded];
+    }
+    
+    /**
+     * @param count The amount of parameters.
+     * @return A comma separated list of count question marks.
+     */
+    static String parameterList(int count) {
+        StringBuilder list = new StringBuilder(count * 2);
+        for (int i = 0; i < count; i++) {
+            if (i > 0) list.append(',');
+            list.append('?');
+        }
+        return list.toString();
     }
     
     /**
@@ -265,105 +993,100 @@ public class MyConnection {
      * @param language The language of the word.
      * @return If the word exists, return its wid. If the word doesn't exist, return -1. On error, return -2.
      */
+    @Override
     public int checkForWord(String word, String language, String meaning) {
-        String newQuery = "";
+        QueryStats.Operation operation = QueryStats.getInstance().startOperation("checkForWord");
+        try {
+            int cachedWID = WordCache.getInstance().getWID(word, language, meaning);
+            if (cachedWID >= 0) return cachedWID;
+        
+            PooledConnection pooled = acquire();
+            if (pooled == null) return -2;
+            try {
+                int wid = checkForWord(pooled, word, language, meaning);
+                if (wid >= 0) WordCache.getInstance().putWID(word, language, meaning, wid);
+                return wid;
+            } finally {
+                release(pooled);
+            }
+        } finally {
+            operation.end();
+        }
+    }
+    
+    /**
+     * Check if a word exists, on a checked out connection so that uncommitted inserts are visible.
+     */
+    private int checkForWord(PooledConnection pooled, String word, String language, String meaning) {
+        Integer wid;
         if (meaning == null) {
-            newQuery = "SELECT W.wid "
-                     + "FROM " + WORD_TABLE + " W "
-                     + "WHERE W.wlanguage = '" + language + "' AND W.romanization = '" + word + "';";
+            String newQuery = "SELECT W.wid "
+                            + "FROM " + WORD_TABLE + " W "
+                            + "WHERE W.wlanguage = ? AND W.romanization = ?";
+            wid = runQuery(pooled, newQuery, MyConnection::readFirstWID, language, word);
         } else {
-            newQuery = "SELECT W.wid "
-                    + "FROM " + WORD_TABLE + " W "
-                    + "WHERE W.wlanguage = '" + language + "' AND W.romanization = '" + word + "' AND W.meaning = '" + meaning + "';";
+            String newQuery = "SELECT W.wid "
+                            + "FROM " + WORD_TABLE + " W "
+                            + "WHERE W.wlanguage = ? AND W.romanization = ? AND W.meaning = ?";
+            wid = runQuery(pooled, newQuery, MyConnection::readFirstWID, language, word, meaning);
         }
-        try {
-            ResultSet result = runQuery(newQuery);
-            if (result.next()) {
-                return result.getInt(1);
-            }
-            return -1;
-        } catch (SQLException e) {
-            Logger.getInstance().log(e.getMessage());
+        if (wid == null) {
             return -2;
         }
+        return wid;
     }
     
     /**
-     * Set a local word with data from the remote databases' word table data.
-     * @param myWord The local word we are setting.
-     * @return True if set, false upon error or no results to query (i.e. no word in the database).
+     * @param results The results of a query whose first column is a wid.
+     * @return The wid of the first row, or -1 if there are no rows.
      */
-    public boolean setLocalWordTable(LocalWord myWord) {
-        String newQuery = "SELECT W.wlanguage, W.meaning, W.romanization, W.wtype "
-                        + "FROM " + WORD_TABLE + " W "
-                        + "WHERE W.wid = '" + myWord.getWID() + "';";
-        try {
-            ResultSet result = runQuery(newQuery);
-            if (result.next()) {
-                myWord.setWordValues(result.getString(3), result.getString(1), result.getString(2), result.getString(4));
-                return true;
-            }
-            return false;
-        } catch (SQLException e) {
-            Logger.getInstance().log(e.getMessage());
-            return false;
+    private static Integer readFirstWID(ResultRows results) throws SQLException {
+        if (results.next()) {
+            return results.getInt(1);
         }
+        return -1;
+    }
+    
+    @Override
+    public boolean isReadOnly() {
+        return false;
     }
     
     /**
-     * Set a local word with data from the remote databases' symbols table.
-     * @param myWord The local word we are setting.
-     * @return True if set, false upon error or no results to query (i.e. no symbols in the database).
+     * The fetch size that makes a forward only, read only query stream its rows rather than read them all into memory.
+     * MySQL Connector/J streams rows one at a time when the fetch size is Integer.MIN_VALUE.
      */
-    public boolean setLocalSymbolsTable(LocalWord myWord) {
-        String newQuery = "SELECT S.main, S.ancillary "
-                        + "FROM " + SYMBOL_TABLE + " S "
-                        + "WHERE S.wid = '" + myWord.getWID() + "';";
-        try {
-            ResultSet result = runQuery(newQuery);
-            if (result.next()) {
-                myWord.setSymbolValues(result.getString(1), result.getString(2));
-                return true;
-            }
-            return false;
-        } catch (SQLException e) {
-            Logger.getInstance().log(e.getMessage());
-            return false;
-        }
+    int getStreamingFetchSize() {
+        return Integer.MIN_VALUE;
     }
     
     /**
-     * Set a local word with data from the remote databases' source table.
-     * @param myWord The local word we are setting.
-     * @return True if set, false upon error or no results to query (i.e. no source in the database).
+     * Close the connection, if this is the singleton's current instance.
      */
-    public boolean setLocalSourceTable(LocalWord myWord) {
-        String newQuery = "SELECT S.sname "
-                        + "FROM " + SOURCE_TABLE + " S "
-                        + "WHERE S.wid = '" + myWord.getWID() + "';";
-        try {
-            ResultSet result = runQuery(newQuery);
-            if (result.next()) {
-                myWord.setSourceValue(result.getString(1));
-                return true;
+    @Override
+    public void close() {
+        synchronized (MyConnection.class) {
+            if (myConnection == this) {
+                closeConnection();
             }
-            return false;
-        } catch (SQLException e) {
-            Logger.getInstance().log(e.getMessage());
-            return false;
         }
     }
     
     /**
-     * Close the database connection.
+     * Close the connection pool, along with every connection and cached statement in it.
      */
-    public static void closeConnection() {
-        if (myConnection != null && myConnection.connection != null) {
-            try {
-                myConnection.connection.close();
-            } catch (SQLException e) {
-                Logger.getInstance().log(e.getMessage());
-            }
+    public static synchronized void closeConnection() {
+        if (myConnection != null && myConnection.pool != null) {
+            // Queued writes need the pool, so write them before it closes.
+            WriteBehindQueue.getInstance().flush();
+            myConnection.pool.close();
+            myConnection.pool = null;
+            QueryStats.unregisterPool();
         }
+        // Cached words and candidates belong to the database that was connected.
+        WordCache.getInstance().clear();
+        WordSampler.getInstance().invalidate();
+        SearchIndex.getInstance().invalidate();
+        SymbolIndex.getInstance().invalidate();
     }
 }
@@ -0,0 +1,111 @@
+package database;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import application.Logger;
+
+/**
+ * A connection checked out of the ConnectionPool, along with the statements prepared on it.
+ * Prepared statements belong to the connection they were prepared on, so each pooled connection
+ * carries its own StatementCache.
+ * @author Evan Gunn
+ *
+ */
+public class PooledConnection {
+    // SQLStates that mean the connection is gone: H2's broken connection and closed database. Every state of
+    // class 08, connection exception, such as MySQL's communications link failure 08S01, is fatal as well.
+    private static final Set<String> FATAL_STATES = new HashSet<String>(Arrays.asList("90067", "90098"));
+    
+    private final Connection connection;
+    private final StatementCache statements;
+    private long lastUsed;
+    private volatile boolean broken = false;
+    
+    PooledConnection(Connection connection) {
+        this.connection = connection;
+        this.statements = new StatementCache(connection);
+        this.lastUsed = System.nanoTime();
+    }
+    
+    /**
+     * @return The underlying JDBC connection.
+     */
+    public Connection getConnection() {
+        return connection;
+    }
+    
+    /**
+     * @return The statement cache for this connection.
+     */
+    public StatementCache getStatements() {
+        return statements;
+    }
+    
+    /**
+     * @return The System.nanoTime() at which the connection was last returned to the pool.
+     */
+    long getLastUsed() {
+        return lastUsed;
+    }
+    
+    /**
+     * Mark the connection as used now.
+     */
+    void touch() {
+        lastUsed = System.nanoTime();
+    }
+    
+    /**
+     * Check that the connection is still open and answering.
+     * @param timeoutSeconds How long to wait for the server to answer.
+     * @return True if the connection can be used.
+     */
+    boolean isValid(int timeoutSeconds) {
+        try {
+            return !connection.isClosed() && connection.isValid(timeoutSeconds);
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+    
+    /**
+     * Note an error raised while using the connection. An error that means the connection is gone marks it broken,
+     * so the pool closes it rather than handing it out again.
+     * @param e The error.
+     */
+    public void recordError(SQLException e) {
+        for (SQLException next = e; next != null; next = next.getNextException()) {
+            String state = next.getSQLState();
+            if (state != null && (state.startsWith("08") || FATAL_STATES.contains(state))) broken = true;
+        }
+    }
+    
+    /**
+     * Check, without a round trip, that the connection is open and has raised no error that means it is gone.
+     * @return True if the connection may be returned to the pool.
+     */
+    boolean isUsable() {
+        if (broken) return false;
+        try {
+            return !connection.isClosed();
+        } catch (SQLException e) {
+            return false;
+        }
+    }
+    
+    /**
+     * Close the cached statements and the connection.
+     */
+    void close() {
+        statements.close();
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            Logger.getInstance().error(e.getMessage());
+        }
+    }
+}
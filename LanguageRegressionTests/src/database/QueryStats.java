@@ -0,0 +1,402 @@
+package database;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import application.Logger;
+
+/**
+ * Query stats records where the time of the database goes: the latency and rows of every query shape, the latency
+ * and round trips of every public MyConnection method and every user command, and the amount of transactions
+ * committed and rolled back. A query shape is the SQL text with ? in place of its values, so every run of a
+ * statement is counted together.
+ *
+ * Recording is cheap enough to leave on. Counters are LongAdders, which stripe their updates across cells rather
+ * than contend on one value, and latencies go in a fixed set of buckets, one per power of two microseconds, so
+ * recording a sample never allocates or locks. Percentiles read from the buckets are accurate to a factor of two.
+ *
+ * Round trips are counted per thread, so the round trips of a method or command are those of the thread that ran it,
+ * and writes made in the background by the WriteBehindQueue are not charged to the command that queued them.
+ *
+ * The stats are printed by the stats command, and published over JMX with the connection pool and word cache.
+ * @author Evan Gunn
+ *
+ */
+public class QueryStats implements QueryStatsMBean {
+    private static final QueryStats stats = new QueryStats();
+    // Bucket i holds latencies below 2^i microseconds, the last bucket holds everything slower.
+    static final int BUCKETS = 24;
+    private static final String MBEAN_DOMAIN = "LanguageRegressionTests:type=";
+    
+    private final ConcurrentHashMap<String, Timer> queries = new ConcurrentHashMap<String, Timer>();
+    private final ConcurrentHashMap<String, Timer> operations = new ConcurrentHashMap<String, Timer>();
+    private final ConcurrentHashMap<String, Timer> commands = new ConcurrentHashMap<String, Timer>();
+    private final LongAdder roundTrips = new LongAdder();
+    private final LongAdder commits = new LongAdder();
+    private final LongAdder rollbacks = new LongAdder();
+    // The round trips made by each thread, read at the start and end of a method or command.
+    private final ThreadLocal<long[]> threadRoundTrips = ThreadLocal.withInitial(() -> new long[1]);
+    
+    private QueryStats() {
+    }
+    
+    /**
+     * @return The single instance of the query stats.
+     */
+    public static QueryStats getInstance() {
+        return stats;
+    }
+    
+    /**
+     * The counters and latency histogram of one query shape, method or command.
+     */
+    public static class Timer {
+        private final String name;
+        private final LongAdder count = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder rows = new LongAdder();
+        private final LongAdder roundTrips = new LongAdder();
+        private final LongAdder totalNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+        private final LongAdder[] buckets = new LongAdder[BUCKETS];
+        
+        private Timer(String name) {
+            this.name = name;
+            for (int i = 0; i < BUCKETS; i++) {
+                buckets[i] = new LongAdder();
+            }
+        }
+        
+        private void record(long nanos, long rowCount, long trips, boolean failed) {
+            count.increment();
+            if (failed) failures.increment();
+            if (rowCount > 0) rows.add(rowCount);
+            if (trips > 0) roundTrips.add(trips);
+            totalNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+            buckets[bucket(nanos / 1000)].increment();
+        }
+        
+        public String getName() {
+            return name;
+        }
+        
+        public long getCount() {
+            return count.sum();
+        }
+        
+        public long getFailures() {
+            return failures.sum();
+        }
+        
+        public long getRows() {
+            return rows.sum();
+        }
+        
+        public long getRoundTrips() {
+            return roundTrips.sum();
+        }
+        
+        public double getTotalMillis() {
+            return totalNanos.sum() / 1e6;
+        }
+        
+        public double getMeanMillis() {
+            long samples = count.sum();
+            return samples == 0 ? 0 : totalNanos.sum() / (samples * 1e6);
+        }
+        
+        public double getMaxMillis() {
+            return maxNanos.get() / 1e6;
+        }
+        
+        /**
+         * Estimate a percentile of the latency from the histogram.
+         * @param percentile The percentile, between 0 and 100.
+         * @return The upper bound of the bucket holding the percentile, in milliseconds, at most the maximum latency.
+         */
+        public double getPercentileMillis(double percentile) {
+            long[] counts = new long[BUCKETS];
+            long samples = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = buckets[i].sum();
+                samples += counts[i];
+            }
+            if (samples == 0) return 0;
+            // The small allowance keeps rounding error from pushing an exact rank into the next bucket.
+            long rank = Math.max(1, (long) Math.ceil(samples * percentile / 100.0 - 1e-9));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS - 1; i++) {
+                seen += counts[i];
+                if (seen >= rank) return Math.min((1L << i) / 1000.0, getMaxMillis());
+            }
+            return getMaxMillis();
+        }
+        
+        /**
+         * @return The amount of samples in each bucket, bucket i holding latencies below 2^i microseconds.
+         */
+        public long[] getHistogram() {
+            long[] counts = new long[BUCKETS];
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = buckets[i].sum();
+            }
+            return counts;
+        }
+        
+        /**
+         * @return A one line summary of the counters and latencies.
+         */
+        public String toString() {
+            long samples = getCount();
+            StringBuilder line = new StringBuilder();
+            line.append(samples).append(" calls");
+            if (getFailures() > 0) line.append(", ").append(getFailures()).append(" failed");
+            if (getRows() > 0) line.append(", ").append(getRows()).append(" rows");
+            if (getRoundTrips() > 0) {
+                line.append(", ").append(String.format("%.1f", getRoundTrips() / (double) samples)).append(" round trips each");
+            }
+            line.append(String.format(", mean %.3fms, p50 %.3fms, p99 %.3fms, max %.3fms: ",
+                    getMeanMillis(), getPercentileMillis(50), getPercentileMillis(99), getMaxMillis()));
+            line.append(name);
+            return line.toString();
+        }
+    }
+    
+    /**
+     * The timing of a public method, ended when the method returns.
+     */
+    public static class Operation {
+        private final Timer timer;
+        private final long startNanos;
+        private final long startRoundTrips;
+        
+        private Operation(Timer timer, long startNanos, long startRoundTrips) {
+            this.timer = timer;
+            this.startNanos = startNanos;
+            this.startRoundTrips = startRoundTrips;
+        }
+        
+        public void end() {
+            timer.record(System.nanoTime() - startNanos, 0, stats.getThreadRoundTrips() - startRoundTrips, false);
+        }
+    }
+    
+    /**
+     * @return The bucket of a latency in microseconds.
+     */
+    static int bucket(long micros) {
+        return Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+    }
+    
+    private static Timer timer(ConcurrentHashMap<String, Timer> timers, String name) {
+        Timer timer = timers.get(name);
+        if (timer == null) {
+            timer = timers.computeIfAbsent(name, Timer::new);
+        }
+        return timer;
+    }
+    
+    /**
+     * Record a statement sent to the database, which costs one round trip.
+     * @param sql The statement, with ? in place of every value.
+     * @param startNanos The System.nanoTime() at which the statement was sent.
+     * @param rows The rows returned by a query, or affected by an update.
+     * @param failed True if the statement failed.
+     */
+    public void recordStatement(String sql, long startNanos, long rows, boolean failed) {
+        long nanos = System.nanoTime() - startNanos;
+        roundTrip();
+        timer(queries, sql).record(nanos, rows, 1, failed);
+    }
+    
+    /**
+     * Record a round trip that is not a statement, such as a change of auto-commit.
+     */
+    public void roundTrip() {
+        roundTrips.increment();
+        threadRoundTrips.get()[0]++;
+    }
+    
+    /**
+     * Record the end of a transaction, which costs one round trip.
+     * @param committed True if the transaction was committed, false if it was rolled back.
+     */
+    public void recordTransaction(boolean committed) {
+        roundTrip();
+        if (committed) {
+            commits.increment();
+        } else {
+            rollbacks.increment();
+        }
+    }
+    
+    /**
+     * Start timing a public method, the timing is recorded when the operation is ended.
+     * @param name The name of the method.
+     */
+    public Operation startOperation(String name) {
+        return new Operation(timer(operations, name), System.nanoTime(), getThreadRoundTrips());
+    }
+    
+    /**
+     * Record a user command.
+     * @param name The command.
+     * @param startNanos The System.nanoTime() at which the command began.
+     * @param startRoundTrips The thread's round trips when the command began, from getThreadRoundTrips().
+     */
+    public void recordCommand(String name, long startNanos, long startRoundTrips) {
+        timer(commands, name).record(System.nanoTime() - startNanos, 0, getThreadRoundTrips() - startRoundTrips, false);
+    }
+    
+    /**
+     * @return The amount of round trips made by the calling thread.
+     */
+    public long getThreadRoundTrips() {
+        return threadRoundTrips.get()[0];
+    }
+    
+    /**
+     * @return The timers of every query shape, slowest in total first.
+     */
+    public List<Timer> getQueryTimers() {
+        return sorted(queries);
+    }
+    
+    /**
+     * @return The timers of every public method, slowest in total first.
+     */
+    public List<Timer> getOperationTimers() {
+        return sorted(operations);
+    }
+    
+    /**
+     * @return The timers of every user command, slowest in total first.
+     */
+    public List<Timer> getCommandTimers() {
+        return sorted(commands);
+    }
+    
+    private static List<Timer> sorted(Map<String, Timer> timers) {
+        List<Timer> list = new ArrayList<Timer>(timers.values());
+        Collections.sort(list, (a, b) -> Double.compare(b.getTotalMillis(), a.getTotalMillis()));
+        return list;
+    }
+    
+    @Override
+    public long getStatementCount() {
+        long count = 0;
+        for (Timer timer : queries.values()) {
+            count += timer.getCount();
+        }
+        return count;
+    }
+    
+    @Override
+    public long getRoundTripCount() {
+        return roundTrips.sum();
+    }
+    
+    @Override
+    public long getCommitCount() {
+        return commits.sum();
+    }
+    
+    @Override
+    public long getRollbackCount() {
+        return rollbacks.sum();
+    }
+    
+    @Override
+    public String[] getQueries() {
+        return lines(getQueryTimers());
+    }
+    
+    @Override
+    public String[] getOperations() {
+        return lines(getOperationTimers());
+    }
+    
+    @Override
+    public String[] getCommands() {
+        return lines(getCommandTimers());
+    }
+    
+    private static String[] lines(List<Timer> timers) {
+        String[] lines = new String[timers.size()];
+        for (int i = 0; i < lines.length; i++) {
+            lines[i] = timers.get(i).toString();
+        }
+        return lines;
+    }
+    
+    /**
+     * Forget every recorded stat.
+     */
+    @Override
+    public void reset() {
+        queries.clear();
+        operations.clear();
+        commands.clear();
+        roundTrips.reset();
+        commits.reset();
+        rollbacks.reset();
+    }
+    
+    /**
+     * @return A one line summary of the totals.
+     */
+    public String toString() {
+        return "Statements: " + getStatementCount() + ", Round Trips: " + getRoundTripCount()
+             + ", Commits: " + getCommitCount() + ", Rollbacks: " + getRollbackCount();
+    }
+    
+    /**
+     * Publish the query stats and the word cache over JMX.
+     */
+    public static synchronized void registerMBeans() {
+        register("QueryStats", stats);
+        register("WordCache", WordCache.getInstance());
+    }
+    
+    /**
+     * Publish a connection pool over JMX, replacing the pool published before it.
+     */
+    static void registerPool(ConnectionPool pool) {
+        register("ConnectionPool", pool);
+    }
+    
+    /**
+     * Stop publishing the connection pool, once it has been closed.
+     */
+    static void unregisterPool() {
+        try {
+            ObjectName name = new ObjectName(MBEAN_DOMAIN + "ConnectionPool");
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(name)) server.unregisterMBean(name);
+        } catch (JMException e) {
+            Logger.getInstance().warn("Could not unregister the ConnectionPool MBean: " + e.getMessage());
+        }
+    }
+    
+    private static void register(String type, Object bean) {
+        try {
+            ObjectName name = new ObjectName(MBEAN_DOMAIN + type);
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(name)) server.unregisterMBean(name);
+            server.registerMBean(bean, name);
+        } catch (JMException e) {
+            Logger.getInstance().warn("Could not register the " + type + " MBean: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package database;
+
+/**
+ * The management interface of the QueryStats, published over JMX.
+ * @author Evan Gunn
+ *
+ */
+public interface QueryStatsMBean {
+    /**
+     * @return The amount of statements sent to the database.
+     */
+    long getStatementCount();
+    
+    /**
+     * @return The amount of round trips to the database, statements along with transaction control.
+     */
+    long getRoundTripCount();
+    
+    long getCommitCount();
+    
+    long getRollbackCount();
+    
+    /**
+     * @return A line of counters and latencies per query shape, slowest in total first.
+     */
+    String[] getQueries();
+    
+    /**
+     * @return A line of counters and latencies per public MyConnection method, slowest in total first.
+     */
+    String[] getOperations();
+    
+    /**
+     * @return A line of counters and latencies per user command, slowest in total first.
+     */
+    String[] getCommands();
+    
+    /**
+     * Forget every recorded stat.
+     */
+    void reset();
+}
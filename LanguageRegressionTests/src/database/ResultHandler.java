@@ -0,0 +1,21 @@
+package database;
+
+import java.sql.SQLException;
+
+/**
+ * A ResultHandler reads the rows of a query while its ResultSet is still open.
+ * MyConnection closes the ResultSet as soon as the handler returns, so a handler
+ * must copy out any data it needs rather than keeping a reference to the rows.
+ * @author Evan Gunn
+ *
+ * @param <T> The type of value produced from the rows.
+ */
+public interface ResultHandler<T> {
+    /**
+     * Read the result of a query.
+     * @param results The open results of the query, positioned before the first row.
+     * @return The value built from the results.
+     * @throws SQLException If reading the results fails.
+     */
+    T handle(ResultRows results) throws SQLException;
+}
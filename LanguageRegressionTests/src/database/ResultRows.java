@@ -0,0 +1,54 @@
+package database;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * The rows of an open ResultSet, as a ResultHandler reads them. Each call goes straight to the set,
+ * and the rows moved to by next() are counted, so MyConnection can record the rows of a query
+ * without every handler counting them itself.
+ * @author Evan Gunn
+ *
+ */
+public final class ResultRows {
+    private final ResultSet results;
+    private long rows = 0;
+    
+    ResultRows(ResultSet results) {
+        this.results = results;
+    }
+    
+    /**
+     * Move to the next row.
+     * @return True if there is another row, false once every row has been read.
+     * @throws SQLException If reading the results fails.
+     */
+    public boolean next() throws SQLException {
+        if (!results.next()) return false;
+        rows++;
+        return true;
+    }
+    
+    public String getString(int column) throws SQLException {
+        return results.getString(column);
+    }
+    
+    public int getInt(int column) throws SQLException {
+        return results.getInt(column);
+    }
+    
+    public long getLong(int column) throws SQLException {
+        return results.getLong(column);
+    }
+    
+    public double getDouble(int column) throws SQLException {
+        return results.getDouble(column);
+    }
+    
+    /**
+     * @return The rows read so far.
+     */
+    long getRows() {
+        return rows;
+    }
+}
@@ -0,0 +1,112 @@
+package database;
+
+import java.util.Date;
+
+/**
+ * The spaced repetition state of a word, stored in the review table.
+ * Scheduling follows SM-2 with a pass/fail grade: every correct answer multiplies the interval by the ease,
+ * an incorrect answer resets the repetitions, lowers the ease, and shows the word again after a short delay.
+ * A word that has never been reviewed has no row in the table, and is due immediately.
+ * @author Evan Gunn
+ *
+ */
+public class ReviewState {
+    public static final double DEFAULT_EASE = 2.5;
+    public static final double MIN_EASE = 1.3;
+    public static final double EASE_PENALTY = 0.2;
+    public static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+    public static final long RELEARN_DELAY_MILLIS = 10L * 60 * 1000;
+
+    private final int wid;
+    private int interval, reps;
+    private double ease;
+    private long due;
+    // The position of the state in a DueQueue's heap, -1 when it is not in a queue.
+    private int heapIndex = -1;
+
+    /**
+     * Create the state of a word that has never been reviewed.
+     */
+    public ReviewState(int wid) {
+        this(wid, 0, DEFAULT_EASE, 0, 0);
+    }
+
+    /**
+     * @param wid The word ID.
+     * @param interval The current interval in days.
+     * @param ease The multiplier applied to the interval after a correct answer.
+     * @param due The time the word is next due, in milliseconds since the epoch.
+     * @param reps The amount of correct answers in a row.
+     */
+    public ReviewState(int wid, int interval, double ease, long due, int reps) {
+        this.wid = wid;
+        this.interval = interval;
+        this.ease = ease;
+        this.due = due;
+        this.reps = reps;
+    }
+
+    /**
+     * Schedule the next review after an answer.
+     * @param correct True if the answer was correct.
+     * @param now The time of the answer, in milliseconds since the epoch.
+     */
+    void record(boolean correct, long now) {
+        if (correct) {
+            reps++;
+            if (reps == 1) {
+                interval = 1;
+            } else if (reps == 2) {
+                interval = 6;
+            } else {
+                interval = (int) Math.min(Integer.MAX_VALUE, Math.round(interval * ease));
+            }
+            due = now + interval * DAY_MILLIS;
+        } else {
+            reps = 0;
+            interval = 0;
+            ease = Math.max(MIN_EASE, ease - EASE_PENALTY);
+            due = now + RELEARN_DELAY_MILLIS;
+        }
+    }
+
+    public int getWID() {
+        return wid;
+    }
+
+    public int getInterval() {
+        return interval;
+    }
+
+    public double getEase() {
+        return ease;
+    }
+
+    public long getDue() {
+        return due;
+    }
+
+    public int getReps() {
+        return reps;
+    }
+
+    /**
+     * Move the due time without changing the schedule, used to hold a word back while it is being asked.
+     */
+    void setDue(long due) {
+        this.due = due;
+    }
+
+    int getHeapIndex() {
+        return heapIndex;
+    }
+
+    void setHeapIndex(int heapIndex) {
+        this.heapIndex = heapIndex;
+    }
+
+    public String toString() {
+        return "Word ID: " + wid + ", Interval: " + interval + " days, Ease: " + String.format("%.2f", ease)
+             + ", Repetitions: " + reps + ", Due: " + new Date(due);
+    }
+}
@@ -0,0 +1,289 @@
+package database;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+import application.Logger;
+
+/**
+ * The schema migrator brings a database's tables and indexes up to date when the client connects. Each migration
+ * has a version, and the versions applied are recorded in the schema_version table, so a migration runs once per
+ * database. Every step can be run again safely, tables are created IF NOT EXISTS and an index is only created if
+ * no index of its name exists, so a migration interrupted half way is simply run again, and a database set up by
+ * hand from SQLCommands.txt is adopted as it is. A foreign key is only replaced if it does not yet cascade.
+ *
+ * Once migrated, the plans of the factory and lookup queries are checked with EXPLAIN, and a query that does not
+ * use its index is reported.
+ * @author Evan Gunn
+ *
+ */
+public class SchemaMigrator {
+    private static final String VERSION_TABLE = "CREATE TABLE IF NOT EXISTS schema_version (version INT NOT NULL, "
+            + "description VARCHAR(100), applied BIGINT, PRIMARY KEY(version))";
+    
+    // The tables whose rows belong to a word, and are deleted with it.
+    static final String[] WORD_CHILDREN = {"symbols", "wordsource", "review", "result"};
+    
+    private static final Migration[] MIGRATIONS = {
+        new Migration(1, "Create the tables",
+            table("CREATE TABLE IF NOT EXISTS word (wid INT NOT NULL AUTO_INCREMENT, wlanguage VARCHAR(20), meaning VARCHAR(40), "
+                + "romanization VARCHAR(45), wtype VARCHAR(20), PRIMARY KEY(wid), UNIQUE(meaning, romanization))"),
+            table("CREATE TABLE IF NOT EXISTS symbols (wid INT, main VARCHAR(45), ancillary VARCHAR(45), PRIMARY KEY(wid, main), "
+                + "FOREIGN KEY(wid) REFERENCES word(wid))"),
+            table("CREATE TABLE IF NOT EXISTS wordsource (wid INT, sname VARCHAR(45), PRIMARY KEY(wid, sname), "
+                + "FOREIGN KEY(wid) REFERENCES word(wid))"),
+            table("CREATE TABLE IF NOT EXISTS review (wid INT, rinterval INT NOT NULL DEFAULT 0, ease DOUBLE NOT NULL DEFAULT 2.5, "
+                + "due BIGINT NOT NULL DEFAULT 0, reps INT NOT NULL DEFAULT 0, PRIMARY KEY(wid), FOREIGN KEY(wid) REFERENCES word(wid))"),
+            table("CREATE TABLE IF NOT EXISTS result (rid INT NOT NULL AUTO_INCREMENT, wid INT, qtype VARCHAR(20), correct BOOLEAN, "
+                + "latency INT, answered BIGINT, PRIMARY KEY(rid), FOREIGN KEY(wid) REFERENCES word(wid))")),
+        new Migration(2, "Index symbols by main symbols and by reading",
+            index("symbols_main", "symbols", "main"),
+            index("symbols_ancillary", "symbols", "ancillary")),
+        new Migration(3, "Index the columns the factory and lookup queries filter on",
+            index("word_language_romanization", "word", "wlanguage, romanization, meaning"),
+            index("word_language_type", "word", "wlanguage, wtype"),
+            index("wordsource_name", "wordsource", "sname, wid")),
+        new Migration(4, "Delete the symbols, sources, review and results of a word with it",
+            cascade("symbols"),
+            cascade("wordsource"),
+            cascade("review"),
+            cascade("result"))
+    };
+    
+    // The queries checked with EXPLAIN, their sample parameters, and the indexes any of which their plan should use.
+    private static final Object[][] PLAN_CHECKS = {
+        {CandidateQuery.getQuery("noun", null, false), new Object[] {"japanese", "noun"},
+            new String[] {"word_language_type"}},
+        {"SELECT W.wid FROM word W WHERE W.wlanguage = ? AND W.romanization = ? AND W.meaning = ?",
+            new Object[] {"japanese", "taberu", "to eat"}, new String[] {"word_language_romanization"}},
+        {CandidateQuery.getQuery(null, "textbook", false), new Object[] {"japanese", "textbook"},
+            new String[] {"wordsource_name", "primary"}},
+        {"SELECT DISTINCT S.wid FROM symbols S WHERE S.main = ?", new Object[] {"食"}, new String[] {"symbols_main"}}
+    };
+    
+    /**
+     * A numbered set of steps.
+     */
+    private static class Migration {
+        private final int version;
+        private final String description;
+        private final Step[] steps;
+        
+        private Migration(int version, String description, Step... steps) {
+            this.version = version;
+            this.description = description;
+            this.steps = steps;
+        }
+    }
+    
+    /**
+     * A statement of a migration, skipped if it creates an index that already exists.
+     * A step without a statement makes its table's foreign key on word cascade deletes.
+     */
+    private static class Step {
+        private final String sql;
+        private final String indexName;
+        private final String table;
+        
+        private Step(String sql, String indexName, String table) {
+            this.sql = sql;
+            this.indexName = indexName;
+            this.table = table;
+        }
+    }
+    
+    private static Step table(String sql) {
+        return new Step(sql, null, null);
+    }
+    
+    private static Step index(String name, String table, String columns) {
+        return new Step("CREATE INDEX " + name + " ON " + table + "(" + columns + ")", name, table);
+    }
+    
+    private static Step cascade(String table) {
+        return new Step(null, null, table);
+    }
+    
+    /**
+     * Apply every migration the database has not had yet.
+     * @param connection The connected database.
+     * @return True if the database is at the latest version.
+     */
+    public static boolean migrate(MyConnection connection) {
+        PooledConnection pooled;
+        try {
+            pooled = connection.getPool().acquire();
+        } catch (SQLException e) {
+            Logger.getInstance().error(e.getMessage());
+            return false;
+        }
+        try (Statement statement = pooled.getConnection().createStatement()) {
+            statement.execute(VERSION_TABLE);
+            int version = 0;
+            try (ResultSet results = statement.executeQuery("SELECT MAX(version) FROM schema_version")) {
+                if (results.next()) version = results.getInt(1);
+            }
+            for (Migration migration : MIGRATIONS) {
+                if (migration.version <= version) continue;
+                for (Step step : migration.steps) {
+                    if (step.sql == null) {
+                        cascadeDeletes(pooled.getConnection(), statement, step.table);
+                        continue;
+                    }
+                    if (step.indexName != null && hasIndex(pooled.getConnection(), step.table, step.indexName)) continue;
+                    statement.execute(step.sql);
+                }
+                try (PreparedStatement record = pooled.getConnection().prepareStatement(
+                        "INSERT INTO schema_version (version, description, applied) VALUES (?, ?, ?)")) {
+                    record.setInt(1, migration.version);
+                    record.setString(2, migration.description);
+                    record.setLong(3, System.currentTimeMillis());
+                    record.executeUpdate();
+                }
+                Logger.getInstance().info("Migrated the schema to version " + migration.version + ": " + migration.description + ".");
+            }
+            // Checked once here, rather than by every delete.
+            connection.setCascadesDeletes(cascadesDeletes(pooled.getConnection()));
+            return true;
+        } catch (SQLException e) {
+            Logger.getInstance().error("Failed to migrate the schema: " + e.getMessage());
+            return false;
+        } finally {
+            connection.getPool().release(pooled);
+        }
+    }
+    
+    /**
+     * Check with EXPLAIN that the factory and lookup queries use their indexes, reporting any that do not.
+     * The plan is searched for the index's name, which both MySQL's key column and H2's plan text hold.
+     * @param connection The connected, migrated database.
+     * @return True if every query uses one of its indexes.
+     */
+    public static boolean verifyIndexes(MyConnection connection) {
+        PooledConnection pooled;
+        try {
+            pooled = connection.getPool().acquire();
+        } catch (SQLException e) {
+            Logger.getInstance().error(e.getMessage());
+            return false;
+        }
+        boolean allUsed = true;
+        try {
+            for (Object[] check : PLAN_CHECKS) {
+                String query = (String) check[0];
+                String plan = explain(pooled.getConnection(), query, (Object[]) check[1]);
+                boolean used = false;
+                for (String indexName : (String[]) check[2]) {
+                    used |= plan.contains(indexName);
+                }
+                if (used) {
+                    Logger.getInstance().debug(() -> "Query uses its index: " + query);
+                } else {
+                    allUsed = false;
+                    Logger.getInstance().warn("Query does not use any of the indexes " + String.join(", ", (String[]) check[2])
+                            + ": " + query + " Plan: " + plan);
+                }
+            }
+        } catch (SQLException e) {
+            Logger.getInstance().warn("Could not check the query plans: " + e.getMessage());
+            return false;
+        } finally {
+            connection.getPool().release(pooled);
+        }
+        return allUsed;
+    }
+    
+    /**
+     * @return Every value of the rows of a query's EXPLAIN, lower cased and joined.
+     */
+    private static String explain(Connection connection, String query, Object[] parameters) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("EXPLAIN " + query)) {
+            for (int i = 0; i < parameters.length; i++) {
+                statement.setObject(i + 1, parameters[i]);
+            }
+            StringBuilder plan = new StringBuilder();
+            try (ResultSet results = statement.executeQuery()) {
+                int columns = results.getMetaData().getColumnCount();
+                while (results.next()) {
+                    for (int column = 1; column <= columns; column++) {
+                        plan.append(results.getString(column)).append(' ');
+                    }
+                }
+            }
+            return plan.toString().toLowerCase(Locale.ROOT);
+        }
+    }
+    
+    /**
+     * Replace a table's foreign keys on word that do not cascade deletes with one that does. The keys of the
+     * first migration were created without names, so the names the database gave them are read from its metadata.
+     */
+    private static void cascadeDeletes(Connection connection, Statement statement, String table) throws SQLException {
+        DatabaseMetaData metaData = connection.getMetaData();
+        List<String> restricting = new ArrayList<String>();
+        boolean cascades = false;
+        try (ResultSet keys = metaData.getImportedKeys(connection.getCatalog(), null, storedName(metaData, table))) {
+            while (keys.next()) {
+                if (!"word".equalsIgnoreCase(keys.getString("PKTABLE_NAME"))) continue;
+                if (keys.getShort("DELETE_RULE") == DatabaseMetaData.importedKeyCascade) {
+                    cascades = true;
+                } else if (!restricting.contains(keys.getString("FK_NAME"))) {
+                    restricting.add(keys.getString("FK_NAME"));
+                }
+            }
+        }
+        // MySQL names the kind of constraint dropped, H2 and standard SQL do not.
+        boolean mysql = metaData.getDatabaseProductName().toLowerCase(Locale.ROOT).contains("mysql");
+        for (String name : restricting) {
+            statement.execute("ALTER TABLE " + table + (mysql ? " DROP FOREIGN KEY " : " DROP CONSTRAINT ") + name);
+        }
+        if (!cascades) {
+            statement.execute("ALTER TABLE " + table + " ADD CONSTRAINT " + table + "_word_fk "
+                    + "FOREIGN KEY(wid) REFERENCES word(wid) ON DELETE CASCADE");
+        }
+    }
+    
+    /**
+     * Check whether every table whose rows belong to a word has a foreign key on word that cascades deletes,
+     * as it does once migrated to version 4.
+     * @param connection A connection to the database.
+     * @return True if deleting a word deletes its rows in the other tables.
+     */
+    static boolean cascadesDeletes(Connection connection) throws SQLException {
+        DatabaseMetaData metaData = connection.getMetaData();
+        for (String table : WORD_CHILDREN) {
+            boolean cascades = false;
+            try (ResultSet keys = metaData.getImportedKeys(connection.getCatalog(), null, storedName(metaData, table))) {
+                while (keys.next()) {
+                    cascades |= "word".equalsIgnoreCase(keys.getString("PKTABLE_NAME"))
+                            && keys.getShort("DELETE_RULE") == DatabaseMetaData.importedKeyCascade;
+                }
+            }
+            if (!cascades) return false;
+        }
+        return true;
+    }
+    
+    /**
+     * @return The name of a table as the database stores it, upper case for H2, as written for MySQL.
+     */
+    private static String storedName(DatabaseMetaData metaData, String table) throws SQLException {
+        return metaData.storesUpperCaseIdentifiers() ? table.toUpperCase(Locale.ROOT) : table;
+    }
+    
+    private static boolean hasIndex(Connection connection, String table, String indexName) throws SQLException {
+        try (ResultSet indexes = connection.getMetaData().getIndexInfo(connection.getCatalog(), null, table, false, true)) {
+            while (indexes.next()) {
+                if (indexName.equalsIgnoreCase(indexes.getString("INDEX_NAME"))) return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,593 @@
+package database;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+import application.Logger;
+
+/**
+ * The search index finds words by romanization, meaning and symbols without asking the database, by prefix
+ * and despite typos. Every indexed value is a term, lower cased, and a meaning of several words is also indexed
+ * word by word. Terms are kept in a trie, stored in parallel arrays, for prefix matches, and their trigrams are
+ * indexed for fuzzy matches, scored by how many trigrams a term shares with the query.
+ *
+ * Each term lists its postings, the word and the field it was found in, so a match on romanization ranks above
+ * a match on an ancillary reading. The index is built from the active vocabulary store when it is first searched,
+ * then kept up to date as words are inserted and removed, and built again after an import or a change of store.
+ * Terms no longer used by any word stay in the trie with no postings until the index is built again.
+ * @author Evan Gunn
+ *
+ */
+public class SearchIndex {
+    private static final SearchIndex index = new SearchIndex();
+    
+    public static final int ROMANIZATION = 0, MEANING = 1, MAIN = 2, ANCILLARY = 3;
+    private static final double[] FIELD_WEIGHTS = {1.0, 0.9, 0.9, 0.7};
+    private static final String[] FIELD_NAMES = {"romanization", "meaning", "main symbols", "ancillary"};
+    
+    // Scores of the kinds of match, before the field weight. The best fuzzy match scores below the worst prefix match.
+    private static final double EXACT_SCORE = 1.0, PREFIX_SCORE = 0.6, FUZZY_SCORE = 0.4;
+    // The smallest share of trigrams, as a Dice coefficient, for a term to count as a fuzzy match.
+    private static final double MIN_SIMILARITY = 0.5;
+    // The most terms under a prefix that are scored, shortest first, so a one letter query stays fast.
+    private static final int MAX_PREFIX_TERMS = 512;
+    // The most words scored by a search. Terms are scored best first, so only the weakest matches of a very
+    // common term, such as "to" in meanings, are left out.
+    private static final int MAX_SCORED_SLOTS = 4096;
+    // Trigrams posted by more terms than this are not counted for fuzzy matches, unless they are needed to
+    // find every term that could be similar enough. Candidates are checked for them afterwards instead.
+    private static final int MAX_COUNTED_TRIGRAM_TERMS = 1024;
+    private static final char PAD = '\u0000';
+    private static final Pattern WHITESPACE = Pattern.compile("\\s+");
+    
+    private boolean built = false;
+    
+    // Terms.
+    private final HashMap<String, Integer> termIDs = new HashMap<String, Integer>();
+    private final ArrayList<String> terms = new ArrayList<String>();
+    // The postings of each term, as slot * 4 + field.
+    private final ArrayList<IntList> postings = new ArrayList<IntList>();
+    private final HashMap<String, IntList> termsByTrigram = new HashMap<String, IntList>();
+    
+    // The trie, node 0 is the root. Children are linked through their first child and next sibling.
+    private int nodeCount = 1;
+    private int[] nodeChildren = new int[1024];
+    private int[] nodeSiblings = new int[1024];
+    private int[] nodeTerms = new int[1024];
+    // The trie's edges, hashed by parent node and character, so a node with thousands of children, such as the
+    // root under the first characters of every symbol, is searched in one probe. A child of 0 marks an empty entry.
+    private long[] edgeKeys = new long[2048];
+    private int[] edgeChildren = new int[2048];
+    private int edgeCount = 0;
+    
+    // Words, each in a slot. A removed word's slot is not used again until the index is built again.
+    private final IntIntMap slotsByWID = new IntIntMap(1024, -1);
+    private final StringDictionary languages = new StringDictionary();
+    private int slotCount = 0;
+    private int[] slotWIDs = new int[1024];
+    private int[] slotLanguages = new int[1024];
+    private String[] slotLabels = new String[1024];
+    // The postings of each slot, as term id and field pairs, so the word can be removed from its terms.
+    private int[][] slotPostings = new int[1024][];
+    
+    // Scratch space of a search, reused so a search allocates little beyond its results.
+    private double[] termScores = new double[0];
+    private int[] trigramCounts = new int[0];
+    private double[] slotScores = new double[0];
+    private final IntList touchedTerms = new IntList();
+    private final IntList touchedSlots = new IntList();
+    
+    /**
+     * A word found by a search.
+     */
+    public static class Match {
+        private final int wid;
+        private final String label;
+        private final String field;
+        private final double score;
+        
+        private Match(int wid, String label, String field, double score) {
+            this.wid = wid;
+            this.label = label;
+            this.field = field;
+            this.score = score;
+        }
+        
+        public int getWID() {
+            return wid;
+        }
+        
+        /**
+         * @return The field the best match was found in.
+         */
+        public String getField() {
+            return field;
+        }
+        
+        /**
+         * @return How well the word matched, from 0 to 1.
+         */
+        public double getScore() {
+            return score;
+        }
+        
+        @Override
+        public String toString() {
+            return label + " (" + field + ", " + String.format("%.2f", score) + ")";
+        }
+    }
+    
+    private SearchIndex() {
+        nodeTerms[0] = -1;
+        nodeChildren[0] = -1;
+        nodeSiblings[0] = -1;
+    }
+    
+    /**
+     * @return The single instance of the search index.
+     */
+    public static SearchIndex getInstance() {
+        return index;
+    }
+    
+    /**
+     * Find the words best matching a query, exact matches first, then prefix matches, then fuzzy matches.
+     * @param query The text searched for, in any of the indexed fields.
+     * @param language The language of the words, or null for every language.
+     * @param limit The most words returned.
+     * @return The words found, best first, or null if the index could not be built.
+     */
+    public synchronized List<Match> search(String query, String language, int limit) {
+        if (!built && !build()) return null;
+        ArrayList<Match> matches = new ArrayList<Match>();
+        String term = normalize(query);
+        if (term.isEmpty() || limit <= 0) return matches;
+        int languageCode = language == null ? -1 : languages.find(language);
+        if (language != null && languageCode < 0) return matches;
+        
+        ensureScratch();
+        scoreExactAndPrefix(term);
+        scoreSlots(0, languageCode);
+        // Fuzzy matches rank below every exact and prefix match, so they are only looked for if more words are needed.
+        if (touchedSlots.size() < limit) {
+            int scored = touchedTerms.size();
+            scoreFuzzy(term);
+            scoreSlots(scored, languageCode);
+        }
+
+        // Keep the best slots by insertion into a short sorted array.
+        int kept = 0;
+        int[] best = new int[Math.min(limit, touchedSlots.size())];
+        for (int i = 0; i < touchedSlots.size(); i++) {
+            int slot = touchedSlots.get(i);
+            if (kept == best.length && !ranksAbove(slot, best[kept - 1])) continue;
+            int position = kept == best.length ? kept - 1 : kept++;
+            while (position > 0 && ranksAbove(slot, best[position - 1])) {
+                best[position] = best[position - 1];
+                position--;
+            }
+            best[position] = slot;
+        }
+        for (int i = 0; i < kept; i++) {
+            int slot = best[i];
+            matches.add(new Match(slotWIDs[slot], slotLabels[slot], FIELD_NAMES[bestField(slot)], slotScores[slot]));
+        }
+        
+        clearScratch();
+        return matches;
+    }
+    
+    /**
+     * Add a newly inserted word, if the index has been built.
+     */
+    public synchronized void addWord(LocalWord word) {
+        if (!built || word.getWID() < 0) return;
+        removeSlot(word.getWID());
+        addSlot(word);
+    }
+    
+    /**
+     * Remove a deleted word, if the index has been built.
+     */
+    public synchronized void removeWord(int wid) {
+        if (!built) return;
+        removeSlot(wid);
+    }
+    
+    /**
+     * Drop the index, it is built again from the active vocabulary store when it is next searched.
+     */
+    public synchronized void invalidate() {
+        built = false;
+        termIDs.clear();
+        terms.clear();
+        postings.clear();
+        termsByTrigram.clear();
+        nodeCount = 1;
+        nodeTerms[0] = -1;
+        nodeChildren[0] = -1;
+        Arrays.fill(edgeChildren, 0);
+        edgeCount = 0;
+        slotsByWID.clear();
+        slotCount = 0;
+        Arrays.fill(slotLabels, null);
+        Arrays.fill(slotPostings, null);
+    }
+    
+    /**
+     * @return The amount of words indexed.
+     */
+    public synchronized int size() {
+        return slotsByWID.size();
+    }
+    
+    /**
+     * Index every word of the active vocabulary store.
+     */
+    private boolean build() {
+        long start = System.nanoTime();
+        if (!VocabularyStores.getActive().forEachWord(this::addSlot)) {
+            invalidate();
+            return false;
+        }
+        built = true;
+        double millis = (System.nanoTime() - start) / 1e6;
+        Logger.getInstance().info(() -> "Indexed " + slotsByWID.size() + " words and " + terms.size() + " terms in "
+                + String.format("%.1f", millis) + " ms.");
+        return true;
+    }
+    
+    /**
+     * Score the terms matching a query exactly or by prefix, into termScores.
+     */
+    private void scoreExactAndPrefix(String query) {
+        Integer exact = termIDs.get(query);
+        if (exact != null) scoreTerm(exact, EXACT_SCORE);
+        
+        // Prefix matches, breadth first from the query's node, so shorter terms are scored first.
+        int node = findNode(query);
+        if (node >= 0) {
+            IntList frontier = new IntList();
+            frontier.add(node);
+            int found = 0;
+            for (int i = 0; i < frontier.size() && found < MAX_PREFIX_TERMS; i++) {
+                int current = frontier.get(i);
+                int termID = nodeTerms[current];
+                if (termID >= 0 && !postings.get(termID).isEmpty()) {
+                    // A longer completion is a weaker match.
+                    scoreTerm(termID, PREFIX_SCORE + 0.3 * query.length() / terms.get(termID).length());
+                    found++;
+                }
+                for (int child = nodeChildren[current]; child >= 0; child = nodeSiblings[child]) {
+                    frontier.add(child);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Score the terms sharing enough trigrams with a query, into termScores.
+     */
+    private void scoreFuzzy(String query) {
+        String[] grams = trigrams(query);
+        IntList[] gramTerms = new IntList[grams.length];
+        Integer[] order = new Integer[grams.length];
+        for (int i = 0; i < grams.length; i++) {
+            gramTerms[i] = termsByTrigram.get(grams[i]);
+            order[i] = i;
+        }
+        // Rarest trigrams first.
+        Arrays.sort(order, (a, b) -> Integer.compare(gramCount(gramTerms[a]), gramCount(gramTerms[b])));
+        
+        // A term similar enough shares at least this many trigrams with the query, so it must share one of the
+        // rarest (grams - needed + 1). Only those, and any other rare trigrams, are counted through their terms.
+        int needed = (int) Math.ceil(MIN_SIMILARITY * grams.length / (2 - MIN_SIMILARITY));
+        int countedGrams = grams.length - needed + 1;
+        while (countedGrams < grams.length && gramCount(gramTerms[order[countedGrams]]) <= MAX_COUNTED_TRIGRAM_TERMS) {
+            countedGrams++;
+        }
+        IntList counted = new IntList();
+        for (int g = 0; g < countedGrams; g++) {
+            IntList termIDs = gramTerms[order[g]];
+            if (termIDs == null) continue;
+            for (int i = 0; i < termIDs.size(); i++) {
+                int termID = termIDs.get(i);
+                if (trigramCounts[termID]++ == 0) counted.add(termID);
+            }
+        }
+        for (int i = 0; i < counted.size(); i++) {
+            int termID = counted.get(i);
+            String term = terms.get(termID);
+            int shared = trigramCounts[termID];
+            trigramCounts[termID] = 0;
+            for (int g = countedGrams; g < grams.length; g++) {
+                if (hasTrigram(term, grams[order[g]])) shared++;
+            }
+            double similarity = 2.0 * shared / (grams.length + term.length() + 1);
+            if (similarity >= MIN_SIMILARITY && !postings.get(termID).isEmpty()) {
+                scoreTerm(termID, FUZZY_SCORE * similarity);
+            }
+        }
+    }
+    
+    /**
+     * Score every word posted by the terms scored from an index of touchedTerms on, by its best posting.
+     */
+    private void scoreSlots(int fromTerm, int languageCode) {
+        for (int t = fromTerm; t < touchedTerms.size(); t++) {
+            int termID = touchedTerms.get(t);
+            IntList termPostings = postings.get(termID);
+            for (int p = 0; p < termPostings.size() && touchedSlots.size() < MAX_SCORED_SLOTS; p++) {
+                int posting = termPostings.get(p);
+                int slot = posting >>> 2;
+                if (languageCode >= 0 && slotLanguages[slot] != languageCode) continue;
+                double score = termScores[termID] * FIELD_WEIGHTS[posting & 3];
+                if (slotScores[slot] == 0) touchedSlots.add(slot);
+                if (score > slotScores[slot]) slotScores[slot] = score;
+            }
+        }
+    }
+    
+    private void scoreTerm(int termID, double score) {
+        if (termScores[termID] == 0) touchedTerms.add(termID);
+        if (score > termScores[termID]) termScores[termID] = score;
+    }
+    
+    private boolean ranksAbove(int slot, int other) {
+        if (slotScores[slot] != slotScores[other]) return slotScores[slot] > slotScores[other];
+        return slotWIDs[slot] < slotWIDs[other];
+    }
+    
+    /**
+     * Find the field of a slot's best scoring posting, for display.
+     */
+    private int bestField(int slot) {
+        int[] pairs = slotPostings[slot];
+        int field = ROMANIZATION;
+        double best = -1;
+        for (int i = 0; i < pairs.length; i += 2) {
+            double score = termScores[pairs[i]] * FIELD_WEIGHTS[pairs[i + 1]];
+            if (score > best) {
+                best = score;
+                field = pairs[i + 1];
+            }
+        }
+        return field;
+    }
+    
+    private void ensureScratch() {
+        if (termScores.length < terms.size()) {
+            termScores = new double[terms.size() * 2];
+            trigramCounts = new int[terms.size() * 2];
+        }
+        if (slotScores.length < slotCount) {
+            slotScores = new double[slotCount * 2];
+        }
+    }
+    
+    private void clearScratch() {
+        for (int i = 0; i < touchedTerms.size(); i++) {
+            termScores[touchedTerms.get(i)] = 0;
+        }
+        for (int i = 0; i < touchedSlots.size(); i++) {
+            slotScores[touchedSlots.get(i)] = 0;
+        }
+        touchedTerms.clear();
+        touchedSlots.clear();
+    }
+    
+    private void addSlot(LocalWord word) {
+        if (slotCount == slotWIDs.length) {
+            int capacity = slotCount * 2;
+            slotWIDs = Arrays.copyOf(slotWIDs, capacity);
+            slotLanguages = Arrays.copyOf(slotLanguages, capacity);
+            slotLabels = Arrays.copyOf(slotLabels, capacity);
+            slotPostings = Arrays.copyOf(slotPostings, capacity);
+        }
+        int slot = slotCount++;
+        slotWIDs[slot] = word.getWID();
+        slotLanguages[slot] = languages.encode(word.getLanguage());
+        slotLabels[slot] = word.getWID() + ": " + word.getRomanization() + ", " + word.getMeaning()
+                + (word.getMainSymbols() == null ? "" : ", " + word.getMainSymbols()) + " (" + word.getLanguage() + ")";
+        slotsByWID.put(word.getWID(), slot);
+        
+        IntList pairs = new IntList();
+        addField(slot, word.getRomanization(), ROMANIZATION, pairs);
+        addField(slot, word.getMeaning(), MEANING, pairs);
+        List<String> mains = word.getAllMainSymbols();
+        List<String> ancillaries = word.getAllAncillarySymbols();
+        for (int i = 0; i < mains.size(); i++) {
+            addField(slot, mains.get(i), MAIN, pairs);
+            addField(slot, ancillaries.get(i), ANCILLARY, pairs);
+        }
+        slotPostings[slot] = pairs.toArray();
+    }
+    
+    /**
+     * Post a field's value, and each of its words if it has several, to the slot.
+     */
+    private void addField(int slot, String value, int field, IntList pairs) {
+        String term = normalize(value);
+        if (term.isEmpty()) return;
+        addPosting(slot, term, field, pairs);
+        if (term.indexOf(' ') < 0) return;
+        for (String token : term.split(" ")) {
+            if (token.length() > 1) addPosting(slot, token, field, pairs);
+        }
+    }
+    
+    private void addPosting(int slot, String term, int field, IntList pairs) {
+        int termID = termID(term);
+        int posting = slot << 2 | field;
+        IntList termPostings = postings.get(termID);
+        // A word posts a term once per field, however many of its values hold the term.
+        for (int i = 0; i < pairs.size(); i += 2) {
+            if (pairs.get(i) == termID && pairs.get(i + 1) == field) return;
+        }
+        termPostings.add(posting);
+        pairs.add(termID);
+        pairs.add(field);
+    }
+    
+    private void removeSlot(int wid) {
+        int slot = slotsByWID.remove(wid);
+        if (slot < 0) return;
+        int[] pairs = slotPostings[slot];
+        for (int i = 0; i < pairs.length; i += 2) {
+            postings.get(pairs[i]).removeUnordered(slot << 2 | pairs[i + 1]);
+        }
+        slotPostings[slot] = null;
+        slotLabels[slot] = null;
+        slotWIDs[slot] = -1;
+    }
+    
+    /**
+     * @return The id of a term, adding it to the trie and the trigram index if it is new.
+     */
+    private int termID(String term) {
+        Integer existing = termIDs.get(term);
+        if (existing != null) return existing;
+        int termID = terms.size();
+        termIDs.put(term, termID);
+        terms.add(term);
+        postings.add(new IntList(2));
+        
+        int node = 0;
+        for (int i = 0; i < term.length(); i++) {
+            node = child(node, term.charAt(i));
+        }
+        nodeTerms[node] = termID;
+        
+        for (String gram : trigrams(term)) {
+            IntList gramTerms = termsByTrigram.get(gram);
+            if (gramTerms == null) {
+                gramTerms = new IntList(4);
+                termsByTrigram.put(gram, gramTerms);
+            }
+            gramTerms.add(termID);
+        }
+        return termID;
+    }
+    
+    /**
+     * @return The child of a trie node for a character, added if it does not exist.
+     */
+    private int child(int node, char c) {
+        int existing = findChild(node, c);
+        if (existing >= 0) return existing;
+        if (nodeCount == nodeTerms.length) {
+            int capacity = nodeCount * 2;
+            nodeChildren = Arrays.copyOf(nodeChildren, capacity);
+            nodeSiblings = Arrays.copyOf(nodeSiblings, capacity);
+            nodeTerms = Arrays.copyOf(nodeTerms, capacity);
+        }
+        int child = nodeCount++;
+        nodeChildren[child] = -1;
+        nodeTerms[child] = -1;
+        nodeSiblings[child] = nodeChildren[node];
+        nodeChildren[node] = child;
+        
+        if (++edgeCount * 2 > edgeKeys.length) growEdges();
+        long key = edgeKey(node, c);
+        int slot = edgeSlot(key);
+        while (edgeChildren[slot] != 0) slot = (slot + 1) & (edgeKeys.length - 1);
+        edgeKeys[slot] = key;
+        edgeChildren[slot] = child;
+        return child;
+    }
+    
+    /**
+     * @return The child of a trie node for a character, or -1 if it does not exist.
+     */
+    private int findChild(int node, char c) {
+        long key = edgeKey(node, c);
+        for (int slot = edgeSlot(key); edgeChildren[slot] != 0; slot = (slot + 1) & (edgeKeys.length - 1)) {
+            if (edgeKeys[slot] == key) return edgeChildren[slot];
+        }
+        return -1;
+    }
+    
+    private static long edgeKey(int node, char c) {
+        return (long) node << 16 | c;
+    }
+    
+    private int edgeSlot(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ hash >>> 32) & (edgeKeys.length - 1);
+    }
+    
+    private void growEdges() {
+        long[] oldKeys = edgeKeys;
+        int[] oldChildren = edgeChildren;
+        edgeKeys = new long[oldKeys.length * 2];
+        edgeChildren = new int[oldKeys.length * 2];
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldChildren[i] == 0) continue;
+            int slot = edgeSlot(oldKeys[i]);
+            while (edgeChildren[slot] != 0) slot = (slot + 1) & (edgeKeys.length - 1);
+            edgeKeys[slot] = oldKeys[i];
+            edgeChildren[slot] = oldChildren[i];
+        }
+    }
+    
+    /**
+     * @return The trie node reached by a prefix, or -1 if no term starts with it.
+     */
+    private int findNode(String prefix) {
+        int node = 0;
+        for (int i = 0; i < prefix.length() && node >= 0; i++) {
+            node = findChild(node, prefix.charAt(i));
+        }
+        return node;
+    }
+    
+    /**
+     * Split a term into its distinct trigrams, padded with two characters in front and one behind,
+     * so a term of n characters has up to n + 1 trigrams and short terms have some too.
+     */
+    private static String[] trigrams(String term) {
+        String padded = "" + PAD + PAD + term + PAD;
+        String[] grams = new String[term.length() + 1];
+        int distinct = 0;
+        for (int i = 0; i < grams.length; i++) {
+            String gram = padded.substring(i, i + 3);
+            boolean seen = false;
+            for (int j = 0; j < distinct && !seen; j++) {
+                seen = grams[j].equals(gram);
+            }
+            if (!seen) grams[distinct++] = gram;
+        }
+        return distinct == grams.length ? grams : Arrays.copyOf(grams, distinct);
+    }
+    
+    /**
+     * @return True if a term's padded trigrams include a trigram, checked without building the term's trigrams.
+     */
+    private static boolean hasTrigram(String term, String gram) {
+        for (int i = 0; i <= term.length(); i++) {
+            if (paddedChar(term, i) == gram.charAt(0) && paddedChar(term, i + 1) == gram.charAt(1)
+                    && paddedChar(term, i + 2) == gram.charAt(2)) return true;
+        }
+        return false;
+    }
+    
+    private static char paddedChar(String term, int index) {
+        return index < 2 || index - 2 >= term.length() ? PAD : term.charAt(index - 2);
+    }
+    
+    private static int gramCount(IntList termIDs) {
+        return termIDs == null ? 0 : termIDs.size();
+    }
+    
+    /**
+     * Lower case a value and collapse its whitespace, null becomes the empty string.
+     */
+    private static String normalize(String value) {
+        if (value == null) return "";
+        return WHITESPACE.matcher(value.trim()).replaceAll(" ").toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,90 @@
+package database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+
+import application.Logger;
+
+/**
+ * The statement cache keeps one PreparedStatement per SQL shape for the life of a connection.
+ * Every query issued by the client is parameterized, so the same SQL text is reused with
+ * different values, and the server only has to parse each shape once.
+ * @author Evan Gunn
+ *
+ */
+public class StatementCache {
+    private static final String GENERATED_KEYS_PREFIX = "KEYS:";
+    private final Connection connection;
+    private final Map<String, PreparedStatement> statements = new HashMap<String, PreparedStatement>();
+    
+    /**
+     * @param connection The connection that all cached statements are prepared on.
+     */
+    public StatementCache(Connection connection) {
+        this.connection = connection;
+    }
+    
+    /**
+     * Get the prepared statement for an SQL shape, preparing it on first use.
+     * Parameters left over from the previous use of the statement are cleared.
+     * @param sql The parameterized SQL, using ? for every value.
+     * @return The prepared statement.
+     * @throws SQLException If the statement cannot be prepared.
+     */
+    public PreparedStatement prepare(String sql) throws SQLException {
+        PreparedStatement statement = statements.get(sql);
+        if (statement == null || statement.isClosed()) {
+            statement = connection.prepareStatement(sql);
+            statements.put(sql, statement);
+        } else {
+            statement.clearParameters();
+            statement.clearBatch();
+        }
+        return statement;
+    }
+    
+    /**
+     * Get the prepared statement for an insert whose generated keys will be read back, preparing it on first use.
+     * @param sql The parameterized SQL insert.
+     * @return The prepared statement, with generated keys enabled.
+     * @throws SQLException If the statement cannot be prepared.
+     */
+    public PreparedStatement prepareReturningKeys(String sql) throws SQLException {
+        // Keyed apart from prepare(), as the same SQL prepared without generated keys cannot return them.
+        String key = GENERATED_KEYS_PREFIX + sql;
+        PreparedStatement statement = statements.get(key);
+        if (statement == null || statement.isClosed()) {
+            statement = connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+            statements.put(key, statement);
+        } else {
+            statement.clearParameters();
+            statement.clearBatch();
+        }
+        return statement;
+    }
+    
+    /**
+     * @return The amount of SQL shapes currently prepared.
+     */
+    public int size() {
+        return statements.size();
+    }
+    
+    /**
+     * Close every cached statement, the connection itself is left open.
+     */
+    public void close() {
+        for (PreparedStatement statement : statements.values()) {
+            try {
+                statement.close();
+            } catch (SQLException e) {
+                Logger.getInstance().error(e.getMessage());
+            }
+        }
+        statements.clear();
+    }
+}
@@ -0,0 +1,20 @@
+package database;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * A StatementExecution executes a prepared statement for MyConnection.runStatement(), once its values are bound,
+ * and reads its results while they are still open.
+ * @author Evan Gunn
+ *
+ */
+interface StatementExecution {
+    /**
+     * Execute the statement.
+     * @param statement The prepared statement, with its values bound.
+     * @return The rows the statement read or changed.
+     * @throws SQLException If the statement fails.
+     */
+    int execute(PreparedStatement statement) throws SQLException;
+}
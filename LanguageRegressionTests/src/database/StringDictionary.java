@@ -0,0 +1,49 @@
+package database;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Encodes strings that repeat many times, such as languages, word types and source names, as small int codes.
+ * Each distinct string is stored once, and codes are handed out in order from 0.
+ * @author Evan Gunn
+ *
+ */
+public class StringDictionary {
+    private final HashMap<String, Integer> codes = new HashMap<String, Integer>();
+    private final ArrayList<String> strings = new ArrayList<String>();
+    
+    /**
+     * @return The code of a string, adding the string if it is new. Null has no code, and -1 is returned.
+     */
+    public int encode(String value) {
+        if (value == null) return -1;
+        Integer code = codes.get(value);
+        if (code == null) {
+            code = strings.size();
+            codes.put(value, code);
+            strings.add(value);
+        }
+        return code;
+    }
+    
+    /**
+     * @return The code of a string, or -1 if the string is null or has never been encoded.
+     */
+    public int find(String value) {
+        if (value == null) return -1;
+        Integer code = codes.get(value);
+        return code == null ? -1 : code;
+    }
+    
+    /**
+     * @return The string of a code, or null for -1.
+     */
+    public String decode(int code) {
+        return code < 0 ? null : strings.get(code);
+    }
+    
+    public int size() {
+        return strings.size();
+    }
+}
@@ -0,0 +1,167 @@
+package database;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import application.Logger;
+
+/**
+ * The symbol index answers "which words use the kanji 食?" without scanning the symbols table. It is an inverted
+ * index from each character of the main symbols to the wids of the words using it. The postings of a character
+ * are a sorted IntList, so the words using several characters are found by intersecting the shortest list
+ * with the others, and no wid is boxed.
+ *
+ * Like the SearchIndex, it is built from the active vocabulary store when it is first used, then kept up to date
+ * as words are inserted and removed, and built again after an import or a change of store.
+ * @author Evan Gunn
+ *
+ */
+public class SymbolIndex {
+    private static final SymbolIndex index = new SymbolIndex();
+    
+    private boolean built = false;
+    // The postings of each character, keyed by code point, as an index into postings.
+    private final IntIntMap postingIndexes = new IntIntMap(4096, -1);
+    private final ArrayList<IntList> postings = new ArrayList<IntList>();
+    // The characters of each word, so a removed word is found in its postings. Keyed by wid, as an index into words.
+    private final IntIntMap wordIndexes = new IntIntMap(1024, -1);
+    private final ArrayList<int[]> words = new ArrayList<int[]>();
+    
+    private SymbolIndex() {
+    }
+    
+    /**
+     * @return The single instance of the symbol index.
+     */
+    public static SymbolIndex getInstance() {
+        return index;
+    }
+    
+    /**
+     * Find the words whose main symbols use every character of a string, in any order.
+     * @param characters The characters, such as 食 or 食物.
+     * @return The wids in ascending order, or null if the index could not be built.
+     */
+    public synchronized int[] withCharacters(String characters) {
+        if (!built && !build()) return null;
+        int[] codePoints = distinctCodePoints(characters);
+        if (codePoints.length == 0) return new int[0];
+        IntList[] lists = new IntList[codePoints.length];
+        for (int i = 0; i < codePoints.length; i++) {
+            int postingIndex = postingIndexes.get(codePoints[i]);
+            if (postingIndex < 0) return new int[0];
+            lists[i] = postings.get(postingIndex);
+        }
+        // Intersect from the shortest list, checking each of its wids against the others by binary search.
+        Arrays.sort(lists, (a, b) -> Integer.compare(a.size(), b.size()));
+        IntList found = new IntList(lists[0].size());
+        for (int i = 0; i < lists[0].size(); i++) {
+            int wid = lists[0].get(i);
+            boolean inAll = true;
+            for (int l = 1; l < lists.length && inAll; l++) {
+                inAll = lists[l].binarySearch(wid) >= 0;
+            }
+            if (inAll) found.add(wid);
+        }
+        return found.toArray();
+    }
+    
+    /**
+     * @return The amount of words using a character, 0 if the index could not be built.
+     */
+    public synchronized int countUsing(int codePoint) {
+        if (!built && !build()) return 0;
+        int postingIndex = postingIndexes.get(codePoint);
+        return postingIndex < 0 ? 0 : postings.get(postingIndex).size();
+    }
+    
+    /**
+     * Add a newly inserted word, if the index has been built.
+     */
+    public synchronized void addWord(LocalWord word) {
+        if (!built || word.getWID() < 0) return;
+        removeEntry(word.getWID());
+        addEntry(word);
+    }
+    
+    /**
+     * Remove a deleted word, if the index has been built.
+     */
+    public synchronized void removeWord(int wid) {
+        if (!built) return;
+        removeEntry(wid);
+    }
+    
+    /**
+     * Drop the index, it is built again from the active vocabulary store when it is next used.
+     */
+    public synchronized void invalidate() {
+        built = false;
+        postingIndexes.clear();
+        postings.clear();
+        wordIndexes.clear();
+        words.clear();
+    }
+    
+    /**
+     * Index every word of the active vocabulary store.
+     */
+    private boolean build() {
+        long start = System.nanoTime();
+        if (!VocabularyStores.getActive().forEachWord(this::addEntry)) {
+            invalidate();
+            return false;
+        }
+        built = true;
+        double millis = (System.nanoTime() - start) / 1e6;
+        Logger.getInstance().info(() -> "Indexed the characters of " + wordIndexes.size() + " words, "
+                + postings.size() + " characters, in " + String.format("%.1f", millis) + " ms.");
+        return true;
+    }
+    
+    private void addEntry(LocalWord word) {
+        StringBuilder mains = new StringBuilder();
+        for (String main : word.getAllMainSymbols()) {
+            if (main != null) mains.append(main);
+        }
+        int[] codePoints = distinctCodePoints(mains.toString());
+        if (codePoints.length == 0) return;
+        wordIndexes.put(word.getWID(), words.size());
+        words.add(codePoints);
+        for (int codePoint : codePoints) {
+            int postingIndex = postingIndexes.get(codePoint);
+            if (postingIndex < 0) {
+                postingIndex = postings.size();
+                postings.add(new IntList(4));
+                postingIndexes.put(codePoint, postingIndex);
+            }
+            IntList wids = postings.get(postingIndex);
+            // Words are read in order of wid, and new words have the highest wids, so this nearly always appends.
+            if (wids.isEmpty() || wids.get(wids.size() - 1) < word.getWID()) {
+                wids.add(word.getWID());
+            } else {
+                int position = wids.binarySearch(word.getWID());
+                if (position < 0) wids.insert(-position - 1, word.getWID());
+            }
+        }
+    }
+    
+    private void removeEntry(int wid) {
+        int wordIndex = wordIndexes.remove(wid);
+        if (wordIndex < 0) return;
+        for (int codePoint : words.get(wordIndex)) {
+            IntList wids = postings.get(postingIndexes.get(codePoint));
+            int position = wids.binarySearch(wid);
+            if (position >= 0) wids.removeAt(position);
+        }
+        words.set(wordIndex, null);
+    }
+    
+    /**
+     * @return The distinct characters of a string, leaving out whitespace.
+     */
+    private static int[] distinctCodePoints(String value) {
+        if (value == null) return new int[0];
+        return value.codePoints().filter(codePoint -> !Character.isWhitespace(codePoint)).distinct().toArray();
+    }
+}
@@ -0,0 +1,204 @@
+package database;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.zip.GZIPOutputStream;
+
+import application.Logger;
+
+/**
+ * The vocabulary exporter streams a language, or the whole database, to a CSV, TSV or JSON-lines file
+ * in the layout read by the VocabularyImporter. The word, symbols and wordsource tables are each read
+ * through a forward-only streaming ResultSet ordered by wid, on their own connections, and merged row by
+ * row. Only the rows of the current word are ever held in memory, whatever the size of the tables.
+ * Output is encoded into a fixed buffer and written to a FileChannel, gzipped if the file name ends in .gz.
+ * @author Evan Gunn
+ *
+ */
+public class VocabularyExporter {
+    private static final int BUFFER_SIZE = 1 << 16;
+    
+    /**
+     * Export words to a file, replacing the file if it exists.
+     * @param path The file to write, gzipped if the name ends in .gz.
+     * @param format The format to write.
+     * @param language The language to export, or null to export every language.
+     * @return The amount of words exported, or -1 upon error.
+     */
+    public long exportFile(Path path, VocabularyFormat format, String language) {
+        ConnectionPool pool = MyConnection.getInstance().getPool();
+        if (pool == null) {
+            Logger.getInstance().warn("Not connected to a database.");
+            return -1;
+        }
+        String filter = language == null ? "" : " WHERE W.wlanguage = ?";
+        String wordQuery = "SELECT W.wid, W.romanization, W.wlanguage, W.meaning, W.wtype FROM word W" + filter + " ORDER BY W.wid";
+        String symbolsQuery = "SELECT S.wid, S.main, S.ancillary FROM symbols S JOIN word W ON S.wid = W.wid" + filter + " ORDER BY S.wid";
+        String sourceQuery = "SELECT N.wid, N.sname FROM wordsource N JOIN word W ON N.wid = W.wid" + filter + " ORDER BY N.wid";
+        
+        long startNanos = System.nanoTime();
+        long exported = 0;
+        PooledConnection wordConnection = null, symbolsConnection = null, sourceConnection = null;
+        try {
+            // A streaming result holds its connection until it is closed, so each table needs its own.
+            wordConnection = pool.acquire();
+            symbolsConnection = pool.acquire();
+            sourceConnection = pool.acquire();
+            try (ResultSet words = stream(wordConnection, wordQuery, language);
+                    ResultSet symbols = stream(symbolsConnection, symbolsQuery, language);
+                    ResultSet sources = stream(sourceConnection, sourceQuery, language);
+                    ChannelLineWriter writer = new ChannelLineWriter(path)) {
+                exported = merge(words, symbols, sources, format, writer);
+            }
+        } catch (SQLException | IOException e) {
+            Logger.getInstance().error("Export failed: " + e.getMessage());
+            return -1;
+        } finally {
+            if (wordConnection != null) pool.release(wordConnection);
+            if (symbolsConnection != null) pool.release(symbolsConnection);
+            if (sourceConnection != null) pool.release(sourceConnection);
+        }
+        
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        Logger.getInstance().log("Exported " + exported + " words to " + path + " in " + String.format("%.2f", seconds) + " seconds.");
+        return exported;
+    }
+    
+    /**
+     * Run a query as a forward-only streaming result. The statement is closed along with the result.
+     */
+    private static ResultSet stream(PooledConnection pooled, String query, String language) throws SQLException {
+        PreparedStatement statement = pooled.getConnection().prepareStatement(query,
+                ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+        // Stream rows rather than reading the whole result into memory, how depends on the database.
+        statement.setFetchSize(MyConnection.getInstance().getStreamingFetchSize());
+        statement.closeOnCompletion();
+        if (language != null) statement.setString(1, language);
+        return statement.executeQuery();
+    }
+    
+    /**
+     * Merge the three wid-ordered results into one line per word.
+     * @return The amount of words written.
+     */
+    private static long merge(ResultSet words, ResultSet symbols, ResultSet sources,
+            VocabularyFormat format, ChannelLineWriter writer) throws SQLException, IOException {
+        StringBuilder line = new StringBuilder(256);
+        String[] columns = new String[VocabularyFormat.COLUMNS.length];
+        ArrayList<String> mains = new ArrayList<String>(), ancillaries = new ArrayList<String>(), names = new ArrayList<String>();
+        
+        if (format != VocabularyFormat.JSONL) {
+            for (int i = 0; i < columns.length; i++) {
+                if (i > 0) line.append(format == VocabularyFormat.CSV ? ',' : '\t');
+                line.append(VocabularyFormat.COLUMNS[i]);
+            }
+            writer.writeLine(line);
+        }
+        
+        boolean hasSymbol = symbols.next(), hasSource = sources.next();
+        long count = 0;
+        while (words.next()) {
+            int wid = words.getInt(1);
+            mains.clear();
+            ancillaries.clear();
+            names.clear();
+            // Rows of children whose word was not selected are skipped.
+            while (hasSymbol && symbols.getInt(1) <= wid) {
+                if (symbols.getInt(1) == wid) {
+                    mains.add(symbols.getString(2));
+                    ancillaries.add(symbols.getString(3));
+                }
+                hasSymbol = symbols.next();
+            }
+            while (hasSource && sources.getInt(1) <= wid) {
+                if (sources.getInt(1) == wid) names.add(sources.getString(2));
+                hasSource = sources.next();
+            }
+            
+            columns[VocabularyFormat.ROMANIZATION] = words.getString(2);
+            columns[VocabularyFormat.LANGUAGE] = words.getString(3);
+            columns[VocabularyFormat.MEANING] = words.getString(4);
+            columns[VocabularyFormat.WTYPE] = words.getString(5);
+            columns[VocabularyFormat.MAIN] = VocabularyFormat.joinList(mains);
+            columns[VocabularyFormat.ANCILLARY] = VocabularyFormat.joinList(ancillaries);
+            columns[VocabularyFormat.SOURCE] = VocabularyFormat.joinList(names);
+            line.setLength(0);
+            format.format(columns, line);
+            writer.writeLine(line);
+            count++;
+        }
+        return count;
+    }
+    
+    /**
+     * Writes lines of text to a file through a fixed size byte buffer, encoding them as UTF-8.
+     */
+    private static class ChannelLineWriter implements AutoCloseable {
+        private final FileChannel file;
+        private final WritableByteChannel channel;
+        private final CharsetEncoder encoder = StandardCharsets.UTF_8.newEncoder();
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        
+        ChannelLineWriter(Path path) throws IOException {
+            file = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+            if (path.getFileName().toString().toLowerCase().endsWith(".gz")) {
+                channel = Channels.newChannel(new GZIPOutputStream(Channels.newOutputStream(file), BUFFER_SIZE));
+            } else {
+                channel = file;
+            }
+        }
+        
+        /**
+         * Encode a line, followed by a line feed, into the buffer, draining the buffer to the channel when full.
+         */
+        void writeLine(CharSequence line) throws IOException {
+            encode(CharBuffer.wrap(line));
+            encode(CharBuffer.wrap("\n"));
+        }
+        
+        private void encode(CharBuffer chars) throws IOException {
+            while (true) {
+                CoderResult result = encoder.encode(chars, buffer, false);
+                if (result.isOverflow()) {
+                    drain();
+                } else if (result.isError()) {
+                    result.throwException();
+                } else {
+                    return;
+                }
+            }
+        }
+        
+        private void drain() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+        
+        public void close() throws IOException {
+            try {
+                encoder.encode(CharBuffer.allocate(0), buffer, true);
+                encoder.flush(buffer);
+                drain();
+            } finally {
+                channel.close();
+                file.close();
+            }
+        }
+    }
+}
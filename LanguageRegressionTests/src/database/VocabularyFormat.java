@@ -0,0 +1,389 @@
+package database;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The text formats that vocabulary can be imported from and exported to.
+ * Every format holds one word per line, with the columns romanization, language, meaning, wtype,
+ * main, ancillary and source. A word with several symbols or sources lists them in the main,
+ * ancillary and source columns separated by '|', the n-th main symbols going with the n-th ancillary symbols.
+ * CSV quotes fields as in RFC 4180, TSV escapes tabs, newlines and backslashes with a backslash,
+ * and JSON-lines holds one flat object of strings per line, keyed by the column names.
+ * Empty fields and JSON nulls are read as null.
+ * @author Evan Gunn
+ *
+ */
+public enum VocabularyFormat {
+    CSV, TSV, JSONL;
+    
+    public static final String[] COLUMNS = {"romanization", "language", "meaning", "wtype", "main", "ancillary", "source"};
+    public static final int ROMANIZATION = 0, LANGUAGE = 1, MEANING = 2, WTYPE = 3, MAIN = 4, ANCILLARY = 5, SOURCE = 6;
+    // Separates several values in the main, ancillary and source columns.
+    public static final char LIST_SEPARATOR = '|';
+    
+    /**
+     * Find the format for a file from its extension, .csv, .tsv, .jsonl or .json.
+     * @param fileName The name of the file.
+     * @return The format, or null if the extension is unknown.
+     */
+    public static VocabularyFormat fromFileName(String fileName) {
+        String lower = fileName.toLowerCase();
+        if (lower.endsWith(".gz")) lower = lower.substring(0, lower.length() - 3);
+        if (lower.endsWith(".csv")) return CSV;
+        if (lower.endsWith(".tsv") || lower.endsWith(".tab")) return TSV;
+        if (lower.endsWith(".jsonl") || lower.endsWith(".json")) return JSONL;
+        return null;
+    }
+    
+    /**
+     * Find a format by name, ignoring case.
+     * @param name csv, tsv or jsonl.
+     * @return The format, or null if the name is unknown.
+     */
+    public static VocabularyFormat fromName(String name) {
+        for (VocabularyFormat format : values()) {
+            if (format.name().equalsIgnoreCase(name.trim())) return format;
+        }
+        return null;
+    }
+    
+    /**
+     * @param line A line of the file.
+     * @return True if the line is a header naming the columns, rather than a word.
+     */
+    public boolean isHeader(String line) {
+        return this != JSONL && line.startsWith(COLUMNS[0]);
+    }
+    
+    /**
+     * Parse one line into its seven columns.
+     * @param line The line, without its line terminator.
+     * @return The columns, null where a column is empty or missing.
+     * @throws IllegalArgumentException If the line is malformed.
+     */
+    public String[] parse(String line) {
+        String[] fields;
+        switch (this) {
+            case CSV:
+                fields = parseCSV(line);
+                break;
+            case TSV:
+                fields = parseTSV(line);
+                break;
+            default:
+                fields = parseJSON(line);
+        }
+        String[] columns = new String[COLUMNS.length];
+        for (int i = 0; i < columns.length && i < fields.length; i++) {
+            columns[i] = fields[i] == null || fields[i].isEmpty() ? null : fields[i];
+        }
+        return columns;
+    }
+    
+    /**
+     * Format seven columns into one line, the opposite of parse().
+     * @param columns The columns, null for empty.
+     * @param line The builder the line is appended to, without a line terminator.
+     */
+    public void format(String[] columns, StringBuilder line) {
+        switch (this) {
+            case CSV:
+            case TSV:
+                char delimiter = this == CSV ? ',' : '\t';
+                for (int i = 0; i < columns.length; i++) {
+                    if (i > 0) line.append(delimiter);
+                    if (columns[i] == null) continue;
+                    if (this == CSV) appendCSV(columns[i], line);
+                    else appendTSV(columns[i], line);
+                }
+                break;
+            default:
+                line.append('{');
+                for (int i = 0; i < columns.length; i++) {
+                    if (i > 0) line.append(',');
+                    appendJSONString(COLUMNS[i], line);
+                    line.append(':');
+                    if (columns[i] == null) line.append("null");
+                    else appendJSONString(columns[i], line);
+                }
+                line.append('}');
+        }
+    }
+    
+    /**
+     * Split a list column into its values.
+     * @param column The column, may be null.
+     * @return The values, empty for a null column. Empty values are null.
+     */
+    public static String[] splitList(String column) {
+        if (column == null) return new String[0];
+        ArrayList<String> values = new ArrayList<String>(2);
+        int start = 0;
+        for (int i = 0; i <= column.length(); i++) {
+            if (i == column.length() || column.charAt(i) == LIST_SEPARATOR) {
+                values.add(i == start ? null : column.substring(start, i));
+                start = i + 1;
+            }
+        }
+        return values.toArray(new String[0]);
+    }
+    
+    /**
+     * Join values into a list column, the opposite of splitList().
+     * @return The column, or null if there are no values.
+     */
+    public static String joinList(Iterable<String> values) {
+        StringBuilder column = null;
+        for (String value : values) {
+            if (column == null) column = new StringBuilder();
+            else column.append(LIST_SEPARATOR);
+            if (value != null) column.append(value);
+        }
+        return column == null ? null : column.toString();
+    }
+    
+    private static String[] parseCSV(String line) {
+        ArrayList<String> fields = new ArrayList<String>(COLUMNS.length);
+        StringBuilder field = new StringBuilder();
+        int i = 0;
+        while (true) {
+            field.setLength(0);
+            if (i < line.length() && line.charAt(i) == '"') {
+                // Quoted field, "" stands for one quote.
+                i++;
+                while (true) {
+                    if (i >= line.length()) throw new IllegalArgumentException("Unterminated quoted field.");
+                    char c = line.charAt(i++);
+                    if (c == '"') {
+                        if (i < line.length() && line.charAt(i) == '"') {
+                            field.append('"');
+                            i++;
+                        } else {
+                            break;
+                        }
+                    } else {
+                        field.append(c);
+                    }
+                }
+                if (i < line.length() && line.charAt(i) != ',') {
+                    throw new IllegalArgumentException("Unexpected character after quoted field at " + i + ".");
+                }
+            } else {
+                while (i < line.length() && line.charAt(i) != ',') {
+                    field.append(line.charAt(i++));
+                }
+            }
+            fields.add(field.toString());
+            if (i >= line.length()) break;
+            // Skip the comma.
+            i++;
+        }
+        return fields.toArray(new String[0]);
+    }
+    
+    private static void appendCSV(String value, StringBuilder line) {
+        boolean quote = value.indexOf(',') >= 0 || value.indexOf('"') >= 0
+                || value.indexOf('\n') >= 0 || value.indexOf('\r') >= 0;
+        if (!quote) {
+            line.append(value);
+            return;
+        }
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            // Line breaks inside a value would split the record, so they are written as spaces.
+            if (c == '"') line.append("\"\"");
+            else if (c == '\n' || c == '\r') line.append(' ');
+            else line.append(c);
+        }
+        line.append('"');
+    }
+    
+    private static String[] parseTSV(String line) {
+        ArrayList<String> fields = new ArrayList<String>(COLUMNS.length);
+        StringBuilder field = new StringBuilder();
+        for (int i = 0; i <= line.length(); i++) {
+            if (i == line.length() || line.charAt(i) == '\t') {
+                fields.add(field.toString());
+                field.setLength(0);
+                continue;
+            }
+            char c = line.charAt(i);
+            if (c == '\\' && i + 1 < line.length()) {
+                char escaped = line.charAt(++i);
+                if (escaped == 't') field.append('\t');
+                else if (escaped == 'n') field.append('\n');
+                else if (escaped == 'r') field.append('\r');
+                else field.append(escaped);
+            } else {
+                field.append(c);
+            }
+        }
+        return fields.toArray(new String[0]);
+    }
+    
+    private static void appendTSV(String value, StringBuilder line) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\t') line.append("\\t");
+            else if (c == '\n') line.append("\\n");
+            else if (c == '\r') line.append("\\r");
+            else if (c == '\\') line.append("\\\\");
+            else line.append(c);
+        }
+    }
+    
+    /**
+     * Parse a flat JSON object whose values are strings or null. Keys that are not columns are ignored.
+     */
+    private static String[] parseJSON(String line) {
+        String[] fields = new String[COLUMNS.length];
+        JSONReader reader = new JSONReader(line);
+        reader.expect('{');
+        if (reader.peek() == '}') {
+            return fields;
+        }
+        do {
+            String key = reader.readString();
+            reader.expect(':');
+            String value = reader.readStringOrNull();
+            for (int i = 0; i < COLUMNS.length; i++) {
+                if (COLUMNS[i].equals(key)) fields[i] = value;
+            }
+        } while (reader.skipComma());
+        reader.expect('}');
+        return fields;
+    }
+    
+    /**
+     * Parse a flat JSON object whose values are strings, numbers, booleans or null, such as the body of a request.
+     * Numbers and booleans are returned as their text.
+     * @param text The object.
+     * @return The values keyed by name, in order, JSON nulls are kept as null values.
+     * @throws IllegalArgumentException If the text is not a flat JSON object.
+     */
+    public static Map<String, String> parseJSONObject(String text) {
+        Map<String, String> values = new LinkedHashMap<String, String>();
+        JSONReader reader = new JSONReader(text);
+        reader.expect('{');
+        if (reader.peek() != '}') {
+            do {
+                String key = reader.readString();
+                reader.expect(':');
+                values.put(key, reader.readStringOrNull());
+            } while (reader.skipComma());
+        }
+        reader.expect('}');
+        return values;
+    }
+    
+    /**
+     * Append a value as a quoted JSON string.
+     * @param value The value.
+     * @param json The builder the string is appended to.
+     */
+    public static void appendJSONString(String value, StringBuilder json) {
+        json.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+                case '"': json.append("\\\""); break;
+                case '\\': json.append("\\\\"); break;
+                case '\n': json.append("\\n"); break;
+                case '\r': json.append("\\r"); break;
+                case '\t': json.append("\\t"); break;
+                default:
+                    if (c < 0x20) {
+                        json.append(String.format("\\u%04x", (int) c));
+                    } else {
+                        json.append(c);
+                    }
+            }
+        }
+        json.append('"');
+    }
+    
+    /**
+     * A small reader for the flat JSON objects used by JSON-lines files.
+     */
+    static class JSONReader {
+        private final String text;
+        private int position = 0;
+        
+        JSONReader(String text) {
+            this.text = text;
+        }
+        
+        /**
+         * @return The next character that is not whitespace, without consuming it, or 0 at the end.
+         */
+        char peek() {
+            while (position < text.length() && Character.isWhitespace(text.charAt(position))) position++;
+            return position < text.length() ? text.charAt(position) : 0;
+        }
+        
+        void expect(char expected) {
+            if (peek() != expected) {
+                throw new IllegalArgumentException("Expected '" + expected + "' at " + position + ".");
+            }
+            position++;
+        }
+        
+        /**
+         * Consume a comma if one is next.
+         * @return True if a comma was consumed.
+         */
+        boolean skipComma() {
+            if (peek() == ',') {
+                position++;
+                return true;
+            }
+            return false;
+        }
+        
+        /**
+         * Read a string, null, or a number or boolean, which is returned as its text.
+         */
+        String readStringOrNull() {
+            char next = peek();
+            if (next == '"') return readString();
+            int start = position;
+            while (position < text.length() && ",}] \t".indexOf(text.charAt(position)) < 0) position++;
+            String literal = text.substring(start, position);
+            if (literal.isEmpty()) throw new IllegalArgumentException("Expected a value at " + start + ".");
+            return literal.equals("null") ? null : literal;
+        }
+        
+        String readString() {
+            expect('"');
+            StringBuilder value = new StringBuilder();
+            while (true) {
+                if (position >= text.length()) throw new IllegalArgumentException("Unterminated string.");
+                char c = text.charAt(position++);
+                if (c == '"') break;
+                if (c != '\\') {
+                    value.append(c);
+                    continue;
+                }
+                if (position >= text.length()) throw new IllegalArgumentException("Unterminated escape.");
+                char escaped = text.charAt(position++);
+                switch (escaped) {
+                    case 'n': value.append('\n'); break;
+                    case 'r': value.append('\r'); break;
+                    case 't': value.append('\t'); break;
+                    case 'b': value.append('\b'); break;
+                    case 'f': value.append('\f'); break;
+                    case 'u':
+                        if (position + 4 > text.length()) throw new IllegalArgumentException("Bad unicode escape.");
+                        value.append((char) Integer.parseInt(text.substring(position, position + 4), 16));
+                        position += 4;
+                        break;
+                    default: value.append(escaped);
+                }
+            }
+            return value.toString();
+        }
+    }
+}
@@ -0,0 +1,327 @@
+package database;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.GZIPInputStream;
+
+import application.Logger;
+
+/**
+ * The vocabulary importer loads word lists from CSV, TSV or JSON-lines files, see VocabularyFormat.
+ * The calling thread parses the file while a writer thread inserts the parsed words in chunks, each chunk
+ * as one transaction of JDBC batches. When a chunk's batch fails, the chunk is retried one word at a time
+ * behind savepoints, so only the words that actually fail are left out and reported.
+ * @author Evan Gunn
+ *
+ */
+public class VocabularyImporter {
+    public static final int DEFAULT_CHUNK_SIZE = 1000;
+    // Chunks parsed ahead of the writer, bounding the memory used by a large file.
+    private static final int QUEUED_CHUNKS = 4;
+    private static final long PROGRESS_INTERVAL_NANOS = 2000000000L;
+    
+    private final int chunkSize;
+    
+    /**
+     * @param chunkSize The amount of words inserted per transaction.
+     */
+    public VocabularyImporter(int chunkSize) {
+        this.chunkSize = Math.max(1, chunkSize);
+    }
+    
+    /**
+     * A chunk of parsed words, along with the line each word was read from.
+     */
+    private static class Chunk {
+        final ArrayList<LocalWord> words;
+        final int[] lines;
+        
+        Chunk(int size) {
+            words = new ArrayList<LocalWord>(size);
+            lines = new int[size];
+        }
+    }
+    
+    // Tells the writer that parsing has finished.
+    private static final Chunk END = new Chunk(0);
+    
+    /**
+     * Import every word in a file. Files ending in .gz are decompressed.
+     * @param path The file to read.
+     * @param format The format of the file.
+     * @return The report of the import, listing any rows that failed.
+     */
+    public ImportReport importFile(Path path, VocabularyFormat format) {
+        ImportReport report = new ImportReport();
+        ConnectionPool pool = MyConnection.getInstance().getPool();
+        if (pool == null) {
+            Logger.getInstance().warn("Not connected to a database.");
+            return report;
+        }
+        
+        BlockingQueue<Chunk> chunks = new ArrayBlockingQueue<Chunk>(QUEUED_CHUNKS);
+        Thread writer = new Thread(() -> writeChunks(pool, chunks, report), "vocabulary-import-writer");
+        writer.setDaemon(true);
+        writer.start();
+        
+        try (BufferedReader reader = openReader(path)) {
+            Chunk chunk = new Chunk(chunkSize);
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null && !report.isAborted()) {
+                lineNumber++;
+                if (line.trim().isEmpty() || (lineNumber == 1 && format.isHeader(line))) continue;
+                report.rowRead();
+                
+                LocalWord word;
+                try {
+                    word = toWord(format.parse(line));
+                } catch (IllegalArgumentException e) {
+                    report.rowFailed(lineNumber, e.getMessage());
+                    continue;
+                }
+                
+                chunk.lines[chunk.words.size()] = lineNumber;
+                chunk.words.add(word);
+                if (chunk.words.size() == chunkSize) {
+                    chunks.put(chunk);
+                    chunk = new Chunk(chunkSize);
+                }
+            }
+            if (!chunk.words.isEmpty()) chunks.put(chunk);
+        } catch (IOException e) {
+            Logger.getInstance().error("Failed to read " + path + ": " + e.getMessage());
+            report.abort();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            report.abort();
+        } finally {
+            try {
+                chunks.put(END);
+                writer.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        
+        // Every new word may belong in a list of sampling candidates.
+        WordSampler.getInstance().invalidate();
+        SearchIndex.getInstance().invalidate();
+        SymbolIndex.getInstance().invalidate();
+        Logger.getInstance().log(report.toString());
+        return report;
+    }
+    
+    /**
+     * Open a file for reading as UTF-8, decompressing it if it ends in .gz.
+     */
+    private static BufferedReader openReader(Path path) throws IOException {
+        InputStream input = Files.newInputStream(path);
+        if (path.getFileName().toString().toLowerCase().endsWith(".gz")) {
+            input = new GZIPInputStream(input, 1 << 16);
+        }
+        return new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8), 1 << 16);
+    }
+    
+    /**
+     * Build a word from parsed columns, splitting the symbols and source lists.
+     * @throws IllegalArgumentException If a required column is missing.
+     */
+    private static LocalWord toWord(String[] columns) {
+        if (columns[VocabularyFormat.ROMANIZATION] == null || columns[VocabularyFormat.LANGUAGE] == null
+                || columns[VocabularyFormat.MEANING] == null) {
+            throw new IllegalArgumentException("Romanization, language and meaning are required.");
+        }
+        LocalWord word = new LocalWord(columns[VocabularyFormat.ROMANIZATION], columns[VocabularyFormat.LANGUAGE],
+                columns[VocabularyFormat.MEANING], columns[VocabularyFormat.WTYPE], null, null, null);
+        String[] mains = VocabularyFormat.splitList(columns[VocabularyFormat.MAIN]);
+        String[] ancillaries = VocabularyFormat.splitList(columns[VocabularyFormat.ANCILLARY]);
+        for (int i = 0; i < mains.length; i++) {
+            if (mains[i] == null) continue;
+            word.addSymbolValues(mains[i], i < ancillaries.length ? ancillaries[i] : null);
+        }
+        for (String source : VocabularyFormat.splitList(columns[VocabularyFormat.SOURCE])) {
+            if (source != null) word.addSourceValue(source);
+        }
+        return word;
+    }
+    
+    /**
+     * The writer thread's loop, inserting chunks until the end marker arrives.
+     */
+    private void writeChunks(ConnectionPool pool, BlockingQueue<Chunk> chunks, ImportReport report) {
+        long lastProgress = System.nanoTime();
+        try {
+            Chunk chunk;
+            while ((chunk = chunks.take()) != END) {
+                // After an abort the queue is still drained, so the parsing thread never blocks.
+                if (report.isAborted()) continue;
+                try {
+                    writeChunk(pool, chunk, report);
+                } catch (RuntimeException e) {
+                    Logger.getInstance().error("Import failed: " + e);
+                    report.abort();
+                }
+                long now = System.nanoTime();
+                if (now - lastProgress >= PROGRESS_INTERVAL_NANOS) {
+                    lastProgress = now;
+                    Logger.getInstance().info(report.progress());
+                }
+            }
+        } catch (InterruptedException e) {
+            report.abort();
+        }
+    }
+    
+    /**
+     * Insert one chunk in a transaction. If the batch fails, retry the chunk word by word behind savepoints.
+     */
+    private void writeChunk(ConnectionPool pool, Chunk chunk, ImportReport report) {
+        PooledConnection pooled;
+        try {
+            pooled = pool.acquire();
+        } catch (SQLException e) {
+            for (int line : chunk.lines) report.rowFailed(line, e.getMessage());
+            return;
+        }
+        Connection connection = pooled.getConnection();
+        try {
+            connection.setAutoCommit(false);
+            try {
+                WordBatchWriter.writeBatch(pooled, chunk.words);
+                connection.commit();
+                report.rowsImported(chunk.words.size());
+                return;
+            } catch (SQLException e) {
+                connection.rollback();
+            }
+            
+            int imported = 0;
+            for (int i = 0; i < chunk.words.size(); i++) {
+                Savepoint savepoint = connection.setSavepoint();
+                try {
+                    WordBatchWriter.writeOne(pooled, chunk.words.get(i));
+                    connection.releaseSavepoint(savepoint);
+                    imported++;
+                } catch (SQLException e) {
+                    connection.rollback(savepoint);
+                    report.rowFailed(chunk.lines[i], e.getMessage());
+                }
+            }
+            connection.commit();
+            report.rowsImported(imported);
+        } catch (SQLException e) {
+            pooled.recordError(e);
+            Logger.getInstance().error(e.getMessage());
+            try {
+                connection.rollback();
+            } catch (SQLException rollbackError) {
+                Logger.getInstance().error(rollbackError.getMessage());
+            }
+            for (int line : chunk.lines) report.rowFailed(line, e.getMessage());
+        } finally {
+            try {
+                connection.setAutoCommit(true);
+            } catch (SQLException e) {
+                Logger.getInstance().error(e.getMessage());
+            }
+            pool.release(pooled);
+        }
+    }
+    
+    /**
+     * The import report counts the rows read, imported and failed, and keeps the first failures for display.
+     * It is shared by the parsing and writing threads.
+     */
+    public static class ImportReport {
+        private static final int MAX_LISTED_FAILURES = 100;
+        private final long startNanos = System.nanoTime();
+        private final List<String> failures = new ArrayList<String>();
+        private int read = 0, imported = 0, failed = 0;
+        private volatile boolean aborted = false;
+        
+        synchronized void rowRead() {
+            read++;
+        }
+        
+        synchronized void rowsImported(int count) {
+            imported += count;
+        }
+        
+        synchronized void rowFailed(int line, String reason) {
+            failed++;
+            if (failures.size() < MAX_LISTED_FAILURES) {
+                failures.add("Line " + line + ": " + reason);
+            }
+        }
+        
+        void abort() {
+            aborted = true;
+        }
+        
+        boolean isAborted() {
+            return aborted;
+        }
+        
+        public synchronized int getRowsRead() {
+            return read;
+        }
+        
+        public synchronized int getRowsImported() {
+            return imported;
+        }
+        
+        public synchronized int getRowsFailed() {
+            return failed;
+        }
+        
+        /**
+         * @return The first failures, each naming its line and reason.
+         */
+        public synchronized List<String> getFailures() {
+            return new ArrayList<String>(failures);
+        }
+        
+        /**
+         * @return The rate of imported rows per second since the import began.
+         */
+        public synchronized double getRowsPerSecond() {
+            double seconds = (System.nanoTime() - startNanos) / 1e9;
+            return seconds > 0 ? imported / seconds : 0;
+        }
+        
+        /**
+         * @return A one line progress message.
+         */
+        public synchronized String progress() {
+            return "Imported " + imported + " of " + read + " rows read, " + failed + " failed, "
+                 + String.format("%.0f", getRowsPerSecond()) + " rows/sec.";
+        }
+        
+        /**
+         * Create a String summarizing the import, followed by the listed failures.
+         */
+        public synchronized String toString() {
+            StringBuilder summary = new StringBuilder(aborted ? "Import aborted. " : "Import finished. ").append(progress());
+            for (String failure : failures) {
+                summary.append('\n').append(failure);
+            }
+            if (failed > failures.size()) {
+                summary.append("\n...and ").append(failed - failures.size()).append(" more failures.");
+            }
+            return summary.toString();
+        }
+    }
+}
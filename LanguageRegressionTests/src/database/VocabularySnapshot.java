@@ -0,0 +1,615 @@
+package database;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Consumer;
+
+import application.Logger;
+
+/**
+ * A vocabulary snapshot is a compact binary copy of the word, symbols and wordsource tables,
+ * read through a memory-mapped file so that tests can be generated with no database connection.
+ * 
+ * The file is laid out as a header, then fixed-width word records sorted by wid, symbol records,
+ * source records, a sorted tombstone list of deleted wids, and finally a pool of UTF-8 strings.
+ * Records refer to strings by their offset in the pool, and equal strings are stored once,
+ * so two strings are equal exactly when their offsets are.
+ * 
+ * A snapshot remembers the highest wid it holds. Refreshing it pulls only the words above that
+ * high-water mark, and adds the wids of words deleted since to the tombstones, rather than pulling
+ * every word again. Tombstoned records stay in the file but are never returned.
+ * 
+ * A snapshot is a read only VocabularyStore, tests drawn from it do not save reviews or results.
+ * @author Evan Gunn
+ *
+ */
+public class VocabularySnapshot implements VocabularyStore {
+    private static final int MAGIC = 0x4C525453;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    // wid, romanization, language, meaning, wtype, first symbol, symbol count, first source, source count.
+    private static final int WORD_FIELDS = 9;
+    private static final int WORD_RECORD_SIZE = WORD_FIELDS * 4;
+    private static final int SYMBOL_RECORD_SIZE = 8;
+    private static final int SOURCE_RECORD_SIZE = 4;
+    private static final int NULL_STRING = -1;
+    
+    private final Path path;
+    private final MappedByteBuffer buffer;
+    private final int highWaterMark, wordCount, symbolCount, sourceCount, tombstoneCount;
+    private final int wordsOffset, symbolsOffset, sourcesOffset, tombstonesOffset, poolOffset;
+    // Pool offsets of strings, built on first use by scanning the pool once.
+    private volatile Map<String, Integer> stringOffsets = null;
+    // Candidate record indexes, keyed by filter.
+    private final Map<String, int[]> candidates = new ConcurrentHashMap<String, int[]>();
+    
+    private VocabularySnapshot(Path path, MappedByteBuffer buffer) throws IOException {
+        this.path = path;
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException(path + " is not a vocabulary snapshot.");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException(path + " is snapshot version " + buffer.getInt(4) + ", expected " + VERSION + ".");
+        }
+        highWaterMark = buffer.getInt(8);
+        wordCount = buffer.getInt(12);
+        symbolCount = buffer.getInt(16);
+        sourceCount = buffer.getInt(20);
+        tombstoneCount = buffer.getInt(24);
+        wordsOffset = HEADER_SIZE;
+        symbolsOffset = wordsOffset + wordCount * WORD_RECORD_SIZE;
+        sourcesOffset = symbolsOffset + symbolCount * SYMBOL_RECORD_SIZE;
+        tombstonesOffset = sourcesOffset + sourceCount * SOURCE_RECORD_SIZE;
+        poolOffset = tombstonesOffset + tombstoneCount * 4;
+        if (poolOffset + buffer.getInt(28) != buffer.capacity()) {
+            throw new IOException(path + " is truncated or corrupt.");
+        }
+    }
+    
+    /**
+     * Map a snapshot file into memory.
+     * @param path The snapshot file.
+     * @return The snapshot.
+     * @throws IOException If the file cannot be read or is not a snapshot.
+     */
+    public static VocabularySnapshot open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            // The mapping stays valid after the channel is closed.
+            return new VocabularySnapshot(path, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+    
+    /**
+     * Write a snapshot of the whole database, replacing the file if it exists.
+     * @param path The file to write.
+     * @return The new snapshot, or null upon error.
+     */
+    public static VocabularySnapshot write(Path path) {
+        ArrayList<LocalWord> words = MyConnection.getInstance().hydrateWordsAbove(0);
+        if (words == null) return null;
+        SnapshotWriter writer = new SnapshotWriter();
+        for (LocalWord word : words) {
+            writer.addWord(word);
+        }
+        try {
+            writer.writeTo(path);
+            return open(path);
+        } catch (IOException e) {
+            Logger.getInstance().error("Failed to write snapshot: " + e.getMessage());
+            return null;
+        }
+    }
+    
+    /**
+     * Bring the snapshot up to date with the database. Only words above the high-water mark are pulled,
+     * along with the list of wids at or below it, which reveals the words deleted since.
+     * The file is rewritten with the old records copied as they are.
+     * @return The refreshed snapshot, or null upon error, in which case this snapshot is unchanged.
+     */
+    public VocabularySnapshot refresh() {
+        ArrayList<LocalWord> newWords = MyConnection.getInstance().hydrateWordsAbove(highWaterMark);
+        int[] remaining = MyConnection.getInstance().getWIDs(
+                "SELECT W.wid FROM word W WHERE W.wid <= ? ORDER BY W.wid", highWaterMark);
+        if (newWords == null || remaining == null) return null;
+        
+        SnapshotWriter writer = new SnapshotWriter(this);
+        // Any live record whose wid is no longer in the database has been deleted.
+        for (int record = 0; record < wordCount; record++) {
+            int wid = wordField(record, 0);
+            if (!isTombstoned(wid) && Arrays.binarySearch(remaining, wid) < 0) {
+                writer.addTombstone(wid);
+            }
+        }
+        for (LocalWord word : newWords) {
+            writer.addWord(word);
+        }
+        try {
+            writer.writeTo(path);
+            Logger.getInstance().log("Snapshot refreshed with " + newWords.size() + " new words and "
+                    + (writer.tombstones.size() - tombstoneCount) + " deletions.");
+            return open(path);
+        } catch (IOException e) {
+            Logger.getInstance().error("Failed to refresh snapshot: " + e.getMessage());
+            return null;
+        }
+    }
+    
+    /**
+     * @return The highest wid held by the snapshot.
+     */
+    public int getHighWaterMark() {
+        return highWaterMark;
+    }
+    
+    /**
+     * @return The amount of words in the snapshot, not counting deleted words.
+     */
+    public int size() {
+        return wordCount - tombstoneCount;
+    }
+    
+    /**
+     * Get a word by wid.
+     * @param wid The wid of the word.
+     * @return The fully hydrated word, or null if it is not in the snapshot or has been deleted.
+     */
+    public LocalWord getWord(int wid) {
+        int low = 0, high = wordCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int middleWID = wordField(middle, 0);
+            if (middleWID < wid) low = middle + 1;
+            else if (middleWID > wid) high = middle - 1;
+            else return isTombstoned(wid) ? null : readWord(middle);
+        }
+        return null;
+    }
+    
+    /**
+     * Get a set of words by wid.
+     * @param wids The wids of the words.
+     * @return The words that were found, in the order of the wids given.
+     */
+    public ArrayList<LocalWord> getWords(int[] wids) {
+        ArrayList<LocalWord> words = new ArrayList<LocalWord>(wids.length);
+        for (int wid : wids) {
+            LocalWord word = getWord(wid);
+            if (word != null) words.add(word);
+        }
+        return words;
+    }
+    
+    /**
+     * Draw random distinct words matching a filter, the snapshot's counterpart of the WordSampler.
+     * @param language The language of the words.
+     * @param wtype The type of the words, or null for any type.
+     * @param source The source of the words, or null for any source.
+     * @param requireSymbols Only draw words with at least one row of symbols.
+     * @param amount The amount of wids wanted, fewer are returned if there are not enough candidates.
+     * @return The sampled wids, in random order.
+     */
+    @Override
+    public int[] sample(String language, String wtype, String source, boolean requireSymbols, int amount) {
+        String key = language + '\u0000' + wtype + '\u0000' + source + '\u0000' + requireSymbols;
+        int[] records = candidates.get(key);
+        if (records == null) {
+            records = findCandidates(language, wtype, source, requireSymbols);
+            candidates.put(key, records);
+        }
+        int[] indexes = WordSampler.sampleIndexes(records.length, amount, ThreadLocalRandom.current());
+        int[] wids = new int[indexes.length];
+        for (int i = 0; i < indexes.length; i++) {
+            wids[i] = wordField(records[indexes[i]], 0);
+        }
+        return wids;
+    }
+    
+    @Override
+    public ArrayList<LocalWord> hydrateWords(int[] wids) {
+        return getWords(wids);
+    }
+    
+    /**
+     * Find the words by their symbols, scanning the symbol records and comparing pool offsets rather than strings.
+     */
+    @Override
+    public int[] findBySymbols(String main, String ancillary) {
+        IntList found = new IntList();
+        int mainOffset = main == null ? NULL_STRING : offsetOf(main);
+        int ancillaryOffset = ancillary == null ? NULL_STRING : offsetOf(ancillary);
+        // A string that is not in the pool is in no record.
+        if ((main == null && ancillary == null) || (main != null && mainOffset == NULL_STRING)
+                || (ancillary != null && ancillaryOffset == NULL_STRING)) {
+            return found.toArray();
+        }
+        for (int record = 0; record < wordCount; record++) {
+            int first = wordField(record, 5), count = wordField(record, 6);
+            for (int i = first; i < first + count; i++) {
+                int symbol = symbolsOffset + i * SYMBOL_RECORD_SIZE;
+                if ((main == null || buffer.getInt(symbol) == mainOffset)
+                        && (ancillary == null || buffer.getInt(symbol + 4) == ancillaryOffset)) {
+                    int wid = wordField(record, 0);
+                    if (!isTombstoned(wid)) found.add(wid);
+                    break;
+                }
+            }
+        }
+        return found.toArray();
+    }
+    
+    @Override
+    public boolean forEachWord(Consumer<LocalWord> action) {
+        for (int record = 0; record < wordCount; record++) {
+            if (!isTombstoned(wordField(record, 0))) action.accept(readWord(record));
+        }
+        return true;
+    }
+    
+    /**
+     * Find the words spelled the same way by scanning the records, comparing pool offsets rather than strings.
+     */
+    @Override
+    public int[] findByRomanization(String word, String language) {
+        IntList found = new IntList();
+        int romanizationOffset = offsetOf(word);
+        int languageOffset = offsetOf(language);
+        if (romanizationOffset == NULL_STRING || languageOffset == NULL_STRING) return found.toArray();
+        for (int record = 0; record < wordCount; record++) {
+            if (wordField(record, 1) != romanizationOffset || wordField(record, 2) != languageOffset) continue;
+            if (!isTombstoned(wordField(record, 0))) found.add(wordField(record, 0));
+        }
+        return found.toArray();
+    }
+    
+    /**
+     * Find every word of a language by scanning the records, which are kept in order of wid.
+     */
+    @Override
+    public int[] findByLanguage(String language) {
+        IntList found = new IntList();
+        int languageOffset = offsetOf(language);
+        if (languageOffset == NULL_STRING) return found.toArray();
+        for (int record = 0; record < wordCount; record++) {
+            if (wordField(record, 2) == languageOffset && !isTombstoned(wordField(record, 0))) found.add(wordField(record, 0));
+        }
+        return found.toArray();
+    }
+    
+    /**
+     * Look up the wid of a word by scanning the records, comparing pool offsets rather than strings.
+     */
+    @Override
+    public int checkForWord(String word, String language, String meaning) {
+        int romanizationOffset = offsetOf(word);
+        int languageOffset = offsetOf(language);
+        int meaningOffset = meaning == null ? NULL_STRING : offsetOf(meaning);
+        if (romanizationOffset == NULL_STRING || languageOffset == NULL_STRING || (meaning != null && meaningOffset == NULL_STRING)) {
+            return -1;
+        }
+        for (int record = 0; record < wordCount; record++) {
+            if (wordField(record, 1) != romanizationOffset || wordField(record, 2) != languageOffset) continue;
+            if (meaning != null && wordField(record, 3) != meaningOffset) continue;
+            if (isTombstoned(wordField(record, 0))) continue;
+            return wordField(record, 0);
+        }
+        return -1;
+    }
+    
+    @Override
+    public boolean pullWords(List<LocalWord> words) {
+        boolean allFound = true;
+        for (LocalWord word : words) {
+            int wid = checkForWord(word.getRomanization(), word.getLanguage(), word.getMeaning());
+            LocalWord found = wid < 0 ? null : getWord(wid);
+            if (found == null) {
+                allFound = false;
+            } else {
+                word.copyFrom(found);
+            }
+        }
+        return allFound;
+    }
+    
+    @Override
+    public boolean insertWord(String word, String language, String meaning, String wtype, String main, String ancillary, String sourceName) {
+        Logger.getInstance().warn("A vocabulary snapshot is read only, connect to a database to insert words.");
+        return false;
+    }
+    
+    @Override
+    public boolean removeWord(int wid, String language) {
+        Logger.getInstance().warn("A vocabulary snapshot is read only, connect to a database to delete words.");
+        return false;
+    }
+    
+    /**
+     * A snapshot holds no review states, every word is new.
+     */
+    @Override
+    public ArrayList<ReviewState> loadReviews(String language, String wtype, String source, boolean requireSymbols) {
+        return new ArrayList<ReviewState>();
+    }
+    
+    @Override
+    public void saveReviewLater(ReviewState state) {
+    }
+    
+    @Override
+    public void saveResultLater(int wid, String qtype, boolean correct, long latencyMillis, long answeredAt) {
+    }
+    
+    @Override
+    public boolean isReadOnly() {
+        return true;
+    }
+    
+    /**
+     * Forget the cached candidates, the mapping itself is released when the snapshot is no longer referenced.
+     */
+    @Override
+    public void close() {
+        candidates.clear();
+    }
+    
+    /**
+     * @return True if one of the record's symbols has a reading, its ancillary.
+     */
+    private boolean hasReading(int record) {
+        int first = wordField(record, 5), count = wordField(record, 6);
+        for (int i = first; i < first + count; i++) {
+            if (buffer.getInt(symbolsOffset + i * SYMBOL_RECORD_SIZE + 4) != NULL_STRING) return true;
+        }
+        return false;
+    }
+    
+    /**
+     * Scan the records once for those matching a filter, comparing pool offsets rather than strings.
+     */
+    private int[] findCandidates(String language, String wtype, String source, boolean requireSymbols) {
+        int languageOffset = offsetOf(language);
+        int wtypeOffset = wtype == null ? NULL_STRING : offsetOf(wtype);
+        int sourceOffset = source == null ? NULL_STRING : offsetOf(source);
+        // A string missing from the pool matches nothing.
+        if (languageOffset == NULL_STRING || (wtype != null && wtypeOffset == NULL_STRING)
+                || (source != null && sourceOffset == NULL_STRING)) {
+            return new int[0];
+        }
+        IntList records = new IntList();
+        for (int record = 0; record < wordCount; record++) {
+            if (wordField(record, 2) != languageOffset) continue;
+            if (wtype != null && wordField(record, 4) != wtypeOffset) continue;
+            if (requireSymbols && !hasReading(record)) continue;
+            if (source != null) {
+                boolean found = false;
+                int first = wordField(record, 7), count = wordField(record, 8);
+                for (int i = first; i < first + count && !found; i++) {
+                    found = buffer.getInt(sourcesOffset + i * SOURCE_RECORD_SIZE) == sourceOffset;
+                }
+                if (!found) continue;
+            }
+            if (isTombstoned(wordField(record, 0))) continue;
+            records.add(record);
+        }
+        return records.toArray();
+    }
+    
+    /**
+     * @return The pool offset of a string, or NULL_STRING if the pool does not hold it.
+     */
+    private int offsetOf(String value) {
+        Map<String, Integer> offsets = stringOffsets;
+        if (offsets == null) {
+            offsets = readStringOffsets();
+            stringOffsets = offsets;
+        }
+        Integer offset = offsets.get(value);
+        return offset == null ? NULL_STRING : offset;
+    }
+    
+    /**
+     * Scan the string pool, mapping each string to its offset.
+     */
+    private Map<String, Integer> readStringOffsets() {
+        Map<String, Integer> offsets = new HashMap<String, Integer>();
+        int poolSize = buffer.capacity() - poolOffset;
+        int offset = 0;
+        while (offset < poolSize) {
+            offsets.put(readString(offset), offset);
+            offset += 4 + buffer.getInt(poolOffset + offset);
+        }
+        return offsets;
+    }
+    
+    private int wordField(int record, int field) {
+        return buffer.getInt(wordsOffset + record * WORD_RECORD_SIZE + field * 4);
+    }
+    
+    private boolean isTombstoned(int wid) {
+        int low = 0, high = tombstoneCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int tombstone = buffer.getInt(tombstonesOffset + middle * 4);
+            if (tombstone < wid) low = middle + 1;
+            else if (tombstone > wid) high = middle - 1;
+            else return true;
+        }
+        return false;
+    }
+    
+    /**
+     * Read a string from the pool.
+     * @param offset The offset in the pool, or NULL_STRING.
+     */
+    private String readString(int offset) {
+        if (offset == NULL_STRING) return null;
+        int length = buffer.getInt(poolOffset + offset);
+        byte[] bytes = new byte[length];
+        ByteBuffer view = buffer.duplicate();
+        view.position(poolOffset + offset + 4);
+        view.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+    
+    private LocalWord readWord(int record) {
+        LocalWord word = new LocalWord(readString(wordField(record, 1)), readString(wordField(record, 2)),
+                readString(wordField(record, 3)), readString(wordField(record, 4)), null, null, null);
+        word.setWID(wordField(record, 0));
+        int first = wordField(record, 5), count = wordField(record, 6);
+        for (int i = first; i < first + count; i++) {
+            int symbol = symbolsOffset + i * SYMBOL_RECORD_SIZE;
+            word.addSymbolValues(readString(buffer.getInt(symbol)), readString(buffer.getInt(symbol + 4)));
+        }
+        first = wordField(record, 7);
+        count = wordField(record, 8);
+        for (int i = first; i < first + count; i++) {
+            word.addSourceValue(readString(buffer.getInt(sourcesOffset + i * SOURCE_RECORD_SIZE)));
+        }
+        return word;
+    }
+    
+    /**
+     * Builds the sections of a snapshot file in memory, then writes them out in one go.
+     */
+    private static class SnapshotWriter {
+        private final IntList words = new IntList(), symbols = new IntList(), sources = new IntList();
+        private final IntList tombstones = new IntList();
+        private final Map<String, Integer> stringOffsets;
+        private byte[] pool;
+        private int poolSize = 0;
+        private int highWaterMark = 0;
+        
+        SnapshotWriter() {
+            stringOffsets = new HashMap<String, Integer>();
+            pool = new byte[1 << 16];
+        }
+        
+        /**
+         * Start from the sections of an existing snapshot, copied as they are.
+         */
+        SnapshotWriter(VocabularySnapshot snapshot) {
+            ByteBuffer view = snapshot.buffer.duplicate();
+            copyInts(view, snapshot.wordsOffset, snapshot.wordCount * WORD_FIELDS, words);
+            copyInts(view, snapshot.symbolsOffset, snapshot.symbolCount * 2, symbols);
+            copyInts(view, snapshot.sourcesOffset, snapshot.sourceCount, sources);
+            copyInts(view, snapshot.tombstonesOffset, snapshot.tombstoneCount, tombstones);
+            poolSize = view.capacity() - snapshot.poolOffset;
+            pool = new byte[Math.max(1 << 16, poolSize * 2)];
+            view.position(snapshot.poolOffset);
+            view.get(pool, 0, poolSize);
+            stringOffsets = new HashMap<String, Integer>(snapshot.readStringOffsets());
+            highWaterMark = snapshot.highWaterMark;
+        }
+        
+        private static void copyInts(ByteBuffer view, int offset, int count, IntList into) {
+            for (int i = 0; i < count; i++) {
+                into.add(view.getInt(offset + i * 4));
+            }
+        }
+        
+        /**
+         * Append a word, words must be added in increasing wid order.
+         */
+        void addWord(LocalWord word) {
+            words.add(word.getWID());
+            words.add(addString(word.getRomanization()));
+            words.add(addString(word.getLanguage()));
+            words.add(addString(word.getMeaning()));
+            words.add(addString(word.getWType()));
+            List<String> mains = word.getAllMainSymbols(), ancillaries = word.getAllAncillarySymbols();
+            words.add(symbols.size() / 2);
+            words.add(mains.size());
+            for (int i = 0; i < mains.size(); i++) {
+                symbols.add(addString(mains.get(i)));
+                symbols.add(addString(ancillaries.get(i)));
+            }
+            List<String> names = word.getAllSources();
+            words.add(sources.size());
+            words.add(names.size());
+            for (String name : names) {
+                sources.add(addString(name));
+            }
+            highWaterMark = Math.max(highWaterMark, word.getWID());
+        }
+        
+        /**
+         * Add the wid of a deleted word. The tombstones are sorted, for binary search, when the snapshot is written.
+         */
+        void addTombstone(int wid) {
+            tombstones.add(wid);
+        }
+        
+        /**
+         * Sort the tombstones and drop any wid added twice.
+         */
+        private void sortTombstones() {
+            int[] sorted = tombstones.toArray();
+            Arrays.sort(sorted);
+            int unique = 0;
+            for (int i = 0; i < sorted.length; i++) {
+                if (unique == 0 || sorted[i] != sorted[unique - 1]) sorted[unique++] = sorted[i];
+            }
+            tombstones.clear();
+            tombstones.addAll(sorted, 0, unique);
+        }
+        
+        private int addString(String value) {
+            if (value == null) return NULL_STRING;
+            Integer existing = stringOffsets.get(value);
+            if (existing != null) return existing;
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            if (poolSize + 4 + bytes.length > pool.length) {
+                pool = Arrays.copyOf(pool, Math.max(pool.length * 2, poolSize + 4 + bytes.length));
+            }
+            int offset = poolSize;
+            ByteBuffer.wrap(pool, offset, 4).putInt(bytes.length);
+            System.arraycopy(bytes, 0, pool, offset + 4, bytes.length);
+            poolSize += 4 + bytes.length;
+            stringOffsets.put(value, offset);
+            return offset;
+        }
+        
+        /**
+         * Write the snapshot to a temporary file, then move it over the target, so a failed write never
+         * leaves a corrupt snapshot behind.
+         */
+        void writeTo(Path path) throws IOException {
+            sortTombstones();
+            int size = HEADER_SIZE + (words.size() + symbols.size() + sources.size() + tombstones.size()) * 4 + poolSize;
+            ByteBuffer out = ByteBuffer.allocate(size);
+            out.putInt(MAGIC).putInt(VERSION).putInt(highWaterMark).putInt(words.size() / WORD_FIELDS)
+               .putInt(symbols.size() / 2).putInt(sources.size()).putInt(tombstones.size()).putInt(poolSize);
+            for (IntList section : new IntList[] {words, symbols, sources, tombstones}) {
+                for (int i = 0; i < section.size(); i++) {
+                    out.putInt(section.get(i));
+                }
+            }
+            out.put(pool, 0, poolSize);
+            out.flip();
+            
+            Path absolute = path.toAbsolutePath();
+            Path temporary = Files.createTempFile(absolute.getParent(), absolute.getFileName().toString(), ".tmp");
+            try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.WRITE)) {
+                while (out.hasRemaining()) {
+                    channel.write(out);
+                }
+                channel.force(true);
+            }
+            Files.move(temporary, absolute, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+}
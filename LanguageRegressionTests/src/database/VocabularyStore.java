@@ -0,0 +1,113 @@
+package database;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * A vocabulary store holds the words, and the review states and results of tests, that questions are drawn from.
+ * MyConnection stores them in a MySQL server, EmbeddedVocabularyStore in a database file on this computer,
+ * and VocabularySnapshot reads them, without changing them, from a snapshot file.
+ * Question factories use whichever store is active in VocabularyStores.
+ * @author Evan Gunn
+ *
+ */
+public interface VocabularyStore {
+    /**
+     * Insert a word, its symbols, and its source.
+     * @return True if the word was inserted.
+     */
+    boolean insertWord(String word, String language, String meaning, String wtype, String main, String ancillary, String sourceName);
+    
+    /**
+     * Remove a word and everything stored about it.
+     * @return True if the word was removed.
+     */
+    boolean removeWord(int wid, String language);
+    
+    /**
+     * Look up the wid of a word.
+     * @param meaning The meaning of the word, or null to match the first word of any meaning.
+     * @return The wid, -1 if there is no such word, or -2 upon error.
+     */
+    int checkForWord(String word, String language, String meaning);
+    
+    /**
+     * Complete every word, found by language and romanization, and by meaning when it is set.
+     * @return True if every word was found.
+     */
+    boolean pullWords(List<LocalWord> words);
+    
+    /**
+     * Get fully hydrated words by wid.
+     * @return The words that were found.
+     */
+    ArrayList<LocalWord> hydrateWords(int[] wids);
+    
+    /**
+     * Find the words with a row of symbols matching exactly, such as every word written 食べる or read たべる.
+     * @param main The main symbols, or null for any.
+     * @param ancillary The ancillary symbols, or null for any.
+     * @return The wids in ascending order, or null upon error.
+     */
+    int[] findBySymbols(String main, String ancillary);
+    
+    /**
+     * Find every word of a language spelled the same way, its homonyms included.
+     * @param word The romanized spelling of the word.
+     * @param language The language of the word.
+     * @return The wids in ascending order, or null upon error.
+     */
+    int[] findByRomanization(String word, String language);
+    
+    /**
+     * Find every word of a language.
+     * @param language The language of the words.
+     * @return The wids in ascending order, or null upon error.
+     */
+    int[] findByLanguage(String language);
+    
+    /**
+     * Hand every word of the store, fully hydrated, to an action, in order of wid.
+     * Large stores are read a piece at a time, so the words are never all held at once.
+     * @return True if every word was read, false upon error.
+     */
+    boolean forEachWord(Consumer<LocalWord> action);
+    
+    /**
+     * Draw random distinct words matching a filter.
+     * @param language The language of the words.
+     * @param wtype The type of the words, or null for any type.
+     * @param source The source of the words, or null for any source.
+     * @param requireSymbols Only draw words with at least one row of symbols.
+     * @param amount The amount of wids wanted, fewer are returned if there are not enough candidates.
+     * @return The sampled wids, in random order.
+     */
+    int[] sample(String language, String wtype, String source, boolean requireSymbols, int amount);
+    
+    /**
+     * Load the stored review states of the words matching a filter. Words that have never been reviewed are left out.
+     * @return The review states, or null upon error.
+     */
+    ArrayList<ReviewState> loadReviews(String language, String wtype, String source, boolean requireSymbols);
+    
+    /**
+     * Save the review state of a word, without waiting for the write.
+     */
+    void saveReviewLater(ReviewState state);
+    
+    /**
+     * Record the result of an answered question, without waiting for the write.
+     */
+    void saveResultLater(int wid, String qtype, boolean correct, long latencyMillis, long answeredAt);
+    
+    /**
+     * @return True if words, reviews and results can not be written to the store.
+     */
+    boolean isReadOnly();
+    
+    /**
+     * Write anything pending and release the store's resources.
+     */
+    void close();
+}
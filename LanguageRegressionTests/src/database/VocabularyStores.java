@@ -0,0 +1,31 @@
+package database;
+
+/**
+ * Holds the vocabulary store that questions are drawn from.
+ * Unless another store has been made active, the store is the current MyConnection instance,
+ * which is either a MySQL server or an embedded database.
+ * @author Evan Gunn
+ *
+ */
+public class VocabularyStores {
+    private static volatile VocabularyStore active = null;
+    
+    /**
+     * @return The store that questions are drawn from.
+     */
+    public static VocabularyStore getActive() {
+        VocabularyStore store = active;
+        return store != null ? store : MyConnection.getInstance();
+    }
+    
+    /**
+     * Draw questions from a store, such as a vocabulary snapshot.
+     * @param store The store, or null to go back to the current MyConnection instance.
+     */
+    public static void setActive(VocabularyStore store) {
+        active = store;
+        // The indexes are built again from the new store's words when they are next used.
+        SearchIndex.getInstance().invalidate();
+        SymbolIndex.getInstance().invalidate();
+    }
+}
@@ -0,0 +1,94 @@
+package database;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The word batch writer inserts many words, with all of their symbols and source rows, as three JDBC batches.
+ * The wids of the new words are read from the generated keys of the word batch, so no follow-up query
+ * is needed to find them. The writer does not manage transactions, it runs inside the caller's.
+ * @author Evan Gunn
+ *
+ */
+public class WordBatchWriter {
+    private static final String WORD_INSERT = "INSERT INTO word (wlanguage, meaning, romanization, wtype) VALUES (?, ?, ?, ?)";
+    private static final String SYMBOL_INSERT = "INSERT INTO symbols (wid, main, ancillary) VALUES (?, ?, ?)";
+    private static final String SOURCE_INSERT = "INSERT INTO wordsource (wid, sname) VALUES (?, ?)";
+    
+    /**
+     * Insert a batch of words. On success every word's wid is set to its new wid.
+     * @param pooled The checked out connection, whose transaction the inserts run in.
+     * @param words The words to insert, with their symbols and sources.
+     * @throws SQLException If any insert fails, the caller should roll back.
+     */
+    public static void writeBatch(PooledConnection pooled, List<LocalWord> words) throws SQLException {
+        if (words.isEmpty()) return;
+        
+        PreparedStatement wordInsert = pooled.getStatements().prepareReturningKeys(WORD_INSERT);
+        for (LocalWord word : words) {
+            wordInsert.setString(1, word.getLanguage());
+            wordInsert.setString(2, word.getMeaning());
+            wordInsert.setString(3, word.getRomanization());
+            wordInsert.setString(4, word.getWType());
+            wordInsert.addBatch();
+        }
+        long start = System.nanoTime();
+        wordInsert.executeBatch();
+        QueryStats.getInstance().recordStatement(WORD_INSERT, start, words.size(), false);
+        int keyCount = 0;
+        try (ResultSet keys = wordInsert.getGeneratedKeys()) {
+            while (keys.next() && keyCount < words.size()) {
+                words.get(keyCount++).setWID(keys.getInt(1));
+            }
+        }
+        if (keyCount != words.size()) {
+            throw new SQLException("Expected " + words.size() + " generated wids, received " + keyCount + ".");
+        }
+        
+        PreparedStatement symbolInsert = pooled.getStatements().prepare(SYMBOL_INSERT);
+        int symbolCount = 0;
+        for (LocalWord word : words) {
+            List<String> mains = word.getAllMainSymbols();
+            List<String> ancillaries = word.getAllAncillarySymbols();
+            for (int i = 0; i < mains.size(); i++) {
+                symbolInsert.setInt(1, word.getWID());
+                symbolInsert.setString(2, mains.get(i));
+                symbolInsert.setString(3, ancillaries.get(i));
+                symbolInsert.addBatch();
+                symbolCount++;
+            }
+        }
+        if (symbolCount > 0) {
+            start = System.nanoTime();
+            symbolInsert.executeBatch();
+            QueryStats.getInstance().recordStatement(SYMBOL_INSERT, start, symbolCount, false);
+        }
+        
+        PreparedStatement sourceInsert = pooled.getStatements().prepare(SOURCE_INSERT);
+        int sourceCount = 0;
+        for (LocalWord word : words) {
+            for (String source : word.getAllSources()) {
+                sourceInsert.setInt(1, word.getWID());
+                sourceInsert.setString(2, source);
+                sourceInsert.addBatch();
+                sourceCount++;
+            }
+        }
+        if (sourceCount > 0) {
+            start = System.nanoTime();
+            sourceInsert.executeBatch();
+            QueryStats.getInstance().recordStatement(SOURCE_INSERT, start, sourceCount, false);
+        }
+    }
+    
+    /**
+     * Insert a single word, with its symbols and sources.
+     * @see #writeBatch(PooledConnection, List)
+     */
+    public static void writeOne(PooledConnection pooled, LocalWord word) throws SQLException {
+        writeBatch(pooled, Collections.singletonList(word));
+    }
+}
@@ -0,0 +1,173 @@
+package database;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The word cache is a size-bounded, least recently used cache of fully hydrated words, keyed by wid.
+ * A second map remembers which wid a (romanization, language, meaning) lookup found, so repeated
+ * checks for the same word skip the database entirely. Words are copied in and out of the cache,
+ * so callers may change the words they are given.
+ * MyConnection invalidates entries whenever a word is inserted or removed.
+ * @author Evan Gunn
+ *
+ */
+public class WordCache implements WordCacheMBean {
+    public static final int DEFAULT_CAPACITY = 10000;
+    private static final WordCache cache = new WordCache(DEFAULT_CAPACITY);
+    
+    private final int capacity;
+    private final LinkedHashMap<Integer, LocalWord> words;
+    private final LinkedHashMap<String, Integer> wids;
+    private final AtomicLong hits = new AtomicLong(), misses = new AtomicLong(), evictions = new AtomicLong();
+    
+    /**
+     * @return The single instance of the word cache.
+     */
+    public static WordCache getInstance() {
+        return cache;
+    }
+    
+    /**
+     * @param capacity The most words, and the most lookups, that are kept.
+     */
+    public WordCache(int capacity) {
+        this.capacity = capacity;
+        words = new LinkedHashMap<Integer, LocalWord>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+            
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, LocalWord> eldest) {
+                if (size() > WordCache.this.capacity) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+        wids = new LinkedHashMap<String, Integer>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+            
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+                return size() > WordCache.this.capacity;
+            }
+        };
+    }
+    
+    /**
+     * @return The lookup key of a word, meaning may be null for a lookup that ignores homonyms.
+     */
+    private static String key(String romanization, String language, String meaning) {
+        return romanization + '\u0000' + language + '\u0000' + (meaning == null ? "\u0001" : meaning);
+    }
+    
+    /**
+     * Get a copy of a cached word.
+     * @param wid The wid of the word.
+     * @return The copy, or null if the word is not cached.
+     */
+    public synchronized LocalWord get(int wid) {
+        LocalWord word = words.get(wid);
+        if (word == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        return copy(word);
+    }
+    
+    /**
+     * Cache a copy of a fully hydrated word, and remember its lookup.
+     * @param word The word, its wid must be set.
+     */
+    public synchronized void put(LocalWord word) {
+        if (word.getWID() < 0) return;
+        words.put(word.getWID(), copy(word));
+        wids.put(key(word.getRomanization(), word.getLanguage(), word.getMeaning()), word.getWID());
+    }
+    
+    /**
+     * Find the wid that a previous lookup of a word found.
+     * @param meaning The meaning, or null for a lookup that ignores homonyms.
+     * @return The wid, or -1 if the lookup is not cached.
+     */
+    public synchronized int getWID(String romanization, String language, String meaning) {
+        Integer wid = wids.get(key(romanization, language, meaning));
+        if (wid == null) {
+            misses.incrementAndGet();
+            return -1;
+        }
+        hits.incrementAndGet();
+        return wid;
+    }
+    
+    /**
+     * Remember the wid that a lookup found.
+     * @param meaning The meaning, or null for a lookup that ignores homonyms.
+     */
+    public synchronized void putWID(String romanization, String language, String meaning, int wid) {
+        wids.put(key(romanization, language, meaning), wid);
+    }
+    
+    /**
+     * Forget the lookups that a newly inserted word could change.
+     */
+    public synchronized void invalidate(String romanization, String language, String meaning) {
+        wids.remove(key(romanization, language, meaning));
+        wids.remove(key(romanization, language, null));
+    }
+    
+    /**
+     * Forget a removed word, and every lookup that found it.
+     * @param wid The wid of the removed word.
+     */
+    public synchronized void remove(int wid) {
+        words.remove(wid);
+        wids.values().removeIf(cached -> cached == wid);
+    }
+    
+    /**
+     * Forget every word and lookup, used after changes too broad to invalidate one by one.
+     */
+    public synchronized void clear() {
+        words.clear();
+        wids.clear();
+    }
+    
+    private static LocalWord copy(LocalWord word) {
+        LocalWord copy = new LocalWord(null, null);
+        copy.copyFrom(word);
+        return copy;
+    }
+    
+    public long getHits() {
+        return hits.get();
+    }
+    
+    public long getMisses() {
+        return misses.get();
+    }
+    
+    public long getEvictions() {
+        return evictions.get();
+    }
+    
+    public synchronized int size() {
+        return words.size();
+    }
+    
+    @Override
+    public int getSize() {
+        return size();
+    }
+    
+    /**
+     * @return A one line summary of the cache's size and counters.
+     */
+    public String toString() {
+        return "Words: " + size() + "/" + capacity + ", Hits: " + getHits() + ", Misses: " + getMisses()
+             + ", Evictions: " + getEvictions();
+    }
+}
@@ -0,0 +1,16 @@
+package database;
+
+/**
+ * The management interface of the WordCache, published over JMX.
+ * @author Evan Gunn
+ *
+ */
+public interface WordCacheMBean {
+    long getHits();
+    
+    long getMisses();
+    
+    long getEvictions();
+    
+    int getSize();
+}
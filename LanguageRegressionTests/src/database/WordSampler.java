@@ -0,0 +1,150 @@
+package database;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * The word sampler picks random words for question factories without asking the database to sort
+ * every candidate row with ORDER BY RAND(). The wids matching a candidate query are loaded once into
+ * a compact int array, and each sample then draws k distinct wids from that array in O(k) time.
+ * Only the sampled words need to be fetched afterwards, by primary key.
+ * Candidate arrays are dropped when a word is inserted, and updated in place when a word is removed.
+ * @author Evan Gunn
+ *
+ */
+public class WordSampler {
+    private static final WordSampler sampler = new WordSampler();
+    
+    // Candidate wids, keyed by the candidate query and its parameters. A future is published before its query
+    // runs, so sessions starting at once with the same criteria wait for one query, rather than each running it.
+    private final ConcurrentHashMap<String, CompletableFuture<int[]>> candidates = new ConcurrentHashMap<String, CompletableFuture<int[]>>();
+    
+    /**
+     * @return The single instance of the word sampler.
+     */
+    public static WordSampler getInstance() {
+        return sampler;
+    }
+    
+    /**
+     * Draw random distinct wids from the words matching a candidate query.
+     * @param candidateQuery A query whose only column is W.wid, with ? in place of every value.
+     * @param amount The amount of wids wanted, fewer are returned if there are not enough candidates.
+     * @param parameters The values bound to the query, in order.
+     * @return The sampled wids in random order, empty if the candidates could not be loaded.
+     */
+    public int[] sample(String candidateQuery, int amount, Object... parameters) {
+        String key = candidateQuery + '\u0000' + Arrays.toString(parameters);
+        CompletableFuture<int[]> loading = candidates.get(key);
+        if (loading == null) {
+            CompletableFuture<int[]> load = new CompletableFuture<int[]>();
+            loading = candidates.putIfAbsent(key, load);
+            if (loading == null) {
+                // The query runs outside the map, so no bin of the map is locked while it waits on the database.
+                loading = load;
+                int[] loaded = null;
+                try {
+                    loaded = MyConnection.getInstance().getWIDs(candidateQuery, parameters);
+                } finally {
+                    // A failed load is not kept, the next sample tries again.
+                    if (loaded == null) candidates.remove(key, load);
+                    load.complete(loaded);
+                }
+            }
+        }
+        int[] wids = loading.join();
+        if (wids == null) return new int[0];
+        
+        int[] indexes = sampleIndexes(wids.length, amount, ThreadLocalRandom.current());
+        int[] sampled = new int[indexes.length];
+        for (int i = 0; i < indexes.length; i++) {
+            sampled[i] = wids[indexes[i]];
+        }
+        return sampled;
+    }
+    
+    /**
+     * Draw k distinct indexes from [0, n) without replacement, using Floyd's algorithm.
+     * Each of the k steps is a constant time random draw and set lookup, so the cost does not grow with n.
+     * Floyd's algorithm picks a uniformly random subset, the subset is then shuffled so the order is random too.
+     * @param n The amount of indexes to draw from.
+     * @param k The amount of indexes to draw, capped at n.
+     * @param random The source of randomness.
+     * @return The drawn indexes, in random order.
+     */
+    public static int[] sampleIndexes(int n, int k, Random random) {
+        k = Math.max(0, Math.min(k, n));
+        int[] drawn = new int[k];
+        // Open addressing set of the drawn indexes, kept at most half full. Slots hold index + 1, 0 is empty.
+        int[] table = new int[Math.max(2, Integer.highestOneBit(Math.max(1, k)) << 2)];
+        int mask = table.length - 1;
+        int count = 0;
+        for (int j = n - k; j < n; j++) {
+            int t = random.nextInt(j + 1);
+            // If t was already drawn, j cannot have been, as every earlier draw was below j.
+            int value = insert(table, mask, t) ? t : j;
+            if (value == j) insert(table, mask, j);
+            drawn[count++] = value;
+        }
+        for (int i = k - 1; i > 0; i--) {
+            int swap = random.nextInt(i + 1);
+            int temp = drawn[i];
+            drawn[i] = drawn[swap];
+            drawn[swap] = temp;
+        }
+        return drawn;
+    }
+    
+    /**
+     * Insert a value into an open addressing set.
+     * @return True if the value was inserted, false if it was already present.
+     */
+    private static boolean insert(int[] table, int mask, int value) {
+        int slot = (value * 0x9E3779B9) >>> 7 & mask;
+        while (table[slot] != 0) {
+            if (table[slot] == value + 1) return false;
+            slot = (slot + 1) & mask;
+        }
+        table[slot] = value + 1;
+        return true;
+    }
+    
+    /**
+     * Drop every candidate array, used when a word has been inserted and may match any of them.
+     */
+    public void invalidate() {
+        candidates.clear();
+    }
+    
+    /**
+     * Remove a deleted word from every candidate array that holds it. Arrays still loading are dropped,
+     * as their query may have run before the word was deleted.
+     * @param wid The wid of the removed word.
+     */
+    public void removeWord(int wid) {
+        Iterator<Map.Entry<String, CompletableFuture<int[]>>> entries = candidates.entrySet().iterator();
+        while (entries.hasNext()) {
+            Map.Entry<String, CompletableFuture<int[]>> entry = entries.next();
+            if (!entry.getValue().isDone()) {
+                entries.remove();
+                continue;
+            }
+            int[] wids = entry.getValue().join();
+            if (wids == null) continue;
+            for (int i = 0; i < wids.length; i++) {
+                if (wids[i] == wid) {
+                    int[] remaining = new int[wids.length - 1];
+                    System.arraycopy(wids, 0, remaining, 0, i);
+                    System.arraycopy(wids, i + 1, remaining, i, wids.length - i - 1);
+                    entry.setValue(CompletableFuture.completedFuture(remaining));
+                    break;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,267 @@
+package database;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import application.Logger;
+
+/**
+ * The write behind queue takes writes that the user does not need to wait for, such as test results,
+ * and performs them later on a background thread, so that answering a question never waits on the database.
+ * Writes are buffered until FLUSH_SIZE are waiting or FLUSH_INTERVAL_MILLIS have passed, then every
+ * buffered write is sent in one transaction, as one JDBC batch per statement. Writes of the same statement
+ * are performed in the order they were queued. If the database refuses a batch, the flush falls back to one write
+ * at a time behind savepoints, so only the refused writes are dropped. A flush that fails for a reason that may pass,
+ * such as a deadlock or a lost connection, is tried again, and if it still fails its writes are put back at the head
+ * of the queue for the next flush rather than dropped. While the database keeps failing, at most MAX_PENDING writes
+ * are kept, the oldest are shed first.
+ * The queue is flushed when the connection is closed, and by a shutdown hook if the program exits without closing it.
+ * @author Evan Gunn
+ *
+ */
+public class WriteBehindQueue {
+    public static final int FLUSH_SIZE = 100;
+    public static final long FLUSH_INTERVAL_MILLIS = 2000;
+    public static final int MAX_ATTEMPTS = 3;
+    // The most writes kept when a failed flush puts its writes back.
+    public static final int MAX_PENDING = 10000;
+    // The wait before the second attempt of a flush, doubled before each attempt after it.
+    private static final long RETRY_DELAY_MILLIS = 100;
+
+    private static final WriteBehindQueue queue = new WriteBehindQueue();
+
+    private final LinkedBlockingDeque<PendingWrite> pending = new LinkedBlockingDeque<PendingWrite>();
+    // Serializes flushes, so writes are never reordered between the writer thread and a caller's flush.
+    private final Object flushLock = new Object();
+    private final Thread writer;
+
+    /**
+     * A statement and the values bound to it.
+     */
+    private static class PendingWrite {
+        private final String sql;
+        private final Object[] parameters;
+
+        private PendingWrite(String sql, Object[] parameters) {
+            this.sql = sql;
+            this.parameters = parameters;
+        }
+    }
+
+    /**
+     * @return The single instance of the write behind queue.
+     */
+    public static WriteBehindQueue getInstance() {
+        return queue;
+    }
+
+    private WriteBehindQueue() {
+        writer = new Thread(this::writeLoop, "write-behind");
+        writer.setDaemon(true);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::flush, "write-behind-flush"));
+    }
+
+    /**
+     * Queue a write, it is performed later on the background thread.
+     * @param sql The SQL update, with ? in place of every value.
+     * @param parameters The values bound to the update, in order.
+     */
+    public void enqueue(String sql, Object... parameters) {
+        pending.add(new PendingWrite(sql, parameters));
+        if (pending.size() >= FLUSH_SIZE) {
+            LockSupport.unpark(writer);
+        }
+    }
+
+    /**
+     * @return The amount of writes waiting to be performed.
+     */
+    public int size() {
+        return pending.size();
+    }
+
+    /**
+     * Perform every queued write before returning. Writes that fail for a reason that may pass are tried again,
+     * up to MAX_ATTEMPTS times, then kept at the head of the queue. Writes the database refuses are dropped,
+     * one by one, and the rest are still written.
+     * @return True if every write succeeded, or there was nothing to write.
+     */
+    public boolean flush() {
+        synchronized (flushLock) {
+            ArrayList<PendingWrite> writes = new ArrayList<PendingWrite>();
+            pending.drainTo(writes);
+            if (writes.isEmpty()) return true;
+            ConnectionPool pool = MyConnection.getInstance().getPool();
+            if (pool == null) {
+                Logger.getInstance().warn("Not connected to a database, " + writes.size() + " queued writes were dropped.");
+                return false;
+            }
+            long delay = RETRY_DELAY_MILLIS;
+            for (int attempt = 1; ; attempt++) {
+                try {
+                    return write(pool, writes) == 0;
+                } catch (SQLException e) {
+                    if (!InsertSession.isTransient(e)) {
+                        Logger.getInstance().error("Failed to write " + writes.size() + " queued writes, they were dropped: " + e.getMessage());
+                        return false;
+                    }
+                    if (attempt == MAX_ATTEMPTS) {
+                        Logger.getInstance().warn("Failed to write " + writes.size() + " queued writes, they are kept for the next flush: " + e.getMessage());
+                        requeue(writes);
+                        return false;
+                    }
+                    Logger.getInstance().warn("Attempt " + attempt + " to write " + writes.size() + " queued writes failed, trying again: " + e.getMessage());
+                }
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    requeue(writes);
+                    return false;
+                }
+                delay *= 2;
+            }
+        }
+    }
+
+    /**
+     * Put writes back at the head of the queue, in their order, ahead of any queued since. If the queue would then
+     * hold more than MAX_PENDING writes, the oldest of the put back writes are shed, as a later write such as a
+     * review saved again is the most likely to supersede them.
+     */
+    private void requeue(List<PendingWrite> writes) {
+        int shed = Math.max(0, Math.min(writes.size(), writes.size() + pending.size() - MAX_PENDING));
+        if (shed > 0) logShed(writes.subList(0, shed));
+        for (int i = writes.size() - 1; i >= shed; i--) {
+            pending.addFirst(writes.get(i));
+        }
+    }
+
+    /**
+     * Log how many writes of each statement were shed, and at debug level the values of each.
+     */
+    private static void logShed(List<PendingWrite> shed) {
+        LinkedHashMap<String, Integer> counts = new LinkedHashMap<String, Integer>();
+        for (PendingWrite write : shed) {
+            Integer count = counts.get(write.sql);
+            counts.put(write.sql, count == null ? 1 : count + 1);
+            if (Logger.getInstance().isDebugEnabled()) {
+                Logger.getInstance().debug(() -> "Shed queued write: " + write.sql + " " + Arrays.toString(write.parameters));
+            }
+        }
+        Logger.getInstance().warn("The write behind queue is full, " + shed.size() + " of the oldest queued writes were shed: " + counts);
+    }
+
+    /**
+     * The writer thread's loop: flush every FLUSH_INTERVAL_MILLIS, or as soon as FLUSH_SIZE writes are waiting.
+     */
+    private void writeLoop() {
+        while (true) {
+            LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(FLUSH_INTERVAL_MILLIS));
+            if (!pending.isEmpty()) {
+                flush();
+            }
+        }
+    }
+
+    /**
+     * Perform writes in one transaction, grouped into one batch per statement. If the database refuses a batch,
+     * the batches are rolled back and the writes performed one at a time, each behind a savepoint, so a refused
+     * write is rolled back and dropped alone. Callers must hold flushLock.
+     * @return The amount of writes that were refused and dropped.
+     * @throws SQLException If the writes were rolled back, or no connection could be had.
+     */
+    private int write(ConnectionPool pool, List<PendingWrite> writes) throws SQLException {
+        // Group the writes by statement, keeping the order of each statement's writes.
+        LinkedHashMap<String, List<Object[]>> batches = new LinkedHashMap<String, List<Object[]>>();
+        for (PendingWrite write : writes) {
+            List<Object[]> batch = batches.get(write.sql);
+            if (batch == null) {
+                batch = new ArrayList<Object[]>();
+                batches.put(write.sql, batch);
+            }
+            batch.add(write.parameters);
+        }
+
+        PooledConnection pooled = pool.acquire();
+        Connection connection = pooled.getConnection();
+        try {
+            connection.setAutoCommit(false);
+            int refused = 0;
+            Savepoint beforeBatches = connection.setSavepoint();
+            try {
+                for (Map.Entry<String, List<Object[]>> batch : batches.entrySet()) {
+                    MyConnection.runStatement(pooled, batch.getKey(), statement -> {
+                        for (Object[] parameters : batch.getValue()) {
+                            MyConnection.bindParameters(statement, parameters);
+                            statement.addBatch();
+                        }
+                        statement.executeBatch();
+                        return batch.getValue().size();
+                    });
+                }
+            } catch (SQLException e) {
+                if (InsertSession.isTransient(e)) throw e;
+                connection.rollback(beforeBatches);
+                Logger.getInstance().debug(() -> "A batch was refused, performing the queued writes one at a time: " + e.getMessage());
+                refused = writeOneAtATime(pooled, writes);
+            }
+            connection.commit();
+            QueryStats.getInstance().recordTransaction(true);
+            Logger.getInstance().debug(() -> "Wrote " + writes.size() + " queued writes in " + batches.size() + " batches.");
+            return refused;
+        } catch (SQLException e) {
+            pooled.recordError(e);
+            try {
+                connection.rollback();
+                QueryStats.getInstance().recordTransaction(false);
+            } catch (SQLException rollbackError) {
+                Logger.getInstance().error(rollbackError.getMessage());
+            }
+            throw e;
+        } finally {
+            try {
+                connection.setAutoCommit(true);
+            } catch (SQLException e) {
+                Logger.getInstance().error(e.getMessage());
+            }
+            pool.release(pooled);
+        }
+    }
+
+    /**
+     * Perform writes one at a time in their queued order, each behind a savepoint, inside the caller's transaction.
+     * A write the database refuses is rolled back alone, logged and dropped.
+     * @return The amount of writes that were refused.
+     * @throws SQLException If a write failed for a reason that may pass, the caller rolls the transaction back.
+     */
+    private static int writeOneAtATime(PooledConnection pooled, List<PendingWrite> writes) throws SQLException {
+        Connection connection = pooled.getConnection();
+        int refused = 0;
+        for (PendingWrite write : writes) {
+            Savepoint beforeWrite = connection.setSavepoint();
+            try {
+                MyConnection.runStatement(pooled, write.sql, PreparedStatement::executeUpdate, write.parameters);
+                connection.releaseSavepoint(beforeWrite);
+            } catch (SQLException e) {
+                if (InsertSession.isTransient(e)) throw e;
+                connection.rollback(beforeWrite);
+                refused++;
+                Logger.getInstance().error("A queued write was refused and dropped: " + write.sql + " "
+                        + Arrays.toString(write.parameters) + ": " + e.getMessage());
+            }
+        }
+        return refused;
+    }
+}
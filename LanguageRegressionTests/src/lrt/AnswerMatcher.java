@@ -0,0 +1,113 @@
+package lrt;
+
+import java.text.Normalizer;
+
+/**
+ * The answer matcher compares a user's answer to a stored answer as plain text, never as a regex,
+ * so meanings such as "(to) eat" or "etc." are graded correctly.
+ * Both sides are normalized the same way: Unicode NFKC, case folding, and collapsing runs of
+ * whitespace to one space with none at either end. Optionally katakana is folded to hiragana,
+ * so a reading may be typed in either script.
+ * The stored answer is normalized once, when the matcher is created. Matching then walks the user's
+ * answer one code point at a time without allocating, unless that answer needs NFKC normalization itself.
+ * @author Evan Gunn
+ *
+ */
+public class AnswerMatcher {
+    private static final int SPACE = ' ';
+    private final int[] expected;
+    private final boolean foldKana;
+    
+    /**
+     * @param answer The correct answer, null is treated as an empty answer.
+     * @param foldKana Treat katakana and hiragana as the same.
+     */
+    public AnswerMatcher(String answer, boolean foldKana) {
+        this.foldKana = foldKana;
+        this.expected = normalize(answer == null ? "" : answer, foldKana).codePoints().toArray();
+    }
+    
+    /**
+     * Normalize text the way answers are compared.
+     * @param text The text.
+     * @param foldKana Fold katakana to hiragana.
+     * @return The normalized text.
+     */
+    public static String normalize(String text, boolean foldKana) {
+        String composed = Normalizer.normalize(text, Normalizer.Form.NFKC);
+        StringBuilder normalized = new StringBuilder(composed.length());
+        boolean pendingSpace = false;
+        for (int i = 0; i < composed.length(); ) {
+            int codePoint = composed.codePointAt(i);
+            i += Character.charCount(codePoint);
+            if (Character.isWhitespace(codePoint) || Character.isSpaceChar(codePoint)) {
+                pendingSpace = normalized.length() > 0;
+                continue;
+            }
+            if (pendingSpace) {
+                normalized.append((char) SPACE);
+                pendingSpace = false;
+            }
+            normalized.appendCodePoint(fold(codePoint, foldKana));
+        }
+        return normalized.toString();
+    }
+    
+    /**
+     * Case fold a code point, and fold katakana to hiragana if asked.
+     */
+    private static int fold(int codePoint, boolean foldKana) {
+        if (foldKana) {
+            // Katakana ァ through ヶ, and the iteration marks ヽ ヾ, sit 0x60 above their hiragana.
+            if ((codePoint >= 0x30A1 && codePoint <= 0x30F6) || codePoint == 0x30FD || codePoint == 0x30FE) {
+                return codePoint - 0x60;
+            }
+        }
+        if (codePoint < 0x80) {
+            return codePoint >= 'A' && codePoint <= 'Z' ? codePoint + ('a' - 'A') : codePoint;
+        }
+        return Character.toLowerCase(Character.toUpperCase(codePoint));
+    }
+    
+    /**
+     * @param answer The user's answer.
+     * @return True if the normalized answer equals the normalized correct answer.
+     */
+    public boolean matches(CharSequence answer) {
+        if (answer == null) return false;
+        if (!isComposed(answer)) {
+            answer = Normalizer.normalize(answer, Normalizer.Form.NFKC);
+        }
+        int matched = 0;
+        boolean pendingSpace = false;
+        for (int i = 0; i < answer.length(); ) {
+            int codePoint = Character.codePointAt(answer, i);
+            i += Character.charCount(codePoint);
+            if (Character.isWhitespace(codePoint) || Character.isSpaceChar(codePoint)) {
+                pendingSpace = matched > 0;
+                continue;
+            }
+            if (pendingSpace) {
+                if (matched >= expected.length || expected[matched] != SPACE) return false;
+                matched++;
+                pendingSpace = false;
+            }
+            if (matched >= expected.length || expected[matched] != fold(codePoint, foldKana)) return false;
+            matched++;
+        }
+        return matched == expected.length;
+    }
+    
+    /**
+     * Check whether text is already in NFKC form. Text below U+00A0 always is, which avoids asking the Normalizer
+     * about the common case of a plain ASCII answer.
+     */
+    private static boolean isComposed(CharSequence text) {
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) >= 0xA0) {
+                return Normalizer.isNormalized(text, Normalizer.Form.NFKC);
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,315 @@
+package lrt;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+
+import application.Logger;
+import application.VirtualThreads;
+import database.LocalWord;
+
+/**
+ * A composite question factory mixes the questions of several factories into one test, in chosen shares,
+ * such as two meaning questions for every symbol question. A sample is split between the factories by their
+ * shares, the factories sample their parts at the same time, each on its own thread, and the parts are
+ * merged and shuffled. Each batch of questions is then generated by the factories that sampled its words,
+ * again at the same time, so a batch takes as long as its slowest factory, rather than the sum of them all.
+ *
+ * The result of an answered question is recorded by the factory that made it.
+ * @author Evan Gunn
+ *
+ */
+public class CompositeQuestionFactory extends QuestionFactory {
+    // Runs every part of a batch but the first, which runs on the calling thread.
+    private static final ExecutorService FAN_OUT = VirtualThreads.newPerTaskExecutor("question-fan-out");
+    
+    private final List<QuestionFactory> factories = new ArrayList<QuestionFactory>();
+    private final List<Integer> shares = new ArrayList<Integer>();
+    private int totalShares = 0;
+    // The factory that sampled each word not yet asked about.
+    private final Map<Integer, QuestionFactory> owners = new ConcurrentHashMap<Integer, QuestionFactory>();
+    
+    /**
+     * @param criteria The criteria shared by the factories added.
+     */
+    public CompositeQuestionFactory(TestCriteria criteria) {
+        super(criteria);
+    }
+    
+    /**
+     * Create a mix from a description such as meaning=2,symbol=1, each type with its share of the questions.
+     * A type without a share has a share of one.
+     * @param mix The types of question, meaning or symbol, and their shares.
+     * @param criteria The criteria of every type.
+     * @return The composite factory.
+     * @throws IllegalArgumentException If a type is not known, or a share is not a positive number.
+     */
+    public static CompositeQuestionFactory parse(String mix, TestCriteria criteria) {
+        CompositeQuestionFactory composite = new CompositeQuestionFactory(criteria);
+        for (String part : mix.split(",")) {
+            String[] typeAndShare = part.trim().split("=");
+            int share = 1;
+            if (typeAndShare.length > 1) {
+                try {
+                    share = Integer.parseInt(typeAndShare[1].trim());
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("Not a share: " + typeAndShare[1]);
+                }
+            }
+            switch (typeAndShare[0].trim()) {
+                case "meaning":
+                    composite.add(new MeaningQuestionFactory(criteria), share);
+                    break;
+                case "symbol":
+                    composite.add(new SymbolsMainQuestionFactory(criteria), share);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown question type: " + typeAndShare[0].trim());
+            }
+        }
+        return composite;
+    }
+    
+    /**
+     * Add a factory to the mix.
+     * @param factory The factory.
+     * @param share The factory's share of the questions, relative to the shares of the others.
+     * @return This factory, for chaining.
+     */
+    public CompositeQuestionFactory add(QuestionFactory factory, int share) {
+        if (share < 1) throw new IllegalArgumentException("A share must be positive: " + share);
+        factories.add(factory);
+        shares.add(share);
+        totalShares += share;
+        return this;
+    }
+    
+    /**
+     * Sample words for every factory, split by their shares, each factory sampling at the same time.
+     * A word sampled by two factories is asked by the first of them only, and the other samples again
+     * for the words it lost, leaving out the words already taken.
+     * @param amount The amount of words wanted.
+     * @return The wids of every factory, shuffled. Fewer than the amount if some factories run out of words.
+     */
+    @Override
+    protected int[] sampleWIDs(int amount) {
+        if (factories.isEmpty() || amount <= 0) return new int[0];
+        int[] amounts = split(amount);
+        List<Callable<int[]>> tasks = new ArrayList<Callable<int[]>>(factories.size());
+        for (int i = 0; i < factories.size(); i++) {
+            QuestionFactory factory = factories.get(i);
+            int partAmount = amounts[i];
+            tasks.add(partAmount == 0 ? null : () -> factory.sampleWIDs(partAmount));
+        }
+        List<int[]> parts = fanOut(tasks);
+        
+        ArrayList<Integer> merged = new ArrayList<Integer>(amount);
+        HashSet<Integer> seen = new HashSet<Integer>();
+        int[] lost = new int[factories.size()];
+        for (int i = 0; i < parts.size(); i++) {
+            // A factory that chooses its own words as it goes has no part in a sample.
+            if (parts.get(i) == null) continue;
+            for (int wid : parts.get(i)) {
+                if (!seen.add(wid)) {
+                    lost[i]++;
+                    continue;
+                }
+                owners.put(wid, factories.get(i));
+                merged.add(wid);
+            }
+        }
+        for (int i = 0; i < factories.size(); i++) {
+            if (lost[i] == 0) continue;
+            // However many of the new sample are taken already, the lost amount is left if the factory has them.
+            int[] more = factories.get(i).sampleWIDs(lost[i] + seen.size());
+            if (more == null) continue;
+            for (int j = 0; j < more.length && lost[i] > 0; j++) {
+                if (!seen.add(more[j])) continue;
+                owners.put(more[j], factories.get(i));
+                merged.add(more[j]);
+                lost[i]--;
+            }
+        }
+        Collections.shuffle(merged, ThreadLocalRandom.current());
+        int[] wids = new int[merged.size()];
+        for (int i = 0; i < wids.length; i++) {
+            wids[i] = merged.get(i);
+        }
+        return wids;
+    }
+    
+    /**
+     * Generate the questions about sampled words, each factory generating the questions about its own words
+     * at the same time. A batch takes as long as its slowest factory, rather than the sum of them all.
+     * @param wids The wids returned by sampleWIDs(), in the order they are asked.
+     * @return The questions, in the order of the wids.
+     */
+    @Override
+    protected ArrayList<Question> questionsFor(int[] wids) {
+        Map<QuestionFactory, List<Integer>> groups = new LinkedHashMap<QuestionFactory, List<Integer>>();
+        for (int wid : wids) {
+            QuestionFactory factory = owners.remove(wid);
+            if (factory == null) continue;
+            List<Integer> group = groups.get(factory);
+            if (group == null) {
+                group = new ArrayList<Integer>();
+                groups.put(factory, group);
+            }
+            group.add(wid);
+        }
+        List<Callable<ArrayList<Question>>> tasks = new ArrayList<Callable<ArrayList<Question>>>(groups.size());
+        for (Map.Entry<QuestionFactory, List<Integer>> group : groups.entrySet()) {
+            QuestionFactory factory = group.getKey();
+            int[] part = new int[group.getValue().size()];
+            for (int i = 0; i < part.length; i++) {
+                part[i] = group.getValue().get(i);
+            }
+            tasks.add(() -> factory.questionsFor(part));
+        }
+        List<ArrayList<Question>> parts = fanOut(tasks);
+        
+        HashMap<Integer, Question> questions = new HashMap<Integer, Question>();
+        int index = 0;
+        for (QuestionFactory factory : groups.keySet()) {
+            List<Question> part = parts.get(index++);
+            if (part == null) continue;
+            for (Question question : part) {
+                question.setFactory(factory);
+                questions.put(question.getWID(), question);
+            }
+        }
+        ArrayList<Question> mixed = new ArrayList<Question>(questions.size());
+        for (int wid : wids) {
+            Question question = questions.get(wid);
+            if (question != null) mixed.add(question);
+        }
+        return mixed;
+    }
+    
+    /**
+     * Run tasks at the same time, the first on the calling thread and the rest on their own threads.
+     * @param tasks The tasks, a null task is skipped.
+     * @return The result of each task, null for a task that was skipped or failed.
+     */
+    private <T> List<T> fanOut(List<Callable<T>> tasks) {
+        List<Future<T>> futures = new ArrayList<Future<T>>(tasks.size());
+        int first = -1;
+        for (int i = 0; i < tasks.size(); i++) {
+            futures.add(null);
+            if (tasks.get(i) == null) continue;
+            if (first < 0) {
+                first = i;
+                continue;
+            }
+            futures.set(i, FAN_OUT.submit(tasks.get(i)));
+        }
+        List<T> results = new ArrayList<T>(tasks.size());
+        for (int i = 0; i < tasks.size(); i++) {
+            results.add(null);
+        }
+        if (first < 0) return results;
+        try {
+            results.set(first, tasks.get(first).call());
+        } catch (Exception e) {
+            Logger.getInstance().error("Failed to generate questions: " + e);
+        }
+        for (int i = 0; i < futures.size(); i++) {
+            if (futures.get(i) == null) continue;
+            try {
+                results.set(i, futures.get(i).get());
+            } catch (ExecutionException e) {
+                Logger.getInstance().error("Failed to generate questions: " + e.getCause());
+            } catch (InterruptedException e) {
+                // The stream was closed, the questions are no longer wanted.
+                for (Future<T> future : futures) {
+                    if (future != null) future.cancel(true);
+                }
+                Thread.currentThread().interrupt();
+                return results;
+            }
+        }
+        return results;
+    }
+    
+    /**
+     * Split an amount between the factories by their shares. The whole part of each factory's share is given
+     * to it, and the questions left over are given at random, weighted by the fractions, so small batches
+     * are mixed in the right shares on average.
+     */
+    private int[] split(int amount) {
+        int[] amounts = new int[factories.size()];
+        double[] fractions = new double[factories.size()];
+        int given = 0;
+        for (int i = 0; i < amounts.length; i++) {
+            double exact = (double) amount * shares.get(i) / totalShares;
+            amounts[i] = (int) exact;
+            fractions[i] = exact - amounts[i];
+            given += amounts[i];
+        }
+        for (int left = amount - given; left > 0; left--) {
+            double total = 0;
+            for (double fraction : fractions) total += fraction;
+            double pick = ThreadLocalRandom.current().nextDouble() * total;
+            int chosen = 0;
+            while (chosen < fractions.length - 1 && (pick -= fractions[chosen]) >= 0) chosen++;
+            amounts[chosen]++;
+            fractions[chosen] = 0;
+        }
+        return amounts;
+    }
+    
+    /**
+     * Record the result with the factory that made the question.
+     */
+    @Override
+    public void recordResult(Question question, boolean correct, long latencyMillis) {
+        QuestionFactory factory = question.getFactory();
+        if (factory != null && factory != this) {
+            factory.recordResult(question, correct, latencyMillis);
+        } else {
+            super.recordResult(question, correct, latencyMillis);
+        }
+    }
+    
+    @Override
+    protected String getQuestionType() {
+        return "mixed";
+    }
+    
+    /**
+     * @return The amount of factories in the mix, as each samples and generates its part at the same time.
+     */
+    @Override
+    protected int getParallelism() {
+        return Math.max(1, factories.size());
+    }
+    
+    /**
+     * @return True only if every factory in the mix asks about symbols.
+     */
+    @Override
+    protected boolean requiresSymbols() {
+        for (QuestionFactory factory : factories) {
+            if (!factory.requiresSymbols()) return false;
+        }
+        return !factories.isEmpty();
+    }
+    
+    /**
+     * Questions are made by the factories in the mix, a composite makes none of its own.
+     */
+    @Override
+    protected Question createQuestion(LocalWord word) {
+        return null;
+    }
+}
@@ -2,15 +2,31 @@ package lrt;
 
 /**
  * Store a question and the answer to the question.
+ * The answer is prepared for matching once, when the question is created.
  * @author Evan Gunn
  *
  */
 public class Question {
     private String question, answer, userAnswer = null;
+    private final AnswerMatcher matcher;
+    private boolean correct = false;
+    private int wid = -1;
+    private String type = null;
+    private QuestionFactory factory = null;
 
     public Question(String question, String answer) {
+        this(question, answer, false);
+    }
+    
+    /**
+     * @param question The question shown to the user.
+     * @param answer The correct answer.
+     * @param foldKana Accept a reading typed in katakana for one stored in hiragana, and the other way around.
+     */
+    public Question(String question, String answer, boolean foldKana) {
         this.question = question;
         this.answer = answer;
+        this.matcher = new AnswerMatcher(answer, foldKana);
     }
 
     public String getQuestion() {
@@ -20,6 +36,42 @@ public class Question {
     public String getAnswer() {
         return answer;
     }
+    
+    /**
+     * @return The word ID of the word the question is about, -1 if it is not about a stored word.
+     */
+    public int getWID() {
+        return wid;
+    }
+    
+    /**
+     * Set the word ID of the word the question is about.
+     */
+    public void setWID(int wid) {
+        this.wid = wid;
+    }
+    
+    /**
+     * @return The type of the question, meaning or symbol, recorded with its result.
+     */
+    public String getType() {
+        return type;
+    }
+    
+    public void setType(String type) {
+        this.type = type;
+    }
+    
+    /**
+     * @return The factory that made the question, when it was made as part of a mix, otherwise null.
+     */
+    QuestionFactory getFactory() {
+        return factory;
+    }
+    
+    void setFactory(QuestionFactory factory) {
+        this.factory = factory;
+    }
 
     /**
      * Set the answer that the user has given.
@@ -27,12 +79,14 @@ public class Question {
      */
     public void setuserAnswer(String newAnswer) {
         userAnswer = newAnswer;
+        correct = matcher.matches(newAnswer);
     }
 
     /**
-     * @return Does the user's answer match the correct answer? Then return true, otherwise false.
+     * @return Does the user's answer match the correct answer, ignoring case, spacing and Unicode width?
+     * Then return true, otherwise false.
      */
     public Boolean correctAnswer() {
-        return userAnswer.matches(answer);
+        return correct;
     }
 }
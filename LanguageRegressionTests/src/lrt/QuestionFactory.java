@@ -1,23 +1,135 @@
 package lrt;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+
+import database.LocalWord;
+import database.VocabularyStore;
+import database.VocabularyStores;
 
 /**
  * My abstract question factory. All concrete question factories extend
- * this class, and implement their own version of the method generateQuestions.
+ * this class, and implement their own version of the method createQuestion.
  * @author Evan Gunn
  *
  */
 public abstract class QuestionFactory {
-    protected String queryModification = null;
-    public QuestionFactory(String queryModifier) {
-        queryModification = queryModifier;
+    protected TestCriteria criteria = null;
+    public QuestionFactory(TestCriteria criteria) {
+        this.criteria = criteria;
+    }
+    
+    /**
+     * @return The criteria that questions are drawn with.
+     */
+    public TestCriteria getCriteria() {
+        return criteria;
+    }
+    
+    /**
+     * @return The vocabulary store that questions are drawn from.
+     */
+    protected VocabularyStore store() {
+        return VocabularyStores.getActive();
+    }
+    
+    /**
+     * Sample the words of questions matching the criteria from the active vocabulary store, without fetching them.
+     * @param amount The amount of words wanted.
+     * @return The wids in random order, fewer than the amount if there are not enough candidates,
+     * or null if the factory chooses its own words as each batch is generated.
+     */
+    protected int[] sampleWIDs(int amount) {
+        return store().sample(criteria.getLanguage(), criteria.getWType(), criteria.getSource(), requiresSymbols(), amount);
+    }
+    
+    /**
+     * @return The most queries the factory runs at once to sample or generate a batch. A stream holds as many
+     * of its permits to generate while the factory works, so the bound on queries at once is kept.
+     */
+    protected int getParallelism() {
+        return 1;
+    }
+    
+    /**
+     * Fetch chosen words from the active vocabulary store.
+     * @param wids The word IDs of the words.
+     * @return The fully hydrated words, words that no longer exist are left out.
+     */
+    protected ArrayList<LocalWord> hydrate(int[] wids) {
+        return store().hydrateWords(wids);
     }
+    
     /**
-     * Generate questions.
+     * Generate the questions about chosen words, fetching only those words by primary key.
+     * @param wids The word IDs of the words, in the order they are asked.
+     * @return The questions, in the order of the wids. Words that no longer exist, or can not be made into a question, are left out.
+     */
+    protected ArrayList<Question> questionsFor(int[] wids) {
+        HashMap<Integer, LocalWord> words = new HashMap<Integer, LocalWord>();
+        for (LocalWord word : hydrate(wids)) {
+            words.put(word.getWID(), word);
+        }
+        ArrayList<Question> myQuestions = new ArrayList<Question>(wids.length);
+        for (int wid : wids) {
+            LocalWord word = words.get(wid);
+            if (word == null) continue;
+            Question question = createQuestion(word);
+            if (question != null) {
+                question.setWID(wid);
+                question.setType(getQuestionType());
+                myQuestions.add(question);
+            }
+        }
+        return myQuestions;
+    }
+    
+    /**
+     * Generate questions, sampling the words and converting each with createQuestion().
      * @param amount The amount of questions to generate.
-     * @param queryModifier A modification to the query's where statement, can be left blank "".
-     * @return An ArrayList of the questions generated.
+     * @return An ArrayList of the questions generated, fewer than the amount if there are not enough words.
+     */
+    public ArrayList<Question> generateQuestions(int amount) {
+        int[] wids = sampleWIDs(amount);
+        return wids == null ? new ArrayList<Question>() : questionsFor(wids);
+    }
+    
+    /**
+     * Called by the test after the user has answered a question. The result is saved through the
+     * active vocabulary store without waiting, so the next question does not wait on the database. Nothing is
+     * saved when studying offline from a snapshot. Factories may override this to take the result into account.
+     * @param question The answered question.
+     * @param correct True if the answer was correct.
+     * @param latencyMillis How long the user took to answer.
+     */
+    public void recordResult(Question question, boolean correct, long latencyMillis) {
+        if (question.getWID() < 0) return;
+        store().saveResultLater(question.getWID(), question.getType(), correct, latencyMillis, System.currentTimeMillis());
+    }
+    
+    /**
+     * Open a stream of questions that are generated in the background, in batches, while the user answers.
+     * @param questionCount The amount of questions in the stream, zero or less for an endless stream.
+     * @return The stream, which must be closed once the user is done.
+     */
+    public QuestionStream stream(int questionCount) {
+        return new QuestionStream(this, questionCount);
+    }
+    
+    /**
+     * @return The type of the questions this factory creates, recorded with each result.
+     */
+    protected abstract String getQuestionType();
+    
+    /**
+     * @return True if only words with at least one row of symbols can be made into questions.
+     */
+    protected abstract boolean requiresSymbols();
+    
+    /**
+     * Convert a single hydrated word to a question.
+     * @param word The word to ask about.
+     * @return The question, or null if the word can not be made into a question.
      */
-    public abstract ArrayList<Question> generateQuestions(int amount, String language);
+    protected abstract Question createQuestion(LocalWord word);
 }
@@ -0,0 +1,192 @@
+package lrt;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+
+import application.Logger;
+import application.VirtualThreads;
+
+/**
+ * A stream of questions, generated by a background thread while the user answers. The thread is virtual where
+ * the runtime allows, so a server may hold a stream open for every session.
+ * The first batch holds a single question so that it can be shown as soon as its word arrives,
+ * later batches double in size up to MAX_BATCH_SIZE. The queue holds about one batch,
+ * so the next batch is prefetched while the current one is answered, but the stream never runs
+ * far ahead of the user. A stream with a question count of zero or less never ends by itself.
+ *
+ * The words of a finite stream are sampled all at once when it opens, so no word is asked twice and a test
+ * has no more questions than there are words, and only fetched batch by batch. An endless stream samples
+ * each batch as it goes, leaving out the last RECENT_WINDOW words asked while there are others to ask.
+ *
+ * At most MAX_GENERATING queries sample or fetch words at once, the rest wait their turn. A stream takes a permit
+ * for each query its factory runs at once, so a mixed test takes one per factory in the mix. A server opening
+ * many streams together would otherwise have them all wait on the connection pool, and a stream whose
+ * wait timed out would end with no questions.
+ * @author Evan Gunn
+ *
+ */
+public class QuestionStream implements AutoCloseable {
+    public static final int FIRST_BATCH_SIZE = 1;
+    public static final int MAX_BATCH_SIZE = 16;
+    // The amount of words an endless stream avoids asking again.
+    public static final int RECENT_WINDOW = 64;
+    // The most queries generating batches at once, half of the default connection pool.
+    public static final int MAX_GENERATING = 4;
+    private static final Semaphore generating = new Semaphore(MAX_GENERATING, true);
+
+    // Marks the end of the stream, the prefetch thread has stopped.
+    private static final Question END = new Question("", "");
+
+    private final QuestionFactory factory;
+    private final int questionCount;
+    // The permits to generate taken for each batch, all at once so two streams never wait on each other's.
+    private final int permits;
+    private final BlockingQueue<Question> queue = new ArrayBlockingQueue<Question>(MAX_BATCH_SIZE);
+    private final Thread prefetcher;
+    private volatile boolean closed = false;
+    private boolean ended = false;
+    // The words an endless stream asked last, oldest first, used only by the prefetch thread.
+    private final ArrayDeque<Integer> recent = new ArrayDeque<Integer>();
+    private final HashSet<Integer> recentWIDs = new HashSet<Integer>();
+
+    /**
+     * Start generating questions in the background.
+     * @param factory The factory that generates each batch.
+     * @param questionCount The amount of questions in the stream, zero or less for an endless stream.
+     */
+    public QuestionStream(QuestionFactory factory, int questionCount) {
+        this.factory = factory;
+        this.questionCount = questionCount;
+        this.permits = Math.min(MAX_GENERATING, Math.max(1, factory.getParallelism()));
+        prefetcher = VirtualThreads.newThread(this::prefetch, "question-prefetch");
+        prefetcher.start();
+    }
+
+    /**
+     * @return True if the stream never ends by itself.
+     */
+    public boolean isEndless() {
+        return questionCount <= 0;
+    }
+
+    /**
+     * Wait for the next question.
+     * @return The next question, or null if the stream has ended because the count was reached,
+     * there are no words matching the criteria, or the stream was closed.
+     */
+    public Question next() {
+        if (ended) return null;
+        try {
+            Question question = queue.take();
+            if (question == END) {
+                ended = true;
+                return null;
+            }
+            return question;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            ended = true;
+            return null;
+        }
+    }
+
+    /**
+     * Stop generating questions. Questions that were already prefetched are discarded,
+     * and a thread waiting in next() is given the end of the stream.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        ended = true;
+        prefetcher.interrupt();
+        queue.clear();
+        // The interrupted prefetch thread can put nothing more, so there is room for the end.
+        queue.offer(END);
+    }
+
+    /**
+     * The prefetch thread's loop, generate batches until the count is reached or the stream is closed.
+     */
+    private void prefetch() {
+        int generated = 0;
+        int batchSize = FIRST_BATCH_SIZE;
+        try {
+            // Null if the factory chooses its own words as each batch is generated.
+            int[] planned = null;
+            if (!isEndless()) {
+                generating.acquire(permits);
+                try {
+                    planned = factory.sampleWIDs(questionCount);
+                } finally {
+                    generating.release(permits);
+                }
+            }
+            int nextPlanned = 0;
+            while (!closed && (isEndless() || generated < questionCount)) {
+                int amount = isEndless() ? batchSize : Math.min(batchSize, questionCount - generated);
+                List<Question> batch;
+                if (planned != null && nextPlanned >= planned.length) break;
+                generating.acquire(permits);
+                try {
+                    if (planned != null) {
+                        int end = Math.min(planned.length, nextPlanned + amount);
+                        batch = factory.questionsFor(Arrays.copyOfRange(planned, nextPlanned, end));
+                        nextPlanned = end;
+                    } else if (isEndless()) {
+                        batch = generateAvoidingRecent(amount);
+                    } else {
+                        batch = factory.generateQuestions(amount);
+                    }
+                } finally {
+                    generating.release(permits);
+                }
+                if (planned == null && batch.isEmpty()) break;
+                for (Question question : batch) {
+                    queue.put(question);
+                }
+                generated += batch.size();
+                batchSize = Math.min(batchSize * 2, MAX_BATCH_SIZE);
+            }
+        } catch (InterruptedException e) {
+            // Closed while waiting for the user to catch up.
+            return;
+        } catch (RuntimeException e) {
+            Logger.getInstance().error("Failed to generate questions: " + e);
+        }
+        if (generated == 0 && !closed) Logger.getInstance().warn("The question stream ended without a question.");
+        try {
+            queue.put(END);
+        } catch (InterruptedException e) {
+            // Closed, nobody is waiting for the end.
+        }
+    }
+
+    /**
+     * Generate a batch of an endless stream. Enough words are sampled to leave out the recent ones,
+     * which are only asked again if the vocabulary has too few other words.
+     */
+    private List<Question> generateAvoidingRecent(int amount) {
+        int[] sampled = factory.sampleWIDs(amount + recent.size());
+        if (sampled == null) return factory.generateQuestions(amount);
+        int[] chosen = new int[Math.min(amount, sampled.length)];
+        int count = 0;
+        for (int i = 0; i < sampled.length && count < chosen.length; i++) {
+            if (!recentWIDs.contains(sampled[i])) chosen[count++] = sampled[i];
+        }
+        for (int i = 0; i < sampled.length && count < chosen.length; i++) {
+            if (recentWIDs.contains(sampled[i])) chosen[count++] = sampled[i];
+        }
+        for (int wid : chosen) {
+            if (recentWIDs.add(wid)) recent.addLast(wid);
+            while (recent.size() > RECENT_WINDOW) {
+                recentWIDs.remove(recent.removeFirst());
+            }
+        }
+        return factory.questionsFor(chosen);
+    }
+}
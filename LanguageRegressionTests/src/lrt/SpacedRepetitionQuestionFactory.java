@@ -0,0 +1,174 @@
+package lrt;
+
+import java.util.ArrayList;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+import application.Logger;
+import database.BulkDeleter;
+import database.DueQueue;
+import database.LocalWord;
+import database.ReviewState;
+import database.VocabularyStore;
+
+/**
+ * Ask about the words that are due for review, earliest first, rather than random words.
+ * The review state of every word matching the criteria is loaded once into a DueQueue,
+ * so taking the next batch of due words and recording an answer are both O(log n) per word.
+ * Questions are asked in the style of another question factory, meaning or symbol.
+ * A test of this factory ends when no more words are due.
+ * @author Evan Gunn
+ *
+ */
+public class SpacedRepetitionQuestionFactory extends QuestionFactory {
+    // How long a word is held back after it is taken, so a word that is never answered comes back later in the session.
+    public static final long HOLD_MILLIS = 30L * 60 * 1000;
+
+    private final QuestionFactory style;
+    // Guards the queue, which is shared by the prefetch thread, which takes due words, the test, which records
+    // answers, and deletes. A ReentrantLock, so a virtual thread waiting on it does not pin its carrier.
+    private final ReentrantLock lock = new ReentrantLock();
+    // Held only while the queue is first loaded, so answers and deletes are never blocked on its queries.
+    private final ReentrantLock loading = new ReentrantLock();
+    // Null until loaded, then published whole.
+    private volatile DueQueue queue;
+    private volatile boolean offline = false;
+    // Kept here, as the deleter holds its listeners weakly.
+    private final Consumer<int[]> deletions = this::removeDeleted;
+
+    /**
+     * @param style The factory whose kind of question is asked about each due word, its criteria are used.
+     */
+    public SpacedRepetitionQuestionFactory(QuestionFactory style) {
+        super(style.getCriteria());
+        this.style = style;
+        BulkDeleter.addDeletionListener(deletions);
+    }
+
+    @Override
+    protected String getQuestionType() {
+        return style.getQuestionType();
+    }
+
+    @Override
+    protected boolean requiresSymbols() {
+        return style.requiresSymbols();
+    }
+
+    @Override
+    protected Question createQuestion(LocalWord word) {
+        return style.createQuestion(word);
+    }
+
+    @Override
+    public ArrayList<Question> generateQuestions(int amount) {
+        DueQueue due = loadedQueue();
+        int[] wids;
+        lock.lock();
+        try {
+            long now = System.currentTimeMillis();
+            wids = due.takeDue(amount, now, now + HOLD_MILLIS);
+        } finally {
+            lock.unlock();
+        }
+
+        // Hydrate the due words, then ask about them in due order.
+        return questionsFor(wids);
+    }
+
+    /**
+     * Due words are taken from the queue as each batch is generated, a word is held back once taken,
+     * so a stream asks about no word twice while it is held.
+     */
+    @Override
+    protected int[] sampleWIDs(int amount) {
+        return null;
+    }
+
+    @Override
+    public void recordResult(Question question, boolean correct, long latencyMillis) {
+        super.recordResult(question, correct, latencyMillis);
+        DueQueue due = queue;
+        if (due == null) return;
+        lock.lock();
+        try {
+            ReviewState state = due.record(question.getWID(), correct, System.currentTimeMillis());
+            if (state == null || offline) return;
+            // The values are read while the lock is held, the queue may change the state once it is released.
+            store().saveReviewLater(state);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return The amount of words due now.
+     */
+    public int countDue() {
+        DueQueue due = loadedQueue();
+        lock.lock();
+        try {
+            return due.countDue(System.currentTimeMillis());
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Drop deleted words from the queue, so a session in progress does not ask about them.
+     */
+    private void removeDeleted(int[] wids) {
+        DueQueue due = queue;
+        if (due == null) return;
+        lock.lock();
+        try {
+            for (int wid : wids) {
+                due.remove(wid);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return The queue, loaded by the first caller. Callers arriving during the load wait for it.
+     */
+    private DueQueue loadedQueue() {
+        DueQueue due = queue;
+        if (due != null) return due;
+        loading.lock();
+        try {
+            if (queue == null) queue = load();
+            return queue;
+        } finally {
+            loading.unlock();
+        }
+    }
+
+    /**
+     * Queue every word matching the criteria, with its stored review state if it has one.
+     * When studying offline from a snapshot there are no stored states, and answers are only kept for the session.
+     * The queue is filled before it is published, so no lock on it is held while the store is read.
+     */
+    private DueQueue load() {
+        DueQueue loaded = new DueQueue();
+        VocabularyStore store = store();
+        if (store.isReadOnly()) {
+            offline = true;
+            Logger.getInstance().info("Studying offline, reviews will not be saved.");
+        }
+        // Every candidate, in random order, so that new words are introduced in no particular order.
+        int[] candidates = store.sample(criteria.getLanguage(), criteria.getWType(), criteria.getSource(),
+                requiresSymbols(), Integer.MAX_VALUE);
+        for (int wid : candidates) {
+            loaded.add(new ReviewState(wid));
+        }
+
+        ArrayList<ReviewState> states = store.loadReviews(criteria.getLanguage(), criteria.getWType(), criteria.getSource(), requiresSymbols());
+        if (states == null) return loaded;
+        for (ReviewState state : states) {
+            loaded.add(state);
+        }
+        return loaded;
+    }
+}
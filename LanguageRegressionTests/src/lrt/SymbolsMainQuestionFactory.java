@@ -1,39 +1,43 @@
 package lrt;
 
-import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
 
 import database.LocalWord;
-import database.MyConnection;
 
 /**
  * This question factory utilizes the connection the the database to retrieve
  * data about the symbols table. It uses that data to generate questions
  * about readings of symbols. For example, the hiragana reading of japanese
- * kanji. The selection is random.
+ * kanji. The selection is random, sampled client side by the WordSampler.
  * @author Evan Gunn
  *
  */
 public class SymbolsMainQuestionFactory extends QuestionFactory {
-    public SymbolsMainQuestionFactory(String queryModifier) {
-        super(queryModifier);
+    public SymbolsMainQuestionFactory(TestCriteria criteria) {
+        super(criteria);
+    }
+    
+    @Override
+    protected String getQuestionType() {
+        return "symbol";
+    }
+    
+    @Override
+    protected boolean requiresSymbols() {
+        return true;
     }
 
     @Override
-    public ArrayList<Question> generateQuestions(int amount, String language) {
-        ArrayList<Question> myQuestions = new ArrayList<Question>();
-        
-        // Create and run a query on the database to get required data for questions.
-        String myQuery = "SELECT DISTINCT NULL, NULL, NULL, NULL, S.main, S.ancillary, NULL "
-                       + "FROM symbols S, word W, wordsource N "
-                       + "WHERE S.wid = W.wid AND W.wlanguage = '" + language + "' " + queryModification
-                       + "ORDER BY RAND() "
-                       + "LIMIT " + String.valueOf(amount) + " ;";
-        ArrayList<LocalWord> myWords = MyConnection.getInstance().getWords(myQuery, amount);
-        
-        // Convert the words to questions
-        for (int i = 0; i < myWords.size(); i++) {
-            myQuestions.add(new Question("What is the reading of the symbol(s): " + myWords.get(i).getMainSymbols(), myWords.get(i).getAncillarySymbol()));
+    protected Question createQuestion(LocalWord word) {
+        // Ask about one of the word's sets of symbols that has a reading to answer with.
+        List<String> mains = word.getAllMainSymbols();
+        List<String> ancillaries = word.getAllAncillarySymbols();
+        int readings = 0, row = -1;
+        for (int i = 0; i < mains.size(); i++) {
+            if (ancillaries.get(i) != null && ThreadLocalRandom.current().nextInt(++readings) == 0) row = i;
         }
-        return myQuestions;
+        if (row < 0) return null;
+        return new Question("What is the reading of the symbol(s): " + mains.get(row), ancillaries.get(row), true);
     }
 }
@@ -1,44 +1,73 @@
 package lrt;
 
-import java.util.ArrayList;
 import java.util.Scanner;
 
 import application.Logger;
 
 /**
- * The Test class provides a container for a list of questions, and
- * the ability to list those questions and retrieve user response.
+ * The Test class asks a stream of questions, and
+ * retrieves the user's responses. Questions are generated in the background
+ * while the user answers, so a test may be as long as the user likes.
  * @author Evan Gunn
  *
  */
 public class Test {
-    private ArrayList<Question> questions = null;
-    
-    public Test(int questionCount, String language, QuestionFactory questionFactory) {
-        questions = questionFactory.generateQuestions(questionCount, language);
+    public static final String QUIT = ":q";
+
+    private final int questionCount;
+    private final QuestionFactory questionFactory;
+
+    /**
+     * @param questionCount The amount of questions to ask, zero or less for an endless drill.
+     * @param questionFactory The factory the questions are drawn from.
+     */
+    public Test(int questionCount, QuestionFactory questionFactory) {
+        this.questionCount = questionCount;
+        this.questionFactory = questionFactory;
     }
-    
+
     /**
-     * Administer the test to the user. Display the list of questions,
+     * Administer the test to the user. Display the questions as they arrive,
      * retrieve entered answers. Tell the user if their answer was correct.
+     * The user may stop at any time by entering :q.
      * @param scanner
      */
     public void administer(Scanner scanner) {
-        if (questions == null || questions.size() == 0) {
+        int shown = 0, asked = 0, correct = 0;
+        try (QuestionStream questions = questionFactory.stream(questionCount)) {
+            if (questions.isEndless()) {
+                Logger.getInstance().log("Enter " + QUIT + " to end the drill.");
+            }
+            // Display the questions, get response, tell the user if they were correct or incorrect.
+            Question question;
+            while ((question = questions.next()) != null) {
+                Logger.getInstance().log("-------------------------------------------------------------");
+                Logger.getInstance().log(question.getQuestion());
+                shown++;
+                long shownAt = System.nanoTime();
+
+                String answered = scanner.nextLine();
+                if (answered.trim().equals(QUIT)) break;
+                long latencyMillis = (System.nanoTime() - shownAt) / 1000000;
+                question.setuserAnswer(answered);
+                asked++;
+
+                questionFactory.recordResult(question, question.correctAnswer(), latencyMillis);
+                if (question.correctAnswer()) {
+                    correct++;
+                    Logger.getInstance().log("Correct!");
+                } else {
+                    Logger.getInstance().log("Incorrect.");
+                }
+                Logger.getInstance().log("The correct answer was: " + question.getAnswer());
+            }
+        }
+        if (shown == 0) {
             Logger.getInstance().log("Test does not contain any questions.");
             return;
         }
-        // Display the questions, get response, tell the user if they were correct or incorrect.
-        for (int i = 0; i < questions.size(); i++) {
-            Logger.getInstance().log("-------------------------------------------------------------");
-            Logger.getInstance().log(questions.get(i).getQuestion());
-            
-            String answered = scanner.nextLine();
-            questions.get(i).setuserAnswer(answered);
-            
-            if (questions.get(i).correctAnswer()) Logger.getInstance().log("Correct!");
-            if (!questions.get(i).correctAnswer()) Logger.getInstance().log("Incorrect.");
-            Logger.getInstance().log("The correct answer was: " + questions.get(i).getAnswer());
-        }
+        if (asked == 0) return;
+        Logger.getInstance().log("-------------------------------------------------------------");
+        Logger.getInstance().log("You answered " + correct + " of " + asked + " questions correctly.");
     }
 }
@@ -0,0 +1,60 @@
+package lrt;
+
+import java.util.Objects;
+
+/**
+ * Test criteria describe which words a test draws its questions from: always a language,
+ * and optionally a word type and a source. The criteria are passed to the active VocabularyStore when words are drawn.
+ * @author Evan Gunn
+ *
+ */
+public class TestCriteria {
+    private final String language;
+    private String wtype = null, source = null;
+    
+    /**
+     * @param language The language of the test, required.
+     */
+    public TestCriteria(String language) {
+        this.language = Objects.requireNonNull(language, "language");
+    }
+    
+    /**
+     * Only draw words of a type, noun, verb, etc...
+     * @param wtype The word type, or null for any type.
+     * @return These criteria, for chaining.
+     */
+    public TestCriteria setWType(String wtype) {
+        this.wtype = wtype;
+        return this;
+    }
+    
+    /**
+     * Only draw words that come from a source.
+     * @param source The source name, or null for any source.
+     * @return These criteria, for chaining.
+     */
+    public TestCriteria setSource(String source) {
+        this.source = source;
+        return this;
+    }
+    
+    public String getLanguage() {
+        return language;
+    }
+    
+    public String getWType() {
+        return wtype;
+    }
+    
+    public String getSource() {
+        return source;
+    }
+    
+    /**
+     * Create a String describing the criteria, for display to the user.
+     */
+    public String toString() {
+        return "Language: " + language + ", Type: " + (wtype == null ? "any" : wtype) + ", Source: " + (source == null ? "any" : source);
+    }
+}
@@ -0,0 +1,157 @@
+package lrt;
+
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A test session is one learner's test, administered a request at a time rather than by reading a console.
+ * It holds everything Test.administer() keeps in local variables, the question stream, the question being
+ * answered and the score, so a server may hold many sessions at once. A session is used by one request at a time,
+ * the methods hold the session's lock so that two requests for the same session wait on each other.
+ * The lock is a ReentrantLock rather than the session's monitor, as a request holds it while waiting for
+ * the next question, and a virtual thread waiting inside a synchronized block pins its carrier thread.
+ * @author Evan Gunn
+ *
+ */
+public class TestSession implements AutoCloseable {
+    private final String id;
+    private final QuestionFactory factory;
+    private final QuestionStream questions;
+    private final ReentrantLock lock = new ReentrantLock();
+    private Question current = null;
+    private long shownAt = 0;
+    private int shown = 0, asked = 0, correct = 0;
+    private boolean finished = false;
+    private volatile long lastUsedMillis = System.currentTimeMillis();
+    
+    /**
+     * Start generating the session's questions in the background.
+     * @param id The session's identifier.
+     * @param questionCount The amount of questions to ask, zero or less for an endless drill.
+     * @param factory The factory the questions are drawn from.
+     */
+    public TestSession(String id, int questionCount, QuestionFactory factory) {
+        this.id = id;
+        this.factory = factory;
+        this.questions = factory.stream(questionCount);
+    }
+    
+    /**
+     * Get the question waiting for an answer, waiting for the next question if the last one was answered.
+     * Asking again before answering returns the same question.
+     * @return The question, or null if the test has ended.
+     */
+    public Question currentQuestion() {
+        lastUsedMillis = System.currentTimeMillis();
+        lock.lock();
+        try {
+            if (current == null && !finished) {
+                current = questions.next();
+                if (current == null) {
+                    finished = true;
+                } else {
+                    shown++;
+                    shownAt = System.nanoTime();
+                }
+            }
+            return current;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Answer the question waiting for an answer, and record the result.
+     * @param answer The learner's answer.
+     * @return The answered question, or null if no question was waiting.
+     */
+    public Question answer(String answer) {
+        lastUsedMillis = System.currentTimeMillis();
+        lock.lock();
+        try {
+            if (current == null) return null;
+            Question question = current;
+            current = null;
+            long latencyMillis = (System.nanoTime() - shownAt) / 1000000;
+            question.setuserAnswer(answer);
+            asked++;
+            factory.recordResult(question, question.correctAnswer(), latencyMillis);
+            if (question.correctAnswer()) correct++;
+            return question;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * Stop generating questions, the session ends.
+     */
+    @Override
+    public void close() {
+        // The stream is closed without the lock, so a request waiting for the next question is woken.
+        questions.close();
+        lock.lock();
+        try {
+            finished = true;
+            current = null;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    public String getId() {
+        return id;
+    }
+    
+    /**
+     * @return True if the test has run out of questions or been closed.
+     */
+    public boolean isFinished() {
+        lock.lock();
+        try {
+            return finished;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * @return True if the test is an endless drill.
+     */
+    public boolean isEndless() {
+        return questions.isEndless();
+    }
+    
+    public int getShown() {
+        lock.lock();
+        try {
+            return shown;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    public int getAsked() {
+        lock.lock();
+        try {
+            return asked;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    public int getCorrect() {
+        lock.lock();
+        try {
+            return correct;
+        } finally {
+            lock.unlock();
+        }
+    }
+    
+    /**
+     * @return The time the session was last asked for a question or given an answer, in milliseconds since the epoch.
+     */
+    public long getLastUsedMillis() {
+        return lastUsedMillis;
+    }
+}
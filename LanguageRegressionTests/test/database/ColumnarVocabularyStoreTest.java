@@ -0,0 +1,120 @@
+package database;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Checks that the columnar store samples only from the rows of the requested language and word type,
+ * filtered by source and by symbols with a reading, and that removed words and sources leave their groups.
+ * The store is filled through addInserted, so no database is needed.
+ * @author Evan Gunn
+ *
+ */
+public class ColumnarVocabularyStoreTest {
+    private ColumnarVocabularyStore store;
+    
+    @Before
+    public void fill() {
+        store = new ColumnarVocabularyStore(null);
+        store.addInserted(Arrays.asList(
+                word(1, "inu", "japanese", "noun", "犬", "いぬ", "genki"),
+                word(2, "neko", "japanese", "noun", "猫", "ねこ", null),
+                word(3, "sakana", "japanese", "noun", "魚", null, "genki"),
+                word(4, "taberu", "japanese", "verb", null, null, "genki"),
+                word(5, "nomu", "japanese", "verb", "飲む", "のむ", null),
+                word(6, "gae", "korean", "noun", null, null, "genki")));
+    }
+    
+    @Test
+    public void sampleDrawsFromLanguageAndType() {
+        assertArrayEquals(new int[] {1, 2, 3}, sorted(store.sample("japanese", "noun", null, false, 10)));
+        assertArrayEquals(new int[] {4, 5}, sorted(store.sample("japanese", "verb", null, false, 10)));
+        assertArrayEquals(new int[] {1, 2, 3, 4, 5}, sorted(store.sample("japanese", null, null, false, 10)));
+        assertArrayEquals(new int[] {6}, sorted(store.sample("korean", null, null, false, 10)));
+        assertArrayEquals(new int[0], store.sample("korean", "verb", null, false, 10));
+        assertArrayEquals(new int[0], store.sample("french", null, null, false, 10));
+        assertArrayEquals(new int[0], store.sample("japanese", "adjective", null, false, 10));
+    }
+    
+    @Test
+    public void sampleFiltersBySourceAndReading() {
+        assertArrayEquals(new int[] {1, 3, 4}, sorted(store.sample("japanese", null, "genki", false, 10)));
+        assertArrayEquals(new int[] {1, 3}, sorted(store.sample("japanese", "noun", "genki", false, 10)));
+        // Sakana has a symbol but no reading, so a symbol question could not be asked about it.
+        assertArrayEquals(new int[] {1, 2, 5}, sorted(store.sample("japanese", null, null, true, 10)));
+        assertArrayEquals(new int[] {1}, sorted(store.sample("japanese", null, "genki", true, 10)));
+        assertArrayEquals(new int[0], store.sample("japanese", null, "unknown", false, 10));
+    }
+    
+    @Test
+    public void sampleTakesDistinctWordsUpToAmount() {
+        for (int i = 0; i < 100; i++) {
+            int[] sampled = sorted(store.sample("japanese", null, null, false, 3));
+            assertEquals(3, sampled.length);
+            assertTrue(sampled[0] < sampled[1] && sampled[1] < sampled[2]);
+            assertTrue(sampled[0] >= 1 && sampled[2] <= 5);
+            assertEquals(2, store.sample("japanese", "noun", "genki", false, 5).length);
+        }
+    }
+    
+    @Test
+    public void removedWordsLeaveTheirGroups() {
+        store.removeDeleted(new int[] {2, 4, 42});
+        assertEquals(4, store.size());
+        assertArrayEquals(new int[] {1, 3}, sorted(store.sample("japanese", "noun", null, false, 10)));
+        assertArrayEquals(new int[] {5}, sorted(store.sample("japanese", "verb", null, false, 10)));
+        assertArrayEquals(new int[] {1, 3, 5}, store.findByLanguage("japanese"));
+        assertArrayEquals(new int[0], store.findByRomanization("neko", "japanese"));
+        assertArrayEquals(new int[] {1, 5}, sorted(store.sample("japanese", null, null, true, 10)));
+    }
+    
+    @Test
+    public void removedSourceLeavesTheWord() {
+        LocalWord shared = word(7, "kawa", "japanese", "noun", null, null, "genki");
+        shared.addSourceValue("tobira");
+        shared.addSourceValue("minna");
+        store.addInserted(Arrays.asList(shared));
+        store.removeSource(new int[] {7, 1}, "tobira");
+        store.removeSource(new int[] {7}, "genki");
+        assertEquals(7, store.size());
+        assertArrayEquals(new int[] {1, 3, 4}, sorted(store.sample("japanese", null, "genki", false, 10)));
+        assertArrayEquals(new int[0], store.sample("japanese", null, "tobira", false, 10));
+        assertArrayEquals(new int[] {7}, store.sample("japanese", null, "minna", false, 10));
+        assertEquals(Arrays.asList("minna"), store.hydrateWords(new int[] {7}).get(0).getAllSources());
+        assertEquals(Arrays.asList("genki"), store.hydrateWords(new int[] {1}).get(0).getAllSources());
+    }
+    
+    @Test
+    public void groupsStayApartPastSixteenBitCodes() {
+        // Languages, word types and sources share one dictionary. With enough sources korean is given code 65536,
+        // which a key of languageCode << 16 would fold onto japanese's code 0.
+        store = new ColumnarVocabularyStore(null);
+        LocalWord many = word(1, "inu", "japanese", "noun", null, null, null);
+        for (int i = 0; i < 65534; i++) {
+            many.addSourceValue("source" + i);
+        }
+        store.addInserted(Arrays.asList(many, word(2, "gae", "korean", "noun", null, null, null)));
+        assertArrayEquals(new int[] {1}, store.sample("japanese", "noun", null, false, 10));
+        assertArrayEquals(new int[] {1}, store.sample("japanese", null, null, false, 10));
+        assertArrayEquals(new int[] {2}, store.sample("korean", "noun", null, false, 10));
+        assertArrayEquals(new int[] {2}, store.findByLanguage("korean"));
+    }
+    
+    private static LocalWord word(int wid, String romanization, String language, String wtype, String main,
+            String ancillary, String source) {
+        LocalWord word = new LocalWord(romanization, language, romanization + " meaning", wtype, main, ancillary, source);
+        word.setWID(wid);
+        return word;
+    }
+    
+    private static int[] sorted(int[] wids) {
+        Arrays.sort(wids);
+        return wids;
+    }
+}
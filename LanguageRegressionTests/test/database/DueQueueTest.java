@@ -0,0 +1,168 @@
+package database;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Checks that the DueQueue keeps its heap ordered by due time, and every state's heap index right,
+ * as words are added, answered, taken and removed.
+ * @author Evan Gunn
+ *
+ */
+public class DueQueueTest {
+    private static final long NOW = 1000L * ReviewState.DAY_MILLIS;
+    
+    @Test
+    public void peekIsEarliestDue() {
+        DueQueue queue = new DueQueue();
+        long[] dues = {50, 10, 40, 30, 20, 60};
+        for (int wid = 0; wid < dues.length; wid++) {
+            queue.add(new ReviewState(wid, 0, ReviewState.DEFAULT_EASE, dues[wid], 0));
+        }
+        assertEquals(1, queue.peek().getWID());
+        assertEquals(dues.length, queue.size());
+        assertHeap(queue);
+    }
+    
+    @Test
+    public void addReplacesQueuedState() {
+        DueQueue queue = new DueQueue();
+        queue.add(new ReviewState(1, 0, ReviewState.DEFAULT_EASE, 10, 0));
+        queue.add(new ReviewState(2, 0, ReviewState.DEFAULT_EASE, 20, 0));
+        ReviewState replacement = new ReviewState(1, 0, ReviewState.DEFAULT_EASE, 30, 0);
+        queue.add(replacement);
+        assertEquals(2, queue.size());
+        assertSame(replacement, queue.get(1));
+        assertEquals(2, queue.peek().getWID());
+        assertHeap(queue);
+    }
+    
+    @Test
+    public void recordMovesAnsweredWordBack() {
+        DueQueue queue = filledQueue(100, new Random(7));
+        ReviewState first = queue.peek();
+        ReviewState answered = queue.record(first.getWID(), true, NOW);
+        assertSame(first, answered);
+        assertEquals(NOW + ReviewState.DAY_MILLIS, answered.getDue());
+        assertTrue(queue.peek() != first);
+        assertHeap(queue);
+        
+        // A wrong answer brings the word back after the relearning delay, ahead of words due tomorrow.
+        queue.record(first.getWID(), false, NOW);
+        assertEquals(NOW + ReviewState.RELEARN_DELAY_MILLIS, first.getDue());
+        assertHeap(queue);
+        assertNull(queue.record(-1, true, NOW));
+    }
+    
+    @Test
+    public void removeKeepsHeapOrdered() {
+        Random random = new Random(11);
+        DueQueue queue = filledQueue(200, random);
+        for (int wid = 0; wid < 200; wid += 3) {
+            assertTrue(queue.remove(wid));
+            assertHeap(queue);
+        }
+        assertFalse(queue.remove(0));
+        assertNull(queue.get(0));
+        assertEquals(200 - 67, queue.size());
+        
+        // Answers after removals still find and move the right states.
+        for (int wid = 1; wid < 200; wid += 3) {
+            queue.record(wid, random.nextBoolean(), NOW);
+        }
+        assertHeap(queue);
+        assertDrainsInOrder(queue);
+    }
+    
+    @Test
+    public void removeLastAndOnly() {
+        DueQueue queue = new DueQueue();
+        ReviewState only = new ReviewState(1, 0, ReviewState.DEFAULT_EASE, 10, 0);
+        queue.add(only);
+        assertTrue(queue.remove(1));
+        assertEquals(0, queue.size());
+        assertNull(queue.peek());
+        assertEquals(-1, only.getHeapIndex());
+    }
+    
+    @Test
+    public void takeDueHoldsTakenWords() {
+        DueQueue queue = new DueQueue();
+        queue.add(new ReviewState(1, 0, ReviewState.DEFAULT_EASE, NOW - 30, 0));
+        queue.add(new ReviewState(2, 0, ReviewState.DEFAULT_EASE, NOW - 20, 0));
+        queue.add(new ReviewState(3, 0, ReviewState.DEFAULT_EASE, NOW - 10, 0));
+        queue.add(new ReviewState(4, 0, ReviewState.DEFAULT_EASE, NOW + 10, 0));
+        
+        assertArrayEquals(new int[] {1, 2}, queue.takeDue(2, NOW, NOW + 100));
+        assertArrayEquals(new int[] {3}, queue.takeDue(5, NOW, NOW + 100));
+        assertArrayEquals(new int[0], queue.takeDue(5, NOW, NOW + 100));
+        assertEquals(0, queue.countDue(NOW));
+        assertEquals(1, queue.countDue(NOW + 10));
+        assertEquals(4, queue.countDue(NOW + 100));
+        assertHeap(queue);
+    }
+    
+    @Test
+    public void countDueMatchesScan() {
+        Random random = new Random(3);
+        DueQueue queue = filledQueue(500, random);
+        for (int i = 0; i < 20; i++) {
+            long at = NOW + random.nextInt(40) * ReviewState.DAY_MILLIS / 10;
+            int expected = 0;
+            for (ReviewState state : queue.getAll()) {
+                if (state.getDue() <= at) expected++;
+            }
+            assertEquals(expected, queue.countDue(at));
+        }
+    }
+    
+    /**
+     * Fill a queue with words due from now until four days from now.
+     */
+    private static DueQueue filledQueue(int words, Random random) {
+        DueQueue queue = new DueQueue();
+        for (int wid = 0; wid < words; wid++) {
+            long due = NOW + random.nextInt(4 * 24) * ReviewState.DAY_MILLIS / 24;
+            queue.add(new ReviewState(wid, 0, ReviewState.DEFAULT_EASE, due, 0));
+        }
+        return queue;
+    }
+    
+    /**
+     * Check that no state is due before its parent, and every state knows its own index.
+     * getAll lists the states in heap order.
+     */
+    private static void assertHeap(DueQueue queue) {
+        ArrayList<ReviewState> heap = queue.getAll();
+        assertEquals(queue.size(), heap.size());
+        for (int i = 0; i < heap.size(); i++) {
+            assertEquals(i, heap.get(i).getHeapIndex());
+            assertSame(heap.get(i), queue.get(heap.get(i).getWID()));
+            if (i > 0) assertTrue("Due before its parent at " + i, heap.get((i - 1) / 2).getDue() <= heap.get(i).getDue());
+        }
+    }
+    
+    /**
+     * Take every word and check they come out earliest first.
+     */
+    private static void assertDrainsInOrder(DueQueue queue) {
+        long last = Long.MIN_VALUE;
+        int words = queue.size();
+        for (int i = 0; i < words; i++) {
+            ReviewState state = queue.peek();
+            assertTrue(state.getDue() >= last);
+            last = state.getDue();
+            queue.remove(state.getWID());
+        }
+        assertEquals(0, queue.size());
+    }
+}
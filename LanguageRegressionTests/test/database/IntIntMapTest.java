@@ -0,0 +1,98 @@
+package database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Checks the IntIntMap against a HashMap as it grows past its expected size and as keys are removed,
+ * which shifts the following entries of a probe run back.
+ * @author Evan Gunn
+ *
+ */
+public class IntIntMapTest {
+    @Test
+    public void missingKeysGetMissingValue() {
+        IntIntMap map = new IntIntMap(4, -1);
+        assertEquals(-1, map.get(7));
+        assertEquals(-1, map.remove(7));
+        assertFalse(map.containsKey(7));
+        assertEquals(-1, map.put(7, 70));
+        assertEquals(70, map.put(7, 71));
+        assertEquals(71, map.get(7));
+        assertEquals(1, map.size());
+    }
+    
+    @Test
+    public void growsPastExpectedSize() {
+        IntIntMap map = new IntIntMap(4, -1);
+        for (int key = 0; key < 10000; key++) {
+            map.put(key, key * 2);
+        }
+        assertEquals(10000, map.size());
+        for (int key = 0; key < 10000; key++) {
+            assertEquals(key * 2, map.get(key));
+        }
+        assertEquals(-1, map.get(10000));
+        assertTrue(map.estimateBytes() >= 20000 * 9L);
+    }
+    
+    @Test
+    public void removeKeepsCollidingKeysReachable() {
+        // Multiples of a large power of two share their low bits, so many of them land in the same runs.
+        IntIntMap map = new IntIntMap(16, -1);
+        for (int i = 0; i < 64; i++) {
+            map.put(i << 20, i);
+        }
+        for (int i = 0; i < 64; i += 2) {
+            assertEquals(i, map.remove(i << 20));
+        }
+        for (int i = 0; i < 64; i++) {
+            assertEquals(i % 2 == 0 ? -1 : i, map.get(i << 20));
+        }
+        assertEquals(32, map.size());
+    }
+    
+    @Test
+    public void matchesHashMapUnderRandomChanges() {
+        Random random = new Random(5);
+        IntIntMap map = new IntIntMap(8, Integer.MIN_VALUE);
+        Map<Integer, Integer> expected = new HashMap<Integer, Integer>();
+        for (int i = 0; i < 200000; i++) {
+            int key = random.nextInt(5000) - 2500;
+            if (random.nextInt(3) == 0) {
+                Integer old = expected.remove(key);
+                assertEquals(old == null ? Integer.MIN_VALUE : old, map.remove(key));
+            } else {
+                int value = random.nextInt();
+                Integer old = expected.put(key, value);
+                assertEquals(old == null ? Integer.MIN_VALUE : old, map.put(key, value));
+            }
+        }
+        assertEquals(expected.size(), map.size());
+        for (int key = -2500; key < 2500; key++) {
+            Integer value = expected.get(key);
+            assertEquals(value == null ? Integer.MIN_VALUE : value, map.get(key));
+            assertEquals(value != null, map.containsKey(key));
+        }
+    }
+    
+    @Test
+    public void clearEmptiesTheMap() {
+        IntIntMap map = new IntIntMap(4, -1);
+        for (int key = 0; key < 100; key++) {
+            map.put(key, key);
+        }
+        map.clear();
+        assertEquals(0, map.size());
+        assertEquals(-1, map.get(5));
+        map.put(5, 6);
+        assertEquals(6, map.get(5));
+    }
+}
@@ -0,0 +1,53 @@
+package database;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Checks the LongIntMap against a HashMap, including keys that differ only in their high 32 bits,
+ * as the columnar store's group keys do.
+ * @author Evan Gunn
+ *
+ */
+public class LongIntMapTest {
+    @Test
+    public void highBitsKeepKeysApart() {
+        LongIntMap map = new LongIntMap(4, -1);
+        for (long high = 0; high < 100; high++) {
+            map.put(high << 32 | 3, (int) high);
+        }
+        assertEquals(100, map.size());
+        for (long high = 0; high < 100; high++) {
+            assertEquals((int) high, map.get(high << 32 | 3));
+        }
+        assertFalse(map.containsKey(3L << 32 | 4));
+    }
+    
+    @Test
+    public void matchesHashMapUnderRandomChanges() {
+        Random random = new Random(9);
+        LongIntMap map = new LongIntMap(8, -1);
+        Map<Long, Integer> expected = new HashMap<Long, Integer>();
+        for (int i = 0; i < 200000; i++) {
+            long key = (long) random.nextInt(70) << 32 | random.nextInt(70);
+            if (random.nextInt(3) == 0) {
+                Integer old = expected.remove(key);
+                assertEquals(old == null ? -1 : old, map.remove(key));
+            } else {
+                int value = random.nextInt(1000000);
+                Integer old = expected.put(key, value);
+                assertEquals(old == null ? -1 : old, map.put(key, value));
+            }
+        }
+        assertEquals(expected.size(), map.size());
+        for (Map.Entry<Long, Integer> entry : expected.entrySet()) {
+            assertEquals((int) entry.getValue(), map.get(entry.getKey()));
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package lrt;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Checks how the AnswerMatcher grades answers: katakana folded to hiragana only when asked, NFKC so
+ * half-width and full-width forms match, case folding, collapsed whitespace, and no regex meaning.
+ * @author Evan Gunn
+ *
+ */
+public class AnswerMatcherTest {
+    @Test
+    public void katakanaFoldsToHiraganaWhenAsked() {
+        AnswerMatcher reading = new AnswerMatcher("いぬ", true);
+        assertTrue(reading.matches("いぬ"));
+        assertTrue(reading.matches("イヌ"));
+        assertTrue(reading.matches("イぬ"));
+        assertFalse(reading.matches("ねこ"));
+        
+        AnswerMatcher exact = new AnswerMatcher("いぬ", false);
+        assertTrue(exact.matches("いぬ"));
+        assertFalse(exact.matches("イヌ"));
+    }
+    
+    @Test
+    public void storedKatakanaIsFoldedToo() {
+        AnswerMatcher reading = new AnswerMatcher("コーヒー", true);
+        assertTrue(reading.matches("こーひー"));
+        assertTrue(reading.matches("コーヒー"));
+        // The long vowel mark has no hiragana form, so it is left alone on both sides.
+        assertFalse(reading.matches("こおひい"));
+    }
+    
+    @Test
+    public void foldingCoversTheWholeKatakanaRange() {
+        // ァ and ヶ are the ends of the range, ヴ and ヽ ヾ fold to ゔ and ゝ ゞ.
+        assertTrue(new AnswerMatcher("ぁゖゔゝゞ", true).matches("ァヶヴヽヾ"));
+        // The middle dot and long vowel mark sit just past the range and are not folded.
+        assertEquals("・ー", AnswerMatcher.normalize("・ー", true));
+    }
+    
+    @Test
+    public void halfWidthKatakanaIsComposed() {
+        AnswerMatcher reading = new AnswerMatcher("がっこう", true);
+        // NFKC turns the half-width ｶﾞ, two code points, into the one full-width ガ.
+        assertTrue(reading.matches("ｶﾞｯｺｳ"));
+        assertTrue(new AnswerMatcher("ｶﾞｯｺｳ", true).matches("がっこう"));
+        assertFalse(new AnswerMatcher("がっこう", false).matches("ｶﾞｯｺｳ"));
+        assertTrue(new AnswerMatcher("ガッコウ", false).matches("ｶﾞｯｺｳ"));
+    }
+    
+    @Test
+    public void caseWidthAndSpacesAreIgnored() {
+        AnswerMatcher meaning = new AnswerMatcher("to eat", true);
+        assertTrue(meaning.matches("To Eat"));
+        assertTrue(meaning.matches("  to \t eat "));
+        assertTrue(meaning.matches("ｔｏ　ＥＡＴ"));
+        assertFalse(meaning.matches("toeat"));
+        assertFalse(meaning.matches("to eat."));
+        assertFalse(meaning.matches(null));
+    }
+    
+    @Test
+    public void answersAreNotPatterns() {
+        AnswerMatcher meaning = new AnswerMatcher("(to) eat", false);
+        assertTrue(meaning.matches("(to) eat"));
+        assertFalse(meaning.matches("to eat"));
+        assertTrue(new AnswerMatcher("etc.", false).matches("ETC."));
+        assertFalse(new AnswerMatcher("etc.", false).matches("etcs"));
+        assertFalse(new AnswerMatcher("a*", false).matches("aaa"));
+    }
+    
+    @Test
+    public void emptyAnswerMatchesOnlyBlank() {
+        AnswerMatcher empty = new AnswerMatcher(null, true);
+        assertTrue(empty.matches(""));
+        assertTrue(empty.matches("   "));
+        assertFalse(empty.matches("a"));
+    }
+    
+    @Test
+    public void matchesAgreesWithNormalize() {
+        // matches walks the answer without building its normalized form, so it must agree with normalize.
+        String alphabet = "aAｱアあイいｶﾞガが ー　　.(";
+        Random random = new Random(13);
+        for (int i = 0; i < 2000; i++) {
+            String stored = randomText(alphabet, random);
+            String answer = random.nextInt(4) == 0 ? stored : randomText(alphabet, random);
+            for (boolean foldKana : new boolean[] {true, false}) {
+                boolean expected = AnswerMatcher.normalize(stored, foldKana).equals(AnswerMatcher.normalize(answer, foldKana));
+                assertEquals(stored + " / " + answer, expected, new AnswerMatcher(stored, foldKana).matches(answer));
+            }
+        }
+    }
+    
+    private static String randomText(String alphabet, Random random) {
+        StringBuilder text = new StringBuilder();
+        int length = random.nextInt(5);
+        for (int i = 0; i < length; i++) {
+            text.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return text.toString();
+    }
+}